@@ -0,0 +1,75 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.benchmarks;
+
+import net.environmatics.acs.accessor.interfaces.AuthenticationMethod;
+
+import org.dom4j.Element;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AuthenticationMethod#asDOM4jElement()} of every authentication method, which is called for every
+ * doService request that is built with dom4j.
+ *
+ * @version  $Revision$, $Date$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(
+    iterations = 5,
+    time = 1
+)
+@Measurement(
+    iterations = 5,
+    time = 1
+)
+@Fork(1)
+public class AuthenticationMethodBenchmark {
+
+    //~ Instance fields --------------------------------------------------------
+
+    /** The authentication method, see {@link Fixtures#createAuthenticationMethod(String)}. */
+    @Param({ "password", "was", "session", "anonymous" })
+    public String authenticationMethod;
+
+    private AuthenticationMethod authMethod;
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates the authentication method.
+     */
+    @Setup
+    public void setUp() {
+        authMethod = Fixtures.createAuthenticationMethod(authenticationMethod);
+    }
+
+    /**
+     * Creates the AuthenticationData element.
+     *
+     * @return  the element
+     */
+    @Benchmark
+    public Element asDOM4jElement() {
+        return authMethod.asDOM4jElement();
+    }
+}
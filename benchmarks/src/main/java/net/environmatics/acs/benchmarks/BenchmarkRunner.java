@@ -0,0 +1,62 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the benchmarks with the GC profiler, so the allocation rate is reported next to the throughput. Takes the same
+ * arguments as the JMH runner, e.g. a regular expression that selects benchmarks or <code>-prof stack</code> for
+ * further profilers.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class BenchmarkRunner {
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Will not be called.
+     */
+    private BenchmarkRunner() { /* Not used */
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param   args  JMH command line options
+     *
+     * @throws  RunnerException             if a benchmark failed
+     * @throws  CommandLineOptionException  if the options are invalid
+     * @throws  IOException                 if the help could not be printed
+     */
+    public static void main(final String[] args) throws RunnerException, CommandLineOptionException,
+        IOException {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        if (commandLine.shouldList()) {
+            new Runner(commandLine).list();
+            return;
+        }
+        final Options options = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,92 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.benchmarks;
+
+import net.environmatics.acs.accessor.WSSCapabilities;
+import net.environmatics.acs.accessor.utils.DOMHelper;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.io.SAXReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing a WSS capabilities document into {@link WSSCapabilities}, compared to reading it into the dom4j
+ * document of <code>getWSSCapabilities()</code>.
+ *
+ * @version  $Revision$, $Date$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(
+    iterations = 5,
+    time = 1
+)
+@Measurement(
+    iterations = 5,
+    time = 1
+)
+@Fork(1)
+public class CapabilitiesBenchmark {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private byte[] document;
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Reads the capabilities document.
+     *
+     * @throws  IOException  if the resource could not be read
+     */
+    @Setup
+    public void setUp() throws IOException {
+        document = Fixtures.readResource(Fixtures.CAPABILITIES);
+    }
+
+    /**
+     * Parses the document with StAX.
+     *
+     * @return  the capabilities
+     *
+     * @throws  IOException  if the document is not well-formed
+     */
+    @Benchmark
+    public WSSCapabilities parse() throws IOException {
+        return WSSCapabilities.parse(document);
+    }
+
+    /**
+     * Reads the document into a dom4j document.
+     *
+     * @return  the document
+     *
+     * @throws  DocumentException  if the document is not well-formed
+     */
+    @Benchmark
+    public Document readDocument() throws DocumentException {
+        return new SAXReader(DOMHelper.getDocumentFactory()).read(new ByteArrayInputStream(document));
+    }
+}
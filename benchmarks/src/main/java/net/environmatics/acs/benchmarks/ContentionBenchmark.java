@@ -0,0 +1,209 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.benchmarks;
+
+import net.environmatics.acs.accessor.Payload;
+import net.environmatics.acs.accessor.WSSAccessorDeegree;
+import net.environmatics.acs.accessor.WSSAccessorFactory;
+import net.environmatics.acs.accessor.http.ConnectionPoolConfiguration;
+import net.environmatics.acs.accessor.interfaces.WSSAccessor;
+import net.environmatics.acs.exceptions.ServiceException;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the contention of concurrent {@link WSSAccessorDeegree#doService(String, String, String)} calls on one
+ * accessor with one session. The {@link EmbeddedWSS} answers at once, so the time is spent in the accessor, the
+ * connection pool and the loopback exchange rather than waiting for the WSS. With an invalid-session rate, the WSS
+ * drops the session of some requests, so concurrent requests find the same session rejected and have to share one
+ * renewal.<br>
+ * <br>
+ * The number of GetSession requests is reported as a secondary result next to the number of rejected sessions: with
+ * single-flight renewal it stays close to the number of rejections instead of growing with the number of threads.
+ * {@link ScalabilityRunner} runs this benchmark from 1 to 64 threads with <code>-benchmark ContentionBenchmark
+ * -threads 1,2,4,8,16,32,64</code>.
+ *
+ * @version  $Revision$, $Date$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(
+    iterations = 3,
+    time = 2
+)
+@Measurement(
+    iterations = 5,
+    time = 2
+)
+@Fork(1)
+public class ContentionBenchmark {
+
+    //~ Instance fields --------------------------------------------------------
+
+    /** The rate of DoService requests whose session is dropped by the WSS. */
+    @Param({ "0", "0.01" })
+    public double invalidSessionRate;
+
+    /** The size of the responses in bytes. */
+    @Param({ "1024" })
+    public int payloadSize;
+
+    private EmbeddedWSS wss;
+    private WSSAccessorFactory factory;
+    private WSSAccessorDeegree accessor;
+    // the counts of the WSS that have been reported by a SessionCounters state
+    private final AtomicLong reportedDoService = new AtomicLong();
+    private final AtomicLong reportedRejectedSessions = new AtomicLong();
+    private final AtomicLong reportedGetSession = new AtomicLong();
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Starts the WSS and creates the accessor with a connection pool that does not limit the threads.
+     *
+     * @throws  IOException  if the WSS could not be started
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        wss = new EmbeddedWSS();
+        wss.setDoServiceLatency(LatencyDistribution.NONE);
+        wss.setGetSessionLatency(LatencyDistribution.NONE);
+        wss.setPayload(PayloadType.PNG, payloadSize);
+        wss.setInvalidSessionRate(invalidSessionRate);
+        wss.start();
+
+        final ConnectionPoolConfiguration configuration = new ConnectionPoolConfiguration();
+        configuration.setMaxTotalConnections(256);
+        configuration.setMaxConnectionsPerHost(256);
+        configuration.setStaleCheckingEnabled(false);
+        factory = new WSSAccessorFactory(configuration);
+        accessor = factory.createAccessor(wss.getURL());
+    }
+
+    /**
+     * Closes the session and stops the WSS.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        accessor.shutdown();
+        factory.shutdown();
+        wss.stop();
+    }
+
+    /**
+     * Requests a tile.
+     *
+     * @param   tile      the tile of the thread
+     * @param   counters  the session statistics of the thread
+     *
+     * @return  the response
+     *
+     * @throws  ServiceException  if the request failed
+     */
+    @Benchmark
+    public Payload doService(final EndToEndBenchmark.Tile tile, final SessionCounters counters)
+            throws ServiceException {
+        try {
+            return accessor.doService(WSSAccessor.DCP_HTTP_GET, tile.next(), Fixtures.FACADE_URL);
+        } catch (ServiceException ex) {
+            if (invalidSessionRate > 0) {
+                // the session of the retry has been dropped as well
+                return null;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the part of a count of the WSS that has not been reported yet.
+     *
+     * @param   reported  the reported part of the count
+     * @param   count     the current count
+     *
+     * @return  the difference, 0 if another thread has reported a higher count
+     */
+    private static long claim(final AtomicLong reported, final long count) {
+        while (true) {
+            final long previous = reported.get();
+            if (count <= previous) {
+                return 0;
+            }
+            if (reported.compareAndSet(previous, count)) {
+                return count - previous;
+            }
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * The session statistics of an iteration, reported by JMH as secondary results. The counts of the WSS are shared by
+     * all threads, so each thread reports the part that no other thread has reported, and the sum of all threads is
+     * the count of the iteration.
+     *
+     * @version  $Revision$, $Date$
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class SessionCounters {
+
+        //~ Instance fields ----------------------------------------------------
+
+        /** The DoService requests received by the WSS. */
+        public long doServiceRequests;
+
+        /** The DoService requests whose session has been rejected by the WSS. */
+        public long rejectedSessions;
+
+        /** The GetSession requests received by the WSS. */
+        public long getSessionRequests;
+
+        //~ Methods ------------------------------------------------------------
+
+        /**
+         * Resets the counters before an iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            doServiceRequests = 0;
+            rejectedSessions = 0;
+            getSessionRequests = 0;
+        }
+
+        /**
+         * Collects the counts of the WSS after an iteration.
+         *
+         * @param  benchmark  the benchmark with the WSS
+         */
+        @TearDown(Level.Iteration)
+        public void collect(final ContentionBenchmark benchmark) {
+            doServiceRequests = claim(benchmark.reportedDoService, benchmark.wss.getDoServiceCount());
+            rejectedSessions = claim(benchmark.reportedRejectedSessions, benchmark.wss.getRejectedSessionCount());
+            getSessionRequests = claim(benchmark.reportedGetSession, benchmark.wss.getGetSessionCount());
+        }
+    }
+}
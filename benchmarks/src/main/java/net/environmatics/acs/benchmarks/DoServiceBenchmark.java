@@ -0,0 +1,105 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.benchmarks;
+
+import net.environmatics.acs.accessor.interfaces.AuthenticationMethod;
+import net.environmatics.acs.accessor.interfaces.WSSAccessor;
+import net.environmatics.acs.accessor.utils.DOMHelper;
+import net.environmatics.acs.accessor.utils.DoServiceTemplate;
+
+import org.dom4j.Document;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a doService request: the dom4j document of {@link DOMHelper#generateDoService}, its serialization
+ * with <code>asXML()</code>, and {@link DoServiceTemplate}, which renders the same bytes without a DOM.
+ *
+ * @version  $Revision$, $Date$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(
+    iterations = 5,
+    time = 1
+)
+@Measurement(
+    iterations = 5,
+    time = 1
+)
+@Fork(1)
+public class DoServiceBenchmark {
+
+    //~ Instance fields --------------------------------------------------------
+
+    /** The DCP type of the request, the request is a GetMap for HTTP GET and a GetFeature for HTTP POST. */
+    @Param({ WSSAccessor.DCP_HTTP_GET, WSSAccessor.DCP_HTTP_POST })
+    public String dcpType;
+
+    /** The authentication method, see {@link Fixtures#createAuthenticationMethod(String)}. */
+    @Param({ "session", "password" })
+    public String authenticationMethod;
+
+    private String request;
+    private AuthenticationMethod authMethod;
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates the request and the authentication method.
+     */
+    @Setup
+    public void setUp() {
+        request = WSSAccessor.DCP_HTTP_GET.equals(dcpType) ? Fixtures.GET_MAP : Fixtures.GET_FEATURE;
+        authMethod = Fixtures.createAuthenticationMethod(authenticationMethod);
+    }
+
+    /**
+     * Builds the doService document.
+     *
+     * @return  the document
+     */
+    @Benchmark
+    public Document generateDoService() {
+        return DOMHelper.generateDoService(dcpType, request, authMethod, Fixtures.REQUEST_PARAMS, Fixtures.FACADE_URL);
+    }
+
+    /**
+     * Builds and serializes the doService document, as the accessor did before the templates.
+     *
+     * @return  the serialized request
+     */
+    @Benchmark
+    public String generateDoServiceAsXML() {
+        return DOMHelper.generateDoService(dcpType, request, authMethod, Fixtures.REQUEST_PARAMS, Fixtures.FACADE_URL)
+                    .asXML();
+    }
+
+    /**
+     * Renders the doService request with a cached template.
+     *
+     * @return  the UTF-8 encoded request
+     */
+    @Benchmark
+    public byte[] renderTemplate() {
+        return DoServiceTemplate.render(dcpType, request, authMethod, Fixtures.REQUEST_PARAMS, Fixtures.FACADE_URL);
+    }
+}
@@ -0,0 +1,554 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.io.IOUtils;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-in for a deegree WSS that runs embedded on localhost, so the accessor can be load tested without the
+ * production WSS. It answers the requests the way {@link net.environmatics.acs.accessor.WSSAccessorDeegree} expects
+ * them:
+ *
+ * <ul>
+ *   <li>GetCapabilities (HTTP GET) with a capabilities document that points to this server</li>
+ *   <li>GetSession (HTTP POST, form encoded) with a new session ID, for all credentials</li>
+ *   <li>DoService (HTTP POST, XML) with a payload of the configured {@link PayloadType} and size, or with an
+ *     <code>InvalidSession</code> service exception if the session is unknown or has expired</li>
+ *   <li>CloseSession (HTTP POST, form encoded)</li>
+ * </ul>
+ * The latency of GetSession and DoService, the lifetime of sessions and the rate of injected exceptions are
+ * configurable and may be changed while the server is running.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class EmbeddedWSS {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static Logger logger = Logger.getLogger(EmbeddedWSS.class);
+
+    /** The URL of the WSS in the capabilities fixture, replaced by the URL of this server. */
+    private static final String FIXTURE_URL = "http://wss.example.org/wss/services";
+
+    private static final String INVALID_SESSION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<ServiceExceptionReport version=\"1.1.1\">\n"
+                + "  <ServiceException code=\"InvalidSession\">The session is unknown or has expired.</ServiceException>\n"
+                + "</ServiceExceptionReport>\n";
+
+    private static final String CLOSE_SESSION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<CloseSessionResponse/>\n";
+
+    private static final Response INVALID_SESSION_RESPONSE = new Response(
+            PayloadType.SERVICE_EXCEPTION.getContentType(),
+            INVALID_SESSION.getBytes(StandardCharsets.UTF_8));
+
+    private static final Response EXCEPTION_RESPONSE = new Response(
+            PayloadType.SERVICE_EXCEPTION.getContentType(),
+            PayloadType.SERVICE_EXCEPTION.create(0));
+
+    private static final String CREDENTIALS_START = "<authn:Credentials>";
+    private static final String CREDENTIALS_END = "</authn:Credentials>";
+
+    static {
+        // the JDK server writes the headers and the body of a response separately, without TCP_NODELAY the body waits
+        // for the delayed ACK of the client, which adds up to 40 ms to every request
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final Map<String, Long> sessions = new ConcurrentHashMap<String, Long>();
+    private final AtomicLong getSessionCount = new AtomicLong();
+    private final AtomicLong doServiceCount = new AtomicLong();
+    private final AtomicLong closeSessionCount = new AtomicLong();
+    private final AtomicLong rejectedSessionCount = new AtomicLong();
+    private final AtomicLong injectedExceptionCount = new AtomicLong();
+
+    private volatile LatencyDistribution doServiceLatency = LatencyDistribution.NONE;
+    private volatile LatencyDistribution getSessionLatency = LatencyDistribution.NONE;
+    private volatile long sessionLifetime;
+    private volatile double exceptionRate;
+    private volatile double invalidSessionRate;
+    private volatile Response payload = new Response(PayloadType.PNG.getContentType(), PayloadType.PNG.create(16384));
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private byte[] capabilities;
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Starts the server on a free port of the loopback interface.
+     *
+     * @throws  IOException            if the server could not be started
+     * @throws  IllegalStateException  if the server is running already
+     */
+    public synchronized void start() throws IOException {
+        start(0);
+    }
+
+    /**
+     * Starts the server on the loopback interface.
+     *
+     * @param   port  the port, 0 for a free port
+     *
+     * @throws  IOException            if the server could not be started
+     * @throws  IllegalStateException  if the server is running already
+     */
+    public synchronized void start(final int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("already started");
+        }
+        final HttpServer created = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                1024);
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, "EmbeddedWSS-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        created.setExecutor(executor);
+        created.createContext("/wss", new Handler());
+        server = created;
+        capabilities = new String(Fixtures.readResource(Fixtures.CAPABILITIES), StandardCharsets.UTF_8).replace(
+                    FIXTURE_URL,
+                    getURL()).getBytes(StandardCharsets.UTF_8);
+        created.start();
+        if (logger.isDebugEnabled()) {
+            logger.debug("embedded WSS started at " + getURL());
+        }
+    }
+
+    /**
+     * Stops the server and forgets all sessions.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+            executor = null;
+        }
+        sessions.clear();
+    }
+
+    /**
+     * Returns the URL of the WSS.
+     *
+     * @return  the URL
+     *
+     * @throws  IllegalStateException  if the server is not running
+     */
+    public synchronized String getURL() {
+        if (server == null) {
+            throw new IllegalStateException("not started");
+        }
+        return "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort()
+                    + "/wss";
+    }
+
+    /**
+     * Sets the latency of DoService requests.
+     *
+     * @param  doServiceLatency  the latency distribution
+     */
+    public void setDoServiceLatency(final LatencyDistribution doServiceLatency) {
+        this.doServiceLatency = doServiceLatency;
+    }
+
+    /**
+     * Returns the latency of DoService requests.
+     *
+     * @return  the latency distribution
+     */
+    public LatencyDistribution getDoServiceLatency() {
+        return doServiceLatency;
+    }
+
+    /**
+     * Sets the latency of GetSession requests.
+     *
+     * @param  getSessionLatency  the latency distribution
+     */
+    public void setGetSessionLatency(final LatencyDistribution getSessionLatency) {
+        this.getSessionLatency = getSessionLatency;
+    }
+
+    /**
+     * Returns the latency of GetSession requests.
+     *
+     * @return  the latency distribution
+     */
+    public LatencyDistribution getGetSessionLatency() {
+        return getSessionLatency;
+    }
+
+    /**
+     * Sets the time after which a session expires. Changes apply to new sessions.
+     *
+     * @param  sessionLifetime  the lifetime in milliseconds, 0 if sessions do not expire
+     */
+    public void setSessionLifetime(final long sessionLifetime) {
+        this.sessionLifetime = sessionLifetime;
+    }
+
+    /**
+     * Returns the time after which a session expires.
+     *
+     * @return  the lifetime in milliseconds, 0 if sessions do not expire
+     */
+    public long getSessionLifetime() {
+        return sessionLifetime;
+    }
+
+    /**
+     * Sets the rate of DoService requests that are answered with a permanent service exception report, i.e. a
+     * <code>LayerNotDefined</code> exception that does not concern the session.
+     *
+     * @param  exceptionRate  the rate between 0 and 1
+     */
+    public void setExceptionRate(final double exceptionRate) {
+        this.exceptionRate = exceptionRate;
+    }
+
+    /**
+     * Returns the rate of DoService requests that are answered with a permanent service exception report.
+     *
+     * @return  the rate between 0 and 1
+     */
+    public double getExceptionRate() {
+        return exceptionRate;
+    }
+
+    /**
+     * Sets the rate of DoService requests whose session is dropped before they are answered, so the accessor has to
+     * renew its session and send the request again.
+     *
+     * @param  invalidSessionRate  the rate between 0 and 1
+     */
+    public void setInvalidSessionRate(final double invalidSessionRate) {
+        this.invalidSessionRate = invalidSessionRate;
+    }
+
+    /**
+     * Returns the rate of DoService requests whose session is dropped.
+     *
+     * @return  the rate between 0 and 1
+     */
+    public double getInvalidSessionRate() {
+        return invalidSessionRate;
+    }
+
+    /**
+     * Sets the response of successful DoService requests.
+     *
+     * @param  payloadType  the type of the response
+     * @param  size         the size of the response in bytes
+     */
+    public void setPayload(final PayloadType payloadType, final int size) {
+        this.payload = new Response(payloadType.getContentType(), payloadType.create(size));
+    }
+
+    /**
+     * Returns the number of GetSession requests.
+     *
+     * @return  the number of requests
+     */
+    public long getGetSessionCount() {
+        return getSessionCount.get();
+    }
+
+    /**
+     * Returns the number of DoService requests.
+     *
+     * @return  the number of requests
+     */
+    public long getDoServiceCount() {
+        return doServiceCount.get();
+    }
+
+    /**
+     * Returns the number of CloseSession requests.
+     *
+     * @return  the number of requests
+     */
+    public long getCloseSessionCount() {
+        return closeSessionCount.get();
+    }
+
+    /**
+     * Returns the number of DoService requests that were rejected with an <code>InvalidSession</code> exception.
+     *
+     * @return  the number of requests
+     */
+    public long getRejectedSessionCount() {
+        return rejectedSessionCount.get();
+    }
+
+    /**
+     * Returns the number of DoService requests that were answered with an injected service exception report.
+     *
+     * @return  the number of requests
+     */
+    public long getInjectedExceptionCount() {
+        return injectedExceptionCount.get();
+    }
+
+    /**
+     * Returns the number of sessions that have not been closed. Expired sessions are counted until they are used.
+     *
+     * @return  the number of sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Resets the request counters.
+     */
+    public void resetCounters() {
+        getSessionCount.set(0L);
+        doServiceCount.set(0L);
+        closeSessionCount.set(0L);
+        rejectedSessionCount.set(0L);
+        injectedExceptionCount.set(0L);
+    }
+
+    /**
+     * Answers a GetSession request.
+     *
+     * @return  the new session ID
+     */
+    private String getSession() {
+        getSessionCount.incrementAndGet();
+        getSessionLatency.await();
+        final String id = UUID.randomUUID().toString();
+        final long lifetime = sessionLifetime;
+        final long expiry = (lifetime > 0) ? (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lifetime)) : Long.MAX_VALUE;
+        sessions.put(id, expiry);
+        return id;
+    }
+
+    /**
+     * Checks and consumes the session of a DoService request.
+     *
+     * @param   body  the DoService document
+     *
+     * @return  true if the session is valid
+     */
+    private boolean isSessionValid(final String body) {
+        final int start = body.indexOf(CREDENTIALS_START);
+        final int end = (start < 0) ? -1 : body.indexOf(CREDENTIALS_END, start);
+        if (end < 0) {
+            return false;
+        }
+        final String id = body.substring(start + CREDENTIALS_START.length(), end);
+        final Long expiration = sessions.get(id);
+        if (expiration == null) {
+            return false;
+        }
+        if ((expiration != Long.MAX_VALUE) && ((System.nanoTime() - expiration) > 0)) {
+            sessions.remove(id);
+            return false;
+        }
+        if ((invalidSessionRate > 0) && (ThreadLocalRandom.current().nextDouble() < invalidSessionRate)) {
+            sessions.remove(id);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses a form encoded request body.
+     *
+     * @param   body  the request body
+     *
+     * @return  the parameters by upper case name
+     *
+     * @throws  IOException  if the body is not UTF-8 encoded
+     */
+    private static Map<String, String> parseParameters(final String body) throws IOException {
+        final Map<String, String> parameters = new HashMap<String, String>();
+        for (final String pair : body.split("&")) {
+            final int eq = pair.indexOf('=');
+            if (eq > 0) {
+                parameters.put(pair.substring(0, eq).toUpperCase(),
+                    URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Sends a response.
+     *
+     * @param   exchange     the exchange
+     * @param   status       the HTTP status
+     * @param   contentType  the Content-Type
+     * @param   body         the response body
+     *
+     * @throws  IOException  if the response could not be sent
+     */
+    private static void send(final HttpExchange exchange,
+            final int status,
+            final String contentType,
+            final byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Dispatches the requests to the WSS operations.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private class Handler implements HttpHandler {
+
+        //~ Methods ------------------------------------------------------------
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            try {
+                if ("GET".equals(exchange.getRequestMethod())) {
+                    final String query = exchange.getRequestURI().getRawQuery();
+                    if ((query != null) && query.toUpperCase().contains("REQUEST=GETCAPABILITIES")) {
+                        send(exchange, 200, "text/xml", capabilities);
+                    } else {
+                        send(exchange, 400, "text/plain", "unsupported request".getBytes(StandardCharsets.UTF_8));
+                    }
+                    return;
+                }
+                final String body = new String(IOUtils.toByteArray(exchange.getRequestBody()), StandardCharsets.UTF_8);
+                if (body.trim().startsWith("<")) {
+                    doService(exchange, body);
+                    return;
+                }
+                final Map<String, String> parameters = parseParameters(body);
+                final String request = parameters.get("REQUEST");
+                if ("GetSession".equalsIgnoreCase(request)) {
+                    send(exchange, 200, "text/plain", getSession().getBytes(StandardCharsets.UTF_8));
+                } else if ("CloseSession".equalsIgnoreCase(request)) {
+                    closeSessionCount.incrementAndGet();
+                    final String id = parameters.get("SESSIONID");
+                    if (id != null) {
+                        sessions.remove(id);
+                    }
+                    send(exchange, 200, "text/xml", CLOSE_SESSION.getBytes(StandardCharsets.UTF_8));
+                } else {
+                    send(exchange, 400, "text/plain", "unsupported request".getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (RuntimeException ex) {
+                logger.warn("embedded WSS failed to answer a request", ex);
+                exchange.sendResponseHeaders(500, -1);
+            } finally {
+                exchange.close();
+            }
+        }
+
+        /**
+         * Answers a DoService request.
+         *
+         * @param   exchange  the exchange
+         * @param   body      the DoService document
+         *
+         * @throws  IOException  if the response could not be sent
+         */
+        private void doService(final HttpExchange exchange, final String body) throws IOException {
+            doServiceCount.incrementAndGet();
+            if (!isSessionValid(body)) {
+                rejectedSessionCount.incrementAndGet();
+                INVALID_SESSION_RESPONSE.send(exchange);
+                return;
+            }
+            doServiceLatency.await();
+            if ((exceptionRate > 0) && (ThreadLocalRandom.current().nextDouble() < exceptionRate)) {
+                injectedExceptionCount.incrementAndGet();
+                EXCEPTION_RESPONSE.send(exchange);
+                return;
+            }
+            payload.send(exchange);
+        }
+    }
+
+    /**
+     * A canned response.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class Response {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final String contentType;
+        private final byte[] body;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new Response object.
+         *
+         * @param  contentType  the Content-Type
+         * @param  body         the response body
+         */
+        Response(final String contentType, final byte[] body) {
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        /**
+         * Sends this response with HTTP status 200.
+         *
+         * @param   exchange  the exchange
+         *
+         * @throws  IOException  if the response could not be sent
+         */
+        void send(final HttpExchange exchange) throws IOException {
+            EmbeddedWSS.send(exchange, 200, contentType, body);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.benchmarks;
+
+import net.environmatics.acs.accessor.Payload;
+import net.environmatics.acs.accessor.WSSAccessorDeegree;
+import net.environmatics.acs.accessor.WSSAccessorFactory;
+import net.environmatics.acs.accessor.http.ConnectionPoolConfiguration;
+import net.environmatics.acs.accessor.interfaces.WSSAccessor;
+import net.environmatics.acs.exceptions.ServiceException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives {@link WSSAccessorDeegree#doService(String, String, String)} against an {@link EmbeddedWSS}, i.e. the whole
+ * request path including the connection pool, the session handling and the HTTP exchange over the loopback
+ * interface. Reports the throughput and the latency distribution (p50, p99, p999, ...). Every invocation requests
+ * another tile, so identical requests are not coalesced.<br>
+ * <br>
+ * The number of threads is set with <code>-t</code>; {@link ScalabilityRunner} runs this benchmark from 1 to 128
+ * threads.
+ *
+ * @version  $Revision$, $Date$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(
+    iterations = 3,
+    time = 2
+)
+@Measurement(
+    iterations = 5,
+    time = 2
+)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    //~ Instance fields --------------------------------------------------------
+
+    /** The latency of DoService requests, see {@link LatencyDistribution#parse(String)}. */
+    @Param({ "lognormal:5:40" })
+    public String latency;
+
+    /** The type of the responses. */
+    @Param({ "PNG" })
+    public PayloadType payloadType;
+
+    /** The size of the responses in bytes. */
+    @Param({ "16384" })
+    public int payloadSize;
+
+    /** The number of sessions the accessor uses concurrently. */
+    @Param({ "1" })
+    public int sessionPoolSize;
+
+    /** The lifetime of sessions in milliseconds, 0 if they do not expire. */
+    @Param({ "0" })
+    public long sessionLifetime;
+
+    /** The rate of requests that are answered with a service exception report. */
+    @Param({ "0" })
+    public double exceptionRate;
+
+    /** Whether the connection pool checks pooled connections before they are reused, as it does by default. */
+    @Param({ "true" })
+    public boolean staleCheckingEnabled;
+
+    private EmbeddedWSS wss;
+    private WSSAccessorFactory factory;
+    private WSSAccessorDeegree accessor;
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Starts the WSS and creates the accessor with a connection pool that does not limit the threads.
+     *
+     * @throws  IOException  if the WSS could not be started
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        wss = new EmbeddedWSS();
+        wss.setDoServiceLatency(LatencyDistribution.parse(latency));
+        wss.setPayload(payloadType, payloadSize);
+        wss.setSessionLifetime(sessionLifetime);
+        wss.setExceptionRate(exceptionRate);
+        wss.start();
+
+        final ConnectionPoolConfiguration configuration = new ConnectionPoolConfiguration();
+        configuration.setMaxTotalConnections(256);
+        configuration.setMaxConnectionsPerHost(256);
+        configuration.setStaleCheckingEnabled(staleCheckingEnabled);
+        factory = new WSSAccessorFactory(configuration);
+        accessor = factory.createAccessor(wss.getURL());
+        accessor.setSessionPoolSize(sessionPoolSize);
+        if (sessionLifetime > 0) {
+            accessor.setSessionLifetime(sessionLifetime);
+        }
+    }
+
+    /**
+     * Closes the sessions and stops the WSS.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        accessor.shutdown();
+        factory.shutdown();
+        wss.stop();
+    }
+
+    /**
+     * Requests a tile.
+     *
+     * @param   tile  the tile of the thread
+     *
+     * @return  the response
+     *
+     * @throws  ServiceException  if the request failed
+     */
+    @Benchmark
+    public Payload doService(final Tile tile) throws ServiceException {
+        try {
+            return accessor.doService(WSSAccessor.DCP_HTTP_GET, tile.next(), Fixtures.FACADE_URL);
+        } catch (ServiceException ex) {
+            if (exceptionRate > 0) {
+                // an injected exception
+                return null;
+            }
+            throw ex;
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Creates a new GetMap request for every invocation of a thread.
+     *
+     * @version  $Revision$, $Date$
+     */
+    @State(Scope.Thread)
+    public static class Tile {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final StringBuilder request = new StringBuilder(512);
+        private long x = System.identityHashCode(this) * 256L;
+
+        //~ Methods ------------------------------------------------------------
+
+        /**
+         * Returns the GetMap request of the next tile.
+         *
+         * @return  the request
+         */
+        public String next() {
+            x += 256;
+            request.setLength(0);
+            return request.append("SERVICE=WMS&VERSION=1.1.1&REQUEST=GetMap&LAYERS=alkis:flurstueck&STYLES=")
+                        .append("&SRS=EPSG:31466&BBOX=")
+                        .append(x)
+                        .append(".0,5460000.0,")
+                        .append(x + 256)
+                        .append(".0,5460256.0&WIDTH=256&HEIGHT=256&FORMAT=image/png")
+                        .toString();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.benchmarks;
+
+import net.environmatics.acs.accessor.interfaces.AuthenticationMethod;
+import net.environmatics.acs.accessor.methods.AnonymousAuthenticationMethod;
+import net.environmatics.acs.accessor.methods.PasswordAuthenticationMethod;
+import net.environmatics.acs.accessor.methods.SessionAuthenticationMethod;
+import net.environmatics.acs.accessor.methods.WASAuthenticationMethod;
+
+import org.apache.commons.httpclient.NameValuePair;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The requests, authentication methods and documents the benchmarks work with.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class Fixtures {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    /** A GetMap request of a 256x256 tile, as sent with HTTP GET. */
+    public static final String GET_MAP = "SERVICE=WMS&VERSION=1.1.1&REQUEST=GetMap&LAYERS=alkis:flurstueck,alkis:gebaeude"
+                + "&STYLES=&SRS=EPSG:31466&BBOX=2570000.0,5460000.0,2570256.0,5460256.0&WIDTH=256&HEIGHT=256"
+                + "&FORMAT=image/png&TRANSPARENT=TRUE&EXCEPTIONS=application/vnd.ogc.se_xml";
+
+    /** A GetFeature request with a filter, as sent with HTTP POST. */
+    public static final String GET_FEATURE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<wfs:GetFeature xmlns:wfs=\"http://www.opengis.net/wfs\" xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                + "xmlns:gml=\"http://www.opengis.net/gml\" service=\"WFS\" version=\"1.1.0\" maxFeatures=\"500\">"
+                + "<wfs:Query typeName=\"alkis:flurstueck\"><ogc:Filter><ogc:BBOX><ogc:PropertyName>geometrie"
+                + "</ogc:PropertyName><gml:Envelope srsName=\"EPSG:31466\"><gml:lowerCorner>2570000 5460000"
+                + "</gml:lowerCorner><gml:upperCorner>2571000 5461000</gml:upperCorner></gml:Envelope></ogc:BBOX>"
+                + "</ogc:Filter></wfs:Query></wfs:GetFeature>";
+
+    /** The facade URL of the requests. */
+    public static final String FACADE_URL = "http://www.example.org/wss/facade/alkis";
+
+    /** The request parameters wss-bean sends with every request. */
+    public static final NameValuePair[] REQUEST_PARAMS = new NameValuePair[0];
+
+    /** Name of the capabilities document resource. */
+    public static final String CAPABILITIES = "wss-capabilities.xml";
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Will not be called.
+     */
+    private Fixtures() { /* Not used */
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates an authentication method with fixed credentials.
+     *
+     * @param   name  "password", "was", "session" or "anonymous"
+     *
+     * @return  the authentication method
+     *
+     * @throws  IllegalArgumentException  if the name is unknown
+     */
+    public static AuthenticationMethod createAuthenticationMethod(final String name) {
+        if ("password".equals(name)) {
+            return new PasswordAuthenticationMethod("benchmark,s3cr3t&<pass>");
+        } else if ("was".equals(name)) {
+            return new WASAuthenticationMethod(
+                    "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:1.0:protocol\" ResponseID=\"r-4711\">"
+                            + "<saml:Assertion xmlns:saml=\"urn:oasis:names:tc:SAML:1.0:assertion\" "
+                            + "AssertionID=\"a-4711\" Issuer=\"http://was.example.org\"/></samlp:Response>");
+        } else if ("session".equals(name)) {
+            return new SessionAuthenticationMethod("5f2b5c8e-7d1c-4b8f-9a55-1e0c6f9b2d3a");
+        } else if ("anonymous".equals(name)) {
+            return new AnonymousAuthenticationMethod();
+        }
+        throw new IllegalArgumentException("unknown authentication method: " + name);
+    }
+
+    /**
+     * Reads a resource of this package.
+     *
+     * @param   name  the name of the resource
+     *
+     * @return  the content of the resource
+     *
+     * @throws  IOException  if the resource does not exist or could not be read
+     */
+    public static byte[] readResource(final String name) throws IOException {
+        final InputStream is = Fixtures.class.getResourceAsStream(name);
+        if (is == null) {
+            throw new IOException("resource not found: " + name);
+        }
+        try {
+            return IOUtils.toByteArray(is);
+        } finally {
+            is.close();
+        }
+    }
+}
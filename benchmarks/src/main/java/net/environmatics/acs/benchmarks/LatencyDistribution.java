@@ -0,0 +1,165 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The distribution of the time the {@link EmbeddedWSS} needs to answer a request. Service latencies are usually
+ * skewed, so {@link #logNormal(long, long, TimeUnit)} with the median and the 99th percentile of the real service is
+ * the most realistic choice.
+ *
+ * @version  $Revision$, $Date$
+ */
+public abstract class LatencyDistribution {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    /** Answers without delay. */
+    public static final LatencyDistribution NONE = constant(0, TimeUnit.NANOSECONDS);
+
+    // quantile of the standard normal distribution at 0.99
+    private static final double Z_99 = 2.3263478740408408;
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the next latency.
+     *
+     * @return  the latency in nanoseconds, not negative
+     */
+    public abstract long nextNanos();
+
+    /**
+     * Waits for the next latency.
+     */
+    public void await() {
+        final long deadline = System.nanoTime() + nextNanos();
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * Creates a distribution that always returns the same latency.
+     *
+     * @param   latency  the latency
+     * @param   unit     the unit of the latency
+     *
+     * @return  a new distribution
+     */
+    public static LatencyDistribution constant(final long latency, final TimeUnit unit) {
+        final long nanos = unit.toNanos(latency);
+        return new LatencyDistribution() {
+
+                @Override
+                public long nextNanos() {
+                    return nanos;
+                }
+
+                @Override
+                public String toString() {
+                    return "constant(" + nanos + " ns)";
+                }
+            };
+    }
+
+    /**
+     * Creates a uniform distribution.
+     *
+     * @param   min   the minimum latency
+     * @param   max   the maximum latency
+     * @param   unit  the unit of the latencies
+     *
+     * @return  a new distribution
+     *
+     * @throws  IllegalArgumentException  if max is less than min
+     */
+    public static LatencyDistribution uniform(final long min, final long max, final TimeUnit unit) {
+        if (max < min) {
+            throw new IllegalArgumentException("max < min: " + max + " < " + min);
+        }
+        final long minNanos = unit.toNanos(min);
+        final long maxNanos = unit.toNanos(max);
+        return new LatencyDistribution() {
+
+                @Override
+                public long nextNanos() {
+                    return minNanos + (long)(ThreadLocalRandom.current().nextDouble() * (maxNanos - minNanos));
+                }
+
+                @Override
+                public String toString() {
+                    return "uniform(" + minNanos + " ns, " + maxNanos + " ns)";
+                }
+            };
+    }
+
+    /**
+     * Creates a log-normal distribution with the given median and 99th percentile.
+     *
+     * @param   median  the median latency
+     * @param   p99     the 99th percentile of the latency
+     * @param   unit    the unit of the latencies
+     *
+     * @return  a new distribution
+     *
+     * @throws  IllegalArgumentException  if the median is not positive or the p99 is less than the median
+     */
+    public static LatencyDistribution logNormal(final long median, final long p99, final TimeUnit unit) {
+        if ((median <= 0) || (p99 < median)) {
+            throw new IllegalArgumentException("invalid median " + median + " or p99 " + p99);
+        }
+        final double mu = Math.log(unit.toNanos(median));
+        final double sigma = (Math.log(unit.toNanos(p99)) - mu) / Z_99;
+        return new LatencyDistribution() {
+
+                @Override
+                public long nextNanos() {
+                    return (long)Math.exp(mu + (sigma * ThreadLocalRandom.current().nextGaussian()));
+                }
+
+                @Override
+                public String toString() {
+                    return "logNormal(mu=" + mu + ", sigma=" + sigma + ")";
+                }
+            };
+    }
+
+    /**
+     * Parses a distribution: <code>none</code>, <code>constant:&lt;ms&gt;</code>,
+     * <code>uniform:&lt;min ms&gt;:&lt;max ms&gt;</code> or <code>lognormal:&lt;median ms&gt;:&lt;p99 ms&gt;</code>.
+     * Used for JMH parameters and command line options.
+     *
+     * @param   spec  the specification
+     *
+     * @return  the distribution
+     *
+     * @throws  IllegalArgumentException  if the specification is invalid
+     */
+    public static LatencyDistribution parse(final String spec) {
+        final String[] parts = spec.trim().split(":");
+        try {
+            if ("none".equalsIgnoreCase(parts[0]) && (parts.length == 1)) {
+                return NONE;
+            } else if ("constant".equalsIgnoreCase(parts[0]) && (parts.length == 2)) {
+                return constant(Long.parseLong(parts[1]), TimeUnit.MILLISECONDS);
+            } else if ("uniform".equalsIgnoreCase(parts[0]) && (parts.length == 3)) {
+                return uniform(Long.parseLong(parts[1]), Long.parseLong(parts[2]), TimeUnit.MILLISECONDS);
+            } else if ("lognormal".equalsIgnoreCase(parts[0]) && (parts.length == 3)) {
+                return logNormal(Long.parseLong(parts[1]), Long.parseLong(parts[2]), TimeUnit.MILLISECONDS);
+            }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("invalid latency distribution: " + spec, ex);
+        }
+        throw new IllegalArgumentException("invalid latency distribution: " + spec);
+    }
+}
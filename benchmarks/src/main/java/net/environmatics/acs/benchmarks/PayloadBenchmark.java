@@ -0,0 +1,113 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.benchmarks;
+
+import net.environmatics.acs.accessor.Payload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the checks every doService response goes through, {@link Payload#containsException()}, and
+ * {@link Payload#asText()}, on tiles, feature collections and exception reports. A new Payload is created per
+ * invocation, because Payload caches the decoded text.
+ *
+ * @version  $Revision$, $Date$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(
+    iterations = 5,
+    time = 1
+)
+@Measurement(
+    iterations = 5,
+    time = 1
+)
+@Fork(1)
+public class PayloadBenchmark {
+
+    //~ Instance fields --------------------------------------------------------
+
+    /** The kind of response. */
+    @Param({ "PNG", "JPEG", "GML", "SERVICE_EXCEPTION", "OWS_EXCEPTION" })
+    public PayloadType type;
+
+    /** The size of the response in bytes, ignored by the exception reports. */
+    @Param({ "16384", "262144" })
+    public int size;
+
+    private byte[] bytes;
+    private ByteBuffer buffer;
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates the response.
+     */
+    @Setup
+    public void setUp() {
+        bytes = type.create(size);
+        buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+    }
+
+    /**
+     * Checks a response that was received with its Content-Type.
+     *
+     * @return  true for exception reports
+     */
+    @Benchmark
+    public boolean containsException() {
+        return new Payload(bytes, "UTF-8", type.getContentType()).containsException();
+    }
+
+    /**
+     * Checks a response without Content-Type, i.e. from the disk cache, so the content has to be inspected.
+     *
+     * @return  true for exception reports
+     */
+    @Benchmark
+    public boolean containsExceptionWithoutContentType() {
+        return new Payload(bytes, "UTF-8", null).containsException();
+    }
+
+    /**
+     * Checks a response that is backed by a buffer, like the memory mapped entries of the disk cache.
+     *
+     * @return  true for exception reports
+     */
+    @Benchmark
+    public boolean containsExceptionOfBuffer() {
+        return new Payload(buffer, "UTF-8").containsException();
+    }
+
+    /**
+     * Decodes a response.
+     *
+     * @return  the text
+     */
+    @Benchmark
+    public String asText() {
+        return new Payload(bytes, "UTF-8", type.getContentType()).asText();
+    }
+}
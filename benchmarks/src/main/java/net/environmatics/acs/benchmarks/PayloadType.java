@@ -0,0 +1,171 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Random;
+
+/**
+ * Kinds of responses a secured service returns through a WSS. Every type creates deterministic payloads of a given
+ * size that start like the real thing, i.e. with the magic bytes of the image format or the root element of the XML
+ * document, so the exception detection of wss-bean sees realistic data.
+ *
+ * @version  $Revision$, $Date$
+ */
+public enum PayloadType {
+
+    //~ Enum constants ---------------------------------------------------------
+
+    /** A PNG tile. */
+    PNG("image/png"),
+    /** A JPEG tile. */
+    JPEG("image/jpeg"),
+    /** A GML 3 feature collection of a GetFeature request. */
+    GML("text/xml; subtype=gml/3.1.1"),
+    /** A WMS service exception report, its size does not depend on the requested size. */
+    SERVICE_EXCEPTION("application/vnd.ogc.se_xml"),
+    /** An OWS exception report, its size does not depend on the requested size. */
+    OWS_EXCEPTION("text/xml");
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final byte[] PNG_SIGNATURE = {
+            (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 13, 'I', 'H', 'D', 'R', 0, 0, 1, 0, 0, 0, 1, 0,
+            8, 6, 0, 0, 0
+        };
+
+    private static final byte[] JPEG_HEADER = {
+            (byte)0xff, (byte)0xd8, (byte)0xff, (byte)0xe0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0
+        };
+
+    private static final String SERVICE_EXCEPTION_REPORT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<ServiceExceptionReport version=\"1.1.1\">\n"
+                + "  <ServiceException code=\"LayerNotDefined\">Layer 'alkis:flurstueck' is not defined."
+                + "</ServiceException>\n"
+                + "</ServiceExceptionReport>\n";
+
+    private static final String OWS_EXCEPTION_REPORT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<ows:ExceptionReport xmlns:ows=\"http://www.opengis.net/ows\" version=\"1.0.0\">\n"
+                + "  <ows:Exception exceptionCode=\"InvalidParameterValue\" locator=\"typeName\">\n"
+                + "    <ows:ExceptionText>Feature type 'alkis:flurstueck' is unknown.</ows:ExceptionText>\n"
+                + "  </ows:Exception>\n"
+                + "</ows:ExceptionReport>\n";
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final String contentType;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new PayloadType object.
+     *
+     * @param  contentType  the Content-Type a service sends with this type
+     */
+    private PayloadType(final String contentType) {
+        this.contentType = contentType;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the Content-Type a service sends with this type.
+     *
+     * @return  the Content-Type
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Creates a payload. The same type and size always create the same bytes.
+     *
+     * @param   size  the approximate size in bytes, ignored by the exception reports
+     *
+     * @return  the payload
+     */
+    public byte[] create(final int size) {
+        switch (this) {
+            case PNG: {
+                return binary(PNG_SIGNATURE, size);
+            }
+            case JPEG: {
+                final byte[] jpeg = binary(JPEG_HEADER, size);
+                // end of image marker
+                jpeg[jpeg.length - 2] = (byte)0xff;
+                jpeg[jpeg.length - 1] = (byte)0xd9;
+                return jpeg;
+            }
+            case GML: {
+                return featureCollection(size);
+            }
+            case SERVICE_EXCEPTION: {
+                return SERVICE_EXCEPTION_REPORT.getBytes(StandardCharsets.UTF_8);
+            }
+            default: {
+                return OWS_EXCEPTION_REPORT.getBytes(StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * Creates a binary payload, i.e. a header followed by incompressible data.
+     *
+     * @param   header  the first bytes
+     * @param   size    the size in bytes
+     *
+     * @return  the payload
+     */
+    private static byte[] binary(final byte[] header, final int size) {
+        final byte[] bytes = new byte[Math.max(size, header.length + 2)];
+        new Random(size).nextBytes(bytes);
+        System.arraycopy(header, 0, bytes, 0, header.length);
+        return bytes;
+    }
+
+    /**
+     * Creates a GML feature collection of parcels.
+     *
+     * @param   size  the approximate size in bytes
+     *
+     * @return  the UTF-8 encoded feature collection
+     */
+    private static byte[] featureCollection(final int size) {
+        final Random random = new Random(size);
+        final StringBuilder gml = new StringBuilder(size + 1024);
+        gml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<wfs:FeatureCollection xmlns:wfs=\"http://www.opengis.net/wfs\" ")
+                .append("xmlns:gml=\"http://www.opengis.net/gml\" xmlns:alkis=\"http://www.example.org/alkis\">\n");
+        for (int i = 0; gml.length() < size; i++) {
+            final double x = 2570000 + random.nextInt(10000);
+            final double y = 5460000 + random.nextInt(10000);
+            gml.append("  <gml:featureMember>\n")
+                    .append("    <alkis:flurstueck gml:id=\"flurstueck.")
+                    .append(i)
+                    .append("\">\n")
+                    .append("      <alkis:kennzeichen>05")
+                    .append(random.nextInt(10000))
+                    .append("-")
+                    .append(random.nextInt(1000))
+                    .append("</alkis:kennzeichen>\n")
+                    .append("      <alkis:gemarkung>Gemarkung Überherrn</alkis:gemarkung>\n")
+                    .append("      <alkis:geometrie><gml:Polygon srsName=\"EPSG:31466\"><gml:exterior>")
+                    .append("<gml:LinearRing><gml:posList>");
+            for (int j = 0; j < 8; j++) {
+                gml.append(x + random.nextInt(100)).append(' ').append(y + random.nextInt(100)).append(' ');
+            }
+            gml.append(x).append(' ').append(y);
+            gml.append("</gml:posList></gml:LinearRing></gml:exterior></gml:Polygon></alkis:geometrie>\n")
+                    .append("    </alkis:flurstueck>\n")
+                    .append("  </gml:featureMember>\n");
+        }
+        gml.append("</wfs:FeatureCollection>\n");
+        return gml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,161 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.benchmarks;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.util.Statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs {@link EndToEndBenchmark} with an increasing number of threads and prints the throughput and the latency
+ * percentiles per thread count, so the point where the accessor stops scaling is visible at a glance. The option
+ * <code>-threads 1,2,4</code> replaces the default thread counts, <code>-benchmark ContentionBenchmark</code> runs
+ * {@link ContentionBenchmark} instead. All other arguments are passed to JMH, e.g. <code>-p latency=constant:20 -p
+ * sessionPoolSize=4</code>.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class ScalabilityRunner {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    /** The default thread counts. */
+    public static final int[] DEFAULT_THREADS = { 1, 2, 4, 8, 16, 32, 64, 128 };
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Will not be called.
+     */
+    private ScalabilityRunner() { /* Not used */
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param   args  <code>-threads &lt;list&gt;</code> and JMH command line options
+     *
+     * @throws  RunnerException             if the benchmark failed
+     * @throws  CommandLineOptionException  if the options are invalid
+     */
+    public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+        int[] threads = DEFAULT_THREADS;
+        final List<String> jmhArgs = new ArrayList<String>(Arrays.asList(args));
+        final String counts = removeOption(jmhArgs, "-threads");
+        if (counts != null) {
+            final String[] values = counts.split(",");
+            threads = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                threads[i] = Integer.parseInt(values[i].trim());
+            }
+        }
+        String benchmark = removeOption(jmhArgs, "-benchmark");
+        if (benchmark == null) {
+            benchmark = EndToEndBenchmark.class.getSimpleName();
+        }
+        final CommandLineOptions commandLine = new CommandLineOptions(jmhArgs.toArray(new String[jmhArgs.size()]));
+
+        final List<String> rows = new ArrayList<String>();
+        for (final int threadCount : threads) {
+            final Options options = new OptionsBuilder().parent(commandLine)
+                        .include(benchmark)
+                        .threads(threadCount)
+                        .build();
+            final Collection<RunResult> results = new Runner(options).run();
+            for (final RunResult result : results) {
+                final BenchmarkParams params = result.getParams();
+                final Statistics statistics = result.getPrimaryResult().getStatistics();
+                switch (params.getMode()) {
+                    case Throughput: {
+                        rows.add(String.format(
+                                Locale.ROOT,
+                                "%7d  %-10s %.3f %s  %s",
+                                threadCount,
+                                "thrpt",
+                                statistics.getMean(),
+                                result.getPrimaryResult().getScoreUnit(),
+                                paramsOf(params)));
+                        break;
+                    }
+                    case SampleTime: {
+                        rows.add(String.format(
+                                Locale.ROOT,
+                                "%7d  %-10s p50=%.3f p99=%.3f p999=%.3f max=%.3f %s  %s",
+                                threadCount,
+                                "latency",
+                                statistics.getPercentile(50),
+                                statistics.getPercentile(99),
+                                statistics.getPercentile(99.9),
+                                statistics.getMax(),
+                                result.getPrimaryResult().getScoreUnit(),
+                                paramsOf(params)));
+                        break;
+                    }
+                    default: {
+                        // other modes are not summarized
+                    }
+                }
+            }
+        }
+        System.out.println();
+        System.out.println("threads  metric");
+        for (final String row : rows) {
+            System.out.println(row);
+        }
+    }
+
+    /**
+     * Removes an option and its value from the arguments.
+     *
+     * @param   args    the arguments
+     * @param   option  the name of the option
+     *
+     * @return  the value of the option, or <code>null</code> if it is not given
+     */
+    private static String removeOption(final List<String> args, final String option) {
+        final int index = args.indexOf(option);
+        if ((index < 0) || (index >= (args.size() - 1))) {
+            return null;
+        }
+        final String value = args.remove(index + 1);
+        args.remove(index);
+        return value;
+    }
+
+    /**
+     * Returns the parameters of a run, i.e. <code>latency=lognormal:5:40 sessionPoolSize=1</code>.
+     *
+     * @param   params  the parameters of the run
+     *
+     * @return  the parameters as text
+     */
+    private static String paramsOf(final BenchmarkParams params) {
+        final StringBuilder text = new StringBuilder();
+        for (final String key : params.getParamsKeys()) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(key).append('=').append(params.getParam(key));
+        }
+        return text.toString();
+    }
+}
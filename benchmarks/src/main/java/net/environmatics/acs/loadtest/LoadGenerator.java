@@ -0,0 +1,638 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.loadtest;
+
+import net.environmatics.acs.accessor.Payload;
+import net.environmatics.acs.accessor.ServiceExceptionReport;
+import net.environmatics.acs.accessor.WSSAccessorDeegree;
+import net.environmatics.acs.accessor.WSSAccessorFactory;
+import net.environmatics.acs.accessor.http.ConnectionPoolConfiguration;
+import net.environmatics.acs.accessor.interfaces.AuthenticationMethod;
+import net.environmatics.acs.accessor.methods.AnonymousAuthenticationMethod;
+import net.environmatics.acs.accessor.methods.PasswordAuthenticationMethod;
+import net.environmatics.acs.accessor.methods.WASAuthenticationMethod;
+import net.environmatics.acs.accessor.metrics.AccessorMetrics;
+import net.environmatics.acs.accessor.metrics.LatencyHistogram;
+import net.environmatics.acs.accessor.metrics.RequestMetricsSnapshot;
+import net.environmatics.acs.accessor.metrics.RequestType;
+import net.environmatics.acs.accessor.replay.ExchangeRecord;
+import net.environmatics.acs.accessor.replay.ReplayTransport;
+import net.environmatics.acs.accessor.replay.TrafficLog;
+import net.environmatics.acs.accessor.replay.TrafficRecorder;
+import net.environmatics.acs.exceptions.ServiceExceptionReportException;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the requests of a request file (see {@link LoadRequest}) through a {@link WSSAccessorDeegree} to a WSS, i.e.
+ * on the same code path as an application, and reports latency percentiles, errors and session renewals as a
+ * {@link LoadReport}.<br>
+ * <br>
+ * The requests are sent in the order of the file, repeated until the run ends, by a fixed number of workers. With a
+ * target rate the requests are scheduled at fixed intervals and a worker waits for the scheduled time of its next
+ * request; if all workers are busy, requests fall behind their schedule and the delay is part of their response time.
+ * Without a target rate the workers send as fast as the WSS answers. Requests scheduled during the warmup are sent but
+ * not reported.<br>
+ * <br>
+ * Run it from the command line, e.g.
+ *
+ * <pre>
+ * java -cp benchmarks.jar net.environmatics.acs.loadtest.LoadGenerator -wss https://wss.example.org/wss/services \
+ *     -requests tiles.txt -auth password -credentials @credentials.txt -concurrency 32 -rate 200 -duration 300
+ * </pre>
+ *
+ * With <code>-record</code> the exchanges with the WSS are written to a traffic log, with <code>-replay</code> a
+ * traffic log is replayed instead of sending the requests to a WSS, see {@link ReplayTransport}. Without a request
+ * file the DoService requests of the log are replayed.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class LoadGenerator {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    /** The default number of workers. */
+    public static final int DEFAULT_CONCURRENCY = 16;
+
+    /** The default duration of the measurement in milliseconds. */
+    public static final long DEFAULT_DURATION = 60 * 1000L;
+
+    /** The default duration of the warmup in milliseconds. */
+    public static final long DEFAULT_WARMUP = 10 * 1000L;
+
+    /** The default interval of the progress messages in milliseconds. */
+    public static final long DEFAULT_PROGRESS_INTERVAL = 5 * 1000L;
+
+    /** The environment variable the credentials are read from if they are not given as option. */
+    public static final String CREDENTIALS_VARIABLE = "WSS_CREDENTIALS";
+
+    /** The WSS URL of a replay without <code>-wss</code> option, no connection is opened. */
+    public static final String REPLAY_WSS = "http://replay.invalid/wss/services";
+
+    private static final String USAGE = "usage: LoadGenerator -wss <url> -requests <file> [options]\n"
+                + "       LoadGenerator -replay <traffic log> [-requests <file>] [options]\n"
+                + "  -auth <method>        anonymous (default), password or was\n"
+                + "  -credentials <value>  \"user,password\", the SAML response or @<file>; default: $"
+                + CREDENTIALS_VARIABLE + "\n"
+                + "  -concurrency <n>      number of workers (default " + DEFAULT_CONCURRENCY + ")\n"
+                + "  -rate <n>             target rate in requests/s, 0 for as fast as possible (default 0)\n"
+                + "  -duration <s>         duration of the measurement (default " + (DEFAULT_DURATION / 1000) + ")\n"
+                + "  -warmup <s>           duration of the warmup (default " + (DEFAULT_WARMUP / 1000) + ")\n"
+                + "  -sessions <n>         number of concurrent sessions (default 1)\n"
+                + "  -timeout <s>          socket timeout (default none)\n"
+                + "  -progress <s>         interval of the progress messages, 0 for none (default "
+                + (DEFAULT_PROGRESS_INTERVAL / 1000) + ")\n"
+                + "  -record <file>        write the exchanges to a traffic log, GZIP compressed if it ends with .gz\n"
+                + "  -timescale <f>        factor of the recorded times in a replay, 0 for no delay (default 1)";
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final WSSAccessorDeegree accessor;
+    private final List<LoadRequest> requests;
+
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private double rate = 0;
+    private long duration = DEFAULT_DURATION;
+    private long warmup = DEFAULT_WARMUP;
+    private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private PrintStream progress = System.err;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new LoadGenerator. The accessor should have its own {@link AccessorMetrics}, see
+     * {@link WSSAccessorDeegree#setMetrics(AccessorMetrics)}, otherwise the sessions of other accessors of the same
+     * WSS are counted as well.
+     *
+     * @param   accessor  the accessor, with the WSS and the authentication method set
+     * @param   requests  the requests
+     *
+     * @throws  IllegalArgumentException  if there are no requests
+     */
+    public LoadGenerator(final WSSAccessorDeegree accessor, final List<LoadRequest> requests) {
+        if (requests.isEmpty()) {
+            throw new IllegalArgumentException("no requests");
+        }
+        this.accessor = accessor;
+        this.requests = new ArrayList<LoadRequest>(requests);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Sends the requests until the warmup and the measurement are over and waits for the outstanding responses.
+     *
+     * @return  the report of the measurement
+     *
+     * @throws  InterruptedException  if the thread is interrupted while waiting for the workers
+     */
+    public LoadReport run() throws InterruptedException {
+        final Run run = new Run();
+        final Thread[] workers = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = new Thread(run, "LoadGenerator-" + i);
+            workers[i].setDaemon(true);
+        }
+
+        final long[] baseline;
+        final long elapsed;
+        try {
+            for (final Thread worker : workers) {
+                worker.start();
+            }
+            if (warmup > 0) {
+                progress("warmup", run, warmup);
+            }
+            baseline = sessionCounts();
+            progress("measurement", run, duration);
+            for (final Thread worker : workers) {
+                worker.join();
+            }
+            elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - run.measurementStart);
+        } finally {
+            run.stopped = true;
+        }
+
+        final long[] counts = sessionCounts();
+        final Map<String, Long> errors = new HashMap<String, Long>();
+        for (final Map.Entry<String, LongAdder> entry : run.errors.entrySet()) {
+            errors.put(entry.getKey(), entry.getValue().sum());
+        }
+        return new LoadReport(
+                concurrency,
+                rate,
+                elapsed,
+                run.reported.sum(),
+                run.bytes.sum(),
+                errors,
+                counts[0] - baseline[0],
+                counts[1] - baseline[1],
+                counts[2] - baseline[2],
+                run.responseTime.snapshot(),
+                run.serviceTime.snapshot());
+    }
+
+    /**
+     * Waits for a phase of the run to end and prints the progress meanwhile.
+     *
+     * @param   phase   the name of the phase
+     * @param   run     the run
+     * @param   length  the length of the phase in milliseconds
+     *
+     * @throws  InterruptedException  if the thread is interrupted
+     */
+    private void progress(final String phase, final Run run, final long length) throws InterruptedException {
+        final long end = System.currentTimeMillis() + length;
+        long last = run.completed.get();
+        long lastErrors = run.failed.get();
+        long remaining;
+        while ((remaining = end - System.currentTimeMillis()) > 0) {
+            final long interval = ((progressInterval > 0) && (progress != null)) ? progressInterval : remaining;
+            Thread.sleep(Math.min(interval, remaining));
+            if ((progressInterval > 0) && (progress != null)) {
+                final long completed = run.completed.get();
+                final long failed = run.failed.get();
+                progress.println(String.format(
+                        Locale.ROOT,
+                        "%-11s %6d requests, %5d errors, %8.1f req/s, %d behind schedule",
+                        phase,
+                        completed - last,
+                        failed - lastErrors,
+                        (completed - last) * 1000d / Math.min(interval, remaining),
+                        run.getBacklog()));
+                last = completed;
+                lastErrors = failed;
+            }
+        }
+    }
+
+    /**
+     * Sums the GetSession requests, session renewals and doService retries of the WSS.
+     *
+     * @return  the sessions, renewals and retries
+     */
+    private long[] sessionCounts() {
+        final long[] counts = new long[3];
+        for (final RequestMetricsSnapshot snapshot : accessor.getMetrics().getSnapshots()) {
+            if (!accessor.getWSS().equals(snapshot.getWssURL())) {
+                continue;
+            }
+            if (RequestType.GET_SESSION.name().equals(snapshot.getRequestType())) {
+                counts[0] += snapshot.getRequests();
+                counts[1] += snapshot.getRenewals();
+            } else if (RequestType.DO_SERVICE.name().equals(snapshot.getRequestType())) {
+                counts[2] += snapshot.getRetries();
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the name of the error a request failed with: the exception code of a ServiceExceptionReport or the type
+     * of the exception and of its root cause.
+     *
+     * @param   ex  the exception
+     *
+     * @return  the name of the error
+     */
+    static String classify(final Exception ex) {
+        if (ex instanceof ServiceExceptionReportException) {
+            final ServiceExceptionReport report = ((ServiceExceptionReportException)ex).getReport();
+            final String code = (report != null) ? report.getExceptionCode() : null;
+            return "ServiceExceptionReport " + ((code != null) ? code : ServiceExceptionReport.NO_APPLICABLE_CODE);
+        }
+        Throwable cause = ex;
+        while ((cause.getCause() != null) && (cause.getCause() != cause)) {
+            cause = cause.getCause();
+        }
+        return ex.getClass().getSimpleName() + ((cause != ex) ? (" (" + cause.getClass().getSimpleName() + ")") : "");
+    }
+
+    /**
+     * Sets the number of workers, i.e. the maximum number of concurrent requests.
+     *
+     * @param   concurrency  the number of workers
+     *
+     * @throws  IllegalArgumentException  if the number is not positive
+     */
+    public void setConcurrency(final int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+        }
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Returns the number of workers.
+     *
+     * @return  the number of workers
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Sets the target rate.
+     *
+     * @param   rate  requests per second, 0 to send as fast as possible
+     *
+     * @throws  IllegalArgumentException  if the rate is negative
+     */
+    public void setRate(final double rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("rate must not be negative: " + rate);
+        }
+        this.rate = rate;
+    }
+
+    /**
+     * Returns the target rate.
+     *
+     * @return  requests per second, 0 if the requests are sent as fast as possible
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Sets the duration of the measurement.
+     *
+     * @param   duration  the duration in milliseconds
+     *
+     * @throws  IllegalArgumentException  if the duration is not positive
+     */
+    public void setDuration(final long duration) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("duration must be positive: " + duration);
+        }
+        this.duration = duration;
+    }
+
+    /**
+     * Returns the duration of the measurement.
+     *
+     * @return  the duration in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Sets the duration of the warmup. The responses of requests scheduled during the warmup are not reported.
+     *
+     * @param   warmup  the duration in milliseconds, 0 for no warmup
+     *
+     * @throws  IllegalArgumentException  if the duration is negative
+     */
+    public void setWarmup(final long warmup) {
+        if (warmup < 0) {
+            throw new IllegalArgumentException("warmup must not be negative: " + warmup);
+        }
+        this.warmup = warmup;
+    }
+
+    /**
+     * Returns the duration of the warmup.
+     *
+     * @return  the duration in milliseconds
+     */
+    public long getWarmup() {
+        return warmup;
+    }
+
+    /**
+     * Sets where and how often the progress is printed.
+     *
+     * @param  progress  the stream to print to, <code>null</code> for none
+     * @param  interval  the interval in milliseconds, 0 for none
+     */
+    public void setProgress(final PrintStream progress, final long interval) {
+        this.progress = progress;
+        this.progressInterval = interval;
+    }
+
+    /**
+     * Runs a load test from the command line and prints the report. Call it without arguments for the options.
+     *
+     * @param   args  the options
+     *
+     * @throws  Exception  if the request file or the credentials could not be read or the test failed
+     */
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> options = new HashMap<String, String>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("-") || (i == (args.length - 1))) {
+                usage("invalid option: " + args[i]);
+                return;
+            }
+            options.put(args[i].substring(1), args[++i]);
+        }
+        final String replayFile = options.remove("replay");
+        final String recordFile = options.remove("record");
+        final String wss = (replayFile != null) ? option(options, "wss", REPLAY_WSS) : options.remove("wss");
+        final String requestFile = options.remove("requests");
+        if ((wss == null) || ((requestFile == null) && (replayFile == null))) {
+            usage(null);
+            return;
+        }
+
+        final AuthenticationMethod authnMethod;
+        final ConnectionPoolConfiguration configuration = new ConnectionPoolConfiguration();
+        final LoadGenerator generator;
+        final WSSAccessorFactory factory;
+        final WSSAccessorDeegree accessor;
+        final ReplayTransport replay;
+        final double timeScale;
+        try {
+            authnMethod = createAuthenticationMethod(options.remove("auth"), options.remove("credentials"));
+            final int concurrency = Integer.parseInt(option(options, "concurrency", DEFAULT_CONCURRENCY));
+            final int sessions = Integer.parseInt(option(options, "sessions", 1));
+            final double rate = Double.parseDouble(option(options, "rate", 0));
+            final long duration = seconds(option(options, "duration", DEFAULT_DURATION / 1000));
+            final long warmup = seconds(option(options, "warmup", DEFAULT_WARMUP / 1000));
+            final long progressInterval = seconds(option(options, "progress", DEFAULT_PROGRESS_INTERVAL / 1000));
+            final long timeout = seconds(option(options, "timeout", 0));
+            timeScale = Double.parseDouble(option(options, "timescale", 1));
+            if (!options.isEmpty()) {
+                usage("unknown options: " + options.keySet());
+                return;
+            }
+
+            configuration.setMaxTotalConnections(Math.max(concurrency, configuration.getMaxTotalConnections()));
+            configuration.setMaxConnectionsPerHost(Math.max(concurrency, configuration.getMaxConnectionsPerHost()));
+            configuration.setSocketTimeout((int)timeout);
+            factory = new WSSAccessorFactory(configuration);
+            accessor = factory.createAccessor(wss);
+            accessor.setMetrics(new AccessorMetrics(AccessorMetrics.DEFAULT_MAX_ENTRIES));
+            accessor.setAuthenticationMethod(authnMethod);
+            accessor.setSessionPoolSize(sessions);
+
+            final List<LoadRequest> requests;
+            if (replayFile != null) {
+                final List<ExchangeRecord> records = TrafficLog.read(new File(replayFile));
+                replay = new ReplayTransport(records);
+                replay.setTimeScale(timeScale);
+                accessor.setTransport(replay);
+                requests = (requestFile != null) ? LoadRequest.read(new File(requestFile))
+                                                 : LoadRequest.fromTraffic(records);
+            } else {
+                replay = null;
+                requests = LoadRequest.read(new File(requestFile));
+            }
+            generator = new LoadGenerator(accessor, requests);
+            generator.setConcurrency(concurrency);
+            generator.setRate(rate);
+            generator.setDuration(duration);
+            generator.setWarmup(warmup);
+            generator.setProgress(System.err, progressInterval);
+        } catch (IllegalArgumentException ex) {
+            usage(ex.getMessage());
+            return;
+        }
+
+        final TrafficRecorder recorder = (recordFile != null) ? TrafficRecorder.create(new File(recordFile)) : null;
+        accessor.setTrafficRecorder(recorder);
+        try {
+            generator.run().print(System.out);
+        } finally {
+            accessor.setTrafficRecorder(null);
+            accessor.shutdown();
+            factory.shutdown();
+            if (recorder != null) {
+                recorder.close();
+                System.err.println(recorder.getRecordCount() + " exchanges recorded to " + recordFile);
+            }
+            if (replay != null) {
+                System.err.println(replay.getReplayedCount() + " exchanges replayed, " + replay.getMissingCount()
+                            + " requests not recorded");
+            }
+        }
+    }
+
+    /**
+     * Creates the authentication method of the command line.
+     *
+     * @param   name         "anonymous", "password" or "was", <code>null</code> for anonymous
+     * @param   credentials  the credentials, <code>@&lt;file&gt;</code> to read them from a file, <code>null</code> to
+     *                       read them from {@link #CREDENTIALS_VARIABLE}
+     *
+     * @return  the authentication method
+     *
+     * @throws  IOException               if the credentials could not be read
+     * @throws  IllegalArgumentException  if the method is unknown or the credentials are missing
+     */
+    private static AuthenticationMethod createAuthenticationMethod(final String name, final String credentials)
+            throws IOException {
+        if ((name == null) || "anonymous".equals(name)) {
+            return new AnonymousAuthenticationMethod();
+        }
+        String value = (credentials != null) ? credentials : System.getenv(CREDENTIALS_VARIABLE);
+        if (value == null) {
+            throw new IllegalArgumentException("no credentials for authentication method " + name);
+        }
+        if (value.startsWith("@")) {
+            value = FileUtils.readFileToString(new File(value.substring(1)), StandardCharsets.UTF_8).trim();
+        }
+        if ("password".equals(name)) {
+            return new PasswordAuthenticationMethod(value);
+        } else if ("was".equals(name)) {
+            return new WASAuthenticationMethod(value);
+        }
+        throw new IllegalArgumentException("unknown authentication method: " + name);
+    }
+
+    /**
+     * Removes an option.
+     *
+     * @param   options       the options
+     * @param   name          the name of the option
+     * @param   defaultValue  the value if the option is missing
+     *
+     * @return  the value of the option
+     */
+    private static String option(final Map<String, String> options, final String name, final Object defaultValue) {
+        final String value = options.remove(name);
+        return (value != null) ? value : String.valueOf(defaultValue);
+    }
+
+    /**
+     * Converts seconds to milliseconds.
+     *
+     * @param   seconds  the seconds, may have a fraction
+     *
+     * @return  the milliseconds
+     */
+    private static long seconds(final String seconds) {
+        return Math.round(Double.parseDouble(seconds) * 1000d);
+    }
+
+    /**
+     * Prints the usage and an error.
+     *
+     * @param  error  the error, may be <code>null</code>
+     */
+    private static void usage(final String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println(USAGE);
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * The state of a run, shared by the workers.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private final class Run implements Runnable {
+
+        //~ Instance fields ----------------------------------------------------
+
+        final LatencyHistogram responseTime = new LatencyHistogram();
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+        final LongAdder reported = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final Map<String, LongAdder> errors = new ConcurrentHashMap<String, LongAdder>();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        volatile boolean stopped;
+
+        private final AtomicLong sequence = new AtomicLong();
+        private final long start = System.nanoTime();
+        final long measurementStart = start + TimeUnit.MILLISECONDS.toNanos(warmup);
+        private final long end = measurementStart + TimeUnit.MILLISECONDS.toNanos(duration);
+        private final double intervalNanos = (rate > 0) ? (TimeUnit.SECONDS.toNanos(1) / rate) : 0d;
+
+        //~ Methods ------------------------------------------------------------
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                final long index = sequence.getAndIncrement();
+                final long scheduled = (intervalNanos > 0) ? (start + (long)(index * intervalNanos))
+                                                           : System.nanoTime();
+                if ((scheduled - end) >= 0) {
+                    return;
+                }
+                long delay;
+                while ((delay = scheduled - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+
+                final LoadRequest request = requests.get((int)(index % requests.size()));
+                final long sent = System.nanoTime();
+                String error = null;
+                int length = 0;
+                try {
+                    final Payload payload = accessor.doService(
+                            request.getDcpType(),
+                            request.getRequest(),
+                            request.getFacadeURL());
+                    length = payload.getLength();
+                } catch (Exception ex) {
+                    error = classify(ex);
+                }
+                final long received = System.nanoTime();
+
+                completed.incrementAndGet();
+                if (error != null) {
+                    failed.incrementAndGet();
+                }
+                if ((scheduled - measurementStart) >= 0) {
+                    reported.increment();
+                    responseTime.record(TimeUnit.NANOSECONDS.toMicros(received - scheduled));
+                    serviceTime.record(TimeUnit.NANOSECONDS.toMicros(received - sent));
+                    if (error == null) {
+                        bytes.add(length);
+                    } else {
+                        LongAdder count = errors.get(error);
+                        if (count == null) {
+                            final LongAdder created = new LongAdder();
+                            count = errors.putIfAbsent(error, created);
+                            if (count == null) {
+                                count = created;
+                            }
+                        }
+                        count.increment();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the number of requests whose scheduled time has passed but which no worker has taken yet.
+         *
+         * @return  the number of requests, 0 without a target rate
+         */
+        long getBacklog() {
+            if (intervalNanos <= 0) {
+                return 0;
+            }
+            final long due = (long)((Math.min(System.nanoTime(), end) - start) / intervalNanos) + 1;
+            return Math.max(0, due - sequence.get());
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.loadtest;
+
+import net.environmatics.acs.accessor.metrics.HistogramSnapshot;
+
+import java.io.PrintStream;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The result of a run of the {@link LoadGenerator}. Covers the requests that were scheduled during the measurement,
+ * i.e. after the warmup.<br>
+ * <br>
+ * The response time of a request is measured from the time it was scheduled for, not from the time it was sent. If the
+ * WSS slows down and the requests queue up, the time they wait for a free worker is part of their response time, so
+ * the percentiles are not distorted by coordinated omission. Without a target rate every worker sends its next
+ * request when the previous one has completed, so there is no schedule and the response time equals the service time.
+ *
+ * @version  $Revision$, $Date$
+ */
+public final class LoadReport {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int concurrency;
+    private final double targetRate;
+    private final long durationMillis;
+    private final long requests;
+    private final long bytes;
+    private final Map<String, Long> errors;
+    private final long sessions;
+    private final long renewals;
+    private final long retries;
+    private final HistogramSnapshot responseTime;
+    private final HistogramSnapshot serviceTime;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new LoadReport.
+     *
+     * @param  concurrency     the number of workers
+     * @param  targetRate      the target rate in requests per second, 0 if the workers did not follow a schedule
+     * @param  durationMillis  the time from the start of the measurement until the last response
+     * @param  requests        the number of completed requests, including failed ones
+     * @param  bytes           the number of bytes received with successful responses
+     * @param  errors          the number of failed requests by error
+     * @param  sessions        the number of GetSession requests
+     * @param  renewals        the number of sessions that replaced an expired or rejected session
+     * @param  retries         the number of requests that were sent again with a renewed session
+     * @param  responseTime    the response times in microseconds, corrected for coordinated omission
+     * @param  serviceTime     the service times in microseconds, measured from sending the request
+     */
+    public LoadReport(final int concurrency,
+            final double targetRate,
+            final long durationMillis,
+            final long requests,
+            final long bytes,
+            final Map<String, Long> errors,
+            final long sessions,
+            final long renewals,
+            final long retries,
+            final HistogramSnapshot responseTime,
+            final HistogramSnapshot serviceTime) {
+        this.concurrency = concurrency;
+        this.targetRate = targetRate;
+        this.durationMillis = durationMillis;
+        this.requests = requests;
+        this.bytes = bytes;
+        this.errors = Collections.unmodifiableMap(new TreeMap<String, Long>(errors));
+        this.sessions = sessions;
+        this.renewals = renewals;
+        this.retries = retries;
+        this.responseTime = responseTime;
+        this.serviceTime = serviceTime;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the number of workers.
+     *
+     * @return  the concurrency
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Returns the target rate.
+     *
+     * @return  requests per second, 0 if the workers did not follow a schedule
+     */
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * Returns the time from the start of the measurement until the last response. It exceeds the configured duration
+     * by the time needed for the outstanding requests.
+     *
+     * @return  the duration in milliseconds
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Returns the number of completed requests, including failed ones.
+     *
+     * @return  the number of requests
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Returns the number of bytes received with successful responses.
+     *
+     * @return  the number of bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of failed requests by error, i.e. by the code of the ServiceExceptionReport or by the type of
+     * the exception.
+     *
+     * @return  an unmodifiable map sorted by error
+     */
+    public Map<String, Long> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Returns the number of failed requests.
+     *
+     * @return  the number of errors
+     */
+    public long getErrorCount() {
+        long count = 0;
+        for (final Long value : errors.values()) {
+            count += value;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of GetSession requests.
+     *
+     * @return  the number of sessions
+     */
+    public long getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Returns the number of sessions that replaced an expired or rejected session.
+     *
+     * @return  the number of renewals
+     */
+    public long getRenewals() {
+        return renewals;
+    }
+
+    /**
+     * Returns the number of requests that were sent again with a renewed session.
+     *
+     * @return  the number of retries
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * Returns the response times, measured from the time the requests were scheduled for.
+     *
+     * @return  the response times in microseconds
+     */
+    public HistogramSnapshot getResponseTime() {
+        return responseTime;
+    }
+
+    /**
+     * Returns the service times, measured from the time the requests were sent.
+     *
+     * @return  the service times in microseconds
+     */
+    public HistogramSnapshot getServiceTime() {
+        return serviceTime;
+    }
+
+    /**
+     * Prints the report.
+     *
+     * @param  out  the stream to print to
+     */
+    public void print(final PrintStream out) {
+        final double seconds = durationMillis / 1000d;
+        final long errorCount = getErrorCount();
+        out.println();
+        out.println(String.format(
+                Locale.ROOT,
+                "%d workers, %s, %.1f s",
+                concurrency,
+                (targetRate > 0) ? String.format(Locale.ROOT, "target rate %.1f req/s", targetRate)
+                                 : "no target rate",
+                seconds));
+        out.println(String.format(
+                Locale.ROOT,
+                "requests     %d (%.1f req/s, %.1f KB/s)",
+                requests,
+                requests / seconds,
+                bytes / 1024d / seconds));
+        out.println(String.format(
+                Locale.ROOT,
+                "errors       %d (%.2f %%)",
+                errorCount,
+                (requests == 0) ? 0d : (100d * errorCount / requests)));
+        for (final Map.Entry<String, Long> entry : errors.entrySet()) {
+            out.println(String.format(Locale.ROOT, "  %-40s %d", entry.getKey(), entry.getValue()));
+        }
+        out.println(String.format(
+                Locale.ROOT,
+                "sessions     %d GetSession, %d renewals, %d retried requests",
+                sessions,
+                renewals,
+                retries));
+        out.println();
+        out.println("latency [ms]       mean       p50       p90       p99     p99.9       max");
+        print(out, "response time", responseTime);
+        print(out, "service time", serviceTime);
+        if (targetRate <= 0) {
+            out.println("(no target rate: response times are not corrected for coordinated omission)");
+        }
+    }
+
+    /**
+     * Prints a row of the latency table.
+     *
+     * @param  out        the stream to print to
+     * @param  name       the name of the row
+     * @param  histogram  the latencies in microseconds
+     */
+    private static void print(final PrintStream out, final String name, final HistogramSnapshot histogram) {
+        out.println(String.format(
+                Locale.ROOT,
+                "%-14s %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f",
+                name,
+                histogram.getMean() / 1000d,
+                histogram.getP50() / 1000d,
+                histogram.getP90() / 1000d,
+                histogram.getP99() / 1000d,
+                histogram.getP999() / 1000d,
+                histogram.getMax() / 1000d));
+    }
+}
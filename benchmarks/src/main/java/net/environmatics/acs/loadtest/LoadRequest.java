@@ -0,0 +1,221 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.loadtest;
+
+import net.environmatics.acs.accessor.interfaces.WSSAccessor;
+import net.environmatics.acs.accessor.metrics.RequestType;
+import net.environmatics.acs.accessor.replay.ExchangeRecord;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A request of a request file. Every line of a request file is a request to a secured service:
+ *
+ * <ul>
+ *   <li><code>GET &lt;facade URL&gt;?&lt;query&gt;</code>, e.g. a GetMap request. The method may be omitted.</li>
+ *   <li><code>POST &lt;facade URL&gt; &lt;body&gt;</code>, e.g. a GetFeature request on one line.</li>
+ * </ul>
+ *
+ * Empty lines and lines starting with <code>#</code> are ignored. To weight the requests of a mix, repeat them. The
+ * requests can also be taken from a traffic log, see {@link #fromTraffic(List)}.
+ *
+ * @version  $Revision$, $Date$
+ */
+public final class LoadRequest {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final String dcpType;
+    private final String facadeURL;
+    private final String request;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new LoadRequest.
+     *
+     * @param  dcpType    {@link WSSAccessor#DCP_HTTP_GET} or {@link WSSAccessor#DCP_HTTP_POST}
+     * @param  facadeURL  the facade URL of the secured service
+     * @param  request    the query or the body of the request
+     */
+    public LoadRequest(final String dcpType, final String facadeURL, final String request) {
+        this.dcpType = dcpType;
+        this.facadeURL = facadeURL;
+        this.request = request;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Parses a line of a request file.
+     *
+     * @param   line  the line
+     *
+     * @return  the request, <code>null</code> if the line is empty or a comment
+     *
+     * @throws  IllegalArgumentException  if the line is not a valid request
+     */
+    public static LoadRequest parse(final String line) {
+        final String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return null;
+        }
+        if (startsWithWord(trimmed, "POST")) {
+            final String rest = trimmed.substring(4).trim();
+            final int space = indexOfWhitespace(rest);
+            if (space < 0) {
+                throw new IllegalArgumentException("POST request without body: " + line);
+            }
+            return new LoadRequest(
+                    WSSAccessor.DCP_HTTP_POST,
+                    rest.substring(0, space),
+                    rest.substring(space).trim());
+        }
+        final String url = startsWithWord(trimmed, "GET") ? trimmed.substring(3).trim() : trimmed;
+        final int query = url.indexOf('?');
+        if ((query <= 0) || (query == (url.length() - 1)) || (indexOfWhitespace(url) >= 0)) {
+            throw new IllegalArgumentException("GET request without query: " + line);
+        }
+        return new LoadRequest(WSSAccessor.DCP_HTTP_GET, url.substring(0, query), url.substring(query + 1));
+    }
+
+    /**
+     * Reads a request file.
+     *
+     * @param   file  the request file, UTF-8 encoded
+     *
+     * @return  the requests in the order of the file
+     *
+     * @throws  IOException  if the file could not be read, contains an invalid line or no request at all
+     */
+    public static List<LoadRequest> read(final File file) throws IOException {
+        final List<LoadRequest> requests = new ArrayList<LoadRequest>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file),
+                    StandardCharsets.UTF_8));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                try {
+                    final LoadRequest request = parse(line);
+                    if (request != null) {
+                        requests.add(request);
+                    }
+                } catch (IllegalArgumentException ex) {
+                    throw new IOException(file + ":" + lineNumber + ": " + ex.getMessage(), ex);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (requests.isEmpty()) {
+            throw new IOException("no requests in " + file);
+        }
+        return requests;
+    }
+
+    /**
+     * Returns the DoService requests of a traffic log in the order they were recorded. Requests that were retried
+     * after a session renewal are contained twice, requests that were streamed from a Reader are not contained.
+     *
+     * @param   records  the records of the log
+     *
+     * @return  the requests, may be empty
+     */
+    public static List<LoadRequest> fromTraffic(final List<ExchangeRecord> records) {
+        final List<LoadRequest> requests = new ArrayList<LoadRequest>();
+        for (final ExchangeRecord record : records) {
+            if (record.getType() != RequestType.DO_SERVICE) {
+                continue;
+            }
+            // <DCP type> <facade URL> <service request>
+            final String key = record.getKey();
+            final int dcpEnd = key.indexOf(' ');
+            final int facadeEnd = (dcpEnd < 0) ? -1 : key.indexOf(' ', dcpEnd + 1);
+            if ((facadeEnd > 0) && (facadeEnd < (key.length() - 1))) {
+                requests.add(new LoadRequest(
+                        key.substring(0, dcpEnd),
+                        key.substring(dcpEnd + 1, facadeEnd),
+                        key.substring(facadeEnd + 1)));
+            }
+        }
+        return requests;
+    }
+
+    /**
+     * Checks whether a string starts with a word followed by whitespace.
+     *
+     * @param   s     the string
+     * @param   word  the word
+     *
+     * @return  true if it does
+     */
+    private static boolean startsWithWord(final String s, final String word) {
+        return s.regionMatches(true, 0, word, 0, word.length()) && (s.length() > word.length())
+                    && Character.isWhitespace(s.charAt(word.length()));
+    }
+
+    /**
+     * Returns the index of the first whitespace character of a string.
+     *
+     * @param   s  the string
+     *
+     * @return  the index, -1 if there is no whitespace
+     */
+    private static int indexOfWhitespace(final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isWhitespace(s.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the DCP type of the request.
+     *
+     * @return  {@link WSSAccessor#DCP_HTTP_GET} or {@link WSSAccessor#DCP_HTTP_POST}
+     */
+    public String getDcpType() {
+        return dcpType;
+    }
+
+    /**
+     * Returns the facade URL of the secured service.
+     *
+     * @return  the facade URL
+     */
+    public String getFacadeURL() {
+        return facadeURL;
+    }
+
+    /**
+     * Returns the query or the body of the request.
+     *
+     * @return  the request
+     */
+    public String getRequest() {
+        return request;
+    }
+
+    @Override
+    public String toString() {
+        return dcpType + " " + facadeURL + " " + request;
+    }
+}
@@ -0,0 +1,479 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.http2;
+
+import net.environmatics.acs.accessor.WSSHeader;
+import net.environmatics.acs.accessor.WSSRequest;
+import net.environmatics.acs.accessor.WSSRequestEntity;
+import net.environmatics.acs.accessor.WSSResponse;
+import net.environmatics.acs.accessor.interfaces.WSSTransport;
+import net.environmatics.acs.accessor.utils.ExecutorHelper;
+
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+
+import java.time.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Transport of the WSS accessors on the {@link HttpClient} of the JDK, see
+ * {@link net.environmatics.acs.accessor.WSSAccessorDeegree#setTransport(WSSTransport)}. The client negotiates HTTP/2
+ * with the WSS and falls back to HTTP/1.1 if the WSS does not support it. With HTTP/2, all requests to the WSS share
+ * one connection, so many tile requests do not need a connection each. {@link #executeAsync(WSSRequest, Executor)}
+ * is non-blocking: no thread waits for the response, the future is completed by the client.<br>
+ * <br>
+ * Proxy, authentication and TLS are configured on the client, see {@link #JdkHttpTransport(HttpClient)}. Unlike the
+ * default transport of the accessors, the default client verifies the certificate of the WSS. The connection pool
+ * configuration of the accessors does not apply to this transport.<br>
+ * <br>
+ * DoService requests with a service request read from a Reader are written to the connection by a thread of
+ * {@link ExecutorHelper#getDefaultExecutor()}. The pipe to the client is closed when the exchange is over, so the
+ * thread does not wait for good if the client stops reading the body, i.e. after a timeout.<br>
+ * <br>
+ * The client does not resend a POST request if the WSS closed the pooled connection before answering it. Like the
+ * default transport, this transport sends such a request once more if its body is repeatable.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class JdkHttpTransport implements WSSTransport {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static Logger logger = Logger.getLogger(JdkHttpTransport.class);
+
+    /** Default timeout for establishing a connection to the WSS: 10 seconds. */
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final HttpClient client;
+    private volatile Duration requestTimeout;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new JdkHttpTransport with a client that prefers HTTP/2, follows redirects except from HTTPS to HTTP
+     * and uses {@link #DEFAULT_CONNECT_TIMEOUT}.
+     */
+    public JdkHttpTransport() {
+        this(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).followRedirects(HttpClient.Redirect.NORMAL)
+                    .connectTimeout(DEFAULT_CONNECT_TIMEOUT).build());
+    }
+
+    /**
+     * Creates a new JdkHttpTransport with a configured client, i.e. with a proxy, an authenticator or an SSL context.
+     * The client should prefer {@link HttpClient.Version#HTTP_2}. It may be shared with other transports.
+     *
+     * @param  client  the client
+     */
+    public JdkHttpTransport(final HttpClient client) {
+        this.client = client;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    @Override
+    public WSSResponse execute(final WSSRequest request) throws IOException {
+        final BodyPipes pipes = new BodyPipes();
+        final HttpRequest httpRequest = createRequest(request, pipes);
+        try {
+            HttpResponse<InputStream> response;
+            try {
+                response = client.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+            } catch (IOException ex) {
+                if (!isRetryable(request, ex)) {
+                    throw ex;
+                }
+                logRetry(request, ex);
+                response = client.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug(request + " answered with " + response.version());
+            }
+            return new StreamResponse(response.statusCode(), headersOf(response.headers()), response.body());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            final InterruptedIOException interrupted = new InterruptedIOException("interrupted while sending "
+                            + request);
+            interrupted.initCause(ex);
+            throw interrupted;
+        } finally {
+            pipes.close();
+        }
+    }
+
+    @Override
+    public CompletableFuture<WSSResponse> executeAsync(final WSSRequest request, final Executor executor) {
+        final BodyPipes pipes = new BodyPipes();
+        final HttpRequest httpRequest;
+        try {
+            httpRequest = createRequest(request, pipes);
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        final CompletableFuture<WSSResponse> result = client.sendAsync(
+                        httpRequest,
+                        HttpResponse.BodyHandlers.ofByteArray())
+                    .handle((response, failure) -> {
+                            if (failure == null) {
+                                return CompletableFuture.completedFuture(response);
+                            }
+                            final Throwable cause = (failure instanceof CompletionException)
+                                ? failure.getCause() : failure;
+                            if (!isRetryable(request, cause)) {
+                                return CompletableFuture.<HttpResponse<byte[]>>failedFuture(cause);
+                            }
+                            logRetry(request, cause);
+                            return client.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray());
+                        })
+                    .thenCompose(future -> future)
+                    .thenApply(response -> {
+                            if (logger.isDebugEnabled()) {
+                                logger.debug(request + " answered with " + response.version());
+                            }
+                            return new StreamResponse(
+                                    response.statusCode(),
+                                    headersOf(response.headers()),
+                                    response.body());
+                        });
+        result.whenComplete((response, failure) -> pipes.close());
+        return result;
+    }
+
+    /**
+     * Checks if a failed request is sent once more. Timeouts are not retried, neither are requests whose body can
+     * be written only once.
+     *
+     * @param   request  the failed request
+     * @param   failure  the failure
+     *
+     * @return  <code>true</code> if the request is sent again
+     */
+    private static boolean isRetryable(final WSSRequest request, final Throwable failure) {
+        if (!(failure instanceof IOException) || (failure instanceof HttpTimeoutException)
+                    || (failure instanceof InterruptedIOException)) {
+            return false;
+        }
+        return (request.getEntity() == null) || request.getEntity().isRepeatable();
+    }
+
+    /**
+     * Logs that a failed request is sent once more.
+     *
+     * @param  request  the failed request
+     * @param  failure  the failure
+     */
+    private static void logRetry(final WSSRequest request, final Throwable failure) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("sending " + request + " again after " + failure);
+        }
+    }
+
+    /**
+     * Creates the HTTP request of a WSS request.
+     *
+     * @param   request  the request
+     * @param   pipes    the pipes of the exchange
+     *
+     * @return  the HTTP request
+     */
+    private HttpRequest createRequest(final WSSRequest request, final BodyPipes pipes) {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(request.getURL()));
+        for (final WSSHeader header : request.getHeaders()) {
+            builder.header(header.getName(), header.getValue());
+        }
+        final Duration timeout = requestTimeout;
+        if (timeout != null) {
+            builder.timeout(timeout);
+        }
+        final WSSRequestEntity entity = request.getEntity();
+        if (WSSRequest.GET.equals(request.getMethod()) || (entity == null)) {
+            return builder.GET().build();
+        }
+        if (entity.getContentType() != null) {
+            builder.header("Content-Type", entity.getContentType());
+        }
+        return builder.POST(publisherOf(entity, pipes)).build();
+    }
+
+    /**
+     * Returns the publisher of the body of a request. A body that is not available as byte array is written to a
+     * pipe by another thread, so it is streamed to the WSS without being buffered.
+     *
+     * @param   entity  the body
+     * @param   pipes   the pipes of the exchange
+     *
+     * @return  the publisher
+     */
+    private static HttpRequest.BodyPublisher publisherOf(final WSSRequestEntity entity, final BodyPipes pipes) {
+        final byte[] content = entity.getContent();
+        if (content != null) {
+            return HttpRequest.BodyPublishers.ofByteArray(content);
+        }
+        final HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.ofInputStream(() -> pipes.open(entity));
+        final long length = entity.getContentLength();
+        return (length >= 0) ? HttpRequest.BodyPublishers.fromPublisher(publisher, length) : publisher;
+    }
+
+    /**
+     * Converts the headers of a response.
+     *
+     * @param   headers  the headers
+     *
+     * @return  the headers, in the order of their names
+     */
+    private static WSSHeader[] headersOf(final HttpHeaders headers) {
+        final List<WSSHeader> result = new ArrayList<WSSHeader>();
+        for (final Map.Entry<String, List<String>> entry : headers.map().entrySet()) {
+            for (final String value : entry.getValue()) {
+                result.add(new WSSHeader(entry.getKey(), value));
+            }
+        }
+        return result.toArray(new WSSHeader[result.size()]);
+    }
+
+    /**
+     * Sets the timeout of a request, from sending it until the headers of the response are received.
+     *
+     * @param  requestTimeout  the timeout, or <code>null</code> for none
+     */
+    public void setRequestTimeout(final Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Returns the timeout of a request.
+     *
+     * @return  the timeout, or <code>null</code> for none
+     */
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Returns the client of this transport.
+     *
+     * @return  the client
+     */
+    public HttpClient getClient() {
+        return client;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * The pipes that stream the body of one exchange to the client. The client may open the body more than once, i.e.
+     * after a redirect. Once the exchange is over, the pipes are closed, so a thread that still writes a body fails
+     * instead of waiting for the client to read it, and releases the Reader of the service request.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class BodyPipes {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final List<PipedInputStream> pipes = new ArrayList<PipedInputStream>(1);
+        private boolean closed;
+
+        //~ Methods ------------------------------------------------------------
+
+        /**
+         * Starts writing a body to a new pipe.
+         *
+         * @param   entity  the body
+         *
+         * @return  the end of the pipe the body is read from
+         */
+        InputStream open(final WSSRequestEntity entity) {
+            final PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+            final PipedOutputStream out;
+            try {
+                out = new PipedOutputStream(in);
+            } catch (IOException ex) {
+                // a new pipe is not connected yet
+                throw new IllegalStateException(ex);
+            }
+            synchronized (this) {
+                if (closed) {
+                    closeQuietly(in);
+                    return in;
+                }
+                pipes.add(in);
+            }
+            ExecutorHelper.getDefaultExecutor().execute(() -> {
+                    try {
+                        try {
+                            entity.writeTo(out);
+                        } finally {
+                            out.close();
+                        }
+                    } catch (IOException ex) {
+                        if (isClosed()) {
+                            if (logger.isDebugEnabled()) {
+                                logger.debug("request body pipe closed by the exchange", ex);
+                            }
+                        } else {
+                            logger.warn("could not write request body", ex);
+                        }
+                    }
+                });
+            return in;
+        }
+
+        /**
+         * Checks whether the exchange is over.
+         *
+         * @return  <code>true</code> if the pipes are closed
+         */
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Closes the pipes of the exchange. A writer that is blocked on a full pipe fails within a second.
+         */
+        void close() {
+            final List<PipedInputStream> open;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                open = new ArrayList<PipedInputStream>(pipes);
+                pipes.clear();
+            }
+            for (final PipedInputStream in : open) {
+                closeQuietly(in);
+            }
+        }
+
+        /**
+         * Closes the reading end of a pipe.
+         *
+         * @param  in  the reading end
+         */
+        private static void closeQuietly(final PipedInputStream in) {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                logger.warn("could not close request body pipe", ex);
+            }
+        }
+    }
+
+    /**
+     * A response whose body is read from the connection or has been received completely.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class StreamResponse extends WSSResponse {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final int status;
+        private final WSSHeader[] headers;
+        private final InputStream stream;
+        private byte[] body;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new StreamResponse object whose body is read from the connection.
+         *
+         * @param  status   the HTTP status
+         * @param  headers  the headers
+         * @param  stream   the body
+         */
+        StreamResponse(final int status, final WSSHeader[] headers, final InputStream stream) {
+            this.status = status;
+            this.headers = headers;
+            this.stream = stream;
+        }
+
+        /**
+         * Creates a new StreamResponse object whose body has been received completely.
+         *
+         * @param  status   the HTTP status
+         * @param  headers  the headers
+         * @param  body     the body
+         */
+        StreamResponse(final int status, final WSSHeader[] headers, final byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.stream = null;
+            this.body = body;
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        @Override
+        public int getStatusCode() {
+            return status;
+        }
+
+        @Override
+        public WSSHeader[] getResponseHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getResponseBodyAsStream() {
+            return (body != null) ? new ByteArrayInputStream(body) : stream;
+        }
+
+        @Override
+        public byte[] getResponseBody() throws IOException {
+            if (body == null) {
+                try {
+                    body = stream.readAllBytes();
+                } finally {
+                    stream.close();
+                }
+            }
+            return body;
+        }
+
+        @Override
+        public void abort() {
+            releaseConnection();
+        }
+
+        @Override
+        public void releaseConnection() {
+            if (stream != null) {
+                try {
+                    // returns the connection, or resets the HTTP/2 stream if the body has not been read
+                    stream.close();
+                } catch (IOException ex) {
+                    logger.warn("could not close response body", ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor;
+
+import org.apache.commons.httpclient.NameValuePair;
+
+/**
+ * Holds the arguments of a single doService request, i.e. for a batch of requests that is passed to
+ * {@link WSSAccessorDeegree#doServiceBatch(java.util.Collection, int,
+ * net.environmatics.acs.accessor.interfaces.DoServiceCallback)}.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class DoServiceRequest {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final String dcpType;
+    private final String serviceRequest;
+    private final NameValuePair[] requestParams;
+    private final String facadeURL;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new DoServiceRequest object.
+     *
+     * @param  dcp_type        <b>Must</b> be
+     *                         {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_GET HTTP GET} or
+     *                         {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_POST HTTP POST}
+     * @param  serviceRequest  Request to a secured service
+     * @param  requestParams   An array with request parameters, i.e. HTTP_Header / Mime-Type: text/xml
+     * @param  facadeURL       String with an URL to facade
+     */
+    public DoServiceRequest(final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) {
+        this.dcpType = dcp_type;
+        this.serviceRequest = serviceRequest;
+        this.requestParams = requestParams;
+        this.facadeURL = facadeURL;
+    }
+
+    /**
+     * Creates a new DoServiceRequest object with the request parameters "HTTP_Header" / "Mime-Type: text/xml".
+     *
+     * @param  dcp_type        <b>Must</b> be
+     *                         {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_GET HTTP GET} or
+     *                         {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_POST HTTP POST}
+     * @param  serviceRequest  Request to a secured service
+     * @param  facadeURL       String with an URL to facade
+     */
+    public DoServiceRequest(final String dcp_type, final String serviceRequest, final String facadeURL) {
+        this(
+            dcp_type,
+            serviceRequest,
+            new NameValuePair[] { new NameValuePair("HTTP_Header", "Mime-Type: text/xml") },
+            facadeURL);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the DCP type.
+     *
+     * @return  {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_GET HTTP GET} or
+     *          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_POST HTTP POST}
+     */
+    public String getDcpType() {
+        return dcpType;
+    }
+
+    /**
+     * Returns the request to the secured service.
+     *
+     * @return  the service request
+     */
+    public String getServiceRequest() {
+        return serviceRequest;
+    }
+
+    /**
+     * Returns the doService request parameters.
+     *
+     * @return  the request parameters
+     */
+    public NameValuePair[] getRequestParams() {
+        return requestParams;
+    }
+
+    /**
+     * Returns the URL to the facade.
+     *
+     * @return  the facade URL
+     */
+    public String getFacadeURL() {
+        return facadeURL;
+    }
+
+    @Override
+    public String toString() {
+        return dcpType + " " + serviceRequest + " (facade url: " + facadeURL + ")";
+    }
+}
@@ -7,6 +7,8 @@
 ****************************************************/
 package net.environmatics.acs.accessor;
 
+import net.environmatics.acs.accessor.utils.ServiceExceptionDetector;
+
 import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 
@@ -15,8 +17,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 
+import java.nio.ByteBuffer;
+
 /**
- * Represents the payload of a service response.
+ * Represents the payload of a service response. A payload that is handed to more than one caller, i.e. by a response
+ * cache or to coalesced requests, is handed out as {@link #share() view}, so a caller that modifies the array returned
+ * by {@link #asBytes()} does not change the response of the other callers.
  *
  * @author   abonitz
  * @version  $Revision$, $Date$
@@ -29,10 +35,16 @@ public class Payload {
 
     //~ Instance fields --------------------------------------------------------
 
-    // raw data
-    private byte[] load;
+    // raw data, created lazily from buffer if the payload is backed by a buffer
+    private volatile byte[] load;
+    // read only view of the raw data if the payload is not backed by an array, i.e. a mapped file
+    private final ByteBuffer buffer;
     // charset used for text encoding
-    private String charset;
+    private final String charset;
+    // Content-Type of the response, may be null
+    private final String contentType;
+    // decoded text, created lazily by asText()
+    private volatile String text;
 
     //~ Constructors -----------------------------------------------------------
 
@@ -57,7 +69,9 @@ public class Payload {
      */
     public Payload(final InputStream is, final String charsetName) throws IOException {
         load = IOUtils.toByteArray(is);
+        buffer = null;
         charset = charsetName;
+        contentType = null;
     }
 
     /**
@@ -69,27 +83,70 @@ public class Payload {
      * @throws  IOException  DOCUMENT ME!
      */
     public Payload(final byte[] load, final String charsetName) throws IOException {
+        this(load, charsetName, null);
+    }
+
+    /**
+     * Creates a new Payload object.
+     *
+     * @param  load         the raw data
+     * @param  charsetName  Is used for text decoding
+     * @param  contentType  Content-Type of the response, may be <code>null</code>
+     */
+    public Payload(final byte[] load, final String charsetName, final String contentType) {
         this.load = load;
+        buffer = null;
+        charset = charsetName;
+        this.contentType = contentType;
+    }
+
+    /**
+     * Creates a new Payload object that is backed by a buffer, i.e. a region of a memory mapped file. The content of
+     * the buffer is only copied to the heap if {@link #asBytes()} or {@link #asText()} is called.
+     *
+     * @param  buffer       the raw data, from its position to its limit
+     * @param  charsetName  Is used for text decoding
+     */
+    public Payload(final ByteBuffer buffer, final String charsetName) {
+        this(buffer, charsetName, null);
+    }
+
+    /**
+     * Creates a new Payload object that is backed by a buffer, i.e. a region of a memory mapped file. The content of
+     * the buffer is only copied to the heap if {@link #asBytes()} or {@link #asText()} is called.
+     *
+     * @param  buffer       the raw data, from its position to its limit
+     * @param  charsetName  Is used for text decoding
+     * @param  contentType  Content-Type of the response, may be <code>null</code>
+     */
+    public Payload(final ByteBuffer buffer, final String charsetName, final String contentType) {
+        this.buffer = buffer.slice().asReadOnlyBuffer();
         charset = charsetName;
+        this.contentType = contentType;
     }
 
     //~ Methods ----------------------------------------------------------------
 
     /**
-     * Tries to return the payload as String.
+     * Tries to return the payload as String. The payload is decoded only once.
      *
      * @return  textual representation of the payload
      */
     public String asText() {
-        try {
-            return new String(load, charset);
-        } catch (UnsupportedEncodingException e) {
-            return new String(load);
+        String decoded = text;
+        if (decoded == null) {
+            try {
+                decoded = new String(asBytes(), charset);
+            } catch (UnsupportedEncodingException e) {
+                decoded = new String(asBytes());
+            }
+            text = decoded;
         }
+        return decoded;
     }
 
     /**
-     * Returns the payload as byte array.
+     * Returns the payload as byte array. If the payload is backed by a buffer, its content is copied once.
      *
      * @return  raw data
      */
@@ -97,15 +154,81 @@ public class Payload {
         if (logger.isDebugEnabled()) {
             logger.debug("asBytes()");
         }
-        return load;
+        byte[] bytes = load;
+        if (bytes == null) {
+            final ByteBuffer view = buffer.duplicate();
+            bytes = new byte[view.remaining()];
+            view.get(bytes);
+            load = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns a view of this payload for another caller. The view shares the raw data read only, so it is created
+     * without copying. Its {@link #asBytes()} returns a copy of the raw data that belongs to the caller of the view,
+     * so neither this payload nor other views see changes to it.
+     *
+     * @return  a new payload backed by the raw data of this payload
+     */
+    public Payload share() {
+        final Payload view = new Payload(asByteBuffer(), charset, contentType);
+        view.text = text;
+        return view;
+    }
+
+    /**
+     * Returns the payload as read only buffer without copying it.
+     *
+     * @return  raw data from position 0 to the limit of the buffer
+     */
+    public ByteBuffer asByteBuffer() {
+        if (buffer != null) {
+            return buffer.duplicate();
+        }
+        return ByteBuffer.wrap(load).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the length of the payload.
+     *
+     * @return  number of bytes
+     */
+    public int getLength() {
+        return (buffer != null) ? buffer.remaining() : load.length;
     }
 
     /**
-     * If the Payload contains the String "ServiceExceptionReport" the method returns <b>true.</b>
+     * Returns the name of the charset that is used for text decoding.
+     *
+     * @return  charset name
+     */
+    public String getCharset() {
+        return charset;
+    }
+
+    /**
+     * Returns the Content-Type of the response.
+     *
+     * @return  the Content-Type, or <code>null</code> if it is unknown
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * If the Payload is a "ServiceExceptionReport" the method returns <b>true.</b> Only the beginning of the raw data
+     * is inspected, the payload is not decoded.
      *
      * @return  If <b>true</b>: the Payload contains an exception message
+     *
+     * @see     ServiceExceptionDetector
      */
     public boolean containsException() {
-        return (asText().contains("ServiceExceptionReport"));
+        final byte[] bytes = load;
+        if (bytes != null) {
+            return ServiceExceptionDetector.isServiceExceptionReport(bytes, bytes.length, contentType);
+        }
+        return ServiceExceptionDetector.isServiceExceptionReport(buffer, contentType);
     }
 }
@@ -0,0 +1,225 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor;
+
+import net.environmatics.acs.accessor.utils.ServiceExceptionReportParser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The typed content of a ServiceExceptionReport (OGC WMS/WFS) or ExceptionReport (OWS), i.e. a doService response of
+ * a WSS that rejected a request. A report can tell whether the request failed because of its session, in which case
+ * it is worth sending it again with a new session, or because of the request itself, i.e. an invalid BBOX or an
+ * unknown layer, in which case a new session does not help.<br>
+ * <br>
+ * Instances are immutable.
+ *
+ * @version  $Revision$, $Date$
+ */
+public final class ServiceExceptionReport {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    /** Generic OGC exception code that does not tell the cause of the failure. */
+    public static final String NO_APPLICABLE_CODE = "NoApplicableCode";
+
+    // parts of exception codes and, for reports without a specific code, of exception texts that name a session or
+    // authentication problem
+    private static final String[] SESSION_FAILURE_KEYWORDS = {
+            "session",
+            "authenticat",
+            "authn",
+            "credential",
+            "login"
+        };
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final String version;
+    private final List<ReportedException> exceptions;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new ServiceExceptionReport object.
+     *
+     * @param  version     the version attribute of the report or <code>null</code>
+     * @param  exceptions  the reported exceptions
+     */
+    public ServiceExceptionReport(final String version, final List<ReportedException> exceptions) {
+        this.version = version;
+        this.exceptions = Collections.unmodifiableList(new ArrayList<ReportedException>(exceptions));
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Parses the ServiceExceptionReport of a doService response. A response that can not be parsed results in an empty
+     * report.
+     *
+     * @param   payload  a response that {@link Payload#containsException() contains an exception}
+     *
+     * @return  the report
+     */
+    public static ServiceExceptionReport parse(final Payload payload) {
+        return ServiceExceptionReportParser.parse(payload);
+    }
+
+    /**
+     * Returns the version attribute of the report.
+     *
+     * @return  the version or <code>null</code>
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the reported exceptions.
+     *
+     * @return  an unmodifiable list, empty if the report could not be parsed
+     */
+    public List<ReportedException> getExceptions() {
+        return exceptions;
+    }
+
+    /**
+     * Returns the code of the first reported exception.
+     *
+     * @return  the exception code or <code>null</code>
+     */
+    public String getExceptionCode() {
+        return exceptions.isEmpty() ? null : exceptions.get(0).getExceptionCode();
+    }
+
+    /**
+     * Checks if the request has been rejected because of its session, so that it may succeed with a new session. This
+     * is the case if an exception code names a session or authentication problem or, if the WSS does not report a
+     * specific code, the exception text does. A report without exceptions, i.e. one that could not be parsed, is
+     * treated as a session failure as well.
+     *
+     * @return  true if the session should be renewed and the request sent again
+     */
+    public boolean isSessionFailure() {
+        if (exceptions.isEmpty()) {
+            return true;
+        }
+        for (final ReportedException exception : exceptions) {
+            if (exception.isSessionFailure()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceExceptionReport" + exceptions;
+    }
+
+    /**
+     * Checks if a code or text contains one of the session failure keywords.
+     *
+     * @param   value  the code or text, may be <code>null</code>
+     *
+     * @return  true if it names a session or authentication problem
+     */
+    private static boolean containsSessionFailureKeyword(final String value) {
+        if (value == null) {
+            return false;
+        }
+        final String lower = value.toLowerCase(Locale.ENGLISH);
+        for (final String keyword : SESSION_FAILURE_KEYWORDS) {
+            if (lower.contains(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * A single exception of a report.
+     *
+     * @version  $Revision$, $Date$
+     */
+    public static final class ReportedException {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final String exceptionCode;
+        private final String locator;
+        private final String text;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new ReportedException object.
+         *
+         * @param  exceptionCode  the exception code or <code>null</code>
+         * @param  locator        the locator, i.e. the name of the invalid parameter, or <code>null</code>
+         * @param  text           the exception text or <code>null</code>
+         */
+        public ReportedException(final String exceptionCode, final String locator, final String text) {
+            this.exceptionCode = exceptionCode;
+            this.locator = locator;
+            this.text = text;
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        /**
+         * Returns the exception code, i.e. <code>InvalidParameterValue</code> or <code>LayerNotDefined</code>.
+         *
+         * @return  the exception code or <code>null</code> if the WSS did not report one
+         */
+        public String getExceptionCode() {
+            return exceptionCode;
+        }
+
+        /**
+         * Returns the locator, i.e. the name of the invalid parameter.
+         *
+         * @return  the locator or <code>null</code>
+         */
+        public String getLocator() {
+            return locator;
+        }
+
+        /**
+         * Returns the exception text.
+         *
+         * @return  the text or <code>null</code>
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Checks if this exception names a session or authentication problem.
+         *
+         * @return  true if the session should be renewed
+         */
+        boolean isSessionFailure() {
+            if ((exceptionCode == null) || (exceptionCode.length() == 0)
+                        || NO_APPLICABLE_CODE.equalsIgnoreCase(exceptionCode)) {
+                return containsSessionFailureKeyword(text);
+            }
+            return containsSessionFailureKeyword(exceptionCode);
+        }
+
+        @Override
+        public String toString() {
+            return "[code=" + exceptionCode + ", locator=" + locator + ", text=" + text + "]";
+        }
+    }
+}
@@ -0,0 +1,622 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor;
+
+import net.environmatics.acs.accessor.cache.CacheStatistics;
+import net.environmatics.acs.accessor.interfaces.AuthenticationMethod;
+import net.environmatics.acs.accessor.interfaces.SessionInformation;
+import net.environmatics.acs.accessor.methods.SessionAuthenticationMethod;
+import net.environmatics.acs.accessor.utils.AuthenticationScope;
+import net.environmatics.acs.exceptions.AuthenticationFailedException;
+
+import org.apache.log4j.Logger;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares WSS sessions between accessors that authenticate with the same credentials, i.e. the accessors that a
+ * multi-user application creates per user. A user whose session is cached does not need a GetSession round-trip when
+ * a new accessor is created for that user.<br>
+ * <br>
+ * Sessions are keyed by the URL of the WSS and the keyed hash of the authentication method, see
+ * {@link AuthenticationScope}; the credentials themselves are not kept. The cache holds a fixed number of sessions and
+ * evicts the least recently acquired ones. Every session expires after a time to live, which should be shorter than
+ * the session lifetime of the WSS. The cache is split into segments with a lock of their own, so concurrent users
+ * rarely wait for each other. When the cache is full, the least recently acquired session of all segments is evicted.
+ * If several accessors need the session of the same user at the same time, only one of them starts it and the others
+ * wait for it. Evicted and expired sessions are closed in the background after a grace period, sessions the WSS has
+ * rejected right away.<br>
+ * <br>
+ * An accessor uses the cache for the first slot of its session pool only, see
+ * {@link WSSAccessorDeegree#setSessionCache(SessionCache)}.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class SessionCache {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static Logger logger = Logger.getLogger(SessionCache.class);
+
+    private static final int SEGMENTS = 16;
+
+    // time in milliseconds an evicted session is kept open for requests that are still using it
+    private static final long EVICTION_CLOSE_DELAY = 10 * 1000L;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int maxEntries;
+    private final long timeToLive;
+    // number of entries of all segments
+    private final AtomicInteger count = new AtomicInteger();
+    // orders the acquisitions of all segments, so the least recently used entry of the cache can be found
+    private final AtomicLong clock = new AtomicLong();
+    private final Segment[] segments = new Segment[SEGMENTS];
+    // the sessions that are being started, so that every session is started only once
+    private final ConcurrentMap<Key, CompletableFuture<Entry>> loading =
+        new ConcurrentHashMap<Key, CompletableFuture<Entry>>();
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new SessionCache object.
+     *
+     * @param   maxEntries  maximum number of cached sessions
+     * @param   timeToLive  time in milliseconds after which a cached session expires
+     *
+     * @throws  IllegalArgumentException  if one of the arguments is not positive
+     */
+    public SessionCache(final int maxEntries, final long timeToLive) {
+        if ((maxEntries <= 0) || (timeToLive <= 0)) {
+            throw new IllegalArgumentException("maxEntries and timeToLive must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the cached session for the given WSS and authentication method or starts a new one with the loader. If
+     * the same session is already being started by another thread, this thread waits for it.
+     *
+     * @param   wssURL      URL of the WSS
+     * @param   authMethod  the authentication method the session is started with
+     * @param   closer      closes the session once it is evicted
+     * @param   loader      starts a new session
+     *
+     * @return  the cached or new session
+     *
+     * @throws  AuthenticationFailedException  if the session could not be started
+     */
+    Entry acquire(final String wssURL,
+            final AuthenticationMethod authMethod,
+            final SessionCloser closer,
+            final SessionLoader loader) throws AuthenticationFailedException {
+        final Key key = new Key(wssURL, AuthenticationScope.digest(authMethod));
+        final Segment segment = segmentFor(key);
+        Entry entry = segment.get(key, true);
+        if (entry != null) {
+            return entry;
+        }
+        final CompletableFuture<Entry> flight = new CompletableFuture<Entry>();
+        final CompletableFuture<Entry> running = loading.putIfAbsent(key, flight);
+        if (running != null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("session is already being started => wait for it");
+            }
+            return await(running);
+        }
+        try {
+            // the session may have been started between the lookup and putIfAbsent()
+            entry = segment.get(key, false);
+            if (entry == null) {
+                final SessionInformation sInfo = loader.load();
+                entry = new Entry(
+                        key,
+                        sInfo,
+                        new SessionAuthenticationMethod(sInfo),
+                        System.currentTimeMillis() + timeToLive,
+                        closer);
+                segment.put(entry);
+                evict(entry);
+            }
+            flight.complete(entry);
+            return entry;
+        } catch (AuthenticationFailedException ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } catch (RuntimeException ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } catch (Error ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loading.remove(key, flight);
+        }
+    }
+
+    /**
+     * Removes a session that has been rejected by the WSS and closes it. Nothing happens if the cache holds another
+     * session for the same key, e.g. because the session has already been replaced by another accessor.
+     *
+     * @param  entry  the rejected session
+     */
+    void invalidate(final Entry entry) {
+        if (segmentFor(entry.key).remove(entry)) {
+            entry.close(0);
+        }
+    }
+
+    /**
+     * Removes all sessions from the cache and closes them after a grace period.
+     */
+    public void invalidateAll() {
+        for (final Segment segment : segments) {
+            for (final Entry entry : segment.clear()) {
+                entry.close(EVICTION_CLOSE_DELAY);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached sessions, including expired ones that have not been removed yet.
+     *
+     * @return  the number of cached sessions
+     */
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * Returns the counters of this cache. A hit is a session that was acquired from the cache, a miss a session that
+     * had to be started or waited for. The weight of a session cache is not tracked and always 0.
+     *
+     * @return  a snapshot of the cache statistics
+     */
+    public CacheStatistics getStatistics() {
+        long hitCount = 0;
+        long missCount = 0;
+        long evictionCount = 0;
+        long expirationCount = 0;
+        long entryCount = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                hitCount += segment.hitCount;
+                missCount += segment.missCount;
+                evictionCount += segment.evictionCount;
+                expirationCount += segment.expirationCount;
+                entryCount += segment.entries.size();
+            }
+        }
+        return new CacheStatistics(hitCount, missCount, evictionCount, expirationCount, entryCount, 0);
+    }
+
+    /**
+     * Evicts the least recently used entries of all segments until the cache is no longer full. The eldest entries of
+     * the segments are compared one segment lock at a time, so a concurrent acquisition may reorder them meanwhile;
+     * the cache then evicts an entry that has just been used, which is harmless.
+     *
+     * @param  entry  the new entry, which is never evicted
+     */
+    private void evict(final Entry entry) {
+        while (count.get() > maxEntries) {
+            Segment victimSegment = null;
+            Entry victim = null;
+            for (final Segment segment : segments) {
+                final Entry eldest = segment.eldest(entry);
+                if ((eldest != null) && ((victim == null) || (eldest.lastUsed < victim.lastUsed))) {
+                    victimSegment = segment;
+                    victim = eldest;
+                }
+            }
+            if (victim == null) {
+                return;
+            }
+            if (victimSegment.evict(victim)) {
+                victim.close(EVICTION_CLOSE_DELAY);
+            }
+        }
+    }
+
+    /**
+     * Returns the segment of a key.
+     *
+     * @param   key  the key
+     *
+     * @return  the segment that holds the key
+     */
+    private Segment segmentFor(final Key key) {
+        final int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Waits for a session that is being started by another thread.
+     *
+     * @param   flight  the future of the other thread
+     *
+     * @return  the started session
+     *
+     * @throws  AuthenticationFailedException  if the other thread could not start the session
+     */
+    private static Entry await(final CompletableFuture<Entry> flight) throws AuthenticationFailedException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return flight.get();
+                } catch (InterruptedException ex) {
+                    // the other thread is going to finish anyway
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof AuthenticationFailedException) {
+                throw (AuthenticationFailedException)cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            throw (Error)cause;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    //~ Inner Interfaces -------------------------------------------------------
+
+    /**
+     * Starts a new session when the cache does not hold one.
+     *
+     * @version  $Revision$, $Date$
+     */
+    interface SessionLoader {
+
+        //~ Methods ------------------------------------------------------------
+
+        /**
+         * Starts a new session.
+         *
+         * @return  the information of the new session
+         *
+         * @throws  AuthenticationFailedException  if the session could not be started
+         */
+        SessionInformation load() throws AuthenticationFailedException;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * A cached session. Accessors keep the entry of their session, so they notice when it has been evicted or has
+     * expired.
+     *
+     * @version  $Revision$, $Date$
+     */
+    static final class Entry {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final Key key;
+        private final SessionInformation sessionInfo;
+        private final SessionAuthenticationMethod auth;
+        private final long expiresAt;
+        private final SessionCloser closer;
+        private volatile boolean removed;
+        // tick of the clock of the cache when the entry was last acquired, written under the lock of its segment
+        private volatile long lastUsed;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new Entry object.
+         *
+         * @param  key          the key of the session
+         * @param  sessionInfo  the session information
+         * @param  auth         the session used by doService()
+         * @param  expiresAt    time in milliseconds when the entry expires
+         * @param  closer       closes the session once it is evicted
+         */
+        Entry(final Key key,
+                final SessionInformation sessionInfo,
+                final SessionAuthenticationMethod auth,
+                final long expiresAt,
+                final SessionCloser closer) {
+            this.key = key;
+            this.sessionInfo = sessionInfo;
+            this.auth = auth;
+            this.expiresAt = expiresAt;
+            this.closer = closer;
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        /**
+         * Returns the session information.
+         *
+         * @return  the session information
+         */
+        SessionInformation getSessionInformation() {
+            return sessionInfo;
+        }
+
+        /**
+         * Returns the session used by doService().
+         *
+         * @return  the session
+         */
+        SessionAuthenticationMethod getAuth() {
+            return auth;
+        }
+
+        /**
+         * Checks if the session may still be used, i.e. it has neither been removed from the cache nor expired.
+         *
+         * @return  true if the session may be used
+         */
+        boolean isValid() {
+            return !removed && (System.currentTimeMillis() < expiresAt);
+        }
+
+        /**
+         * Checks if the entry has expired.
+         *
+         * @param   now  the current time in milliseconds
+         *
+         * @return  true if the time to live has passed
+         */
+        private boolean isExpired(final long now) {
+            return expiresAt <= now;
+        }
+
+        /**
+         * Marks the entry as removed from the cache and closes its session.
+         *
+         * @param  delay  time in milliseconds to wait before the session is closed
+         */
+        private void close(final long delay) {
+            removed = true;
+            closer.close(sessionInfo, delay);
+        }
+    }
+
+    /**
+     * The key of a cached session: the URL of the WSS and the HMAC-SHA256 of the authentication method, stored as
+     * four longs to keep the key small.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class Key {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final String wssURL;
+        private final long h0;
+        private final long h1;
+        private final long h2;
+        private final long h3;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new Key object.
+         *
+         * @param  wssURL  URL of the WSS
+         * @param  digest  the 32 byte hash of the authentication method
+         */
+        Key(final String wssURL, final byte[] digest) {
+            final ByteBuffer buffer = ByteBuffer.wrap(digest);
+            this.wssURL = wssURL;
+            this.h0 = buffer.getLong();
+            this.h1 = buffer.getLong();
+            this.h2 = buffer.getLong();
+            this.h3 = buffer.getLong();
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key)obj;
+            return (h0 == other.h0) && (h1 == other.h1) && (h2 == other.h2) && (h3 == other.h3)
+                        && wssURL.equals(other.wssURL);
+        }
+
+        @Override
+        public int hashCode() {
+            // the digest is evenly distributed already
+            return (int)h0;
+        }
+    }
+
+    /**
+     * A part of the cache with its own lock and least recently used eviction.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private final class Segment {
+
+        //~ Instance fields ----------------------------------------------------
+
+        // access ordered, the eldest entry is the least recently used one
+        private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+        // time in milliseconds when the segment is next searched for expired entries
+        private long nextPurge;
+        private long hitCount = 0;
+        private long missCount = 0;
+        private long evictionCount = 0;
+        private long expirationCount = 0;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new Segment object.
+         */
+        Segment() {
+            this.nextPurge = System.currentTimeMillis() + timeToLive;
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        /**
+         * Returns the valid entry of a key. An expired entry is removed and closed.
+         *
+         * @param   key     the key
+         * @param   record  true to count the lookup as hit or miss
+         *
+         * @return  the entry or <code>null</code>
+         */
+        Entry get(final Key key, final boolean record) {
+            Entry expired = null;
+            try {
+                synchronized (this) {
+                    final Entry entry = entries.get(key);
+                    if ((entry != null) && !entry.isExpired(System.currentTimeMillis())) {
+                        if (record) {
+                            hitCount++;
+                        }
+                        entry.lastUsed = clock.incrementAndGet();
+                        return entry;
+                    }
+                    if (entry != null) {
+                        entries.remove(key);
+                        count.decrementAndGet();
+                        expirationCount++;
+                        expired = entry;
+                    }
+                    if (record) {
+                        missCount++;
+                    }
+                    return null;
+                }
+            } finally {
+                if (expired != null) {
+                    expired.close(EVICTION_CLOSE_DELAY);
+                }
+            }
+        }
+
+        /**
+         * Adds an entry and removes expired entries from time to time. Removed entries are closed.
+         *
+         * @param  entry  the new entry
+         */
+        void put(final Entry entry) {
+            final List<Entry> removed = new ArrayList<Entry>(1);
+            synchronized (this) {
+                final long now = System.currentTimeMillis();
+                entry.lastUsed = clock.incrementAndGet();
+                final Entry previous = entries.put(entry.key, entry);
+                if (previous != null) {
+                    removed.add(previous);
+                } else {
+                    count.incrementAndGet();
+                }
+                if (now >= nextPurge) {
+                    final Iterator<Entry> it = entries.values().iterator();
+                    while (it.hasNext()) {
+                        final Entry cached = it.next();
+                        if (cached.isExpired(now)) {
+                            it.remove();
+                            count.decrementAndGet();
+                            expirationCount++;
+                            removed.add(cached);
+                        }
+                    }
+                    nextPurge = now + timeToLive;
+                }
+            }
+            for (final Entry evicted : removed) {
+                evicted.close(EVICTION_CLOSE_DELAY);
+            }
+        }
+
+        /**
+         * Returns the least recently used entry of the segment.
+         *
+         * @param   exclude  an entry that must not be returned
+         *
+         * @return  the least recently used entry or <code>null</code> if the segment holds no other entry
+         */
+        synchronized Entry eldest(final Entry exclude) {
+            for (final Entry entry : entries.values()) {
+                if (entry != exclude) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Evicts an entry if it is still cached.
+         *
+         * @param   entry  the entry to evict
+         *
+         * @return  true if the entry has been evicted
+         */
+        synchronized boolean evict(final Entry entry) {
+            if (entries.remove(entry.key, entry)) {
+                count.decrementAndGet();
+                evictionCount++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Removes an entry if it is still cached.
+         *
+         * @param   entry  the entry to remove
+         *
+         * @return  true if the entry has been removed
+         */
+        synchronized boolean remove(final Entry entry) {
+            if (entries.remove(entry.key, entry)) {
+                count.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Removes all entries.
+         *
+         * @return  the removed entries
+         */
+        synchronized List<Entry> clear() {
+            final List<Entry> removed = new ArrayList<Entry>(entries.values());
+            entries.clear();
+            count.addAndGet(-removed.size());
+            return removed;
+        }
+    }
+}
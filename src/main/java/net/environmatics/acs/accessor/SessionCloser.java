@@ -0,0 +1,305 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor;
+
+import net.environmatics.acs.accessor.interfaces.SessionInformation;
+import net.environmatics.acs.exceptions.ServiceException;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Closes the retired sessions of a {@link WSSAccessorDeegree} in the background, so that neither the renewal of a
+ * session nor a request waits for a CloseSession round-trip. Sessions are queued and closed in batches: one task of
+ * the executor of the accessor closes all queued sessions one after another on the same pooled connection. A close
+ * that fails because of an I/O error is retried with an exponential backoff. A close the WSS answers with an exception
+ * is not retried, the session is most likely expired already.
+ *
+ * @version  $Revision$, $Date$
+ */
+final class SessionCloser {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static Logger logger = Logger.getLogger(SessionCloser.class);
+
+    // number of attempts to close a session before it is given up
+    private static final int MAX_ATTEMPTS = 4;
+    // time in milliseconds before the first retry, doubled for every further retry
+    private static final long RETRY_DELAY = 1000L;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final WSSAccessorDeegree accessor;
+    private final ScheduledExecutorService scheduler;
+    // sessions that can be closed now
+    private final Queue<PendingClose> queue = new ConcurrentLinkedQueue<PendingClose>();
+    // sessions that wait for their grace period or their next retry
+    private final Set<PendingClose> delayed = ConcurrentHashMap.newKeySet();
+    // true while a batch is running on the executor
+    private final AtomicBoolean running = new AtomicBoolean();
+    // sessions that are queued, delayed or being closed
+    private final AtomicInteger pending = new AtomicInteger();
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new SessionCloser object.
+     *
+     * @param  accessor   the accessor whose sessions are closed
+     * @param  scheduler  the scheduler that runs the delayed closes and retries
+     */
+    SessionCloser(final WSSAccessorDeegree accessor, final ScheduledExecutorService scheduler) {
+        this.accessor = accessor;
+        this.scheduler = scheduler;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Closes a session in the background.
+     *
+     * @param  sInfo  the session to close or <code>null</code>
+     * @param  delay  time in milliseconds to wait before the session is closed, e.g. for requests that are still using
+     *                it
+     */
+    void close(final SessionInformation sInfo, final long delay) {
+        if (sInfo == null) {
+            return;
+        }
+        pending.incrementAndGet();
+        final PendingClose close = new PendingClose(sInfo);
+        if (delay <= 0) {
+            enqueue(close);
+        } else {
+            schedule(close, delay);
+        }
+    }
+
+    /**
+     * Returns the number of sessions that have not been closed yet.
+     *
+     * @return  the number of queued, delayed and running closes
+     */
+    int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Closes all pending sessions in the calling thread, including those that wait for their grace period or a retry.
+     * Retries are still made with backoff, but only as long as the timeout allows.
+     *
+     * @param   timeout  maximum time in milliseconds to wait
+     *
+     * @return  true if all sessions have been closed or given up, false if the timeout elapsed
+     */
+    boolean drain(final long timeout) {
+        final long deadline = System.currentTimeMillis() + timeout;
+        for (final PendingClose close : delayed) {
+            if (delayed.remove(close)) {
+                queue.add(close);
+            }
+        }
+        PendingClose close;
+        while ((close = queue.poll()) != null) {
+            while (!attempt(close)) {
+                final long backoff = Math.min(retryDelay(close), deadline - System.currentTimeMillis());
+                if (backoff < 0) {
+                    done();
+                    break;
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    done();
+                    return false;
+                }
+            }
+        }
+        // wait for the batch that may still be running on the executor
+        synchronized (this) {
+            long remaining = deadline - System.currentTimeMillis();
+            while ((pending.get() > 0) && (remaining > 0)) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+        return pending.get() == 0;
+    }
+
+    /**
+     * Adds a close to the queue and starts a batch if none is running.
+     *
+     * @param  close  the close to queue
+     */
+    private void enqueue(final PendingClose close) {
+        queue.add(close);
+        startBatch();
+    }
+
+    /**
+     * Runs the queued closes on the executor of the accessor unless a batch is already running.
+     */
+    private void startBatch() {
+        if (!queue.isEmpty() && running.compareAndSet(false, true)) {
+            try {
+                accessor.getExecutor().execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            runBatch();
+                        }
+                    });
+            } catch (RejectedExecutionException ex) {
+                // the queued sessions are closed by the next batch or by drain()
+                running.set(false);
+                logger.warn("Could not start closing sessions", ex);
+            }
+        }
+    }
+
+    /**
+     * Closes all queued sessions. Failed closes are rescheduled with backoff.
+     */
+    private void runBatch() {
+        int count = 0;
+        try {
+            PendingClose close;
+            while ((close = queue.poll()) != null) {
+                if (!attempt(close)) {
+                    schedule(close, retryDelay(close));
+                }
+                count++;
+            }
+        } catch (RuntimeException ex) {
+            logger.warn("Failure while closing sessions", ex);
+        } finally {
+            running.set(false);
+            if (logger.isDebugEnabled()) {
+                logger.debug(count + " session close(s) attempted in batch");
+            }
+            // closes queued after the last poll
+            startBatch();
+        }
+    }
+
+    /**
+     * Makes one attempt to close a session.
+     *
+     * @param   close  the close to attempt
+     *
+     * @return  false if the attempt failed and has to be retried, true if the session has been closed or given up
+     */
+    private boolean attempt(final PendingClose close) {
+        try {
+            accessor.sendCloseSession(close.sInfo);
+        } catch (ServiceException ex) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("WSS did not close session " + close.sInfo.getSessionID() + ": " + ex.getMessage());
+            }
+        } catch (IOException ex) {
+            close.attempts++;
+            if (close.attempts < MAX_ATTEMPTS) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Could not close session " + close.sInfo.getSessionID() + ", attempt "
+                                + close.attempts + ": " + ex);
+                }
+                return false;
+            }
+            logger.info("Giving up closing session " + close.sInfo.getSessionID() + ". Exception: " + ex);
+        } catch (RuntimeException ex) {
+            logger.warn("Failure while closing session", ex);
+        }
+        done();
+        return true;
+    }
+
+    /**
+     * Queues a close after a delay. The close stays visible to {@link #drain(long)} while it waits.
+     *
+     * @param  close  the close to delay
+     * @param  delay  time in milliseconds
+     */
+    private void schedule(final PendingClose close, final long delay) {
+        delayed.add(close);
+        scheduler.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (delayed.remove(close)) {
+                        enqueue(close);
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Computes the backoff before the next attempt of a failed close.
+     *
+     * @param   close  the failed close
+     *
+     * @return  the delay in milliseconds
+     */
+    private static long retryDelay(final PendingClose close) {
+        return RETRY_DELAY << (close.attempts - 1);
+    }
+
+    /**
+     * Marks a close as finished and wakes up {@link #drain(long)} when the last one is done.
+     */
+    private void done() {
+        if (pending.decrementAndGet() == 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * A session that has to be closed.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class PendingClose {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final SessionInformation sInfo;
+        private int attempts;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new PendingClose object.
+         *
+         * @param  sInfo  the session to close
+         */
+        PendingClose(final SessionInformation sInfo) {
+            this.sInfo = sInfo;
+        }
+    }
+}
@@ -9,9 +9,12 @@ package net.environmatics.acs.accessor;
 
 import net.environmatics.acs.accessor.interfaces.SessionInformation;
 
+import java.util.Date;
+
 /**
  * Implementation of the interface {@link net.environmatics.acs.accessor.interfaces.SessionInformation} for Deegree
- * WASS.
+ * WASS. The Deegree WSS only returns the Session ID, so the expiration date has to be set from a configured session
+ * lifetime.
  *
  * @author   abonitz
  * @version  $Revision$, $Date$
@@ -21,6 +24,9 @@ public class SessionInformationDeegree implements SessionInformation {
     //~ Instance fields --------------------------------------------------------
 
     private String sessionID;
+    private volatile Date expirationDate;
+    // System.currentTimeMillis() of the last use, 0 if not used yet
+    private volatile long lastUsed;
 
     //~ Constructors -----------------------------------------------------------
 
@@ -33,6 +39,17 @@ public class SessionInformationDeegree implements SessionInformation {
         sessionID = payload.asText();
     }
 
+    /**
+     * Creates a new SessionInformationDeegree Object.
+     *
+     * @param  payload         The response from an WSS
+     * @param  expirationDate  the date when the session will expire or <code>null</code> if unknown
+     */
+    public SessionInformationDeegree(final Payload payload, final Date expirationDate) {
+        this(payload);
+        this.expirationDate = expirationDate;
+    }
+
     //~ Methods ----------------------------------------------------------------
 
     /**
@@ -42,4 +59,31 @@ public class SessionInformationDeegree implements SessionInformation {
     public String getSessionID() {
         return sessionID;
     }
+
+    @Override
+    public Date getExpirationDate() {
+        return expirationDate;
+    }
+
+    /**
+     * Sets the date when the session will expire.
+     *
+     * @param  expirationDate  the expiration date or <code>null</code> if unknown
+     */
+    public void setExpirationDate(final Date expirationDate) {
+        this.expirationDate = expirationDate;
+    }
+
+    @Override
+    public Date getLastUsedDate() {
+        final long time = lastUsed;
+        return (time == 0) ? null : new Date(time);
+    }
+
+    /**
+     * Marks the session as used now.
+     */
+    public void touch() {
+        lastUsed = System.currentTimeMillis();
+    }
 }
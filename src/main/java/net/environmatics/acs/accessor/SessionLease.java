@@ -0,0 +1,202 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor;
+
+import net.environmatics.acs.accessor.interfaces.SessionInformation;
+import net.environmatics.acs.accessor.methods.SessionAuthenticationMethod;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One slot of the session pool of a {@link WSSAccessorDeegree}. A slot holds at most one WSS session at a time and
+ * counts the requests that are currently using it. Every slot is renewed on its own, so a failing session does not
+ * disturb the requests in flight on the other slots.
+ *
+ * @version  $Revision$, $Date$
+ */
+final class SessionLease {
+
+    //~ Instance fields --------------------------------------------------------
+
+    // the session used by doService(), swapped atomically when it is renewed
+    private final AtomicReference<SessionAuthenticationMethod> auth =
+        new AtomicReference<SessionAuthenticationMethod>();
+    // guards the renewal of this slot, so that only one new session is started at a time
+    private final Lock renewLock = new ReentrantLock();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile SessionInformation sessionInfo;
+    private volatile boolean retired;
+    // System.currentTimeMillis() when the current session was started and when the slot was used last
+    private volatile long sessionStarted;
+    private volatile long lastUsed;
+    // the scheduled background renewal of the current session, if any
+    private ScheduledFuture<?> renewal;
+    // the entry of the session cache if the current session is shared with other accessors
+    private volatile SessionCache.Entry cachedSession;
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the current session of this slot.
+     *
+     * @return  the current session or <code>null</code> if there is none
+     */
+    SessionAuthenticationMethod getAuth() {
+        return auth.get();
+    }
+
+    /**
+     * Returns the session information of the current session of this slot.
+     *
+     * @return  the session information or <code>null</code> if there is no session
+     */
+    SessionInformation getSessionInformation() {
+        return sessionInfo;
+    }
+
+    /**
+     * Replaces the session of this slot. Must only be called while holding the renew lock.
+     *
+     * @param  newSessionInfo  the new session information or <code>null</code>
+     * @param  newAuth         the new session or <code>null</code>
+     */
+    void setSession(final SessionInformation newSessionInfo, final SessionAuthenticationMethod newAuth) {
+        setRenewal(null);
+        this.cachedSession = null;
+        this.sessionStarted = System.currentTimeMillis();
+        this.sessionInfo = newSessionInfo;
+        this.auth.set(newAuth);
+    }
+
+    /**
+     * Replaces the session of this slot by a session of the session cache. Must only be called while holding the renew
+     * lock.
+     *
+     * @param  entry  the cached session
+     */
+    void setSession(final SessionCache.Entry entry) {
+        setSession(entry.getSessionInformation(), entry.getAuth());
+        this.cachedSession = entry;
+    }
+
+    /**
+     * Returns the entry of the session cache the current session has been taken from.
+     *
+     * @return  the cached session or <code>null</code> if the session is not shared
+     */
+    SessionCache.Entry getCachedSession() {
+        return cachedSession;
+    }
+
+    /**
+     * Checks if the current session may be closed by the accessor, i.e. it has not been taken from the session cache.
+     *
+     * @return  true if the session is shared with other accessors
+     */
+    boolean isShared() {
+        return cachedSession != null;
+    }
+
+    /**
+     * Checks if the current session may still be used. A session of the session cache may not be used anymore once it
+     * has been evicted or has expired.
+     *
+     * @return  true if the session may be used
+     */
+    boolean isCurrent() {
+        final SessionCache.Entry entry = cachedSession;
+        return (entry == null) || entry.isValid();
+    }
+
+    /**
+     * Sets the scheduled background renewal of the current session and cancels the previous one. Must only be called
+     * while holding the renew lock.
+     *
+     * @param  newRenewal  the scheduled renewal or <code>null</code>
+     */
+    void setRenewal(final ScheduledFuture<?> newRenewal) {
+        if (renewal != null) {
+            renewal.cancel(false);
+        }
+        renewal = newRenewal;
+    }
+
+    /**
+     * Checks if the current session has been used by a request since it was started, i.e. by another request than
+     * the one that started it.
+     *
+     * @return  true if the session has been used since it was started
+     */
+    boolean isUsedSinceStart() {
+        return lastUsed > sessionStarted;
+    }
+
+    /**
+     * Checks if this slot has been removed from the pool.
+     *
+     * @return  true if the slot has been retired
+     */
+    boolean isRetired() {
+        return retired;
+    }
+
+    /**
+     * Returns the lock that guards the renewal of this slot.
+     *
+     * @return  the renew lock
+     */
+    Lock getRenewLock() {
+        return renewLock;
+    }
+
+    /**
+     * Returns the number of requests currently using this slot.
+     *
+     * @return  the number of outstanding requests
+     */
+    int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Marks this slot as used by one more request and records the time of use.
+     */
+    void acquire() {
+        outstanding.incrementAndGet();
+        lastUsed = System.currentTimeMillis();
+        final SessionInformation info = sessionInfo;
+        if (info instanceof SessionInformationDeegree) {
+            ((SessionInformationDeegree)info).touch();
+        }
+    }
+
+    /**
+     * Marks a request as finished.
+     *
+     * @return  true if this slot has been retired and this was its last request, so its session has to be closed now
+     */
+    boolean release() {
+        return (outstanding.decrementAndGet() == 0) && retired && closed.compareAndSet(false, true);
+    }
+
+    /**
+     * Removes this slot from the pool.
+     *
+     * @return  true if no request is using this slot, so its session has to be closed now
+     */
+    boolean retire() {
+        retired = true;
+        return (outstanding.get() == 0) && closed.compareAndSet(false, true);
+    }
+}
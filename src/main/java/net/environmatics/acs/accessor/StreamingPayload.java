@@ -0,0 +1,290 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor;
+
+import net.environmatics.acs.accessor.http.HttpClientTransport;
+import net.environmatics.acs.accessor.utils.ServiceExceptionDetector;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Represents the payload of a service response that is read directly from the connection to the WSS instead of being
+ * buffered in memory. Only a short prefix of the response is read in advance, which is used to detect
+ * ServiceExceptionReports.<br>
+ * <br>
+ * A StreamingPayload holds a pooled connection until it is closed, so it <b>must</b> always be closed, i.e. with a
+ * try-with-resources statement. The content can be consumed only once, either through {@link #getInputStream()},
+ * {@link #getChannel()} or one of the <code>writeTo</code> methods.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class StreamingPayload implements Closeable {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static Logger logger = Logger.getLogger(StreamingPayload.class);
+
+    /** Number of bytes that are read in advance to detect ServiceExceptionReports. */
+    public static final int LOOK_AHEAD = 4096;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final WSSResponse response;
+    private final String charset;
+    private final byte[] prefix;
+    private final int prefixLength;
+    private final InputStream content;
+    private boolean consumed = false;
+    private boolean endOfStream = false;
+    private boolean closed = false;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new StreamingPayload object from an executed request. Reads the look-ahead prefix of the response.
+     *
+     * @param   method   the executed request, its connection is released when the payload is closed
+     * @param   charset  Is used for text decoding
+     *
+     * @throws  IOException  if the response cannot be read
+     */
+    public StreamingPayload(final HttpMethod method, final String charset) throws IOException {
+        this(HttpClientTransport.responseOf(method), charset);
+    }
+
+    /**
+     * Creates a new StreamingPayload object from a response of the WSS. Reads the look-ahead prefix of the response.
+     *
+     * @param   response  the response, its connection is released when the payload is closed
+     * @param   charset   Is used for text decoding
+     *
+     * @throws  IOException  if the response cannot be read
+     */
+    public StreamingPayload(final WSSResponse response, final String charset) throws IOException {
+        this.response = response;
+        this.charset = charset;
+        final InputStream body = response.getResponseBodyAsStream();
+        prefix = new byte[LOOK_AHEAD];
+        int read = 0;
+        if (body != null) {
+            int n;
+            while ((read < LOOK_AHEAD) && ((n = body.read(prefix, read, LOOK_AHEAD - read)) >= 0)) {
+                read += n;
+            }
+        }
+        prefixLength = read;
+        if ((body == null) || (read < LOOK_AHEAD)) {
+            endOfStream = true;
+            content = new ByteArrayInputStream(prefix, 0, prefixLength);
+        } else {
+            content = new SequenceInputStream(new ByteArrayInputStream(prefix, 0, prefixLength), body);
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * If the look-ahead prefix shows that the payload is a "ServiceExceptionReport" the method returns <b>true.</b>
+     *
+     * @return  If <b>true</b>: the Payload contains an exception message
+     *
+     * @see     ServiceExceptionDetector
+     */
+    public boolean containsException() {
+        return ServiceExceptionDetector.isServiceExceptionReport(
+                prefix,
+                prefixLength,
+                getResponseHeader("Content-Type"));
+    }
+
+    /**
+     * Returns the value of a header of the response, i.e. Content-Type.
+     *
+     * @param   name  the name of the header
+     *
+     * @return  the value, or <code>null</code> if the response has no such header
+     */
+    public String getResponseHeader(final String name) {
+        final WSSHeader header = response.getResponseHeader(name);
+        return (header != null) ? header.getValue() : null;
+    }
+
+    /**
+     * Returns the name of the charset that is used for text decoding.
+     *
+     * @return  charset name
+     */
+    public String getCharset() {
+        return charset;
+    }
+
+    /**
+     * Returns the content of the response. Closing the stream closes this payload.
+     *
+     * @return  the content as InputStream
+     *
+     * @throws  IllegalStateException  if the content has already been consumed
+     */
+    public InputStream getInputStream() {
+        consume();
+        return new FilterInputStream(content) {
+
+                @Override
+                public int read() throws IOException {
+                    final int b = super.read();
+                    if (b < 0) {
+                        endOfStream = true;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    final int n = super.read(b, off, len);
+                    if (n < 0) {
+                        endOfStream = true;
+                    }
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    StreamingPayload.this.close();
+                }
+            };
+    }
+
+    /**
+     * Returns the content of the response as channel. Closing the channel closes this payload.
+     *
+     * @return  the content as ReadableByteChannel
+     *
+     * @throws  IllegalStateException  if the content has already been consumed
+     */
+    public ReadableByteChannel getChannel() {
+        return Channels.newChannel(getInputStream());
+    }
+
+    /**
+     * Transfers the content of the response to a stream, i.e. to the response of a proxy servlet, and closes this
+     * payload. The stream itself is not closed.
+     *
+     * @param   out  the stream to write to
+     *
+     * @return  number of bytes that have been transferred
+     *
+     * @throws  IOException            if reading or writing fails
+     * @throws  IllegalStateException  if the content has already been consumed
+     */
+    public long writeTo(final OutputStream out) throws IOException {
+        final InputStream in = getInputStream();
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            long total = 0;
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+                total += n;
+            }
+            return total;
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Transfers the content of the response to a channel and closes this payload. The channel itself is not closed.
+     *
+     * @param   out  the channel to write to
+     *
+     * @return  number of bytes that have been transferred
+     *
+     * @throws  IOException            if reading or writing fails
+     * @throws  IllegalStateException  if the content has already been consumed
+     */
+    public long writeTo(final WritableByteChannel out) throws IOException {
+        final ReadableByteChannel in = getChannel();
+        try {
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long total = 0;
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    total += out.write(buffer);
+                }
+                buffer.clear();
+            }
+            return total;
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Reads the whole content of the response into memory and closes this payload. Intended for small responses, i.e.
+     * ServiceExceptionReports.
+     *
+     * @return  the content as Payload
+     *
+     * @throws  IOException            if reading fails
+     * @throws  IllegalStateException  if the content has already been consumed
+     */
+    public Payload toPayload() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(prefixLength, 32));
+        writeTo(out);
+        return new Payload(out.toByteArray(), charset, getResponseHeader("Content-Type"));
+    }
+
+    /**
+     * Releases the connection to the WSS. If the response has not been read completely, the connection is aborted
+     * instead of reading the rest of the response.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!endOfStream) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("streaming payload closed before end of stream => abort connection");
+            }
+            response.abort();
+        }
+        response.releaseConnection();
+    }
+
+    /**
+     * Marks the content as consumed.
+     *
+     * @throws  IllegalStateException  if the content has already been consumed or the payload has been closed
+     */
+    private synchronized void consume() {
+        if (consumed || closed) {
+            throw new IllegalStateException("content of the streaming payload has already been consumed");
+        }
+        consumed = true;
+    }
+}
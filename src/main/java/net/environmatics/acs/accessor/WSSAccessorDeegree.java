@@ -7,48 +7,83 @@
 ****************************************************/
 package net.environmatics.acs.accessor;
 
+import net.environmatics.acs.accessor.cache.CacheKey;
+import net.environmatics.acs.accessor.cache.CapabilitiesCache;
+import net.environmatics.acs.accessor.cache.PayloadCache;
+import net.environmatics.acs.accessor.http.ConnectionPoolConfiguration;
+import net.environmatics.acs.accessor.http.ConnectionPoolStatistics;
+import net.environmatics.acs.accessor.http.HttpClientTransport;
+import net.environmatics.acs.accessor.http.PooledConnectionManager;
 import net.environmatics.acs.accessor.interfaces.AuthenticationMethod;
+import net.environmatics.acs.accessor.interfaces.DoServiceCallback;
 import net.environmatics.acs.accessor.interfaces.SessionInformation;
 import net.environmatics.acs.accessor.interfaces.WSSAccessor;
+import net.environmatics.acs.accessor.interfaces.WSSTransport;
+import net.environmatics.acs.accessor.metrics.AccessorMetrics;
+import net.environmatics.acs.accessor.metrics.Phase;
+import net.environmatics.acs.accessor.metrics.RequestSample;
+import net.environmatics.acs.accessor.metrics.RequestType;
 import net.environmatics.acs.accessor.methods.AnonymousAuthenticationMethod;
 import net.environmatics.acs.accessor.methods.SessionAuthenticationMethod;
-import net.environmatics.acs.accessor.utils.DOMHelper;
+import net.environmatics.acs.accessor.replay.ExchangeRecord;
+import net.environmatics.acs.accessor.replay.TrafficRecorder;
+import net.environmatics.acs.accessor.utils.DoServiceRequestEntity;
+import net.environmatics.acs.accessor.utils.DoServiceTemplate;
+import net.environmatics.acs.accessor.utils.ExecutorHelper;
 import net.environmatics.acs.exceptions.AuthenticationFailedException;
 import net.environmatics.acs.exceptions.ServiceException;
+import net.environmatics.acs.exceptions.ServiceExceptionReportException;
 
-import org.apache.commons.httpclient.Header;
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.HttpException;
+import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.NameValuePair;
 import org.apache.commons.httpclient.auth.CredentialsProvider;
 import org.apache.commons.httpclient.contrib.ssl.EasySSLProtocolSocketFactory;
-import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.httpclient.methods.StringRequestEntity;
 import org.apache.commons.httpclient.protocol.Protocol;
 import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
+import org.apache.commons.httpclient.util.EncodingUtil;
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
-import org.dom4j.Element;
 import org.dom4j.io.SAXReader;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Array;
 
 import java.net.MalformedURLException;
 import java.net.URL;
 
+import java.nio.charset.StandardCharsets;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.concurrent.locks.Lock;
-//import java.util.Random;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Main Class for Interaction with an deegree WebSecurityService.<br>
@@ -80,36 +115,96 @@ public class WSSAccessorDeegree implements WSSAccessor {
 
     private static Logger logger = Logger.getLogger(WSSAccessorDeegree.class);
 
+    // shared by all accessors, so TLS sessions to the same WSS host are resumed
+    private static final ProtocolSocketFactory EASY_SSL_SOCKET_FACTORY = new EasySSLProtocolSocketFactory();
+
+    /** Default time in milliseconds before the expiration of a session at which it is renewed: 30 seconds. */
+    public static final long DEFAULT_SESSION_RENEWAL_MARGIN = 30 * 1000L;
+
+    /** Default time in milliseconds {@link #shutdown()} waits for the sessions to be closed: 10 seconds. */
+    public static final long DEFAULT_SHUTDOWN_TIMEOUT = 10 * 1000L;
+
+    // request key of conditional GetCapabilities requests
+    private static final String CONDITIONAL_KEY = "conditional";
+
+    // charset of the form parameters of GetSession and CloseSession requests, as in commons-httpclient
+    private static final String FORM_CHARSET = "ISO-8859-1";
+
+    // time in milliseconds a replaced session is kept open for requests that are still using it
+    private static final long SESSION_CLOSE_DELAY = 10 * 1000L;
+
+    // renews the sessions of all accessors in the background before they expire and delays closing replaced sessions
+    private static final ScheduledExecutorService SESSION_RENEWER = Executors.newSingleThreadScheduledExecutor(
+            ExecutorHelper.newDaemonThreadFactory("wss-session-renewer"));
+
     //~ Instance fields --------------------------------------------------------
 
-    ReadWriteLock lock = new ReentrantReadWriteLock();
-    private String wss_url;
-    private HttpClient client;
-    private SessionInformation sessionInfo;
-    private AuthenticationMethod authnMethod;
+    private volatile String wss_url;
+    private final PooledConnectionManager connectionManager;
+    // the default transport, keeps the proxy and the credentials provider when another transport is set
+    private final HttpClientTransport httpTransport;
+    private volatile WSSTransport transport;
+    // the session started by getSession(AuthenticationMethod), the session pool does not use it
+    private final AtomicReference<SessionInformation> sessionInfo = new AtomicReference<SessionInformation>();
+    private volatile AuthenticationMethod authnMethod;
     private String[] supportedAuthnMethods;
-    private Document wssCapabilities;
-    private boolean isCredentialProviderAvailable = false;
-    // private int readLockCounter = 0;
-    private SessionAuthenticationMethod currentAuth = null;
-    private boolean lastDoServiceFailed = false;
-    // TODO entfernen!!! nur zum testen
-    // private int testSessionTimeoutCounter = 0;
+    private volatile CapabilitiesCache capabilitiesCache = CapabilitiesCache.getDefault();
+    private final CapabilitiesCache.Loader capabilitiesLoader = new CapabilitiesCache.Loader() {
+
+            @Override
+            public CapabilitiesCache.Response load(final String etag, final String lastModified) throws IOException {
+                return fetchWSSCapabilities(etag, lastModified);
+            }
+        };
+    // the slots of the session pool, each holds one session used by doService(); replaced when the pool is resized
+    private volatile SessionLease[] sessionLeases = { new SessionLease() };
+    // first slot looked at by leaseSession(), so that equally used slots take turns
+    private final AtomicInteger nextLease = new AtomicInteger();
+    // runs doServiceAsync(), null means ExecutorHelper.getDefaultExecutor()
+    private volatile Executor executor;
+    // optional cache for doService responses
+    private volatile PayloadCache responseCache;
+    // HTTP GET doService requests that are being sent, so identical concurrent requests share one exchange
+    private final ConcurrentMap<CacheKey, CompletableFuture<Payload>> inFlightRequests =
+        new ConcurrentHashMap<CacheKey, CompletableFuture<Payload>>();
+    private volatile boolean requestCoalescing = true;
+    private final AtomicLong coalescedRequests = new AtomicLong();
+    // lifetime of new sessions if the WSS does not report it, 0 if unknown
+    private volatile long sessionLifetime;
+    private volatile long sessionRenewalMargin = DEFAULT_SESSION_RENEWAL_MARGIN;
+    // closes replaced sessions in the background
+    private final SessionCloser sessionCloser = new SessionCloser(this, SESSION_RENEWER);
+    private volatile AccessorMetrics metrics = AccessorMetrics.getDefault();
+    // writes the exchanges with the WSS to a traffic log, null if they are not recorded
+    private volatile TrafficRecorder trafficRecorder;
+    // optional cache that shares the session of the first slot with other accessors
+    private volatile SessionCache sessionCache;
 
     //~ Constructors -----------------------------------------------------------
 
     /**
-     * Creates a new instance of the WSSAccessorDeegree.
+     * Creates a new instance of the WSSAccessorDeegree with its own connection pool.
      */
     public WSSAccessorDeegree() {
+        this(new PooledConnectionManager());
+    }
+
+    /**
+     * Creates a new instance of the WSSAccessorDeegree that uses the given connection pool. The pool may be shared
+     * with other accessors, see {@link WSSAccessorFactory}. Proxy and credentials are still set per accessor.
+     *
+     * @param  connectionManager  the connection pool
+     */
+    public WSSAccessorDeegree(final PooledConnectionManager connectionManager) {
         if (logger.isDebugEnabled()) {
             logger.debug("WSS AccessorDeegree()");
         }
-        client = new HttpClient(new MultiThreadedHttpConnectionManager());
+        this.connectionManager = connectionManager;
+        this.httpTransport = new HttpClientTransport(connectionManager);
+        this.transport = httpTransport;
 
         this.wss_url = null;
         this.supportedAuthnMethods = null;
-        this.sessionInfo = null;
         this.authnMethod = new AnonymousAuthenticationMethod();
     }
 
@@ -142,7 +237,9 @@ public class WSSAccessorDeegree implements WSSAccessor {
     //~ Methods ----------------------------------------------------------------
 
     /**
-     * Performs a doService request on the selected WSS.
+     * Performs a doService request on the selected WSS. This method may be called concurrently, all requests share the
+     * current session. If the WSS answers with an exception, the session is renewed once and the request is sent
+     * again.
      *
      * @param   dcp_type        <b>Must</b> be
      *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_GET HTTP GET} or
@@ -157,7 +254,7 @@ public class WSSAccessorDeegree implements WSSAccessor {
      * @throws  NullPointerException  DOCUMENT ME!
      */
     @Override
-    public synchronized Payload doService(final String dcp_type,
+    public Payload doService(final String dcp_type,
             final String serviceRequest,
             final NameValuePair[] requestParams,
             final String facadeURL) throws ServiceException {
@@ -168,188 +265,1765 @@ public class WSSAccessorDeegree implements WSSAccessor {
             throw new NullPointerException("wss_url is not initialized");
         }
 
-        try {
-            if (currentAuth == null) {
+        final Payload doServiceResponse = performDoService(dcp_type, serviceRequest, requestParams, facadeURL);
+        if (logger.isDebugEnabled()) {
+            logger.debug("doRequest not failed.");
+            logger.debug(doServiceResponse.asText());
+        }
+        return doServiceResponse;
+    }
+
+    /**
+     * Answers a doService request from the response cache or, if it is not cached, sends it with the current session.
+     * If an identical HTTP GET request of the same authorization scope is already being sent, its response is shared
+     * instead.
+     *
+     * @param   dcp_type        HTTP_GET or HTTP_POST
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  Payload, containing the doService response.
+     *
+     * @throws  ServiceException  Thrown in case of an error.
+     */
+    private Payload performDoService(final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) throws ServiceException {
+        final PayloadCache cache = responseCache;
+        final CacheKey key = createCacheKey(cache, dcp_type, serviceRequest, requestParams, facadeURL);
+        if ((key != null) && (cache != null)) {
+            final Payload cached = cache.get(key);
+            if (cached != null) {
                 if (logger.isDebugEnabled()) {
-                    logger.debug("not yet authed => call newSession()");
+                    logger.debug("doService response found in cache");
                 }
-                newSession();
+                return cached.share();
+            }
+        }
+        if ((key == null) || !requestCoalescing) {
+            final Payload doServiceResponse = fetchDoService(
+                    cache,
+                    key,
+                    dcp_type,
+                    serviceRequest,
+                    requestParams,
+                    facadeURL);
+            // a cached response is shared with later callers
+            return (key == null) ? doServiceResponse : doServiceResponse.share();
+        }
+        final CompletableFuture<Payload> flight = new CompletableFuture<Payload>();
+        final CompletableFuture<Payload> running = inFlightRequests.putIfAbsent(key, flight);
+        if (running != null) {
+            coalescedRequests.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+                logger.debug("identical doService request in flight => share its response");
             }
+            return awaitInFlight(running).share();
+        }
+        try {
+            final Payload doServiceResponse = fetchDoService(
+                    cache,
+                    key,
+                    dcp_type,
+                    serviceRequest,
+                    requestParams,
+                    facadeURL);
+            flight.complete(doServiceResponse);
+            return doServiceResponse.share();
+        } catch (ServiceException ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } catch (RuntimeException ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } catch (Error ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlightRequests.remove(key, flight);
+        }
+    }
+
+    /**
+     * Sends a doService request with the current session and puts the response into the response cache.
+     *
+     * @param   cache           the response cache or <code>null</code>
+     * @param   key             the key of the request or <code>null</code>
+     * @param   dcp_type        HTTP_GET or HTTP_POST
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  Payload, containing the doService response.
+     *
+     * @throws  ServiceException  Thrown in case of an error.
+     */
+    private Payload fetchDoService(final PayloadCache cache,
+            final CacheKey key,
+            final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) throws ServiceException {
+        final SessionLease lease = leaseSession();
+        final Payload doServiceResponse;
+        try {
+            doServiceResponse = exchange(lease, dcp_type, serviceRequest, requestParams, facadeURL);
+        } finally {
+            releaseSession(lease);
+        }
+        if ((cache != null) && (key != null)) {
+            cache.put(key, doServiceResponse);
+        }
+        return doServiceResponse;
+    }
 
-            // TODO Achtung schauen ob get überhaupt funktioniert
-            String postMethod = wss_url;
-            if (dcp_type.equals(DCP_HTTP_GET)) {
-                postMethod = postMethod + "?";
+    /**
+     * Waits for the response of an identical request that is sent by another thread.
+     *
+     * @param   running  the future of the other request
+     *
+     * @return  the shared response
+     *
+     * @throws  ServiceException  if the other request failed
+     */
+    private static Payload awaitInFlight(final CompletableFuture<Payload> running) throws ServiceException {
+        try {
+            return running.join();
+        } catch (CompletionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof ServiceException) {
+                throw (ServiceException)cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
             }
-            final PostMethod post = new PostMethod(postMethod);
-            if (isCredentialProviderAvailable) {
-                post.setDoAuthentication(true);
+            if (cause instanceof Error) {
+                throw (Error)cause;
             }
+            throw ex;
+        }
+    }
 
-            Payload doServiceResponse = null;
-            // int readlockID = new Random().nextInt();
-            try {
-//                logger.debug("deadlock:read lock: "+readlockID+" counter: " + readLockCounter);
-//                lock.readLock().lock();
-//                readLockCounter++;
-//                logger.debug("deadlock:read lock done"+readlockID+" counter: " +readLockCounter);
-
-                // TODO entfernen!!! nur zum testen!
-// if (testSessionTimeoutCounter++ >= 5) {
-// testSessionTimeoutCounter = 0;
-// SessionInformation sesInfo = new SessionInformation() {
-//
-// @Override
-// public String getSessionID() {
-// return "ID0000-0.000000000000000";
-// }
-// };
-// currentAuth = new SessionAuthenticationMethod(sesInfo);
-// } //TODO entfernen!!! nur zum testen!
-
-                final String wssRequest = serviceRequest + "&sessionID=" + currentAuth.getSessionID();
-                if (logger.isDebugEnabled()) {
-                    logger.debug("WSS request: " + wssRequest.toString());
-                }
-                final Document request = DOMHelper.generateDoService(
-                        dcp_type,
-                        wssRequest,
-                        currentAuth,
-                        requestParams,
-                        facadeURL);
+    /**
+     * Creates the key of a request for the response cache and for request coalescing.
+     *
+     * @param   cache           the response cache
+     * @param   dcp_type        HTTP_GET or HTTP_POST
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  the key, or <code>null</code> if the request is not sent with HTTP GET, or if <code>cache</code> is
+     *          <code>null</code> and request coalescing is disabled
+     */
+    private CacheKey createCacheKey(final PayloadCache cache,
+            final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) {
+        // a POST request may change data, i.e. a WFS-T Transaction, so it is neither cached nor coalesced
+        if (!DCP_HTTP_GET.equals(dcp_type) || ((cache == null) && !requestCoalescing)) {
+            return null;
+        }
+        return CacheKey.create(wss_url, authnMethod, dcp_type, serviceRequest, requestParams, facadeURL);
+    }
 
-                post.setRequestEntity(new StringRequestEntity(request.asXML(), "text/xml", "UTF-8"));
-                if (logger.isDebugEnabled()) {
-                    logger.debug("sending WSS request: " + request.asXML());
-                }
-                client.executeMethod(post);
-                if (logger.isDebugEnabled()) {
-                    logger.debug("getResponseBody: " + post.getResponseBody().toString());
-                }
-                if (logger.isDebugEnabled()) {
-                    // post.getResponseBodyAsString();
-                    logger.debug("ResponseCharset: " + post.getResponseCharSet());
-                }
-                if (logger.isDebugEnabled()) {
-                    logger.debug("ContentLength: " + post.getResponseContentLength());
-                }
-                if (logger.isDebugEnabled()) {
-                    logger.debug("getStatusCode: " + post.getStatusCode());
-                }
+    /**
+     * Sends a doService request with the session of the given slot. If the WSS rejects the session, the session is
+     * renewed once and the request is sent again. Any other exception is reported at once.
+     *
+     * @param   lease           the slot of the session pool used for this request
+     * @param   dcp_type        HTTP_GET or HTTP_POST
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  Payload, containing the doService response.
+     *
+     * @throws  ServiceException  Thrown in case of an error, if the WSS rejects the request or if it rejects the
+     *                           session twice. A rejection is reported as {@link ServiceExceptionReportException}.
+     */
+    private Payload exchange(final SessionLease lease,
+            final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) throws ServiceException {
+        final SessionAuthenticationMethod auth = acquireSession(lease);
+        Payload doServiceResponse = sendDoService(auth, dcp_type, serviceRequest, requestParams, facadeURL);
 
-                final Header[] header = post.getResponseHeaders();
-                if (header != null) {
-                    for (final Header current : header) {
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("Response Header: " + current.getName() + " value: " + current.getValue());
-                        }
-                    }
-                }
-                final Header[] footer = post.getResponseFooters();
-                if (footer != null) {
-                    for (final Header current : footer) {
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("Response footer: " + current.getName() + " value: " + current.getValue());
-                        }
-                    }
-                }
+        if (doServiceResponse.containsException()) {
+            final ServiceExceptionReport report = ServiceExceptionReport.parse(doServiceResponse);
+            if (!report.isSessionFailure()) {
                 if (logger.isDebugEnabled()) {
-                    // post.getResponseBody();
-                    logger.debug("Befor Payload object creation");
+                    logger.debug("doRequest rejected, not because of the session => give up. " + report);
                 }
-                doServiceResponse = new Payload(post.getResponseBody(), post.getResponseCharSet());
+                throw new ServiceExceptionReportException(doServiceResponse.asText(), report);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("doRequest failed first time => renew session and try again.");
+            }
+            countRetry(facadeURL);
+            final SessionAuthenticationMethod renewedAuth = renewSession(lease, auth);
+            doServiceResponse = sendDoService(renewedAuth, dcp_type, serviceRequest, requestParams, facadeURL);
+
+            if (doServiceResponse.containsException()) {
                 if (logger.isDebugEnabled()) {
-                    logger.debug("After Payload object creation");
+                    logger.debug("doRequest failed second time in a row => give up (throw Exception).");
                 }
+                throw rejected(doServiceResponse);
+            }
+        }
+        return doServiceResponse;
+    }
 
-                if (doServiceResponse.containsException()) {
-                    if (!lastDoServiceFailed) {
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("doRequest failed first time => call newSession() and try again.");
-                        }
-                        newSession();
-                        lastDoServiceFailed = true;
-                        return doService(dcp_type, serviceRequest, requestParams, facadeURL);
+    /**
+     * Performs a doService request on the selected WSS without blocking the calling thread. Session acquisition and
+     * renewal are part of the asynchronous chain, so the calling thread never waits for the WSS. The request runs on
+     * the executor set with {@link #setExecutor(java.util.concurrent.Executor)}.
+     *
+     * @param   dcp_type        <b>Must</b> be
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_GET HTTP GET} or
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_POST HTTP POST}
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters, i.e. HTTP_Header / Mime-Type: text/xml
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  a future that is completed with the doService response, or completed exceptionally with a
+     *          {@link ServiceException} in case of an error.
+     *
+     * @throws  NullPointerException  DOCUMENT ME!
+     */
+    @Override
+    public CompletableFuture<Payload> doServiceAsync(final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("async service request: " + serviceRequest + " facade url: " + facadeURL);
+        }
+        if (wss_url == null) {
+            throw new NullPointerException("wss_url is not initialized");
+        }
+        final PayloadCache cache = responseCache;
+        final CacheKey key = createCacheKey(cache, dcp_type, serviceRequest, requestParams, facadeURL);
+        if ((key != null) && (cache != null)) {
+            final Payload cached = cache.get(key);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached.share());
+            }
+        }
+        if ((key == null) || !requestCoalescing) {
+            final CompletableFuture<Payload> result = fetchDoServiceAsync(
+                    cache,
+                    key,
+                    dcp_type,
+                    serviceRequest,
+                    requestParams,
+                    facadeURL);
+            // a cached response is shared with later callers
+            return (key == null) ? result : result.thenApply(Payload::share);
+        }
+        final CompletableFuture<Payload> flight = new CompletableFuture<Payload>();
+        final CompletableFuture<Payload> running = inFlightRequests.putIfAbsent(key, flight);
+        if (running != null) {
+            coalescedRequests.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+                logger.debug("identical async doService request in flight => share its response");
+            }
+            // a caller that cancels its future must not cancel the shared one
+            return running.thenApply(Payload::share);
+        }
+        try {
+            final CompletableFuture<Payload> result = fetchDoServiceAsync(
+                    cache,
+                    key,
+                    dcp_type,
+                    serviceRequest,
+                    requestParams,
+                    facadeURL);
+            result.whenComplete((response, ex) -> {
+                    inFlightRequests.remove(key, flight);
+                    if (ex == null) {
+                        flight.complete(response);
                     } else {
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("doRequest failed second time in a row => give up (throw Exception).");
-                        }
-                        lastDoServiceFailed = false;
-                        throw new ServiceException(doServiceResponse.asText());
+                        flight.completeExceptionally(ex);
                     }
-                } else {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("doRequest not failed.");
+                });
+        } catch (RuntimeException ex) {
+            inFlightRequests.remove(key, flight);
+            flight.completeExceptionally(ex);
+        }
+        return flight.thenApply(Payload::share);
+    }
+
+    /**
+     * Sends a doService request asynchronously with the current session and puts the response into the response
+     * cache.
+     *
+     * @param   cache           the response cache or <code>null</code>
+     * @param   key             the key of the request or <code>null</code>
+     * @param   dcp_type        HTTP_GET or HTTP_POST
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  a future with the doService response
+     */
+    private CompletableFuture<Payload> fetchDoServiceAsync(final PayloadCache cache,
+            final CacheKey key,
+            final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) {
+        final Executor exec = getExecutor();
+        final SessionLease lease = leaseSession();
+
+        final CompletableFuture<Payload> result = acquireSessionAsync(lease, exec).thenCompose(auth ->
+                    sendDoServiceAsync(auth, dcp_type, serviceRequest, requestParams, facadeURL, exec).thenCompose(
+                        response -> {
+                            if (!response.containsException()) {
+                                return CompletableFuture.completedFuture(response);
+                            }
+                            final ServiceExceptionReport report = ServiceExceptionReport.parse(response);
+                            if (!report.isSessionFailure()) {
+                                if (logger.isDebugEnabled()) {
+                                    logger.debug("async doRequest rejected, not because of the session => give up. "
+                                                + report);
+                                }
+                                throw new CompletionException(
+                                    new ServiceExceptionReportException(response.asText(), report));
+                            }
+                            if (logger.isDebugEnabled()) {
+                                logger.debug("async doRequest failed first time => renew session and try again.");
+                            }
+                            countRetry(facadeURL);
+                            return retryDoServiceAsync(
+                                    lease,
+                                    auth,
+                                    dcp_type,
+                                    serviceRequest,
+                                    requestParams,
+                                    facadeURL,
+                                    exec);
+                        }));
+        result.whenComplete((response, ex) -> releaseSession(lease));
+        if ((cache == null) || (key == null)) {
+            return result;
+        }
+        return result.thenApply(response -> {
+                    cache.put(key, response);
+                    return response;
+                });
+    }
+
+    /**
+     * Performs a doService request on the selected WSS without blocking the calling thread. Note that this method sets
+     * the WSS doService request parameters to "HTTP_Header" with "Mime-Type: text/xml"
+     *
+     * @param   dcp_type        <b>Must</b> be
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_GET HTTP GET} or
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_POST HTTP POST}
+     * @param   serviceRequest  Request to a secured service
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  a future that is completed with the doService response, or completed exceptionally with a
+     *          {@link ServiceException} in case of an error.
+     */
+    @Override
+    public CompletableFuture<Payload> doServiceAsync(final String dcp_type,
+            final String serviceRequest,
+            final String facadeURL) {
+        return doServiceAsync(
+                dcp_type,
+                serviceRequest,
+                new NameValuePair[] { new NameValuePair("HTTP_Header", "Mime-Type: text/xml") },
+                facadeURL);
+    }
+
+    /**
+     * Renews a rejected session and sends the request a second time. Fails if the WSS rejects the request again.
+     *
+     * @param   lease           the slot of the session pool used for this request
+     * @param   staleAuth       the session that was rejected
+     * @param   dcp_type        HTTP_GET or HTTP_POST
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters
+     * @param   facadeURL       String with an URL to facade
+     * @param   exec            the executor that performs the requests
+     *
+     * @return  a future with the doService response of the second attempt
+     */
+    private CompletableFuture<Payload> retryDoServiceAsync(final SessionLease lease,
+            final SessionAuthenticationMethod staleAuth,
+            final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL,
+            final Executor exec) {
+        return renewSessionAsync(lease, staleAuth, exec).thenCompose(auth ->
+                        sendDoServiceAsync(auth, dcp_type, serviceRequest, requestParams, facadeURL, exec))
+                    .thenApply(response -> {
+                            if (response.containsException()) {
+                                if (logger.isDebugEnabled()) {
+                                    logger.debug("async doRequest failed second time in a row => give up.");
+                                }
+                                throw new CompletionException(rejected(response));
+                            }
+                            return response;
+                        });
+    }
+
+    /**
+     * Performs a batch of doService requests, i.e. all tiles of a map view, and blocks until all of them have been
+     * answered. At most <code>maxConcurrency</code> requests are sent at the same time; note that the connection
+     * manager may further limit the number of parallel connections to the WSS. A session is acquired before the first
+     * request is sent; if a session pool is used, the requests are spread across its sessions. The results are passed
+     * to the callback in the order in which the requests complete.
+     *
+     * @param   requests        the requests to perform
+     * @param   maxConcurrency  maximum number of requests that are sent at the same time
+     * @param   callback        receives the result of each request
+     *
+     * @throws  ServiceException  Thrown if no session could be acquired or if the batch has been interrupted. Failures
+     *                            of single requests are passed to the callback.
+     */
+    public void doServiceBatch(final Collection<DoServiceRequest> requests,
+            final int maxConcurrency,
+            final DoServiceCallback callback) throws ServiceException {
+        try {
+            doServiceBatchAsync(requests, maxConcurrency, callback).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof ServiceException) {
+                throw (ServiceException)ex.getCause();
+            }
+            throw new ServiceException(ex);
+        }
+    }
+
+    /**
+     * Performs a batch of doService requests without blocking the calling thread. See
+     * {@link #doServiceBatch(java.util.Collection, int, net.environmatics.acs.accessor.interfaces.DoServiceCallback)}.
+     *
+     * @param   requests        the requests to perform
+     * @param   maxConcurrency  maximum number of requests that are sent at the same time
+     * @param   callback        receives the result of each request
+     *
+     * @return  a future that is completed when the callback has received all results, or completed exceptionally with
+     *          a {@link ServiceException} if no session could be acquired. For an empty batch the future is completed
+     *          at once.
+     *
+     * @throws  NullPointerException      DOCUMENT ME!
+     * @throws  IllegalArgumentException  if <code>maxConcurrency</code> is less than 1
+     */
+    public CompletableFuture<Void> doServiceBatchAsync(final Collection<DoServiceRequest> requests,
+            final int maxConcurrency,
+            final DoServiceCallback callback) {
+        if (wss_url == null) {
+            throw new NullPointerException("wss_url is not initialized");
+        }
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1: " + maxConcurrency);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("doService batch with " + requests.size() + " requests, max concurrency: "
+                        + maxConcurrency);
+        }
+        final Queue<DoServiceRequest> pending = new ConcurrentLinkedQueue<DoServiceRequest>(requests);
+        if (pending.isEmpty()) {
+            // nothing to send, so no session is needed either
+            return CompletableFuture.completedFuture(null);
+        }
+        final Executor exec = getExecutor();
+        final int lanes = Math.min(maxConcurrency, pending.size());
+
+        final SessionLease lease = leaseSession();
+        final CompletableFuture<SessionAuthenticationMethod> session = acquireSessionAsync(lease, exec);
+        session.whenComplete((auth, ex) -> releaseSession(lease));
+
+        return session.thenCompose(auth -> {
+                    final CompletableFuture<?>[] running = new CompletableFuture<?>[lanes];
+                    for (int i = 0; i < lanes; i++) {
+                        running[i] = CompletableFuture.runAsync(() -> runBatchLane(pending, callback), exec);
                     }
-                    lastDoServiceFailed = false;
-                }
-                if (logger.isDebugEnabled()) {
-                    logger.debug(doServiceResponse.asText());
+                    return CompletableFuture.allOf(running);
+                });
+    }
+
+    /**
+     * Sends the pending requests of a batch one after another until the queue is empty. Each batch runs
+     * <code>maxConcurrency</code> lanes at the same time.
+     *
+     * @param  pending   the requests that have not been sent yet
+     * @param  callback  receives the result of each request
+     */
+    private void runBatchLane(final Queue<DoServiceRequest> pending, final DoServiceCallback callback) {
+        DoServiceRequest request;
+        while ((request = pending.poll()) != null) {
+            Payload response = null;
+            ServiceException failure = null;
+            try {
+                // the batch has already acquired a session, each request picks the least used slot of the pool
+                response = performDoService(
+                        request.getDcpType(),
+                        request.getServiceRequest(),
+                        request.getRequestParams(),
+                        request.getFacadeURL());
+            } catch (ServiceException ex) {
+                failure = ex;
+            } catch (RuntimeException ex) {
+                // keep the lane running, so the remaining requests of the batch are still reported
+                logger.error("doService failed unexpectedly for " + request, ex);
+                failure = new ServiceException(ex);
+            }
+            try {
+                if (failure == null) {
+                    callback.completed(request, response);
+                } else {
+                    callback.failed(request, failure);
                 }
-                return doServiceResponse;
-            } catch (IOException rethrow) {
-                logger.error("Error in doService(). Exception: " + rethrow);
-                throw rethrow;
-//            } finally {
-//                logger.debug("deadlock:read unlock: "+readlockID+" counter: " + readLockCounter);
-//                readLockCounter--;
-//                lock.readLock().unlock();
-//                logger.debug("deadlock:read unlock done"+readlockID+" counter: " +readLockCounter);
+            } catch (RuntimeException ex) {
+                logger.error("DoServiceCallback failed for " + request, ex);
             }
-        } catch (IOException ex) {
-            logger.error("Could not perform doService(). Exception: " + ex);
-            throw new ServiceException(ex);
-//        } finally {
-//            logger.debug("deadlock:read unlock" + readLockCounter);
-//            readLockCounter--;
-//            lock.readLock().unlock();
-//            logger.debug("deadlock:read unlock done" + readLockCounter);
         }
     }
 
     /**
-     * Starts a new session with the authentication metod that was set before. This method is first trying to close the
-     * current session
+     * Sends a single doService request through {@link WSSTransport#executeAsync(WSSRequest, Executor)}. A blocking
+     * transport performs the request on the given executor.
+     *
+     * @param   auth            the session used for this request
+     * @param   dcp_type        HTTP_GET or HTTP_POST
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters
+     * @param   facadeURL       String with an URL to facade
+     * @param   exec            the executor for blocking work
+     *
+     * @return  a future with the raw doService response
+     */
+    private CompletableFuture<Payload> sendDoServiceAsync(final SessionAuthenticationMethod auth,
+            final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL,
+            final Executor exec) {
+        final RequestSample sample = startSample(RequestType.DO_SERVICE, facadeURL);
+        final CompletableFuture<Payload> result;
+        try {
+            final WSSRequest request = createDoServiceRequest(
+                    sample,
+                    auth,
+                    dcp_type,
+                    serviceRequest,
+                    requestParams,
+                    facadeURL);
+            result = executeDoServiceAsync(sample, request, exec).thenApply(exchange -> {
+                        try {
+                            final Payload response = readPayload(sample, exchange);
+                            sample.mark(Phase.POST_PROCESSING);
+                            return response;
+                        } catch (ServiceException ex) {
+                            throw new CompletionException(ex);
+                        }
+                    });
+        } catch (RuntimeException ex) {
+            sample.finish(false);
+            throw ex;
+        }
+        return result.whenComplete((response, ex) -> sample.finish((ex == null) && !response.containsException()));
+    }
+
+    /**
+     * Asynchronous variant of {@link #acquireSession(SessionLease)}. Completes immediately if a session is available.
+     *
+     * @param   lease  the slot of the session pool
+     * @param   exec   the executor that starts a new session if necessary
+     *
+     * @return  a future with the current session of the slot
+     */
+    private CompletableFuture<SessionAuthenticationMethod> acquireSessionAsync(final SessionLease lease,
+            final Executor exec) {
+        final SessionAuthenticationMethod auth = lease.getAuth();
+        if ((auth != null) && lease.isCurrent()) {
+            return CompletableFuture.completedFuture(auth);
+        }
+        return renewSessionAsync(lease, null, exec);
+    }
+
+    /**
+     * Asynchronous variant of {@link #renewSession(SessionLease, SessionAuthenticationMethod)}.
+     *
+     * @param   lease      the slot of the session pool
+     * @param   staleAuth  the session that failed, or <code>null</code> if there was no session yet
+     * @param   exec       the executor that performs the renewal
+     *
+     * @return  a future with the session that replaces <code>staleAuth</code>
+     */
+    private CompletableFuture<SessionAuthenticationMethod> renewSessionAsync(final SessionLease lease,
+            final SessionAuthenticationMethod staleAuth,
+            final Executor exec) {
+        return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return renewSession(lease, staleAuth);
+                    } catch (ServiceException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, exec);
+    }
+
+    /**
+     * Sends a single doService request with the given session and returns the response of the WSS without inspecting
+     * it.
+     *
+     * @param   auth            the session used for this request
+     * @param   dcp_type        HTTP_GET or HTTP_POST
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  the raw doService response
+     *
+     * @throws  ServiceException  Thrown if the request could not be performed.
+     */
+    private Payload sendDoService(final SessionAuthenticationMethod auth,
+            final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) throws ServiceException {
+        final RequestSample sample = startSample(RequestType.DO_SERVICE, facadeURL);
+        boolean success = false;
+        try {
+            final Payload response = readPayload(
+                    sample,
+                    executeDoService(sample, auth, dcp_type, serviceRequest, requestParams, facadeURL));
+            success = !response.containsException();
+            sample.mark(Phase.POST_PROCESSING);
+            return response;
+        } finally {
+            sample.finish(success);
+        }
+    }
+
+    /**
+     * Reads the response of a doService request and releases its connection.
+     *
+     * @param   sample    measures the download
+     * @param   response  the response
+     *
+     * @return  the raw doService response
+     *
+     * @throws  ServiceException  Thrown if the response could not be read.
+     */
+    private Payload readPayload(final RequestSample sample, final WSSResponse response) throws ServiceException {
+        try {
+            final WSSHeader contentType = response.getResponseHeader("Content-Type");
+            final byte[] body = response.getResponseBody();
+            sample.mark(Phase.DOWNLOAD);
+            sample.addBytesIn((body != null) ? body.length : 0);
+            return new Payload(
+                    body,
+                    response.getResponseCharSet(),
+                    (contentType != null) ? contentType.getValue() : null);
+        } catch (IOException ex) {
+            logger.error("Could not perform doService(). Exception: " + ex);
+            throw new ServiceException(ex);
+        } finally {
+            response.releaseConnection();
+        }
+    }
+
+    /**
+     * Sends a single doService request with the given session without reading the response body. The caller has to
+     * release the connection of the returned response.
+     *
+     * @param   sample          measures the build and the exchange
+     * @param   auth            the session used for this request
+     * @param   dcp_type        HTTP_GET or HTTP_POST
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  the response
+     *
+     * @throws  ServiceException  Thrown if the request could not be performed.
+     */
+    private WSSResponse executeDoService(final RequestSample sample,
+            final SessionAuthenticationMethod auth,
+            final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) throws ServiceException {
+        return executeDoService(
+                sample,
+                createDoServiceRequest(sample, auth, dcp_type, serviceRequest, requestParams, facadeURL));
+    }
+
+    /**
+     * Builds a doService request with the given session.
+     *
+     * @param   sample          measures the build
+     * @param   auth            the session used for this request
+     * @param   dcp_type        HTTP_GET or HTTP_POST
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  the request
+     */
+    private WSSRequest createDoServiceRequest(final RequestSample sample,
+            final SessionAuthenticationMethod auth,
+            final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) {
+        final String wssRequest = serviceRequest + "&sessionID=" + auth.getSessionID();
+        if (logger.isDebugEnabled()) {
+            logger.debug("WSS request: " + wssRequest);
+        }
+        final byte[] request = DoServiceTemplate.render(
+                dcp_type,
+                wssRequest,
+                auth,
+                requestParams,
+                facadeURL);
+        sample.mark(Phase.BUILD);
+        sample.addBytesOut(request.length);
+        if (logger.isDebugEnabled()) {
+            logger.debug("sending WSS request: " + new String(request, StandardCharsets.UTF_8));
+        }
+        return createDoServiceRequest(
+                dcp_type,
+                doServiceKey(dcp_type, facadeURL, serviceRequest),
+                WSSRequestEntity.of(request, "text/xml; charset=UTF-8"));
+    }
+
+    /**
+     * Creates the request that sends a doService request document to the WSS.
+     *
+     * @param   dcp_type       HTTP_GET or HTTP_POST
+     * @param   key            the request key, see {@link ExchangeRecord}
+     * @param   requestEntity  the doService request document
+     *
+     * @return  the request
+     */
+    private WSSRequest createDoServiceRequest(final String dcp_type,
+            final String key,
+            final WSSRequestEntity requestEntity) {
+        // TODO Achtung schauen ob get überhaupt funktioniert
+        String postMethod = wss_url;
+        if (dcp_type.equals(DCP_HTTP_GET)) {
+            postMethod = postMethod + "?";
+        }
+        return new WSSRequest(RequestType.DO_SERVICE, WSSRequest.POST, postMethod, null, requestEntity, key);
+    }
+
+    /**
+     * Sends a doService request without reading the response body. The caller has to release the connection of the
+     * returned response.
+     *
+     * @param   sample   measures the exchange
+     * @param   request  the doService request
+     *
+     * @return  the response
+     *
+     * @throws  ServiceException  Thrown if the request could not be performed.
+     */
+    private WSSResponse executeDoService(final RequestSample sample, final WSSRequest request)
+            throws ServiceException {
+        try {
+            final WSSResponse response = execute(sample, request);
+            if (logger.isDebugEnabled()) {
+                logger.debug("ResponseCharset: " + response.getResponseCharSet());
+                logger.debug("getStatusCode: " + response.getStatusCode());
+
+                final WSSHeader[] header = response.getResponseHeaders();
+                if (header != null) {
+                    for (final WSSHeader current : header) {
+                        logger.debug("Response Header: " + current.getName() + " value: " + current.getValue());
+                    }
+                }
+            }
+            return response;
+        } catch (IOException ex) {
+            logger.error("Could not perform doService(). Exception: " + ex);
+            throw new ServiceException(ex);
+        }
+    }
+
+    /**
+     * Performs a doService request on the selected WSS with a service request read from a Reader, i.e. a large WFS
+     * Transaction. The request is streamed to the WSS with chunked transfer encoding, so the memory needed does not
+     * depend on the size of the service request. The Reader is read once and not closed. The response is not cached.
+     * <br>
+     * <br>
+     * The service request cannot be sent twice. If the WSS answers with an exception, the session is renewed for the
+     * following requests and a ServiceException is thrown, the caller has to send the request again.
+     *
+     * @param   dcp_type        <b>Must</b> be
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_GET HTTP GET} or
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_POST HTTP POST}
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters, i.e. HTTP_Header / Mime-Type: text/xml
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  Payload, containing the doService response.
+     *
+     * @throws  ServiceException      Thrown in case of an error.
+     * @throws  NullPointerException  DOCUMENT ME!
+     */
+    @Override
+    public Payload doService(final String dcp_type,
+            final Reader serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) throws ServiceException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("streaming service request to facade url: " + facadeURL);
+        }
+        if (wss_url == null) {
+            throw new NullPointerException("wss_url is not initialized");
+        }
+
+        final SessionLease lease = leaseSession();
+        try {
+            final SessionAuthenticationMethod auth = acquireSession(lease);
+            final RequestSample sample = startSample(RequestType.DO_SERVICE, facadeURL);
+            final Payload doServiceResponse;
+            boolean success = false;
+            try {
+                final WSSRequestEntity requestEntity = createDoServiceEntity(
+                        dcp_type,
+                        serviceRequest,
+                        auth,
+                        requestParams,
+                        facadeURL);
+                sample.mark(Phase.BUILD);
+                doServiceResponse = readPayload(
+                        sample,
+                        executeDoService(
+                                sample,
+                                createDoServiceRequest(
+                                        dcp_type,
+                                        doServiceKey(dcp_type, facadeURL, ""),
+                                        requestEntity)));
+                success = !doServiceResponse.containsException();
+                sample.mark(Phase.POST_PROCESSING);
+            } finally {
+                sample.finish(success);
+            }
+            if (!success) {
+                final ServiceExceptionReport report = ServiceExceptionReport.parse(doServiceResponse);
+                if (report.isSessionFailure()) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("streamed doRequest failed => renew session, the request cannot be sent again.");
+                    }
+                    renewSession(lease, auth);
+                }
+                throw new ServiceExceptionReportException(doServiceResponse.asText(), report);
+            }
+            return doServiceResponse;
+        } finally {
+            releaseSession(lease);
+        }
+    }
+
+    /**
+     * Performs a doService request on the selected WSS with a service request read from an InputStream. See
+     * {@link #doService(java.lang.String, java.io.Reader, org.apache.commons.httpclient.NameValuePair[],
+     * java.lang.String)}.
+     *
+     * @param   dcp_type        <b>Must</b> be
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_GET HTTP GET} or
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_POST HTTP POST}
+     * @param   serviceRequest  Request to a secured service
+     * @param   charset         the charset of the service request, i.e. UTF-8
+     * @param   requestParams   An array with request parameters, i.e. HTTP_Header / Mime-Type: text/xml
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  Payload, containing the doService response.
+     *
+     * @throws  ServiceException  Thrown in case of an error.
+     */
+    @Override
+    public Payload doService(final String dcp_type,
+            final InputStream serviceRequest,
+            final String charset,
+            final NameValuePair[] requestParams,
+            final String facadeURL) throws ServiceException {
+        final Reader reader;
+        try {
+            reader = new InputStreamReader(serviceRequest, charset);
+        } catch (UnsupportedEncodingException ex) {
+            throw new ServiceException(ex);
+        }
+        return doService(dcp_type, reader, requestParams, facadeURL);
+    }
+
+    /**
+     * Performs a doService request on the selected WSS and returns the response as stream, without buffering it in
+     * memory. Use this method for large responses, i.e. WFS GetFeature requests. The response is not cached.<br>
+     * <br>
+     * ServiceExceptionReports are detected from the first {@link StreamingPayload#LOOK_AHEAD} bytes of the response.
+     * If the WSS answers with an exception, the session is renewed once and the request is sent again.<br>
+     * <br>
+     * The returned payload holds a pooled connection and <b>must</b> be closed.
+     *
+     * @param   dcp_type        <b>Must</b> be
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_GET HTTP GET} or
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_POST HTTP POST}
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters, i.e. HTTP_Header / Mime-Type: text/xml
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  StreamingPayload, containing the doService response.
+     *
+     * @throws  ServiceException      Thrown in case of an error.
+     * @throws  NullPointerException  DOCUMENT ME!
+     */
+    public StreamingPayload doServiceStreaming(final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) throws ServiceException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("streaming service request: " + serviceRequest + " facade url: " + facadeURL);
+        }
+        if (wss_url == null) {
+            throw new NullPointerException("wss_url is not initialized");
+        }
+
+        // the slot counts as used until the response headers are received
+        final SessionLease lease = leaseSession();
+        try {
+            final SessionAuthenticationMethod auth = acquireSession(lease);
+            final StreamingPayload response = sendDoServiceStreaming(
+                    auth,
+                    dcp_type,
+                    serviceRequest,
+                    requestParams,
+                    facadeURL);
+            if (!response.containsException()) {
+                return response;
+            }
+            final Payload rejection;
+            try {
+                rejection = response.toPayload();
+            } catch (IOException ex) {
+                throw new ServiceException(ex);
+            } finally {
+                response.close();
+            }
+            final ServiceExceptionReport report = ServiceExceptionReport.parse(rejection);
+            if (!report.isSessionFailure()) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("streaming doRequest rejected, not because of the session => give up. " + report);
+                }
+                throw new ServiceExceptionReportException(rejection.asText(), report);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("streaming doRequest failed first time => renew session and try again.");
+            }
+            countRetry(facadeURL);
+            final StreamingPayload retryResponse = sendDoServiceStreaming(
+                    renewSession(lease, auth),
+                    dcp_type,
+                    serviceRequest,
+                    requestParams,
+                    facadeURL);
+            if (!retryResponse.containsException()) {
+                return retryResponse;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("streaming doRequest failed second time in a row => give up (throw Exception).");
+            }
+            try {
+                throw rejected(retryResponse.toPayload());
+            } catch (IOException ex) {
+                throw new ServiceException(ex);
+            } finally {
+                retryResponse.close();
+            }
+        } finally {
+            releaseSession(lease);
+        }
+    }
+
+    /**
+     * Sends a single doService request with the given session and returns the response as stream. The metrics of the
+     * request end with the look-ahead of the response, the download of the rest is not measured.
+     *
+     * @param   auth            the session used for this request
+     * @param   dcp_type        HTTP_GET or HTTP_POST
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  the raw doService response
+     *
+     * @throws  ServiceException  Thrown if the request could not be performed.
+     */
+    private StreamingPayload sendDoServiceStreaming(final SessionAuthenticationMethod auth,
+            final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) throws ServiceException {
+        final RequestSample sample = startSample(RequestType.DO_SERVICE, facadeURL);
+        boolean success = false;
+        try {
+            final WSSResponse exchange = executeDoService(
+                    sample,
+                    auth,
+                    dcp_type,
+                    serviceRequest,
+                    requestParams,
+                    facadeURL);
+            final StreamingPayload response;
+            try {
+                response = new StreamingPayload(exchange, exchange.getResponseCharSet());
+            } catch (IOException ex) {
+                exchange.abort();
+                exchange.releaseConnection();
+                logger.error("Could not perform doService(). Exception: " + ex);
+                throw new ServiceException(ex);
+            }
+            sample.mark(Phase.DOWNLOAD);
+            success = !response.containsException();
+            sample.mark(Phase.POST_PROCESSING);
+            return response;
+        } finally {
+            sample.finish(success);
+        }
+    }
+
+    /**
+     * Picks the slot of the session pool with the fewest outstanding requests and marks it as used. Slots with the same
+     * number of outstanding requests take turns. Every call has to be followed by
+     * {@link #releaseSession(SessionLease)}.
+     *
+     * @return  the slot to use
+     */
+    private SessionLease leaseSession() {
+        final SessionLease[] leases = sessionLeases;
+        SessionLease best = leases[0];
+        if (leases.length > 1) {
+            final int start = (nextLease.getAndIncrement() & Integer.MAX_VALUE) % leases.length;
+            int bestOutstanding = Integer.MAX_VALUE;
+            for (int i = 0; (i < leases.length) && (bestOutstanding > 0); i++) {
+                final SessionLease lease = leases[(start + i) % leases.length];
+                final int outstanding = lease.getOutstanding();
+                if (outstanding < bestOutstanding) {
+                    best = lease;
+                    bestOutstanding = outstanding;
+                }
+            }
+        }
+        best.acquire();
+        return best;
+    }
+
+    /**
+     * Marks a request on a slot of the session pool as finished. Closes the session of the slot if it has been removed
+     * from the pool and this was its last request.
+     *
+     * @param  lease  the slot that has been used
+     */
+    private void releaseSession(final SessionLease lease) {
+        if (lease.release()) {
+            closeLease(lease);
+        }
+    }
+
+    /**
+     * Closes the session of a slot that has been removed from the session pool.
+     *
+     * @param  lease  the removed slot
+     */
+    private void closeLease(final SessionLease lease) {
+        final SessionInformation leaseSessionInfo;
+        lease.getRenewLock().lock();
+        try {
+            // a cached session is closed by the session cache
+            leaseSessionInfo = lease.isShared() ? null : lease.getSessionInformation();
+            lease.setSession(null, null);
+            lease.setRenewal(null);
+        } finally {
+            lease.getRenewLock().unlock();
+        }
+        sessionCloser.close(leaseSessionInfo, 0);
+    }
+
+    /**
+     * Starts measuring a request to the WSS.
+     *
+     * @param   type       the type of the request
+     * @param   facadeURL  the facade URL of a doService request, <code>null</code> for other requests
+     *
+     * @return  the running sample, {@link RequestSample#DISABLED} if no metrics are recorded
+     */
+    private RequestSample startSample(final RequestType type, final String facadeURL) {
+        final AccessorMetrics m = metrics;
+        return (m != null) ? m.start(wss_url, facadeURL, type) : RequestSample.DISABLED;
+    }
+
+    /**
+     * Counts a doService request that is sent again after its session has been renewed.
+     *
+     * @param  facadeURL  the facade URL of the request
+     */
+    private void countRetry(final String facadeURL) {
+        final AccessorMetrics m = metrics;
+        if (m != null) {
+            m.countRetry(wss_url, facadeURL);
+        }
+    }
+
+    /**
+     * Sends a request through the transport and records the time spent waiting for a pooled connection and the time
+     * until the status line and headers of the response arrived. If a {@link TrafficRecorder} is set, the body of the
+     * response is read and the exchange is recorded.
+     *
+     * @param   sample   measures the exchange
+     * @param   request  the request
+     *
+     * @return  the response
+     *
+     * @throws  IOException  if the request fails
+     */
+    private WSSResponse execute(final RequestSample sample, final WSSRequest request) throws IOException {
+        final TrafficRecorder recorder = trafficRecorder;
+        final long start = System.nanoTime();
+        final WSSResponse response;
+        try {
+            response = transport.execute(request);
+        } catch (IOException ex) {
+            if (recorder != null) {
+                recordFailure(recorder, request, start, ex);
+            }
+            throw ex;
+        }
+        sample.mark(Phase.POOL_WAIT, response.getConnectionWaitTime(), Phase.TIME_TO_FIRST_BYTE);
+        if (recorder != null) {
+            try {
+                recordExchange(recorder, request, start, response);
+            } catch (IOException ex) {
+                response.releaseConnection();
+                recordFailure(recorder, request, start, ex);
+                throw ex;
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Sends a doService request through {@link WSSTransport#executeAsync(WSSRequest, Executor)}. See
+     * {@link #execute(RequestSample, WSSRequest)}. The future is completed when the whole response has been received,
+     * so the download is part of the time to first byte.
+     *
+     * @param   sample   measures the exchange
+     * @param   request  the doService request
+     * @param   exec     the executor for blocking work
+     *
+     * @return  a future with the response, or completed exceptionally with a {@link ServiceException}
+     */
+    private CompletableFuture<WSSResponse> executeDoServiceAsync(final RequestSample sample,
+            final WSSRequest request,
+            final Executor exec) {
+        final TrafficRecorder recorder = trafficRecorder;
+        final long start = System.nanoTime();
+        return transport.executeAsync(request, exec).handle((response, failure) -> {
+                    Throwable cause = failure;
+                    if ((failure instanceof CompletionException) && (failure.getCause() != null)) {
+                        cause = failure.getCause();
+                    }
+                    if (cause == null) {
+                        sample.mark(Phase.POOL_WAIT, response.getConnectionWaitTime(), Phase.TIME_TO_FIRST_BYTE);
+                        if (recorder == null) {
+                            return response;
+                        }
+                        try {
+                            recordExchange(recorder, request, start, response);
+                            return response;
+                        } catch (IOException ex) {
+                            response.releaseConnection();
+                            cause = ex;
+                        }
+                    }
+                    if ((recorder != null) && (cause instanceof IOException)) {
+                        recordFailure(recorder, request, start, (IOException)cause);
+                    }
+                    logger.error("Could not perform doService(). Exception: " + cause);
+                    if (cause instanceof Exception) {
+                        throw new CompletionException(new ServiceException((Exception)cause));
+                    }
+                    throw new CompletionException(cause);
+                });
+    }
+
+    /**
+     * Reads the body of a response and writes the exchange to the traffic log.
+     *
+     * @param   recorder  the recorder
+     * @param   request   the request
+     * @param   start     the value of {@link System#nanoTime()} when the request was sent
+     * @param   response  the response, its status line and headers have been received
+     *
+     * @throws  IOException  if the body could not be read
+     */
+    private static void recordExchange(final TrafficRecorder recorder,
+            final WSSRequest request,
+            final long start,
+            final WSSResponse response) throws IOException {
+        final long firstByte = System.nanoTime();
+        // buffers the body in the response, so the caller can still read it
+        final byte[] body = response.getResponseBody();
+        record(
+                recorder,
+                new ExchangeRecord(
+                        request.getType(),
+                        request.getKey(),
+                        recorder.toMicros(start),
+                        TimeUnit.NANOSECONDS.toMicros(firstByte - start),
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start),
+                        response.getStatusCode(),
+                        response.getResponseHeaders(),
+                        body));
+    }
+
+    /**
+     * Writes an exchange that failed with an I/O error to the traffic log.
+     *
+     * @param  recorder  the recorder
+     * @param  request   the request
+     * @param  start     the value of {@link System#nanoTime()} when the request was sent
+     * @param  ex        the error
+     */
+    private static void recordFailure(final TrafficRecorder recorder,
+            final WSSRequest request,
+            final long start,
+            final IOException ex) {
+        record(
+                recorder,
+                ExchangeRecord.failed(
+                        request.getType(),
+                        request.getKey(),
+                        recorder.toMicros(start),
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start),
+                        ex.toString()));
+    }
+
+    /**
+     * Writes an exchange to the traffic log. Errors are logged, the request is not affected.
+     *
+     * @param  recorder  the recorder
+     * @param  record    the exchange
+     */
+    private static void record(final TrafficRecorder recorder, final ExchangeRecord record) {
+        try {
+            recorder.record(record);
+        } catch (IOException ex) {
+            logger.error("Could not record exchange " + record, ex);
+        }
+    }
+
+    /**
+     * Creates the body of a doService request that streams the service request from a Reader. If no
+     * {@link DoServiceTemplate} is available for the request, the service request is read into memory and the request
+     * is rendered with dom4j.
+     *
+     * @param   dcp_type        HTTP_GET or HTTP_POST
+     * @param   serviceRequest  Request to a secured service, without the session
+     * @param   auth            the session
+     * @param   requestParams   the request parameters
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  the request entity
+     *
+     * @throws  ServiceException  if the service request could not be read
+     */
+    private static WSSRequestEntity createDoServiceEntity(final String dcp_type,
+            final Reader serviceRequest,
+            final SessionAuthenticationMethod auth,
+            final NameValuePair[] requestParams,
+            final String facadeURL) throws ServiceException {
+        final String sessionParameter = "&sessionID=" + auth.getSessionID();
+        final DoServiceTemplate template = DoServiceTemplate.get(dcp_type, auth, requestParams, facadeURL);
+        if (template != null) {
+            return new DoServiceRequestEntity(template, serviceRequest, sessionParameter);
+        }
+        try {
+            return WSSRequestEntity.of(DoServiceTemplate.render(
+                        dcp_type,
+                        IOUtils.toString(serviceRequest) + sessionParameter,
+                        auth,
+                        requestParams,
+                        facadeURL),
+                    DoServiceRequestEntity.CONTENT_TYPE);
+        } catch (IOException ex) {
+            logger.error("Could not read the service request. Exception: " + ex);
+            throw new ServiceException(ex);
+        }
+    }
+
+    /**
+     * Returns the request key of a doService request, see {@link ExchangeRecord}.
+     *
+     * @param   dcp_type        HTTP_GET or HTTP_POST
+     * @param   facadeURL       String with an URL to facade
+     * @param   serviceRequest  Request to a secured service, without the session
+     *
+     * @return  the key
+     */
+    private static String doServiceKey(final String dcp_type, final String facadeURL, final String serviceRequest) {
+        return dcp_type + " " + facadeURL + " " + serviceRequest;
+    }
+
+    /**
+     * Returns the request key of a GetSession request, the URN of the authentication method.
+     *
+     * @param   authentication  the parameters of the authentication method
+     *
+     * @return  the key
+     */
+    private static String getSessionKey(final NameValuePair[] authentication) {
+        for (final NameValuePair pair : authentication) {
+            if ("AUTHMETHOD".equals(pair.getName())) {
+                return pair.getValue();
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Creates a POST request to the WSS with form parameters, i.e. a GetSession or CloseSession request.
+     *
+     * @param   type        the type of the request
+     * @param   parameters  the form parameters
+     * @param   key         the request key, see {@link ExchangeRecord}
+     *
+     * @return  the request
+     */
+    private WSSRequest createFormRequest(final RequestType type, final NameValuePair[] parameters, final String key) {
+        final String content = EncodingUtil.formUrlEncode(parameters, FORM_CHARSET);
+        return new WSSRequest(
+                type,
+                WSSRequest.POST,
+                wss_url + "?",
+                null,
+                WSSRequestEntity.of(EncodingUtil.getAsciiBytes(content), PostMethod.FORM_URL_ENCODED_CONTENT_TYPE),
+                key);
+    }
+
+    /**
+     * Creates the exception for a doService response the WSS answered with a ServiceExceptionReport.
+     *
+     * @param   response  the rejected response
+     *
+     * @return  the exception with the raw and the parsed report
+     */
+    private static ServiceExceptionReportException rejected(final Payload response) {
+        return new ServiceExceptionReportException(response.asText(), ServiceExceptionReport.parse(response));
+    }
+
+    /**
+     * Returns the session of a slot of the session pool. If the slot has no session yet or its session has been evicted
+     * from the session cache, a new one is started.
+     *
+     * @param   lease  the slot of the session pool
+     *
+     * @return  the current session of the slot
+     *
+     * @throws  ServiceException  Thrown if no session could be started.
+     */
+    private SessionAuthenticationMethod acquireSession(final SessionLease lease) throws ServiceException {
+        final SessionAuthenticationMethod auth = lease.getAuth();
+        if ((auth != null) && lease.isCurrent()) {
+            return auth;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("not yet authed => call newSession()");
+        }
+        return renewSession(lease, null);
+    }
+
+    /**
+     * Replaces a session that has been rejected by the WSS. Only one renewal per slot runs at a time: requests that
+     * find the session expired while another request is already renewing it wait for that renewal and use its result
+     * instead of starting a session of their own. Requests on the other slots of the pool are not affected.
+     *
+     * @param   lease      the slot of the session pool
+     * @param   staleAuth  the session that failed, or <code>null</code> if there was no session yet
+     *
+     * @return  the session that replaces <code>staleAuth</code>
+     *
+     * @throws  ServiceException  Thrown if no session could be started.
+     */
+    private SessionAuthenticationMethod renewSession(final SessionLease lease,
+            final SessionAuthenticationMethod staleAuth) throws ServiceException {
+        lease.getRenewLock().lock();
+        try {
+            final SessionAuthenticationMethod auth = lease.getAuth();
+            if ((auth != null) && (auth != staleAuth) && lease.isCurrent()) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("session has already been renewed by a concurrent request");
+                }
+                return auth;
+            }
+            return newSession(lease);
+        } finally {
+            lease.getRenewLock().unlock();
+        }
+    }
+
+    /**
+     * Starts a new session for a slot of the session pool with the authentication metod that was set before. The
+     * current session of the slot is closed in the background, so the renewal only waits for the GetSession
+     * round-trip. Must only be called by {@link #renewSession(SessionLease, SessionAuthenticationMethod)}.
+     *
+     * @param   lease  the slot of the session pool
+     *
+     * @return  the new session
+     *
+     * @throws  ServiceException  Thrown in case of an error.
+     */
+    private SessionAuthenticationMethod newSession(final SessionLease lease) throws ServiceException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("newSession()");
+        }
+
+        final SessionCache cache = sessionCache;
+        final SessionCache.Entry staleEntry = lease.getCachedSession();
+        final AccessorMetrics m = metrics;
+        if ((m != null) && ((staleEntry != null) || (lease.getSessionInformation() != null))) {
+            m.countRenewal(wss_url);
+        }
+        if (staleEntry != null) {
+            // the cached session has been rejected or has expired, so it must not be handed out again
+            if (cache != null) {
+                cache.invalidate(staleEntry);
+            }
+        } else {
+            // the current session has been rejected or is not used anymore
+            sessionCloser.close(lease.getSessionInformation(), 0);
+        }
+        if ((cache != null) && (lease == sessionLeases[0])) {
+            return newCachedSession(cache, lease);
+        }
+        try {
+            if (logger.isDebugEnabled()) {
+                logger.debug("authenticate => starting a session for the slot");
+            }
+            final SessionInformation sInfo = startSession(authnMethod);
+            final SessionAuthenticationMethod auth = new SessionAuthenticationMethod(sInfo);
+            lease.setSession(sInfo, auth);
+            scheduleRenewal(lease, sInfo, auth);
+            return auth;
+        } catch (AuthenticationFailedException ex) {
+            lease.setSession(null, null);
+            logger.error("Authentication failed couldn't aquire session id: ", ex);
+            throw new ServiceException(ex);
+        }
+    }
+
+    /**
+     * Takes the session of the first slot of the session pool from the session cache, or starts a new one and adds it
+     * to the cache. Cached sessions are not renewed in the background, they are replaced once they expire in the
+     * cache. Must only be called by {@link #newSession(SessionLease)}.
+     *
+     * @param   cache  the session cache
+     * @param   lease  the first slot of the session pool
+     *
+     * @return  the cached session
+     *
+     * @throws  ServiceException  Thrown in case of an error.
+     */
+    private SessionAuthenticationMethod newCachedSession(final SessionCache cache, final SessionLease lease)
+            throws ServiceException {
+        final AuthenticationMethod authentication = authnMethod;
+        try {
+            final SessionCache.Entry entry = cache.acquire(
+                    wss_url,
+                    authentication,
+                    sessionCloser,
+                    new SessionCache.SessionLoader() {
+
+                        @Override
+                        public SessionInformation load() throws AuthenticationFailedException {
+                            if (logger.isDebugEnabled()) {
+                                logger.debug("session not cached => starting a session");
+                            }
+                            return startSession(authentication);
+                        }
+                    });
+            lease.setSession(entry);
+            return entry.getAuth();
+        } catch (AuthenticationFailedException ex) {
+            lease.setSession(null, null);
+            logger.error("Authentication failed couldn't aquire session id: ", ex);
+            throw new ServiceException(ex);
+        }
+    }
+
+    /**
+     * Schedules the background renewal of a session shortly before it expires. Nothing is scheduled if the expiration
+     * date of the session is unknown. Must only be called while holding the renew lock of the slot.
+     *
+     * @param  lease     the slot of the session pool
+     * @param  sInfo     the session information of the current session of the slot
+     * @param  expected  the current session of the slot
+     */
+    private void scheduleRenewal(final SessionLease lease,
+            final SessionInformation sInfo,
+            final SessionAuthenticationMethod expected) {
+        final Date expirationDate = sInfo.getExpirationDate();
+        if (expirationDate == null) {
+            return;
+        }
+        final long remaining = expirationDate.getTime() - System.currentTimeMillis();
+        // renew at the margin before expiry, but not sooner than halfway through short lifetimes
+        final long delay = Math.max(remaining - sessionRenewalMargin, remaining / 2);
+        if (logger.isDebugEnabled()) {
+            logger.debug("session " + sInfo.getSessionID() + " expires " + expirationDate + ", renewal in " + delay
+                        + " ms");
+        }
+        lease.setRenewal(SESSION_RENEWER.schedule(
+                new SessionRenewal(this, lease, expected),
+                Math.max(delay, 0),
+                TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Replaces a session that is about to expire. The new session is started without blocking the requests on the
+     * slot, which keep using the old session until the new one is swapped in. The old session is closed after a grace
+     * period, so requests that are still using it are not disturbed. A session that has not been used since it was
+     * started is closed instead, the next request starts a new one.
+     *
+     * @param  lease     the slot of the session pool
+     * @param  expected  the session that is about to expire
+     */
+    private void renewBeforeExpiry(final SessionLease lease, final SessionAuthenticationMethod expected) {
+        if (lease.isRetired() || (lease.getAuth() != expected)) {
+            return;
+        }
+        if (!lease.isUsedSinceStart()) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("session " + expected.getSessionID() + " is idle => close it instead of renewing it");
+            }
+            sessionCloser.close(swapSession(lease, expected, null), 0);
+            return;
+        }
+        final SessionInformation sInfo;
+        try {
+            sInfo = startSession(authnMethod);
+        } catch (AuthenticationFailedException ex) {
+            // the next request that fails renews the session
+            logger.warn("Could not renew session before it expires", ex);
+            return;
+        }
+        final SessionInformation staleSessionInfo = swapSession(lease, expected, sInfo);
+        if (staleSessionInfo == sInfo) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("session has already been renewed by a request => discard new session");
+            }
+            sessionCloser.close(sInfo, 0);
+        } else {
+            if (logger.isDebugEnabled()) {
+                logger.debug("session renewed before expiry: " + sInfo.getSessionID());
+            }
+            sessionCloser.close(staleSessionInfo, SESSION_CLOSE_DELAY);
+        }
+    }
+
+    /**
+     * Replaces the session of a slot if it is still the expected one.
+     *
+     * @param   lease     the slot of the session pool
+     * @param   expected  the session that is expected to be current
+     * @param   sInfo     the new session information or <code>null</code> to leave the slot empty
+     *
+     * @return  the replaced session information, or <code>sInfo</code> if the slot does not hold the expected session
+     *          anymore
+     */
+    private SessionInformation swapSession(final SessionLease lease,
+            final SessionAuthenticationMethod expected,
+            final SessionInformation sInfo) {
+        lease.getRenewLock().lock();
+        try {
+            if (lease.isRetired() || (lease.getAuth() != expected)) {
+                return sInfo;
+            }
+            final SessionInformation staleSessionInfo = lease.getSessionInformation();
+            if (sInfo == null) {
+                lease.setSession(null, null);
+            } else {
+                final SessionAuthenticationMethod auth = new SessionAuthenticationMethod(sInfo);
+                lease.setSession(sInfo, auth);
+                scheduleRenewal(lease, sInfo, auth);
+            }
+            return staleSessionInfo;
+        } finally {
+            lease.getRenewLock().unlock();
+        }
+    }
+
+    /**
+     * Computes the expiration date of a new session from the configured session lifetime.
+     *
+     * @return  the expiration date or <code>null</code> if no session lifetime is configured
+     */
+    private Date computeExpirationDate() {
+        final long lifetime = sessionLifetime;
+        return (lifetime > 0) ? new Date(System.currentTimeMillis() + lifetime) : null;
+    }
+
+    /**
+     * Sets the lifetime of WSS sessions. The Deegree WSS does not report when a session expires, so sessions are only
+     * renewed before they expire if their lifetime is configured. Otherwise a session is renewed when the WSS rejects
+     * a request.
+     *
+     * @param  sessionLifetime  the lifetime of a session in milliseconds, 0 if unknown
+     */
+    public void setSessionLifetime(final long sessionLifetime) {
+        this.sessionLifetime = sessionLifetime;
+    }
+
+    /**
+     * Returns the configured lifetime of WSS sessions.
+     *
+     * @return  the lifetime of a session in milliseconds, 0 if unknown
+     */
+    public long getSessionLifetime() {
+        return sessionLifetime;
+    }
+
+    /**
+     * Sets how long before its expiration a session is renewed in the background.
+     *
+     * @param  sessionRenewalMargin  the time in milliseconds, {@link #DEFAULT_SESSION_RENEWAL_MARGIN} by default
+     */
+    public void setSessionRenewalMargin(final long sessionRenewalMargin) {
+        this.sessionRenewalMargin = sessionRenewalMargin;
+    }
+
+    /**
+     * Returns how long before its expiration a session is renewed in the background.
+     *
+     * @return  the time in milliseconds
+     */
+    public long getSessionRenewalMargin() {
+        return sessionRenewalMargin;
+    }
+
+    /**
+     * Sets the number of WSS sessions that are used for doService requests. The WSS processes the requests of one
+     * session one after another, so concurrent requests are spread across the sessions: each request uses the session
+     * with the fewest outstanding requests. A session that fails is renewed without disturbing the requests on the
+     * other sessions. Sessions are started when they are first used. If the pool shrinks, the removed sessions are
+     * closed once their outstanding requests have finished.
+     *
+     * @param   size  the number of sessions, 1 by default
+     *
+     * @throws  IllegalArgumentException  if <code>size</code> is less than 1
+     */
+    public synchronized void setSessionPoolSize(final int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("session pool size must be at least 1: " + size);
+        }
+        final SessionLease[] leases = sessionLeases;
+        if (size == leases.length) {
+            return;
+        }
+        final SessionLease[] resized = Arrays.copyOf(leases, size);
+        for (int i = leases.length; i < size; i++) {
+            resized[i] = new SessionLease();
+        }
+        sessionLeases = resized;
+        for (int i = size; i < leases.length; i++) {
+            if (leases[i].retire()) {
+                closeLease(leases[i]);
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("session pool size: " + size);
+        }
+    }
+
+    /**
+     * Returns the number of WSS sessions that are used for doService requests.
+     *
+     * @return  the size of the session pool
+     */
+    public int getSessionPoolSize() {
+        return sessionLeases.length;
+    }
+
+    /**
+     * Sets the cache that shares sessions between accessors with the same WSS and the same credentials, see
+     * {@link SessionCache}. Only the first slot of the session pool takes its session from the cache, the other slots
+     * start sessions of their own. The cache takes effect when the first slot starts its next session.
+     *
+     * @param  sessionCache  the session cache or <code>null</code> to disable sharing
+     */
+    public void setSessionCache(final SessionCache sessionCache) {
+        this.sessionCache = sessionCache;
+    }
+
+    /**
+     * Returns the cache that shares sessions between accessors.
+     *
+     * @return  the session cache or <code>null</code>
+     */
+    public SessionCache getSessionCache() {
+        return sessionCache;
+    }
+
+    /**
+     * Closes the sessions of the session pool and waits up to {@link #DEFAULT_SHUTDOWN_TIMEOUT} until they and all
+     * sessions that are still waiting to be closed in the background are closed.
      *
-     * @throws  ServiceException  Thrown in case of an error.
+     * @return  true if all sessions have been closed in time
      */
-    private synchronized void newSession() throws ServiceException {
-        if (logger.isDebugEnabled()) {
-            logger.debug("newSession()");
-        }
+    public boolean shutdown() {
+        return shutdown(DEFAULT_SHUTDOWN_TIMEOUT);
+    }
 
-//        try {
-//            logger.debug("deadlock:write lock" + readLockCounter);
-//            lock.writeLock().lock();
-//            logger.debug("deadlock:write lock done" + readLockCounter);
-        try {
-            if (logger.isDebugEnabled()) {
-                logger.debug("first close current session");
-            }
-            closeSession();
-        } catch (ServiceException ex) {
-            logger.warn("Failure while closing session", ex);
+    /**
+     * Closes the sessions of the session pool and waits until they and all sessions that are still waiting to be
+     * closed in the background are closed. Background renewals are cancelled and replaced sessions that are still in
+     * their grace period are closed right away. Sessions taken from the session cache are left to the cache. The next
+     * doService request starts a new session.
+     *
+     * @param   timeout  maximum time in milliseconds to wait
+     *
+     * @return  true if all sessions have been closed in time
+     */
+    public boolean shutdown(final long timeout) {
+        closePooledSessions();
+        final boolean drained = sessionCloser.drain(timeout);
+        if (!drained) {
+            logger.warn(sessionCloser.getPendingCount() + " session(s) could not be closed within " + timeout + " ms");
         }
-        try {
-            if (logger.isDebugEnabled()) {
-                logger.debug("authenticate => calling getSession(authnMethod)");
+        return drained;
+    }
+
+    /**
+     * Empties the slots of the session pool and hands their sessions to the session closer. Sessions taken from the
+     * session cache are left to the cache.
+     */
+    private void closePooledSessions() {
+        for (final SessionLease lease : sessionLeases) {
+            final SessionInformation leaseSessionInfo;
+            lease.getRenewLock().lock();
+            try {
+                // a cached session is closed by the session cache
+                leaseSessionInfo = lease.isShared() ? null : lease.getSessionInformation();
+                lease.setSession(null, null);
+            } finally {
+                lease.getRenewLock().unlock();
             }
-            final SessionInformation sInfo = getSession(authnMethod);
-            currentAuth = new SessionAuthenticationMethod(sInfo);
-        } catch (AuthenticationFailedException ex) {
-            currentAuth = null;
-            logger.error("Authentication failed couldn't aquire session id: ", ex);
-            throw new ServiceException(ex);
-//            } finally {
-//            logger.debug("deadlock:write unlock" + readLockCounter);
-//            lock.writeLock().unlock();
-//            logger.debug("deadlock:write unlock done" + readLockCounter);
+            sessionCloser.close(leaseSessionInfo, 0);
         }
-//        } finally {
-//            logger.debug("deadlock:write unlock" + readLockCounter);
-//            lock.writeLock().unlock();
-//            logger.debug("deadlock:write unlock done" + readLockCounter);
-//        }
     }
 
     /**
@@ -377,63 +2051,27 @@ public class WSSAccessorDeegree implements WSSAccessor {
     }
 
     /**
-     * Establishes a session between the WSSAccessor and the remote WSS service.
+     * Establishes a session between the WSSAccessor and the remote WSS service. The authentication method is used for
+     * the sessions of later doService requests as well, and the session can be closed with {@link #closeSession()}.
      *
      * @param   authnMethod  The authentication method which should be used
      *
      * @return  DOCUMENT ME!
      *
      * @throws  AuthenticationFailedException  Is thrown, when the authentication fails
-     * @throws  NullPointerException           DOCUMENT ME!
      */
     @Override
     public SessionInformation getSession(final AuthenticationMethod authnMethod) throws AuthenticationFailedException {
         if (logger.isDebugEnabled()) {
             logger.debug("getSession()");
         }
-        if (wss_url == null) {
-            throw new NullPointerException("wss_url is not initialized");
-        }
-
         this.authnMethod = authnMethod;
-
-        try {
-            logger.info("getSession() with " + authnMethod.asText());
-
-            final PostMethod post = new PostMethod(wss_url + "?");
-            if (isCredentialProviderAvailable) {
-                post.setDoAuthentication(true);
-            }
-            final NameValuePair[] body = arrayMerge(
-                    authnMethod.asNameValue(),
-                    new NameValuePair[] {
-                        new NameValuePair("SERVICE", "WSS"),
-                        new NameValuePair("VERSION", "1.0"),
-                        new NameValuePair("REQUEST", "GetSession")
-                    });
-
-            post.setRequestBody(body);
-            client.executeMethod(post);
-
-            final Payload getSessionResponse = new Payload(post.getResponseBodyAsStream(), post.getResponseCharSet());
-
-            if (getSessionResponse.containsException()) {
-                throw new AuthenticationFailedException(getSessionResponse.asText());
-            }
-
-            sessionInfo = new SessionInformationDeegree(getSessionResponse);
-            logger.info("New Session with SessionID=" + sessionInfo.getSessionID() + " length: "
-                        + sessionInfo.getSessionID().length());
-
-            if ((sessionInfo.getSessionID() == null) || (sessionInfo.getSessionID().length() == 0)
-                        || (sessionInfo.getSessionID().length() == 2)) {
-                throw new AuthenticationFailedException("SessionID is null or equals  \"\"");
-            }
-            return sessionInfo;
-        } catch (IOException ioex) {
-            logger.info("Could not perform getSession(). Exception: " + ioex);
-            throw new AuthenticationFailedException(ioex);
+        final SessionInformation sInfo = startSession(authnMethod);
+        final SessionInformation replaced = sessionInfo.getAndSet(sInfo);
+        if ((replaced != null) && logger.isDebugEnabled()) {
+            logger.debug("session " + replaced.getSessionID() + " is not closed by closeSession() anymore");
         }
+        return sInfo;
     }
 
     /**
@@ -448,38 +2086,59 @@ public class WSSAccessorDeegree implements WSSAccessor {
         if (logger.isDebugEnabled()) {
             logger.debug("getSession() ");
         }
+        return startSession(authnMethod);
+    }
+
+    /**
+     * Starts a new session with the WSS. Neither the session nor the authentication method are stored in the
+     * accessor, so concurrent calls for different slots of the session pool each get their own session.
+     *
+     * @param   authentication  The authentication method which should be used
+     *
+     * @return  the new session
+     *
+     * @throws  AuthenticationFailedException  Is thrown, when the authentication fails
+     * @throws  NullPointerException           DOCUMENT ME!
+     */
+    private SessionInformation startSession(final AuthenticationMethod authentication)
+            throws AuthenticationFailedException {
         if (wss_url == null) {
             throw new NullPointerException("wss_url is not initialized");
         }
 
-        // AuthenticationMethod tmpAuth = authnMethod;
-
+        final RequestSample sample = startSample(RequestType.GET_SESSION, null);
+        boolean success = false;
         try {
-            logger.info("getSession() with " + authnMethod.asText());
+            logger.info("getSession() with " + authentication.asText());
 
-            final PostMethod post = new PostMethod(wss_url + "?");
-            if (isCredentialProviderAvailable) {
-                post.setDoAuthentication(true);
-            }
             final NameValuePair[] body = arrayMerge(
-                    authnMethod.asNameValue(),
+                    authentication.asNameValue(),
                     new NameValuePair[] {
                         new NameValuePair("SERVICE", "WSS"),
                         new NameValuePair("VERSION", "1.0"),
                         new NameValuePair("REQUEST", "GetSession")
                     });
 
-            post.setRequestBody(body);
-            final HttpClient tmpClient = new HttpClient(new MultiThreadedHttpConnectionManager());
-            tmpClient.executeMethod(post);
+            final WSSRequest request = createFormRequest(
+                    RequestType.GET_SESSION,
+                    body,
+                    getSessionKey(authentication.asNameValue()));
+            sample.mark(Phase.BUILD);
+            sample.addBytesOut(request.getEntity().getContentLength());
+            final WSSResponse response = execute(sample, request);
 
-            final Payload getSessionResponse = new Payload(post.getResponseBodyAsStream(), post.getResponseCharSet());
+            final Payload getSessionResponse = new Payload(
+                    response.getResponseBodyAsStream(),
+                    response.getResponseCharSet());
+            sample.mark(Phase.DOWNLOAD);
+            sample.addBytesIn(getSessionResponse.getLength());
 
             if (getSessionResponse.containsException()) {
                 throw new AuthenticationFailedException(getSessionResponse.asText());
             }
 
-            final SessionInformation tmpSI = new SessionInformationDeegree(getSessionResponse);
+            final SessionInformation tmpSI = new SessionInformationDeegree(getSessionResponse, computeExpirationDate());
+            sample.mark(Phase.POST_PROCESSING);
             logger.info("New Session with SessionID=" + tmpSI.getSessionID() + " length: "
                         + tmpSI.getSessionID().length());
 
@@ -487,15 +2146,20 @@ public class WSSAccessorDeegree implements WSSAccessor {
                         || (tmpSI.getSessionID().length() == 2)) {
                 throw new AuthenticationFailedException("SessionID is null or equals  \"\"");
             }
+            success = true;
             return tmpSI;
         } catch (IOException ioex) {
             logger.info("Could not perform getSession(). Exception: " + ioex);
             throw new AuthenticationFailedException(ioex);
+        } finally {
+            sample.finish(success);
         }
     }
 
     /**
-     * Closes the WSS session.
+     * Closes the WSS sessions of the accessor: the sessions of the session pool are closed in the background, the
+     * session started by {@link #getSession(AuthenticationMethod)} is closed right away. The next doService request
+     * starts a new session.
      *
      * @throws  ServiceException      Is thrown, when closeSession() fails on the WSS
      * @throws  NullPointerException  DOCUMENT ME!
@@ -506,28 +2170,44 @@ public class WSSAccessorDeegree implements WSSAccessor {
             throw new NullPointerException("wss_url is not initialized");
         }
 
-        try {
-            final PostMethod post = new PostMethod(wss_url + "?");
-            if (isCredentialProviderAvailable) {
-                post.setDoAuthentication(true);
+        closePooledSessions();
+        final SessionInformation si = sessionInfo.getAndSet(null);
+        if (si == null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("closeSession(): no session has been started by getSession()");
             }
+            return;
+        }
+
+        final RequestSample sample = startSample(RequestType.CLOSE_SESSION, null);
+        boolean success = false;
+        try {
             final NameValuePair[] data = {
                     new NameValuePair("SERVICE", "WSS"),
                     new NameValuePair("REQUEST", "CloseSession"),
-                    new NameValuePair("SESSIONID", sessionInfo.getSessionID())
+                    new NameValuePair("SESSIONID", si.getSessionID())
                 };
 
-            post.setRequestBody(data);
-            client.executeMethod(post);
+            final WSSRequest request = createFormRequest(RequestType.CLOSE_SESSION, data, "");
+            sample.mark(Phase.BUILD);
+            final WSSResponse response = execute(sample, request);
 
-            final Payload closeSessionResponse = new Payload(post.getResponseBodyAsStream(), post.getResponseCharSet());
+            final Payload closeSessionResponse = new Payload(
+                    response.getResponseBodyAsStream(),
+                    response.getResponseCharSet());
+            sample.mark(Phase.DOWNLOAD);
+            sample.addBytesIn(closeSessionResponse.getLength());
 
             if (closeSessionResponse.containsException()) {
                 logger.error(closeSessionResponse.asText());
                 throw new ServiceException(closeSessionResponse.asText());
             }
+            sample.mark(Phase.POST_PROCESSING);
+            success = true;
         } catch (IOException ex) {
             logger.info("Could not perform closeSession(). Exception: " + ex);
+        } finally {
+            sample.finish(success);
         }
         if (logger.isDebugEnabled()) {
             logger.debug("closeSession() called successfully");
@@ -543,35 +2223,64 @@ public class WSSAccessorDeegree implements WSSAccessor {
      * @throws  NullPointerException  DOCUMENT ME!
      */
     public void closeSession(final SessionInformation si) throws ServiceException {
+        try {
+            sendCloseSession(si);
+        } catch (IOException ex) {
+            logger.info("Could not perform closeSession(). Exception: " + ex);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("closeSession() called successfully");
+        }
+    }
+
+    /**
+     * Sends a CloseSession request to the WSS. Unlike {@link #closeSession(SessionInformation)}, I/O errors are passed
+     * on, so the caller can retry.
+     *
+     * @param   si  the session to close
+     *
+     * @throws  ServiceException      Is thrown, when closeSession() fails on the WSS
+     * @throws  IOException           Is thrown, when the WSS could not be reached or answered with a server error
+     * @throws  NullPointerException  DOCUMENT ME!
+     */
+    void sendCloseSession(final SessionInformation si) throws ServiceException, IOException {
         if (wss_url == null) {
             throw new NullPointerException("wss_url is not initialized");
         }
 
+        final NameValuePair[] data = {
+                new NameValuePair("SERVICE", "WSS"),
+                new NameValuePair("REQUEST", "CloseSession"),
+                new NameValuePair("SESSIONID", si.getSessionID())
+            };
+
+        final WSSRequest request = createFormRequest(RequestType.CLOSE_SESSION, data, "");
+        final RequestSample sample = startSample(RequestType.CLOSE_SESSION, null);
+        boolean success = false;
+        WSSResponse response = null;
         try {
-            final PostMethod post = new PostMethod(wss_url + "?");
-            if (isCredentialProviderAvailable) {
-                post.setDoAuthentication(true);
+            response = execute(sample, request);
+            if (response.getStatusCode() >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                throw new HttpException("CloseSession failed with HTTP status " + response.getStatusCode());
             }
-            final NameValuePair[] data = {
-                    new NameValuePair("SERVICE", "WSS"),
-                    new NameValuePair("REQUEST", "CloseSession"),
-                    new NameValuePair("SESSIONID", si.getSessionID())
-                };
 
-            post.setRequestBody(data);
-            client.executeMethod(post);
-
-            final Payload closeSessionResponse = new Payload(post.getResponseBodyAsStream(), post.getResponseCharSet());
+            final Payload closeSessionResponse = new Payload(
+                    response.getResponseBodyAsStream(),
+                    response.getResponseCharSet());
+            sample.mark(Phase.DOWNLOAD);
+            sample.addBytesIn(closeSessionResponse.getLength());
 
             if (closeSessionResponse.containsException()) {
                 logger.error(closeSessionResponse.asText());
                 throw new ServiceException(closeSessionResponse.asText());
             }
-        } catch (IOException ex) {
-            logger.info("Could not perform closeSession(). Exception: " + ex);
-        }
-        if (logger.isDebugEnabled()) {
-            logger.debug("closeSession() called successfully");
+            sample.mark(Phase.POST_PROCESSING);
+            success = true;
+        } finally {
+            if (response != null) {
+                response.releaseConnection();
+            }
+            sample.finish(success);
         }
     }
 
@@ -608,25 +2317,184 @@ public class WSSAccessorDeegree implements WSSAccessor {
     public void setProxy(final String proxy_url, final int port) {
         if (proxy_url == null) {
             if (logger.isDebugEnabled()) {
-                logger.debug("make new httpclient without proxy");
+                logger.debug("remove accessor proxy");
             }
-            client = new HttpClient(new MultiThreadedHttpConnectionManager());
         } else {
             if (logger.isDebugEnabled()) {
                 logger.debug("set accessor proxy: " + proxy_url + ":" + port);
             }
-            client.getHostConfiguration().setProxy(proxy_url, port);
         }
+        httpTransport.setProxy(proxy_url, port);
     }
 
     @Override
     public void setCredentialProvider(final CredentialsProvider credentialProvider) {
-        client.getParams().setParameter(CredentialsProvider.PROVIDER, credentialProvider);
-        if (credentialProvider != null) {
-            isCredentialProviderAvailable = true;
-        } else {
-            isCredentialProviderAvailable = false;
-        }
+        httpTransport.setCredentialsProvider(credentialProvider);
+    }
+
+    /**
+     * Applies a configuration to the HTTP connection pool of this accessor. Pool limits and timeouts take effect for
+     * the next request, open connections are kept. If the pool is shared by a {@link WSSAccessorFactory}, the
+     * configuration applies to all accessors of the factory.
+     *
+     * @param  configuration  the configuration of the connection pool
+     */
+    public void setConnectionPoolConfiguration(final ConnectionPoolConfiguration configuration) {
+        connectionManager.configure(configuration);
+    }
+
+    /**
+     * Returns a copy of the configuration of the HTTP connection pool of this accessor.
+     *
+     * @return  the configuration of the connection pool
+     */
+    public ConnectionPoolConfiguration getConnectionPoolConfiguration() {
+        return connectionManager.getConfiguration();
+    }
+
+    /**
+     * Returns the leased, idle and pending connections and the wait times of the HTTP connection pool of this
+     * accessor.
+     *
+     * @return  the statistics of the connection pool
+     */
+    public ConnectionPoolStatistics getConnectionPoolStatistics() {
+        return connectionManager.getStatistics();
+    }
+
+    /**
+     * Sets the metrics the requests of this accessor are recorded to. By default all accessors share
+     * {@link AccessorMetrics#getDefault()}.
+     *
+     * @param  metrics  the metrics, or <code>null</code> to record nothing
+     */
+    public void setMetrics(final AccessorMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the metrics the requests of this accessor are recorded to. Use
+     * {@link AccessorMetrics#getSnapshot(String, String, net.environmatics.acs.accessor.metrics.RequestType)} with
+     * {@link #getWSS()} to read the metrics of this WSS.
+     *
+     * @return  the metrics, or <code>null</code> if nothing is recorded
+     */
+    public AccessorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the recorder the exchanges with the WSS are written to, i.e. to capture a production workload for a
+     * {@link net.environmatics.acs.accessor.replay.ReplayTransport}. While recording, every response is read
+     * completely before it is returned, also that of
+     * {@link #doServiceStreaming(String, String, NameValuePair[], String)}.
+     *
+     * @param  trafficRecorder  the recorder, or <code>null</code> to record nothing
+     */
+    public void setTrafficRecorder(final TrafficRecorder trafficRecorder) {
+        this.trafficRecorder = trafficRecorder;
+    }
+
+    /**
+     * Returns the recorder the exchanges with the WSS are written to.
+     *
+     * @return  the recorder, or <code>null</code> if nothing is recorded
+     */
+    public TrafficRecorder getTrafficRecorder() {
+        return trafficRecorder;
+    }
+
+    /**
+     * Sets the transport that sends the requests of this accessor to the WSS, i.e. a transport with HTTP/2 or a
+     * {@link net.environmatics.acs.accessor.replay.ReplayTransport} that answers the requests with recorded exchanges.
+     * Set it before the first request, i.e. before the capabilities are loaded. The proxy, the credentials provider and
+     * the connection pool configuration of this accessor apply to the default transport only.
+     *
+     * @param  transport  the transport, or <code>null</code> for the default {@link HttpClientTransport}
+     */
+    public void setTransport(final WSSTransport transport) {
+        this.transport = (transport != null) ? transport : httpTransport;
+    }
+
+    /**
+     * Returns the transport that sends the requests of this accessor to the WSS.
+     *
+     * @return  the transport
+     */
+    public WSSTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Sets the executor that runs asynchronous doService requests. Use
+     * {@link ExecutorHelper#newVirtualThreadPerTaskExecutor()} for a virtual thread per request on Java 21 and newer.
+     *
+     * @param  executor  the executor to use, or <code>null</code> for {@link ExecutorHelper#getDefaultExecutor()}
+     */
+    public void setExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the executor that runs asynchronous doService requests.
+     *
+     * @return  the executor set with {@link #setExecutor(java.util.concurrent.Executor)} or the default executor
+     */
+    public Executor getExecutor() {
+        final Executor exec = executor;
+        return (exec != null) ? exec : ExecutorHelper.getDefaultExecutor();
+    }
+
+    /**
+     * Sets a cache for doService responses. Responses are cached per authorization scope of the authentication method,
+     * so users with different credentials never share cached responses. A cache may be shared by several accessors.
+     * Only {@link #DCP_HTTP_GET HTTP GET} requests are cached, POST requests are always sent to the WSS.
+     *
+     * @param  responseCache  the cache to use, or <code>null</code> to disable caching
+     */
+    public void setResponseCache(final PayloadCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Returns the cache for doService responses.
+     *
+     * @return  the cache, or <code>null</code> if caching is disabled
+     */
+    public PayloadCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Enables or disables request coalescing. If enabled, concurrent {@link #DCP_HTTP_GET HTTP GET} doService
+     * requests that are identical after normalization and are sent with the same authorization scope share one
+     * exchange with the WSS. Every caller receives its own {@link Payload#share() view} of the response, so changes to
+     * the array returned by {@link Payload#asBytes()} stay with that caller. POST requests and streamed requests are
+     * never coalesced, since two identical POST requests, i.e. WFS-T Transactions, must both reach the WSS.
+     *
+     * @param  requestCoalescing  true to coalesce identical requests, the default
+     */
+    public void setRequestCoalescing(final boolean requestCoalescing) {
+        this.requestCoalescing = requestCoalescing;
+    }
+
+    /**
+     * Returns whether identical concurrent doService requests share one exchange with the WSS.
+     *
+     * @return  true if request coalescing is enabled
+     */
+    public boolean isRequestCoalescing() {
+        return requestCoalescing;
+    }
+
+    /**
+     * Returns the number of doService requests that have been answered with the response of an identical request that
+     * was already in flight, instead of being sent to the WSS.
+     *
+     * @return  the number of coalesced requests
+     */
+    public long getCoalescedRequestCount() {
+        return coalescedRequests.get();
     }
 
     /**
@@ -650,12 +2518,12 @@ public class WSSAccessorDeegree implements WSSAccessor {
             }
             final Protocol easyHTTPS = new Protocol(
                     "https",
-                    (ProtocolSocketFactory)new EasySSLProtocolSocketFactory(),
-                    wssURL.getPort());
+                    EASY_SSL_SOCKET_FACTORY,
+                    (wssURL.getPort() > 0) ? wssURL.getPort() : wssURL.getDefaultPort());
             Protocol.registerProtocol("https", easyHTTPS);
 
             this.supportedAuthnMethods = null;
-            this.sessionInfo = null;
+            this.sessionInfo.set(null);
         } catch (MalformedURLException ex) {
             logger.error("URL " + wss_url + " is malformed");
         }
@@ -676,37 +2544,39 @@ public class WSSAccessorDeegree implements WSSAccessor {
      * WSS does not respond, the method returns an empty List.
      *
      * @return  a List with the IDs of all supported auhtentication methods
-     *
-     * @throws  NullPointerException  DOCUMENT ME!
      */
     @Override
     public List<String> getSupportedAuthenticationMethods() {
-        if (wss_url == null) {
-            throw new NullPointerException("wss_url is not initialized");
-        }
-
-        final List<String> authMethodsList = new ArrayList<String>();
-        final Document capabilities = getWSSCapabilities();
+        final WSSCapabilities capabilities = getCapabilities();
 
         // if there's no valid capabilities document, return an empty list
         if (capabilities == null) {
-            return authMethodsList;
+            return new ArrayList<String>();
         }
-        // Problem Arndt
-        final ListIterator<Element> it = capabilities.selectNodes("//authn:SupportedAuthenticationMethod")
-                    .listIterator();
+        return new ArrayList<String>(capabilities.getAuthenticationMethods());
+    }
 
-        while (it.hasNext()) {
-            final Element e = it.next();
-            authMethodsList.add(e.valueOf("//authn:AuthenticationMethod/@id"));
-            e.detach();
+    /**
+     * Returns the parsed capabilities of the WSS. The capabilities are taken from the
+     * {@link #setCapabilitiesCache(net.environmatics.acs.accessor.cache.CapabilitiesCache) capabilities cache}, which
+     * parses every document only once.
+     *
+     * @return  the capabilities, or in case of an error <code>null</code>
+     *
+     * @throws  NullPointerException  DOCUMENT ME!
+     */
+    @Override
+    public WSSCapabilities getCapabilities() {
+        if (wss_url == null) {
+            throw new NullPointerException("wss_url is not initialized");
         }
-
-        return authMethodsList;
+        return capabilitiesCache.getCapabilities(wss_url, capabilitiesLoader);
     }
 
     /**
-     * Tries to retrieve the capabillities document from the specific WSS.
+     * Tries to retrieve the capabillities document from the specific WSS. The document is taken from the
+     * {@link #setCapabilitiesCache(net.environmatics.acs.accessor.cache.CapabilitiesCache) capabilities cache}, so the
+     * WSS is only asked for it when it is not cached yet or has to be refreshed.
      *
      * @return  the capabillities document as Dom4J Document, or in case of an error <code>null</code>
      *
@@ -714,65 +2584,116 @@ public class WSSAccessorDeegree implements WSSAccessor {
      */
     @Override
     public Document getWSSCapabilities() {
-        if (logger.isDebugEnabled()) {
-            logger.debug("Initial retrieval of WSS Capabilites");
-        }
         if (wss_url == null) {
             throw new NullPointerException("wss_url is not initialized");
         }
 
+        final byte[] capabilities = capabilitiesCache.get(wss_url, capabilitiesLoader);
+        if (capabilities == null) {
+            return null;
+        }
         try {
-            final GetMethod get = new GetMethod(wss_url + "?SERVICE=WSS&REQUEST=GetCapabilities");
-            if (isCredentialProviderAvailable) {
-                get.setDoAuthentication(true);
-            }
-            client.executeMethod(get);
-            return getXMLDocumentFromStream(get.getResponseBodyAsStream());
+            return getXMLDocumentFromStream(new ByteArrayInputStream(capabilities));
         } catch (DocumentException dex) {
             logger.info("Could not parse capabilities document. Exception: " + dex);
-        } catch (IOException ex) {
-            logger.info("Could not perform getCapabilities(). Exception: " + ex.getClass());
         }
         return null;
     }
 
     /**
-     * DOCUMENT ME!
+     * Sends a GetCapabilities request to the WSS.
      *
-     * @return  DOCUMENT ME!
+     * @param   etag          ETag of the cached document for a conditional request, may be <code>null</code>
+     * @param   lastModified  Last-Modified date of the cached document for a conditional request, may be
+     *                        <code>null</code>
+     *
+     * @return  the response of the WSS
+     *
+     * @throws  IOException  if the request fails
      */
-    public String getSecuredServiceType() {
-        if (wssCapabilities == null) {
-            wssCapabilities = getWSSCapabilities();
+    private CapabilitiesCache.Response fetchWSSCapabilities(final String etag, final String lastModified)
+            throws IOException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Retrieval of WSS Capabilites from " + wss_url);
         }
-        if (wssCapabilities != null) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("wssCaps != null");
+        final List<WSSHeader> headers = new ArrayList<WSSHeader>(2);
+        if (etag != null) {
+            headers.add(new WSSHeader("If-None-Match", etag));
+        }
+        if (lastModified != null) {
+            headers.add(new WSSHeader("If-Modified-Since", lastModified));
+        }
+        final WSSRequest request = new WSSRequest(
+                RequestType.GET_CAPABILITIES,
+                WSSRequest.GET,
+                wss_url + "?SERVICE=WSS&REQUEST=GetCapabilities",
+                headers.toArray(new WSSHeader[headers.size()]),
+                null,
+                headers.isEmpty() ? "" : CONDITIONAL_KEY);
+        final RequestSample sample = startSample(RequestType.GET_CAPABILITIES, null);
+        boolean success = false;
+        WSSResponse response = null;
+        try {
+            response = execute(sample, request);
+            final int status = response.getStatusCode();
+            if (status == HttpStatus.SC_NOT_MODIFIED) {
+                success = true;
+                return CapabilitiesCache.Response.notModified();
             }
-            final Element root = wssCapabilities.getRootElement();
-            if (root != null) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("root Element != null");
-                }
-                final Element caps = root.element("Capability");
-                if (caps != null) {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Caps Element != null");
-                    }
-                    final Element securedServiceType = caps.element("SecuredServiceType");
-                    if (securedServiceType != null) {
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("SecuredServiceType Element != null");
-                        }
-                        return securedServiceType.getText();
-                    }
-                }
+            if (status != HttpStatus.SC_OK) {
+                throw new IOException("GetCapabilities failed with HTTP status " + status);
+            }
+            final WSSHeader etagHeader = response.getResponseHeader("ETag");
+            final WSSHeader lastModifiedHeader = response.getResponseHeader("Last-Modified");
+            final byte[] document = response.getResponseBody();
+            sample.mark(Phase.DOWNLOAD);
+            sample.addBytesIn((document != null) ? document.length : 0);
+            success = true;
+            return new CapabilitiesCache.Response(
+                    document,
+                    (etagHeader != null) ? etagHeader.getValue() : null,
+                    (lastModifiedHeader != null) ? lastModifiedHeader.getValue() : null);
+        } finally {
+            if (response != null) {
+                response.releaseConnection();
             }
+            sample.finish(success);
+        }
+    }
+
+    /**
+     * Returns the type of the service that is secured by the WSS, as stated in its capabilities.
+     *
+     * @return  the secured service type, i.e. WMS, or <code>null</code> if it could not be determined
+     */
+    public String getSecuredServiceType() {
+        final WSSCapabilities capabilities = getCapabilities();
+        if ((capabilities != null) && (capabilities.getSecuredServiceType() != null)) {
+            return capabilities.getSecuredServiceType();
         }
         logger.warn("It was not possible to determine the secured service type");
         return null;
     }
 
+    /**
+     * Sets the cache for capabilities documents. By default all accessors share
+     * {@link CapabilitiesCache#getDefault()}.
+     *
+     * @param  capabilitiesCache  the cache to use
+     */
+    public void setCapabilitiesCache(final CapabilitiesCache capabilitiesCache) {
+        this.capabilitiesCache = capabilitiesCache;
+    }
+
+    /**
+     * Returns the cache for capabilities documents.
+     *
+     * @return  the cache
+     */
+    public CapabilitiesCache getCapabilitiesCache() {
+        return capabilitiesCache;
+    }
+
     /**
      * Tries to create a Dom4J Document from a InputStream.
      *
@@ -816,10 +2737,69 @@ public class WSSAccessorDeegree implements WSSAccessor {
      * @return  DOCUMENT ME!
      */
     public boolean isSessionAvailable() {
-        if (sessionInfo != null) {
+        if (sessionInfo.get() != null) {
             return true;
-        } else {
-            return false;
+        }
+        for (final SessionLease lease : sessionLeases) {
+            if (lease.getSessionInformation() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Renews a session before it expires. Holds the accessor weakly, so scheduled renewals do not keep an accessor
+     * that is no longer used alive.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class SessionRenewal implements Runnable {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final WeakReference<WSSAccessorDeegree> accessor;
+        private final SessionLease lease;
+        private final SessionAuthenticationMethod expected;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new SessionRenewal object.
+         *
+         * @param  accessor  the accessor that owns the slot
+         * @param  lease     the slot of the session pool
+         * @param  expected  the session that is about to expire
+         */
+        SessionRenewal(final WSSAccessorDeegree accessor,
+                final SessionLease lease,
+                final SessionAuthenticationMethod expected) {
+            this.accessor = new WeakReference<WSSAccessorDeegree>(accessor);
+            this.lease = lease;
+            this.expected = expected;
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        @Override
+        public void run() {
+            final WSSAccessorDeegree wssAccessor = accessor.get();
+            if (wssAccessor != null) {
+                // the renewal talks to the WSS, so it must not block the renewer thread
+                wssAccessor.getExecutor().execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            try {
+                                wssAccessor.renewBeforeExpiry(lease, expected);
+                            } catch (RuntimeException ex) {
+                                logger.warn("Could not renew session before it expires", ex);
+                            }
+                        }
+                    });
+            }
         }
     }
 }
@@ -0,0 +1,187 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor;
+
+import net.environmatics.acs.accessor.http.ConnectionPoolConfiguration;
+import net.environmatics.acs.accessor.http.ConnectionPoolStatistics;
+import net.environmatics.acs.accessor.http.PooledConnectionManager;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates WSSAccessorDeegree instances that share one bounded connection pool. Applications with many secured layers
+ * should use one factory instead of one pool per accessor, so keep-alive connections to the same WSS host are reused
+ * across all layers and the number of open connections stays bounded. TLS sessions are shared by all accessors
+ * anyway.<br>
+ * <br>
+ * Every accessor has its own HttpClient, so proxy and credentials provider can still be set per accessor. Accessors
+ * that should also share their session can be obtained from the registry with {@link #getAccessor(String)}.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class WSSAccessorFactory {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static Logger logger = Logger.getLogger(WSSAccessorFactory.class);
+
+    private static final WSSAccessorFactory DEFAULT = new WSSAccessorFactory(new ConnectionPoolConfiguration());
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final PooledConnectionManager connectionManager;
+    private final ConcurrentMap<String, WSSAccessorDeegree> accessors =
+        new ConcurrentHashMap<String, WSSAccessorDeegree>();
+    private volatile SessionCache sessionCache;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new WSSAccessorFactory object.
+     *
+     * @param  configuration  the configuration of the shared connection pool
+     */
+    public WSSAccessorFactory(final ConnectionPoolConfiguration configuration) {
+        this.connectionManager = new PooledConnectionManager(configuration);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the factory that is shared by the whole application.
+     *
+     * @return  the default factory
+     */
+    public static WSSAccessorFactory getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Creates a new accessor that uses the shared connection pool.
+     *
+     * @param   wssURL  URL to a WSS
+     *
+     * @return  a new accessor
+     */
+    public WSSAccessorDeegree createAccessor(final String wssURL) {
+        final WSSAccessorDeegree accessor = new WSSAccessorDeegree(connectionManager);
+        accessor.setWSS(wssURL);
+        accessor.setSessionCache(sessionCache);
+        return accessor;
+    }
+
+    /**
+     * Creates a new accessor that uses the shared connection pool and a proxy.
+     *
+     * @param   wssURL    URL to a WSS
+     * @param   proxyURL  URL to a proxy server
+     * @param   port      The port of the proxy server
+     *
+     * @return  a new accessor
+     */
+    public WSSAccessorDeegree createAccessor(final String wssURL, final String proxyURL, final int port) {
+        final WSSAccessorDeegree accessor = createAccessor(wssURL);
+        accessor.setProxy(proxyURL, port);
+        return accessor;
+    }
+
+    /**
+     * Returns the registered accessor for a WSS or registers a new one. All callers get the same accessor and
+     * therefore the same WSS session, so the accessor should not be reconfigured by a single caller.
+     *
+     * @param   wssURL  URL to a WSS
+     *
+     * @return  the registered accessor
+     */
+    public WSSAccessorDeegree getAccessor(final String wssURL) {
+        WSSAccessorDeegree accessor = accessors.get(wssURL);
+        if (accessor == null) {
+            final WSSAccessorDeegree created = createAccessor(wssURL);
+            accessor = accessors.putIfAbsent(wssURL, created);
+            if (accessor == null) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("registered accessor for " + wssURL);
+                }
+                accessor = created;
+            }
+        }
+        return accessor;
+    }
+
+    /**
+     * Removes the registered accessor for a WSS.
+     *
+     * @param   wssURL  URL to a WSS
+     *
+     * @return  the removed accessor or <code>null</code> if there was none
+     */
+    public WSSAccessorDeegree removeAccessor(final String wssURL) {
+        return accessors.remove(wssURL);
+    }
+
+    /**
+     * Sets the session cache of the accessors that are created afterwards. Multi-user applications that create an
+     * accessor per user should set a cache, so that a user whose session is still cached does not need a new session.
+     *
+     * @param  sessionCache  the session cache or <code>null</code>
+     */
+    public void setSessionCache(final SessionCache sessionCache) {
+        this.sessionCache = sessionCache;
+    }
+
+    /**
+     * Returns the session cache of the accessors of this factory.
+     *
+     * @return  the session cache or <code>null</code>
+     */
+    public SessionCache getSessionCache() {
+        return sessionCache;
+    }
+
+    /**
+     * Returns the connection pool shared by the accessors of this factory.
+     *
+     * @return  the connection pool
+     */
+    public PooledConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    /**
+     * Applies a configuration to the shared connection pool.
+     *
+     * @param  configuration  the configuration of the connection pool
+     */
+    public void setConnectionPoolConfiguration(final ConnectionPoolConfiguration configuration) {
+        connectionManager.configure(configuration);
+    }
+
+    /**
+     * Returns the statistics of the shared connection pool.
+     *
+     * @return  the statistics of the connection pool
+     */
+    public ConnectionPoolStatistics getConnectionPoolStatistics() {
+        return connectionManager.getStatistics();
+    }
+
+    /**
+     * Closes the sessions of the registered accessors, closes all connections of the shared pool and forgets the
+     * registered accessors. Accessors of this factory can not be used afterwards.
+     */
+    public void shutdown() {
+        for (final WSSAccessorDeegree accessor : accessors.values()) {
+            accessor.shutdown();
+        }
+        accessors.clear();
+        connectionManager.shutdown();
+    }
+}
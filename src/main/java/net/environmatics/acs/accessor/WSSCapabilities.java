@@ -0,0 +1,212 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor;
+
+import net.environmatics.acs.accessor.utils.WSSCapabilitiesParser;
+
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The typed content of a WSS capabilities document: the supported authentication methods, the type of the secured
+ * service and the operations of the WSS. The document is parsed once, all queries are answered from the parsed values
+ * without walking the document again.<br>
+ * <br>
+ * Instances are immutable and can be shared between threads, so they are cached together with the capabilities
+ * document, see {@link net.environmatics.acs.accessor.cache.CapabilitiesCache}.
+ *
+ * @version  $Revision$, $Date$
+ */
+public final class WSSCapabilities {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final String version;
+    private final String securedServiceType;
+    private final List<String> authenticationMethods;
+    private final Set<String> authenticationMethodSet;
+    private final Map<String, Operation> operations;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new WSSCapabilities object.
+     *
+     * @param  version                the version attribute of the capabilities or <code>null</code>
+     * @param  securedServiceType     the type of the secured service, i.e. WMS, or <code>null</code>
+     * @param  authenticationMethods  the IDs of the supported authentication methods in document order
+     * @param  operations             the operations of the WSS
+     */
+    public WSSCapabilities(final String version,
+            final String securedServiceType,
+            final List<String> authenticationMethods,
+            final List<Operation> operations) {
+        this.version = version;
+        this.securedServiceType = securedServiceType;
+        this.authenticationMethods = Collections.unmodifiableList(new ArrayList<String>(authenticationMethods));
+        this.authenticationMethodSet = Collections.unmodifiableSet(new HashSet<String>(authenticationMethods));
+        final Map<String, Operation> operationMap = new LinkedHashMap<String, Operation>();
+        for (final Operation operation : operations) {
+            if (!operationMap.containsKey(operation.getName())) {
+                operationMap.put(operation.getName(), operation);
+            }
+        }
+        this.operations = Collections.unmodifiableMap(operationMap);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Parses a capabilities document.
+     *
+     * @param   document  the capabilities document
+     *
+     * @return  the capabilities
+     *
+     * @throws  IOException  if the document is not well-formed
+     */
+    public static WSSCapabilities parse(final byte[] document) throws IOException {
+        return WSSCapabilitiesParser.parse(document);
+    }
+
+    /**
+     * Returns the version attribute of the capabilities.
+     *
+     * @return  the version or <code>null</code>
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the type of the service that is secured by the WSS.
+     *
+     * @return  the secured service type, i.e. WMS, or <code>null</code> if the capabilities do not name one
+     */
+    public String getSecuredServiceType() {
+        return securedServiceType;
+    }
+
+    /**
+     * Returns the IDs of the supported authentication methods.
+     *
+     * @return  an unmodifiable list in document order
+     */
+    public List<String> getAuthenticationMethods() {
+        return authenticationMethods;
+    }
+
+    /**
+     * Checks if the WSS supports an authentication method.
+     *
+     * @param   id  the ID of the authentication method, i.e. <code>urn:x-gdi-nrw:authnMethod:1.0:password</code>
+     *
+     * @return  true if the method is supported
+     */
+    public boolean supportsAuthenticationMethod(final String id) {
+        return authenticationMethodSet.contains(id);
+    }
+
+    /**
+     * Returns the operations of the WSS.
+     *
+     * @return  an unmodifiable map of the operations by name, in document order
+     */
+    public Map<String, Operation> getOperations() {
+        return operations;
+    }
+
+    /**
+     * Returns an operation of the WSS.
+     *
+     * @param   name  the name of the operation, i.e. <code>DoService</code>
+     *
+     * @return  the operation or <code>null</code> if the WSS does not offer it
+     */
+    public Operation getOperation(final String name) {
+        return operations.get(name);
+    }
+
+    @Override
+    public String toString() {
+        return "WSSCapabilities[version=" + version + ", securedServiceType=" + securedServiceType
+                    + ", authenticationMethods=" + authenticationMethods + ", operations=" + operations.keySet() + "]";
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * An operation of the WSS with its HTTP endpoints.
+     *
+     * @version  $Revision$, $Date$
+     */
+    public static final class Operation {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final String name;
+        private final List<String> getURLs;
+        private final List<String> postURLs;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new Operation object.
+         *
+         * @param  name      the name of the operation
+         * @param  getURLs   the URLs for HTTP GET requests
+         * @param  postURLs  the URLs for HTTP POST requests
+         */
+        public Operation(final String name, final List<String> getURLs, final List<String> postURLs) {
+            this.name = name;
+            this.getURLs = Collections.unmodifiableList(new ArrayList<String>(getURLs));
+            this.postURLs = Collections.unmodifiableList(new ArrayList<String>(postURLs));
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        /**
+         * Returns the name of the operation.
+         *
+         * @return  the name, i.e. <code>GetSession</code>
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the URLs for HTTP GET requests.
+         *
+         * @return  an unmodifiable list, empty if the operation does not support HTTP GET
+         */
+        public List<String> getGetURLs() {
+            return getURLs;
+        }
+
+        /**
+         * Returns the URLs for HTTP POST requests.
+         *
+         * @return  an unmodifiable list, empty if the operation does not support HTTP POST
+         */
+        public List<String> getPostURLs() {
+            return postURLs;
+        }
+
+        @Override
+        public String toString() {
+            return name + "[get=" + getURLs + ", post=" + postURLs + "]";
+        }
+    }
+}
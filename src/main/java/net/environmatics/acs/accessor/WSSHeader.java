@@ -0,0 +1,88 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor;
+
+/**
+ * An HTTP header of a {@link WSSRequest} or a {@link WSSResponse}. Headers are passed between the accessor and a
+ * {@link net.environmatics.acs.accessor.interfaces.WSSTransport} in this form, so transports do not depend on the
+ * header type of a particular HTTP client.
+ *
+ * @version  $Revision$, $Date$
+ */
+public final class WSSHeader {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final String name;
+    private final String value;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new WSSHeader.
+     *
+     * @param  name   the name of the header
+     * @param  value  the value of the header
+     */
+    public WSSHeader(final String name, final String value) {
+        this.name = name;
+        this.value = value;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the name of the header.
+     *
+     * @return  the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the value of the header.
+     *
+     * @return  the value
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Returns a parameter of the header value, i.e. the charset of <code>text/xml; charset=UTF-8</code>. Quotes
+     * around the parameter value are removed.
+     *
+     * @param   parameterName  the name of the parameter, not case sensitive
+     *
+     * @return  the value of the parameter, or <code>null</code> if the header has no such parameter
+     */
+    public String getParameter(final String parameterName) {
+        if (value == null) {
+            return null;
+        }
+        final String[] parts = value.split(";");
+        // the first part is the value itself, i.e. the media type
+        for (int i = 1; i < parts.length; i++) {
+            final int separator = parts[i].indexOf('=');
+            if ((separator > 0) && parts[i].substring(0, separator).trim().equalsIgnoreCase(parameterName)) {
+                String parameter = parts[i].substring(separator + 1).trim();
+                if ((parameter.length() >= 2) && parameter.startsWith("\"") && parameter.endsWith("\"")) {
+                    parameter = parameter.substring(1, parameter.length() - 1);
+                }
+                return parameter;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + value;
+    }
+}
@@ -0,0 +1,129 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor;
+
+import net.environmatics.acs.accessor.metrics.RequestType;
+
+/**
+ * A request of a {@link WSSAccessorDeegree} to the WSS, i.e. a GetSession, DoService, CloseSession or GetCapabilities
+ * request, as it is passed to a {@link net.environmatics.acs.accessor.interfaces.WSSTransport}.<br>
+ * <br>
+ * Besides the HTTP request, a WSSRequest carries its type and its request key. The key identifies the request
+ * independent of the session it is sent with, see {@link net.environmatics.acs.accessor.replay.ExchangeRecord}.
+ *
+ * @version  $Revision$, $Date$
+ */
+public final class WSSRequest {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    /** HTTP method of GetCapabilities requests. */
+    public static final String GET = "GET";
+
+    /** HTTP method of all other requests. */
+    public static final String POST = "POST";
+
+    private static final WSSHeader[] NO_HEADERS = new WSSHeader[0];
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final RequestType type;
+    private final String method;
+    private final String url;
+    private final WSSHeader[] headers;
+    private final WSSRequestEntity entity;
+    private final String key;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new WSSRequest.
+     *
+     * @param  type     the type of the request
+     * @param  method   {@link #GET} or {@link #POST}
+     * @param  url      the URL of the WSS, including the query
+     * @param  headers  additional request headers, may be <code>null</code>
+     * @param  entity   the body of a POST request, <code>null</code> for a GET request
+     * @param  key      the request key
+     */
+    public WSSRequest(final RequestType type,
+            final String method,
+            final String url,
+            final WSSHeader[] headers,
+            final WSSRequestEntity entity,
+            final String key) {
+        this.type = type;
+        this.method = method;
+        this.url = url;
+        this.headers = (headers != null) ? headers.clone() : NO_HEADERS;
+        this.entity = entity;
+        this.key = (key != null) ? key : "";
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the type of the request.
+     *
+     * @return  the request type
+     */
+    public RequestType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the HTTP method.
+     *
+     * @return  {@link #GET} or {@link #POST}
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the URL of the WSS, including the query.
+     *
+     * @return  the URL
+     */
+    public String getURL() {
+        return url;
+    }
+
+    /**
+     * Returns the additional request headers, i.e. If-None-Match of a conditional GetCapabilities request.
+     *
+     * @return  a copy of the headers, may be empty
+     */
+    public WSSHeader[] getHeaders() {
+        return headers.clone();
+    }
+
+    /**
+     * Returns the body of a POST request. The body of a DoService request with a service request read from a Reader
+     * can be written only once, see {@link WSSRequestEntity#isRepeatable()}.
+     *
+     * @return  the body, <code>null</code> for a GET request
+     */
+    public WSSRequestEntity getEntity() {
+        return entity;
+    }
+
+    /**
+     * Returns the request key.
+     *
+     * @return  the key, not <code>null</code>
+     */
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + method + " " + url;
+    }
+}
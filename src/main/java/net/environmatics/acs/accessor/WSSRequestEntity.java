@@ -0,0 +1,128 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The body of a POST {@link WSSRequest}. A transport writes the body with {@link #writeTo(OutputStream)}, or sends
+ * the array returned by {@link #getContent()} if the body is held in memory.
+ *
+ * @version  $Revision$, $Date$
+ */
+public abstract class WSSRequestEntity {
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates a body that is held in memory. It is repeatable.
+     *
+     * @param   content      the body, it is not copied
+     * @param   contentType  the Content-Type of the body, may be <code>null</code>
+     *
+     * @return  the body
+     */
+    public static WSSRequestEntity of(final byte[] content, final String contentType) {
+        return new ByteArrayEntity(content, contentType);
+    }
+
+    /**
+     * Checks whether the body can be written more than once, so a failed request can be sent again.
+     *
+     * @return  <code>true</code> if the body is repeatable
+     */
+    public abstract boolean isRepeatable();
+
+    /**
+     * Writes the body to the connection.
+     *
+     * @param   out  the stream to write to, it is not closed
+     *
+     * @throws  IOException  if the body cannot be written
+     */
+    public abstract void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Returns the length of the body.
+     *
+     * @return  the number of bytes, or -1 if the length is not known in advance
+     */
+    public abstract long getContentLength();
+
+    /**
+     * Returns the Content-Type of the body.
+     *
+     * @return  the Content-Type, may be <code>null</code>
+     */
+    public abstract String getContentType();
+
+    /**
+     * Returns the body if it is held in memory. The array is not copied and must not be modified.
+     *
+     * @return  the body, or <code>null</code> if it is only available through {@link #writeTo(OutputStream)}
+     */
+    public byte[] getContent() {
+        return null;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * A body that is held in memory.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class ByteArrayEntity extends WSSRequestEntity {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final byte[] content;
+        private final String contentType;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new ByteArrayEntity object.
+         *
+         * @param  content      the body
+         * @param  contentType  the Content-Type of the body, may be <code>null</code>
+         */
+        ByteArrayEntity(final byte[] content, final String contentType) {
+            this.content = content;
+            this.contentType = contentType;
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(final OutputStream out) throws IOException {
+            out.write(content);
+        }
+
+        @Override
+        public long getContentLength() {
+            return content.length;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public byte[] getContent() {
+            return content;
+        }
+    }
+}
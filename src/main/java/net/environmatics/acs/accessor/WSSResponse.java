@@ -0,0 +1,122 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The response of the WSS to a {@link WSSRequest}, as returned by a
+ * {@link net.environmatics.acs.accessor.interfaces.WSSTransport}. The body can be read once, either as stream or
+ * completely; once {@link #getResponseBody()} has been called, {@link #getResponseBodyAsStream()} returns the buffered
+ * body.
+ *
+ * @version  $Revision$, $Date$
+ */
+public abstract class WSSResponse {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    /** Charset of text responses without charset, as in commons-httpclient. */
+    public static final String DEFAULT_CHARSET = "ISO-8859-1";
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the HTTP status of the response.
+     *
+     * @return  the status code
+     */
+    public abstract int getStatusCode();
+
+    /**
+     * Returns the headers of the response.
+     *
+     * @return  the headers
+     */
+    public abstract WSSHeader[] getResponseHeaders();
+
+    /**
+     * Returns the first header of the response with the given name. The name is not case sensitive.
+     *
+     * @param   name  the name of the header
+     *
+     * @return  the header or <code>null</code>
+     */
+    public WSSHeader getResponseHeader(final String name) {
+        for (final WSSHeader header : getResponseHeaders()) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the charset of the response, as stated in its Content-Type header.
+     *
+     * @return  the charset name, {@link #DEFAULT_CHARSET} if the header states none
+     */
+    public String getResponseCharSet() {
+        return charsetOf(getResponseHeader("Content-Type"));
+    }
+
+    /**
+     * Returns the body of the response as stream.
+     *
+     * @return  the body, may be <code>null</code> if the response has no body
+     *
+     * @throws  IOException  if the body cannot be read
+     */
+    public abstract InputStream getResponseBodyAsStream() throws IOException;
+
+    /**
+     * Reads the body of the response.
+     *
+     * @return  the body, may be <code>null</code> if the response has no body
+     *
+     * @throws  IOException  if the body cannot be read
+     */
+    public abstract byte[] getResponseBody() throws IOException;
+
+    /**
+     * Returns the time the request waited for a connection of a connection pool before it was sent.
+     *
+     * @return  the time in nanoseconds, 0 if the transport has no pool
+     */
+    public long getConnectionWaitTime() {
+        return 0L;
+    }
+
+    /**
+     * Aborts the exchange, the rest of the body is not read.
+     */
+    public abstract void abort();
+
+    /**
+     * Releases the connection of the exchange.
+     */
+    public abstract void releaseConnection();
+
+    /**
+     * Returns the charset of a Content-Type header.
+     *
+     * @param   contentType  the header, may be <code>null</code>
+     *
+     * @return  the charset, {@link #DEFAULT_CHARSET} if the header states none
+     */
+    public static String charsetOf(final WSSHeader contentType) {
+        if (contentType != null) {
+            final String charset = contentType.getParameter("charset");
+            if ((charset != null) && (charset.length() > 0)) {
+                return charset;
+            }
+        }
+        return DEFAULT_CHARSET;
+    }
+}
@@ -0,0 +1,56 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.cache;
+
+import net.environmatics.acs.accessor.Payload;
+
+/**
+ * A cached response of a {@link PayloadCache} together with the time it expires.
+ *
+ * @version  $Revision$, $Date$
+ */
+public final class CacheEntry {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final Payload payload;
+    private final long expiresAt;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new CacheEntry object.
+     *
+     * @param  payload    the cached response
+     * @param  expiresAt  time in milliseconds when the response expires, {@link Long#MAX_VALUE} if unknown
+     */
+    public CacheEntry(final Payload payload, final long expiresAt) {
+        this.payload = payload;
+        this.expiresAt = expiresAt;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the cached response.
+     *
+     * @return  the cached response
+     */
+    public Payload getPayload() {
+        return payload;
+    }
+
+    /**
+     * Returns the time the response expires.
+     *
+     * @return  time in milliseconds, {@link Long#MAX_VALUE} if unknown
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+}
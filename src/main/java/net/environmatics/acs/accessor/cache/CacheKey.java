@@ -0,0 +1,154 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.cache;
+
+import net.environmatics.acs.accessor.interfaces.AuthenticationMethod;
+import net.environmatics.acs.accessor.interfaces.WSSAccessor;
+import net.environmatics.acs.accessor.utils.AuthenticationScope;
+
+import org.apache.commons.httpclient.NameValuePair;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Identifies a doService response in a {@link PayloadCache}. The key consists of the WSS, the authorization scope of
+ * the authentication method and the normalized request, so that responses are never shared between users with
+ * different credentials. The session ID is not part of the key.<br>
+ * Only KVP requests sent with HTTP GET are keyed. A POST request may change data on the server, i.e. a WFS-T
+ * Transaction, so it must be sent every time, and its body can be too large to be kept as a key.
+ *
+ * @version  $Revision$, $Date$
+ */
+public final class CacheKey {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final String scope;
+    private final String key;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new CacheKey object.
+     *
+     * @param  scope  the authorization scope
+     * @param  key    the normalized request including the scope
+     */
+    private CacheKey(final String scope, final String key) {
+        this.scope = scope;
+        this.key = key;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates the key of a doService request. Requests other than {@link WSSAccessor#DCP_HTTP_GET HTTP GET} have
+     * no key and are neither cached nor coalesced.
+     *
+     * @param   wssURL          URL of the WSS
+     * @param   authMethod      the authentication method the request is performed with
+     * @param   dcp_type        HTTP_GET or HTTP_POST
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  a new CacheKey, or <code>null</code> if the request must not be answered from a cache
+     */
+    public static CacheKey create(final String wssURL,
+            final AuthenticationMethod authMethod,
+            final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) {
+        if (!WSSAccessor.DCP_HTTP_GET.equals(dcp_type)) {
+            return null;
+        }
+        final String scope = AuthenticationScope.of(authMethod);
+        final StringBuilder sb = new StringBuilder(serviceRequest.length() + 256);
+        sb.append(scope).append('\n');
+        sb.append(wssURL).append('\n');
+        sb.append(facadeURL).append('\n');
+        sb.append(dcp_type).append('\n');
+        if (requestParams != null) {
+            for (final NameValuePair nvp : requestParams) {
+                sb.append(nvp.getName()).append('=').append(nvp.getValue()).append('\n');
+            }
+        }
+        sb.append('\n');
+        appendNormalizedQuery(sb, serviceRequest);
+        return new CacheKey(scope, sb.toString());
+    }
+
+    /**
+     * Restores a key from its {@link #asString() String representation}.
+     *
+     * @param   key  the String representation of a key
+     *
+     * @return  the CacheKey
+     */
+    public static CacheKey fromString(final String key) {
+        final int end = key.indexOf('\n');
+        return new CacheKey((end < 0) ? key : key.substring(0, end), key);
+    }
+
+    /**
+     * Appends the parameters of a KVP request in a canonical order, leaving out empty parameters and the session ID.
+     *
+     * @param  sb     the key to append to
+     * @param  query  the KVP request
+     */
+    private static void appendNormalizedQuery(final StringBuilder sb, final String query) {
+        final String q = query.startsWith("?") ? query.substring(1) : query;
+        final List<String> params = new ArrayList<String>();
+        for (final String param : q.split("&")) {
+            if ((param.length() > 0) && !param.regionMatches(true, 0, "sessionID=", 0, 10)) {
+                params.add(param);
+            }
+        }
+        Collections.sort(params);
+        for (final String param : params) {
+            sb.append(param).append('&');
+        }
+    }
+
+    /**
+     * Returns the authorization scope of the key.
+     *
+     * @return  the authorization scope, see {@link AuthenticationScope}
+     */
+    public String getScope() {
+        return scope;
+    }
+
+    /**
+     * Returns the String representation of the key. It is stable across restarts if the scopes use a stable secret
+     * key, see {@link AuthenticationScope}.
+     *
+     * @return  the String representation of the key
+     */
+    public String asString() {
+        return key;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return (obj instanceof CacheKey) && key.equals(((CacheKey)obj).key);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return key.replace('\n', ' ');
+    }
+}
@@ -0,0 +1,123 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.cache;
+
+/**
+ * A snapshot of the counters of a {@link PayloadCache}.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class CacheStatistics {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long expirationCount;
+    private final long entryCount;
+    private final long weight;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new CacheStatistics object.
+     *
+     * @param  hitCount         number of requests that were answered from the cache
+     * @param  missCount        number of requests that were not found in the cache
+     * @param  evictionCount    number of entries that were removed to stay within the size limit
+     * @param  expirationCount  number of entries that were removed because their time to live had passed
+     * @param  entryCount       number of entries currently in the cache
+     * @param  weight           size of all entries currently in the cache in bytes
+     */
+    public CacheStatistics(final long hitCount,
+            final long missCount,
+            final long evictionCount,
+            final long expirationCount,
+            final long entryCount,
+            final long weight) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.entryCount = entryCount;
+        this.weight = weight;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the number of requests that were answered from the cache.
+     *
+     * @return  the hit count
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of requests that were not found in the cache.
+     *
+     * @return  the miss count
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of entries that were removed to stay within the size limit.
+     *
+     * @return  the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the number of entries that were removed because their time to live had passed.
+     *
+     * @return  the expiration count
+     */
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * Returns the number of entries currently in the cache.
+     *
+     * @return  the entry count
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the size of all entries currently in the cache.
+     *
+     * @return  the size in bytes
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Returns the ratio of hits to all requests.
+     *
+     * @return  the hit rate between 0 and 1
+     */
+    public double getHitRate() {
+        final long requests = hitCount + missCount;
+        return (requests == 0) ? 0d : ((double)hitCount / requests);
+    }
+
+    @Override
+    public String toString() {
+        return "hits: " + hitCount + " misses: " + missCount + " evictions: " + evictionCount + " expirations: "
+                    + expirationCount + " entries: " + entryCount + " weight: " + weight;
+    }
+}
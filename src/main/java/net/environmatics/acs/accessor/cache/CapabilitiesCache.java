@@ -0,0 +1,449 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.cache;
+
+import net.environmatics.acs.accessor.WSSCapabilities;
+import net.environmatics.acs.accessor.utils.ExecutorHelper;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caches the capabilities documents of WSS by their URL. The cache is shared by all accessors that use the same WSS,
+ * see {@link #getDefault()}.<br>
+ * <br>
+ * Only the first request for a WSS waits for the GetCapabilities response; concurrent requests for the same WSS wait
+ * for the same response instead of sending their own. When the time to live of a document has passed, the cached
+ * document is still returned while a conditional GetCapabilities request (If-None-Match / If-Modified-Since) refreshes
+ * it in the background. If a refresh fails, i.e. because the WSS is down, the next refresh is started after a delay
+ * that doubles with every failure, see {@link #setRetryDelay(long)}.<br>
+ * <br>
+ * Every document is parsed once into {@link WSSCapabilities} when it is fetched, so that queries neither parse nor
+ * walk the document again.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class CapabilitiesCache {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static Logger logger = Logger.getLogger(CapabilitiesCache.class);
+
+    /** Default time to live of a capabilities document: 5 minutes. */
+    public static final long DEFAULT_TIME_TO_LIVE = 5 * 60 * 1000L;
+
+    /** Default delay before a failed refresh is retried: 30 seconds. */
+    public static final long DEFAULT_RETRY_DELAY = 30 * 1000L;
+
+    private static final CapabilitiesCache DEFAULT = new CapabilitiesCache(DEFAULT_TIME_TO_LIVE);
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    // initial loads that are in progress, used to let concurrent callers wait for the same request
+    private final ConcurrentMap<String, FutureTask<Entry>> loads = new ConcurrentHashMap<String, FutureTask<Entry>>();
+    private volatile long timeToLive;
+    private volatile long retryDelay = DEFAULT_RETRY_DELAY;
+    private volatile Executor executor;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new CapabilitiesCache object.
+     *
+     * @param  timeToLive  time in milliseconds after which a document is refreshed
+     */
+    public CapabilitiesCache(final long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the cache that is shared by all accessors by default.
+     *
+     * @return  the default CapabilitiesCache
+     */
+    public static CapabilitiesCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the capabilities document of a WSS. If there is no cached document yet, it is loaded and the calling
+     * thread waits for it. A document whose time to live has passed is returned as well, but triggers a refresh in
+     * the background.
+     *
+     * @param   wssURL  the URL of the WSS
+     * @param   loader  sends the GetCapabilities request if needed
+     *
+     * @return  the capabilities document, or <code>null</code> if it could not be loaded
+     */
+    public byte[] get(final String wssURL, final Loader loader) {
+        final Entry entry = getEntry(wssURL, loader);
+        return (entry != null) ? entry.document : null;
+    }
+
+    /**
+     * Returns the parsed capabilities of a WSS. Loads and refreshes the document like
+     * {@link #get(java.lang.String, net.environmatics.acs.accessor.cache.CapabilitiesCache.Loader)}.
+     *
+     * @param   wssURL  the URL of the WSS
+     * @param   loader  sends the GetCapabilities request if needed
+     *
+     * @return  the capabilities, or <code>null</code> if the document could not be loaded or parsed
+     */
+    public WSSCapabilities getCapabilities(final String wssURL, final Loader loader) {
+        final Entry entry = getEntry(wssURL, loader);
+        return (entry != null) ? entry.capabilities : null;
+    }
+
+    /**
+     * Returns the entry of a WSS. If there is no entry yet, it is loaded and the calling thread waits for it. An entry
+     * whose time to live has passed is returned as well, but triggers a refresh in the background unless the last
+     * refresh has failed and its retry delay has not passed yet.
+     *
+     * @param   wssURL  the URL of the WSS
+     * @param   loader  sends the GetCapabilities request if needed
+     *
+     * @return  the entry, or <code>null</code> if the document could not be loaded
+     */
+    private Entry getEntry(final String wssURL, final Loader loader) {
+        final Entry entry = entries.get(wssURL);
+        if (entry == null) {
+            return load(wssURL, loader);
+        }
+        final long now = System.currentTimeMillis();
+        if (((now - entry.fetchedAt) >= timeToLive) && (now >= entry.retryAt)) {
+            refresh(wssURL, entry, loader);
+        }
+        return entry;
+    }
+
+    /**
+     * Loads the capabilities document of a WSS for the first time. Concurrent calls for the same WSS share one
+     * request.
+     *
+     * @param   wssURL  the URL of the WSS
+     * @param   loader  sends the GetCapabilities request
+     *
+     * @return  the new entry, or <code>null</code> if the document could not be loaded
+     */
+    private Entry load(final String wssURL, final Loader loader) {
+        FutureTask<Entry> task = loads.get(wssURL);
+        if (task == null) {
+            final FutureTask<Entry> newTask = new FutureTask<Entry>(new Callable<Entry>() {
+
+                        @Override
+                        public Entry call() throws Exception {
+                            final Response response = loader.load(null, null);
+                            final Entry loaded = new Entry(response);
+                            entries.put(wssURL, loaded);
+                            return loaded;
+                        }
+                    });
+            task = loads.putIfAbsent(wssURL, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+                loads.remove(wssURL, task);
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ex) {
+            logger.info("Could not perform getCapabilities(). Exception: " + ex.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Refreshes an expired entry in the background, unless a refresh of this entry is already running.
+     *
+     * @param  wssURL  the URL of the WSS
+     * @param  entry   the expired entry
+     * @param  loader  sends the conditional GetCapabilities request
+     */
+    private void refresh(final String wssURL, final Entry entry, final Loader loader) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            getExecutor().execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            final Response response = loader.load(entry.etag, entry.lastModified);
+                            if (response.isNotModified()) {
+                                if (logger.isDebugEnabled()) {
+                                    logger.debug("capabilities of " + wssURL + " not modified");
+                                }
+                                entries.replace(wssURL, entry, new Entry(entry));
+                            } else {
+                                entries.replace(wssURL, entry, new Entry(response));
+                            }
+                        } catch (Exception ex) {
+                            refreshFailed(wssURL, entry, ex);
+                        }
+                    }
+                });
+        } catch (RuntimeException ex) {
+            refreshFailed(wssURL, entry, ex);
+        }
+    }
+
+    /**
+     * Delays the next refresh of an entry after a failed refresh. The delay starts with the retry delay and doubles
+     * with every further failure, up to the time to live.
+     *
+     * @param  wssURL  the URL of the WSS
+     * @param  entry   the entry whose refresh has failed
+     * @param  ex      the cause of the failure
+     */
+    private void refreshFailed(final String wssURL, final Entry entry, final Exception ex) {
+        // only the refreshing thread writes the failure count
+        final int failures = ++entry.failedRefreshes;
+        final long delay = Math.min(retryDelay << Math.min(failures - 1, 16), Math.max(retryDelay, timeToLive));
+        entry.retryAt = System.currentTimeMillis() + delay;
+        entry.refreshing.set(false);
+        logger.info("Could not refresh capabilities of " + wssURL + ", retrying in " + delay + " ms. Exception: " + ex);
+    }
+
+    /**
+     * Removes the capabilities document of a WSS, so that the next call of
+     * {@link #get(java.lang.String, net.environmatics.acs.accessor.cache.CapabilitiesCache.Loader)} loads it again.
+     *
+     * @param  wssURL  the URL of the WSS
+     */
+    public void invalidate(final String wssURL) {
+        entries.remove(wssURL);
+    }
+
+    /**
+     * Removes all capabilities documents.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the time to live of the cached documents.
+     *
+     * @return  time in milliseconds after which a document is refreshed
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Sets the time to live of the cached documents.
+     *
+     * @param  timeToLive  time in milliseconds after which a document is refreshed
+     */
+    public void setTimeToLive(final long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Returns the delay before a failed refresh is retried.
+     *
+     * @return  the delay in milliseconds after the first failure
+     */
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * Sets the delay before a failed refresh is retried. The delay doubles with every further failure, up to the time
+     * to live; a successful refresh resets it.
+     *
+     * @param  retryDelay  the delay in milliseconds after the first failure
+     */
+    public void setRetryDelay(final long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * Sets the executor that performs background refreshes.
+     *
+     * @param  executor  the executor, or <code>null</code> for {@link ExecutorHelper#getDefaultExecutor()}
+     */
+    public void setExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the executor that performs background refreshes.
+     *
+     * @return  the executor
+     */
+    private Executor getExecutor() {
+        final Executor exec = executor;
+        return (exec != null) ? exec : ExecutorHelper.getDefaultExecutor();
+    }
+
+    //~ Inner Interfaces -------------------------------------------------------
+
+    /**
+     * Sends GetCapabilities requests for the cache.
+     *
+     * @version  $Revision$, $Date$
+     */
+    public interface Loader {
+
+        //~ Methods ------------------------------------------------------------
+
+        /**
+         * Sends a GetCapabilities request. If <code>etag</code> or <code>lastModified</code> are given, the request
+         * is conditional.
+         *
+         * @param   etag          the ETag of the cached document, may be <code>null</code>
+         * @param   lastModified  the Last-Modified date of the cached document, may be <code>null</code>
+         *
+         * @return  the response
+         *
+         * @throws  IOException  if the request fails
+         */
+        Response load(String etag, String lastModified) throws IOException;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * The response to a GetCapabilities request.
+     *
+     * @version  $Revision$, $Date$
+     */
+    public static final class Response {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final byte[] document;
+        private final String etag;
+        private final String lastModified;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new Response object.
+         *
+         * @param  document      the capabilities document, <code>null</code> if it has not been modified
+         * @param  etag          the ETag header of the response, may be <code>null</code>
+         * @param  lastModified  the Last-Modified header of the response, may be <code>null</code>
+         */
+        public Response(final byte[] document, final String etag, final String lastModified) {
+            this.document = document;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        /**
+         * Creates the response to a conditional request for a document that has not been modified.
+         *
+         * @return  a new Response
+         */
+        public static Response notModified() {
+            return new Response(null, null, null);
+        }
+
+        /**
+         * Checks whether the cached document is still valid.
+         *
+         * @return  <code>true</code> if the WSS answered "304 Not Modified"
+         */
+        public boolean isNotModified() {
+            return document == null;
+        }
+    }
+
+    /**
+     * A cached capabilities document.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class Entry {
+
+        //~ Instance fields ----------------------------------------------------
+
+        final byte[] document;
+        // null if the document could not be parsed
+        final WSSCapabilities capabilities;
+        final String etag;
+        final String lastModified;
+        final long fetchedAt;
+        final AtomicBoolean refreshing = new AtomicBoolean(false);
+        // consecutive failed refreshes and the time before which no refresh is started
+        volatile int failedRefreshes = 0;
+        volatile long retryAt = 0;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new Entry object from a response.
+         *
+         * @param   response  a response containing a document
+         *
+         * @throws  IOException  if the response does not contain a document
+         */
+        Entry(final Response response) throws IOException {
+            if (response.isNotModified()) {
+                throw new IOException("unconditional GetCapabilities request answered with 304 Not Modified");
+            }
+            this.document = response.document;
+            this.capabilities = parse(response.document);
+            this.etag = response.etag;
+            this.lastModified = response.lastModified;
+            this.fetchedAt = System.currentTimeMillis();
+        }
+
+        /**
+         * Creates a new Entry object for a document that has been revalidated.
+         *
+         * @param  revalidated  the entry that is still valid
+         */
+        Entry(final Entry revalidated) {
+            this.document = revalidated.document;
+            this.capabilities = revalidated.capabilities;
+            this.etag = revalidated.etag;
+            this.lastModified = revalidated.lastModified;
+            this.fetchedAt = System.currentTimeMillis();
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        /**
+         * Parses a capabilities document.
+         *
+         * @param   document  the document
+         *
+         * @return  the capabilities, or <code>null</code> if the document is not well-formed
+         */
+        private static WSSCapabilities parse(final byte[] document) {
+            try {
+                return WSSCapabilities.parse(document);
+            } catch (IOException ex) {
+                logger.info("Could not parse capabilities document. Exception: " + ex);
+                return null;
+            }
+        }
+    }
+}
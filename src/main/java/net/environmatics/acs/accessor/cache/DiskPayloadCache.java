@@ -0,0 +1,920 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.cache;
+
+import net.environmatics.acs.accessor.Payload;
+import net.environmatics.acs.accessor.utils.AuthenticationScope;
+import net.environmatics.acs.accessor.utils.ExecutorHelper;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A persistent {@link PayloadCache} that keeps cached responses across restarts. Responses are appended to segment
+ * files in a cache directory. Responses of completed segments are read back through memory mapped buffers, so cache
+ * hits are served without copying the response into the heap; each segment is mapped once. The index of the cache is
+ * rebuilt from the segment files when the cache is opened.<br>
+ * <br>
+ * The total size of the segment files is limited: if it is exceeded, the oldest segment is dropped. Segments that
+ * consist mostly of replaced or expired responses are compacted in the background by copying their remaining
+ * responses to the current segment. Reads do not wait for writes or compaction.<br>
+ * <br>
+ * The keys of the responses are not stored, each record carries an HMAC-SHA256 of its key instead, so neither the
+ * authorization scope nor the service request can be read from the segment files. The secret key of the HMAC is
+ * created on first use and kept in the file <code>cache.key</code> of the cache directory, which is readable by the
+ * owner only.<br>
+ * Responses are found again after a restart only if the authorization scopes in their keys are stable. Unless a
+ * secret key of the scopes is configured with
+ * {@link AuthenticationScope#setSecretKey(byte[])}, the first disk cache that is opened derives it from its own
+ * secret key, see {@link AuthenticationScope#setDefaultSecretKey(byte[])}. So the cache should be opened before the
+ * first request. If several disk caches are used, the secret key of the scopes should be configured.<br>
+ * <br>
+ * Each record of a segment consists of a header (magic number, expiration time, lengths of key, charset and data)
+ * followed by the HMAC of the key, the UTF-8 encoded charset name and the response bytes.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class DiskPayloadCache implements PayloadCache, Closeable {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static Logger logger = Logger.getLogger(DiskPayloadCache.class);
+
+    private static final int MAGIC = 0x57535332; // "WSS2"
+    private static final int HEADER_LENGTH = 24;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final String KEY_FILE = "cache.key";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int KEY_LENGTH = 32;
+    // input of the HMAC that derives the secret key of the authorization scopes from the secret key of the cache
+    private static final byte[] SCOPE_KEY_LABEL = "AuthenticationScope".getBytes(StandardCharsets.UTF_8);
+
+    /** Default size of a segment file in bytes. */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    // segments with less live data than this ratio are compacted
+    private static final double COMPACTION_RATIO = 0.5d;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final File directory;
+    private final long maxSize;
+    private final long segmentSize;
+    private final long timeToLive;
+    private final SecretKeySpec secretKey;
+    // Mac.getInstance() is expensive, so every thread keeps its Mac
+    private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>();
+    // ordered by segment id, the last segment is the one that is written to; modified while holding the write lock
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<Integer, Segment>();
+    private final Map<RecordKey, Location> index = new ConcurrentHashMap<RecordKey, Location>();
+    // serializes appending, dropping and closing; get() does not take it
+    private final Lock writeLock = new ReentrantLock();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+    private volatile long totalSize = 0;
+    private volatile boolean closed = false;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new DiskPayloadCache object with segments of {@link #DEFAULT_SEGMENT_SIZE}.
+     *
+     * @param   directory   the cache directory, is created if it does not exist
+     * @param   maxSize     maximum size of all segment files in bytes
+     * @param   timeToLive  time in milliseconds after which a cached response expires
+     *
+     * @throws  IOException  if the cache directory cannot be read
+     */
+    public DiskPayloadCache(final File directory, final long maxSize, final long timeToLive) throws IOException {
+        this(directory, maxSize, Math.min(DEFAULT_SEGMENT_SIZE, Math.max(1, maxSize / 4)), timeToLive);
+    }
+
+    /**
+     * Creates a new DiskPayloadCache object.
+     *
+     * @param   directory    the cache directory, is created if it does not exist
+     * @param   maxSize      maximum size of all segment files in bytes
+     * @param   segmentSize  size in bytes after which a new segment file is started
+     * @param   timeToLive   time in milliseconds after which a cached response expires
+     *
+     * @throws  IOException               if the cache directory cannot be created or read
+     * @throws  IllegalArgumentException  if one of the sizes or the time to live is not positive, or the segment size
+     *                                    exceeds 2 GB
+     */
+    public DiskPayloadCache(final File directory, final long maxSize, final long segmentSize, final long timeToLive)
+            throws IOException {
+        if ((maxSize <= 0) || (segmentSize <= 0) || (timeToLive <= 0)) {
+            throw new IllegalArgumentException("maxSize, segmentSize and timeToLive must be positive");
+        }
+        if (segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segmentSize must not exceed " + Integer.MAX_VALUE + " bytes");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create cache directory " + directory);
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.segmentSize = segmentSize;
+        this.timeToLive = timeToLive;
+        final File keyFile = new File(directory, KEY_FILE);
+        final boolean newKey = !keyFile.isFile();
+        this.secretKey = new SecretKeySpec(newKey ? createKeyFile(keyFile) : readKeyFile(keyFile), ALGORITHM);
+        if (!AuthenticationScope.setDefaultSecretKey(getMac().doFinal(SCOPE_KEY_LABEL))) {
+            logger.warn("The authorization scopes use the secret key of another disk cache, so the responses in "
+                        + directory + " are found again after a restart only if that cache is opened first. "
+                        + "Configure the key with AuthenticationScope.setSecretKey().");
+        }
+        open(newKey);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates the key file of a new cache directory, readable and writable by the owner only.
+     *
+     * @param   keyFile  the key file
+     *
+     * @return  the new secret key
+     *
+     * @throws  IOException  if the key file cannot be written
+     */
+    private static byte[] createKeyFile(final File keyFile) throws IOException {
+        final byte[] key = new byte[KEY_LENGTH];
+        new SecureRandom().nextBytes(key);
+        if (!keyFile.createNewFile()) {
+            throw new IOException("Could not create key file " + keyFile);
+        }
+        // restrict the permissions before the key is written
+        keyFile.setReadable(false, false);
+        keyFile.setWritable(false, false);
+        keyFile.setReadable(true, true);
+        keyFile.setWritable(true, true);
+        FileUtils.writeByteArrayToFile(keyFile, key);
+        return key;
+    }
+
+    /**
+     * Reads the key file of an existing cache directory.
+     *
+     * @param   keyFile  the key file
+     *
+     * @return  the secret key
+     *
+     * @throws  IOException  if the key file cannot be read or is invalid
+     */
+    private static byte[] readKeyFile(final File keyFile) throws IOException {
+        final byte[] key = FileUtils.readFileToByteArray(keyFile);
+        if (key.length != KEY_LENGTH) {
+            throw new IOException("Invalid key file " + keyFile);
+        }
+        return key;
+    }
+
+    /**
+     * Opens the existing segments of the cache directory and rebuilds the index from them.
+     *
+     * @param   newKey  <code>true</code> if the secret key has just been created, so existing segments cannot be read
+     *
+     * @throws  IOException  if a segment cannot be read
+     */
+    private void open(final boolean newKey) throws IOException {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                final String name = file.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    if (newKey) {
+                        // written with another key or by an older version that stored the keys themselves
+                        logger.warn("Deleting segment without key file in cache directory: " + file);
+                        if (!file.delete()) {
+                            throw new IOException("Could not delete " + file);
+                        }
+                        continue;
+                    }
+                    try {
+                        final int id = Integer.parseInt(name.substring(
+                                    SEGMENT_PREFIX.length(),
+                                    name.length()
+                                            - SEGMENT_SUFFIX.length()));
+                        segments.put(id, new Segment(id, file));
+                    } catch (NumberFormatException ex) {
+                        logger.warn("Ignoring unknown file in cache directory: " + file);
+                    }
+                }
+            }
+        }
+        final long now = System.currentTimeMillis();
+        for (final Segment segment : segments.values()) {
+            scan(segment, now);
+            totalSize += segment.size;
+        }
+        if (segments.isEmpty()) {
+            addSegment(1);
+        } else {
+            for (final Segment segment : segments.headMap(segments.lastKey()).values()) {
+                segment.sealed = true;
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("opened disk cache " + directory + " with " + index.size() + " entries in " + segments.size()
+                        + " segments");
+        }
+        compact();
+    }
+
+    /**
+     * Adds the records of a segment to the index. A record that is incomplete, i.e. because the application has been
+     * stopped while it was written, and everything after it is cut off.
+     *
+     * @param   segment  the segment to scan
+     * @param   now      current time in milliseconds
+     *
+     * @throws  IOException  if the segment cannot be read
+     */
+    private void scan(final Segment segment, final long now) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        final long fileSize = segment.channel.size();
+        long offset = 0;
+        while (offset < fileSize) {
+            header.clear();
+            if ((segment.channel.read(header, offset) < HEADER_LENGTH) || (header.getInt(0) != MAGIC)) {
+                break;
+            }
+            final long expiresAt = header.getLong(4);
+            final int keyLength = header.getInt(12);
+            final int charsetLength = header.getInt(16);
+            final int dataLength = header.getInt(20);
+            final long recordLength = (long)HEADER_LENGTH + keyLength + charsetLength + dataLength;
+            if ((keyLength != KEY_LENGTH) || (charsetLength < 0) || (dataLength < 0)
+                        || ((offset + recordLength) > fileSize)) {
+                break;
+            }
+            final ByteBuffer strings = ByteBuffer.allocate(keyLength + charsetLength);
+            segment.channel.read(strings, offset + HEADER_LENGTH);
+            final RecordKey key = new RecordKey(Arrays.copyOf(strings.array(), keyLength));
+            final String charset = new String(strings.array(), keyLength, charsetLength, StandardCharsets.UTF_8);
+            segment.size = offset + recordLength;
+            if (expiresAt > now) {
+                addToIndex(key,
+                    new Location(
+                        segment,
+                        offset,
+                        (int)recordLength,
+                        offset
+                                + HEADER_LENGTH
+                                + keyLength
+                                + charsetLength,
+                        dataLength,
+                        charset,
+                        expiresAt));
+            }
+            offset += recordLength;
+        }
+        if (segment.size < fileSize) {
+            logger.warn("Truncating incomplete record at " + segment.size + " in " + segment.file);
+            segment.channel.truncate(segment.size);
+        }
+    }
+
+    /**
+     * Returns the key of a request in the segment files, the HMAC of its String representation.
+     *
+     * @param   key  the key of the request
+     *
+     * @return  the key of the record
+     *
+     * @throws  IllegalStateException  if HMAC-SHA256 is not supported, which every Java platform is required to do
+     */
+    private RecordKey recordKey(final CacheKey key) {
+        return new RecordKey(getMac().doFinal(key.asString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Returns the HMAC-SHA256 Mac of the current thread, initialized with the secret key of the cache.
+     *
+     * @return  the Mac of the current thread
+     *
+     * @throws  IllegalStateException  if HMAC-SHA256 is not supported, which every Java platform is required to do
+     */
+    private Mac getMac() {
+        Mac mac = macs.get();
+        if (mac != null) {
+            // doFinal() resets the Mac, reset() covers an update that failed before
+            mac.reset();
+            return mac;
+        }
+        try {
+            mac = Mac.getInstance(ALGORITHM);
+            mac.init(secretKey);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("HMAC-SHA256 is not supported", ex);
+        }
+        macs.set(mac);
+        return mac;
+    }
+
+    @Override
+    public Payload get(final CacheKey key) {
+        final CacheEntry entry = getEntry(key);
+        return (entry == null) ? null : entry.getPayload();
+    }
+
+    @Override
+    public CacheEntry getEntry(final CacheKey key) {
+        if (closed) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        final RecordKey recordKey = recordKey(key);
+        final Location location = index.get(recordKey);
+        if (location == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        if (location.expiresAt <= now) {
+            if (removeFromIndex(recordKey, location)) {
+                expirationCount.incrementAndGet();
+            }
+            missCount.incrementAndGet();
+            return null;
+        }
+        try {
+            final ByteBuffer data = location.segment.read(location.dataOffset, location.dataLength);
+            hitCount.incrementAndGet();
+            return new CacheEntry(
+                    new Payload(data, location.charset.isEmpty() ? null : location.charset),
+                    location.expiresAt);
+        } catch (ClosedChannelException ex) {
+            // the segment has been dropped after the lookup
+            missCount.incrementAndGet();
+            return null;
+        } catch (IOException ex) {
+            logger.warn("Could not read cached response from " + location.segment.file, ex);
+            removeFromIndex(recordKey, location);
+            missCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    @Override
+    public void put(final CacheKey key, final Payload payload) {
+        if (payload.containsException() || closed) {
+            return;
+        }
+        final RecordKey recordKey = recordKey(key);
+        final byte[] charsetBytes = (payload.getCharset() == null)
+            ? new byte[0] : payload.getCharset().getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer data = payload.asByteBuffer();
+        final long recordLength = (long)HEADER_LENGTH + KEY_LENGTH + charsetBytes.length + data.remaining();
+        if ((recordLength < 0) || (recordLength > maxSize) || (recordLength > segmentSize)) {
+            return;
+        }
+        final long expiresAt = System.currentTimeMillis() + timeToLive;
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putLong(expiresAt).putInt(KEY_LENGTH).putInt(charsetBytes.length).putInt(data.remaining());
+        header.flip();
+
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            append(recordKey, expiresAt, payload.getCharset(), new ByteBuffer[] {
+                    header,
+                    ByteBuffer.wrap(recordKey.bytes),
+                    ByteBuffer.wrap(charsetBytes),
+                    data
+                }, KEY_LENGTH + charsetBytes.length, (int)recordLength);
+        } catch (IOException ex) {
+            logger.warn("Could not write response to disk cache " + directory, ex);
+        } finally {
+            writeLock.unlock();
+        }
+        scheduleCompaction();
+    }
+
+    /**
+     * Appends a record to the current segment and adds it to the index. Drops the oldest segments first if the record
+     * would exceed the size limit of the cache. Must be called while holding the write lock.
+     *
+     * @param   key            the key of the record
+     * @param   expiresAt      time in milliseconds when the record expires
+     * @param   charset        charset of the response, may be <code>null</code>
+     * @param   record         header, key, charset and data of the record
+     * @param   stringsLength  length of the key and the encoded charset
+     * @param   recordLength   length of the whole record
+     *
+     * @throws  IOException  if the record cannot be written
+     */
+    private void append(final RecordKey key,
+            final long expiresAt,
+            final String charset,
+            final ByteBuffer[] record,
+            final int stringsLength,
+            final int recordLength) throws IOException {
+        Segment segment = segments.lastEntry().getValue();
+        if ((segment.size > 0) && ((segment.size + recordLength) > segmentSize)) {
+            segment = addSegment(segment.id + 1);
+        }
+        while (((totalSize + recordLength) > maxSize) && (segments.firstEntry().getValue() != segment)) {
+            evictionCount.addAndGet(dropSegment(segments.firstEntry().getValue()));
+        }
+        if (((totalSize + recordLength) > maxSize) && (segment.size > 0)) {
+            // only the current segment is left and it is too large, i.e. the segment size exceeds the size limit
+            final Segment full = segment;
+            segment = addSegment(full.id + 1);
+            evictionCount.addAndGet(dropSegment(full));
+        }
+        final long offset = segment.size;
+        long written = 0;
+        while (written < recordLength) {
+            segment.channel.position(offset + written);
+            written += segment.channel.write(record);
+        }
+        segment.size += recordLength;
+        totalSize += recordLength;
+        addToIndex(key,
+            new Location(
+                segment,
+                offset,
+                recordLength,
+                offset
+                        + HEADER_LENGTH
+                        + stringsLength,
+                recordLength
+                        - HEADER_LENGTH
+                        - stringsLength,
+                (charset == null) ? "" : charset,
+                expiresAt));
+    }
+
+    /**
+     * Starts compacting the cache in the background if a completed segment consists mostly of replaced or expired
+     * records and no compaction is running.
+     */
+    private void scheduleCompaction() {
+        if (closed || !needsCompaction() || !compacting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            ExecutorHelper.getDefaultExecutor().execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            compact();
+                        } catch (IOException ex) {
+                            logger.warn("Could not compact disk cache " + directory, ex);
+                        } finally {
+                            compacting.set(false);
+                        }
+                    }
+                });
+        } catch (RuntimeException ex) {
+            compacting.set(false);
+            logger.warn("Could not start compaction of disk cache " + directory, ex);
+        }
+    }
+
+    /**
+     * Checks if a completed segment consists mostly of replaced or expired records.
+     *
+     * @return  <code>true</code> if a segment should be compacted
+     */
+    private boolean needsCompaction() {
+        final Integer current = segments.lastKey();
+        for (final Segment segment : segments.headMap(current).values()) {
+            if (segment.isSparse()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compacts the completed segments that consist mostly of replaced or expired records. The remaining records are
+     * copied one at a time, so writers wait for a single copy at most and readers do not wait at all.
+     *
+     * @throws  IOException  if a segment cannot be compacted
+     */
+    private void compact() throws IOException {
+        final long now = System.currentTimeMillis();
+        final List<Segment> sealed = new ArrayList<Segment>(segments.headMap(segments.lastKey()).values());
+        for (final Segment segment : sealed) {
+            if (!segment.isSparse()) {
+                continue;
+            }
+            int kept = 0;
+            for (final Map.Entry<RecordKey, Location> entry : index.entrySet()) {
+                final Location location = entry.getValue();
+                if (location.segment != segment) {
+                    continue;
+                }
+                if (location.expiresAt <= now) {
+                    if (removeFromIndex(entry.getKey(), location)) {
+                        expirationCount.incrementAndGet();
+                    }
+                    continue;
+                }
+                writeLock.lock();
+                try {
+                    if (closed || (segments.get(segment.id) != segment)) {
+                        // closed, or dropped to keep the size limit
+                        return;
+                    }
+                    if (index.get(entry.getKey()) != location) {
+                        // replaced by a newer response
+                        continue;
+                    }
+                    final ByteBuffer record = segment.read(location.recordOffset, location.recordLength);
+                    append(
+                        entry.getKey(),
+                        location.expiresAt,
+                        location.charset,
+                        new ByteBuffer[] { record },
+                        location.recordLength
+                                - HEADER_LENGTH
+                                - location.dataLength,
+                        location.recordLength);
+                    kept++;
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+            writeLock.lock();
+            try {
+                if (closed || (segments.get(segment.id) != segment)) {
+                    return;
+                }
+                expirationCount.addAndGet(dropSegment(segment));
+            } finally {
+                writeLock.unlock();
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("compacted segment " + segment.file + ", " + kept + " responses kept");
+            }
+        }
+    }
+
+    /**
+     * Removes a segment and all of its records from the cache. Must be called while holding the write lock.
+     *
+     * @param   segment  the segment to remove
+     *
+     * @return  the number of records that have been removed from the index
+     *
+     * @throws  IOException  if the segment cannot be closed
+     */
+    private int dropSegment(final Segment segment) throws IOException {
+        int removed = 0;
+        final Iterator<Location> it = index.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().segment == segment) {
+                it.remove();
+                removed++;
+            }
+        }
+        if (segments.size() == 1) {
+            // add the next segment first, so there is always a current segment for concurrent readers
+            addSegment(segment.id + 1);
+        }
+        segments.remove(segment.id);
+        totalSize -= segment.size;
+        segment.close();
+        // payloads that are still in use keep their mapping, the file is released when they are collected
+        if (!segment.file.delete()) {
+            segment.file.deleteOnExit();
+        }
+        return removed;
+    }
+
+    /**
+     * Creates a new, empty segment that is written to from now on. The previous segment is completed. Must be called
+     * while holding the write lock.
+     *
+     * @param   id  the id of the new segment
+     *
+     * @return  the new segment
+     *
+     * @throws  IOException  if the segment file cannot be created
+     */
+    private Segment addSegment(final int id) throws IOException {
+        final Segment segment = new Segment(id, new File(directory, SEGMENT_PREFIX + id + SEGMENT_SUFFIX));
+        if (!segments.isEmpty()) {
+            segments.lastEntry().getValue().sealed = true;
+        }
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Adds a record to the index, replacing an older record with the same key.
+     *
+     * @param  key       the key of the record
+     * @param  location  the position of the record
+     */
+    private void addToIndex(final RecordKey key, final Location location) {
+        final Location previous = index.put(key, location);
+        if (previous != null) {
+            previous.segment.liveBytes.addAndGet(-previous.recordLength);
+        }
+        location.segment.liveBytes.addAndGet(location.recordLength);
+    }
+
+    /**
+     * Removes a record from the index unless it has been replaced in the meantime.
+     *
+     * @param   key       the key of the record
+     * @param   location  the position of the record
+     *
+     * @return  <code>true</code> if the record has been removed
+     */
+    private boolean removeFromIndex(final RecordKey key, final Location location) {
+        if (index.remove(key, location)) {
+            location.segment.liveBytes.addAndGet(-location.recordLength);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void invalidateAll() {
+        writeLock.lock();
+        try {
+            for (final Segment segment : new ArrayList<Segment>(segments.values())) {
+                dropSegment(segment);
+            }
+        } catch (IOException ex) {
+            logger.warn("Could not clear disk cache " + directory, ex);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        return new CacheStatistics(
+                hitCount.get(),
+                missCount.get(),
+                evictionCount.get(),
+                expirationCount.get(),
+                index.size(),
+                totalSize);
+    }
+
+    /**
+     * Writes all segments to disk and closes them. Payloads that have been read from the cache stay valid.
+     *
+     * @throws  IOException  if a segment cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (final Segment segment : segments.values()) {
+                segment.channel.force(false);
+                segment.close();
+            }
+            index.clear();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * A segment file.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class Segment {
+
+        //~ Instance fields ----------------------------------------------------
+
+        final int id;
+        final File file;
+        final FileChannel channel;
+        // length of all complete records, only changed while holding the write lock
+        volatile long size = 0;
+        // length of all records that are referenced by the index
+        final AtomicLong liveBytes = new AtomicLong();
+        // no more records are appended, so the segment can be mapped
+        volatile boolean sealed = false;
+        private volatile MappedByteBuffer mapped;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new Segment object.
+         *
+         * @param   id    the id of the segment
+         * @param   file  the segment file
+         *
+         * @throws  IOException  if the file cannot be opened
+         */
+        Segment(final int id, final File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        /**
+         * Checks if less than half of the segment is referenced by the index.
+         *
+         * @return  <code>true</code> if the segment should be compacted
+         */
+        boolean isSparse() {
+            return liveBytes.get() < (size * COMPACTION_RATIO);
+        }
+
+        /**
+         * Reads a range of the segment. A completed segment is mapped once and the range is returned as a view of the
+         * mapping. The range of the segment that is written to is read into the heap, so the segment does not have to
+         * be mapped again whenever it grows.
+         *
+         * @param   offset  the offset of the range
+         * @param   length  the length of the range
+         *
+         * @return  a buffer with the range between its position and its limit
+         *
+         * @throws  IOException  if the segment cannot be read
+         */
+        ByteBuffer read(final long offset, final int length) throws IOException {
+            if (sealed) {
+                final ByteBuffer buffer = map();
+                buffer.position((int)offset);
+                buffer.limit((int)(offset + length));
+                return buffer;
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of " + file);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        /**
+         * Returns a mapping of the completed segment. The segment is mapped on first use.
+         *
+         * @return  a new read only view of the mapping
+         *
+         * @throws  IOException  if the segment cannot be mapped
+         */
+        private ByteBuffer map() throws IOException {
+            MappedByteBuffer buffer = mapped;
+            if (buffer == null) {
+                synchronized (this) {
+                    buffer = mapped;
+                    if (buffer == null) {
+                        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                        mapped = buffer;
+                    }
+                }
+            }
+            return buffer.asReadOnlyBuffer();
+        }
+
+        /**
+         * Closes the segment file.
+         *
+         * @throws  IOException  if the file cannot be closed
+         */
+        void close() throws IOException {
+            mapped = null;
+            channel.close();
+        }
+    }
+
+    /**
+     * The key of a record, the HMAC of the key of a request.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class RecordKey {
+
+        //~ Instance fields ----------------------------------------------------
+
+        final byte[] bytes;
+        private final int hash;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new RecordKey object.
+         *
+         * @param  bytes  the HMAC
+         */
+        RecordKey(final byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        @Override
+        public boolean equals(final Object obj) {
+            return (obj instanceof RecordKey) && Arrays.equals(bytes, ((RecordKey)obj).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The position of a record in a segment.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class Location {
+
+        //~ Instance fields ----------------------------------------------------
+
+        final Segment segment;
+        final long recordOffset;
+        final int recordLength;
+        final long dataOffset;
+        final int dataLength;
+        final String charset;
+        final long expiresAt;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new Location object.
+         *
+         * @param  segment       the segment containing the record
+         * @param  recordOffset  offset of the record in the segment
+         * @param  recordLength  length of the record
+         * @param  dataOffset    offset of the response bytes in the segment
+         * @param  dataLength    length of the response bytes
+         * @param  charset       charset of the response, empty if unknown
+         * @param  expiresAt     time in milliseconds when the record expires
+         */
+        Location(final Segment segment,
+                final long recordOffset,
+                final int recordLength,
+                final long dataOffset,
+                final int dataLength,
+                final String charset,
+                final long expiresAt) {
+            this.segment = segment;
+            this.recordOffset = recordOffset;
+            this.recordLength = recordLength;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+            this.charset = charset;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
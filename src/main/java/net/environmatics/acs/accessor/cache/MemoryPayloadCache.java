@@ -0,0 +1,255 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.cache;
+
+import net.environmatics.acs.accessor.Payload;
+
+import org.apache.log4j.Logger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An in-memory {@link PayloadCache} with least recently used eviction. The size of the cache is limited by the total
+ * number of bytes of the cached responses, each entry expires after a fixed time to live.<br>
+ * <br>
+ * Optionally a second level cache, i.e. a {@link DiskPayloadCache}, can be placed beneath the memory cache. All
+ * responses are written to both levels, responses that are only found in the second level are moved up into memory.
+ * A response that is moved up expires in memory when it would expire in the second level, or after the time to live of
+ * the memory cache if that is earlier.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class MemoryPayloadCache implements PayloadCache {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static Logger logger = Logger.getLogger(MemoryPayloadCache.class);
+
+    // estimated heap overhead of an entry without payload bytes and key characters
+    private static final int ENTRY_OVERHEAD = 128;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final long maxWeight;
+    private final long timeToLive;
+    private final PayloadCache secondLevel;
+    // access ordered, the eldest entry is the least recently used one
+    private final LinkedHashMap<CacheKey, Entry> entries = new LinkedHashMap<CacheKey, Entry>(64, 0.75f, true);
+    private long weight = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+    private long expirationCount = 0;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new MemoryPayloadCache object.
+     *
+     * @param   maxWeight   maximum size of all cached responses in bytes
+     * @param   timeToLive  time in milliseconds after which a cached response expires
+     *
+     * @throws  IllegalArgumentException  if one of the arguments is not positive
+     */
+    public MemoryPayloadCache(final long maxWeight, final long timeToLive) {
+        this(maxWeight, timeToLive, null);
+    }
+
+    /**
+     * Creates a new MemoryPayloadCache object with a second level cache.
+     *
+     * @param   maxWeight    maximum size of all cached responses in bytes
+     * @param   timeToLive   time in milliseconds after which a cached response expires
+     * @param   secondLevel  the cache beneath this cache, may be <code>null</code>
+     *
+     * @throws  IllegalArgumentException  if one of the arguments is not positive
+     */
+    public MemoryPayloadCache(final long maxWeight, final long timeToLive, final PayloadCache secondLevel) {
+        if ((maxWeight <= 0) || (timeToLive <= 0)) {
+            throw new IllegalArgumentException("maxWeight and timeToLive must be positive");
+        }
+        this.maxWeight = maxWeight;
+        this.timeToLive = timeToLive;
+        this.secondLevel = secondLevel;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    @Override
+    public Payload get(final CacheKey key) {
+        final CacheEntry entry = getEntry(key);
+        return (entry == null) ? null : entry.getPayload();
+    }
+
+    @Override
+    public CacheEntry getEntry(final CacheKey key) {
+        final long now = System.currentTimeMillis();
+        synchronized (entries) {
+            final Entry entry = entries.get(key);
+            if ((entry != null) && (entry.expiresAt > now)) {
+                hitCount++;
+                return new CacheEntry(entry.payload, entry.expiresAt);
+            }
+            if (entry != null) {
+                remove(key, entry);
+                expirationCount++;
+            }
+            missCount++;
+        }
+        if (secondLevel != null) {
+            final CacheEntry entry = secondLevel.getEntry(key);
+            if (entry != null) {
+                // keep the expiration time of the second level instead of starting a new time to live
+                final long expiresAt = Math.min(entry.getExpiresAt(), now + timeToLive);
+                store(key, entry.getPayload(), expiresAt);
+                return new CacheEntry(entry.getPayload(), expiresAt);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void put(final CacheKey key, final Payload payload) {
+        if (payload.containsException()) {
+            return;
+        }
+        store(key, payload, System.currentTimeMillis() + timeToLive);
+        if (secondLevel != null) {
+            secondLevel.put(key, payload);
+        }
+    }
+
+    /**
+     * Stores a response in memory.
+     *
+     * @param  key        the key of the request
+     * @param  payload    the response
+     * @param  expiresAt  time in milliseconds when the entry expires
+     */
+    private void store(final CacheKey key, final Payload payload, final long expiresAt) {
+        final long entryWeight = payload.getLength() + (2L * key.asString().length()) + ENTRY_OVERHEAD;
+        final Entry entry = new Entry(payload, expiresAt, entryWeight);
+        if (entry.weight > maxWeight) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("response of " + entry.weight + " bytes exceeds the cache size, not cached");
+            }
+            return;
+        }
+        synchronized (entries) {
+            final Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += entry.weight;
+            evict();
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+        if (secondLevel != null) {
+            secondLevel.invalidateAll();
+        }
+    }
+
+    /**
+     * Returns the cache beneath this cache.
+     *
+     * @return  the second level cache, or <code>null</code>
+     */
+    public PayloadCache getSecondLevel() {
+        return secondLevel;
+    }
+
+    /**
+     * Returns the counters of the memory level. Use {@link #getSecondLevel()} for the counters of the second level.
+     *
+     * @return  a snapshot of the cache statistics
+     */
+    @Override
+    public CacheStatistics getStatistics() {
+        synchronized (entries) {
+            return new CacheStatistics(hitCount, missCount, evictionCount, expirationCount, entries.size(), weight);
+        }
+    }
+
+    /**
+     * Removes expired entries and then the least recently used entries until the cache fits into its size limit. Must
+     * be called while holding the lock on <code>entries</code>.
+     */
+    private void evict() {
+        if (weight <= maxWeight) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        Iterator<Map.Entry<CacheKey, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            final Entry entry = it.next().getValue();
+            if (entry.expiresAt <= now) {
+                it.remove();
+                weight -= entry.weight;
+                expirationCount++;
+            }
+        }
+        it = entries.entrySet().iterator();
+        while ((weight > maxWeight) && it.hasNext()) {
+            final Entry entry = it.next().getValue();
+            it.remove();
+            weight -= entry.weight;
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Removes an entry. Must be called while holding the lock on <code>entries</code>.
+     *
+     * @param  key    the key of the entry
+     * @param  entry  the entry
+     */
+    private void remove(final CacheKey key, final Entry entry) {
+        entries.remove(key);
+        weight -= entry.weight;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * A cached response.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class Entry {
+
+        //~ Instance fields ----------------------------------------------------
+
+        final Payload payload;
+        final long expiresAt;
+        final long weight;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new Entry object.
+         *
+         * @param  payload    the cached response
+         * @param  expiresAt  time in milliseconds when the entry expires
+         * @param  weight     estimated size of the entry in bytes
+         */
+        Entry(final Payload payload, final long expiresAt, final long weight) {
+            this.payload = payload;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.cache;
+
+import net.environmatics.acs.accessor.Payload;
+
+/**
+ * A cache for doService responses. Implementations must be thread safe and must never store payloads that contain a
+ * ServiceExceptionReport.
+ *
+ * @version  $Revision$, $Date$
+ */
+public interface PayloadCache {
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the cached response of a request.
+     *
+     * @param   key  the key of the request
+     *
+     * @return  the cached response, or <code>null</code> if there is no valid entry
+     */
+    Payload get(CacheKey key);
+
+    /**
+     * Returns the cached response of a request together with the time it expires, so a cache above this one does not
+     * keep the response longer than this cache would. The default implementation does not know the expiration time.
+     *
+     * @param   key  the key of the request
+     *
+     * @return  the cached entry, or <code>null</code> if there is no valid entry
+     */
+    default CacheEntry getEntry(final CacheKey key) {
+        final Payload payload = get(key);
+        return (payload == null) ? null : new CacheEntry(payload, Long.MAX_VALUE);
+    }
+
+    /**
+     * Stores the response of a request. Responses containing a ServiceExceptionReport are ignored.
+     *
+     * @param  key      the key of the request
+     * @param  payload  the response
+     */
+    void put(CacheKey key, Payload payload);
+
+    /**
+     * Removes all entries.
+     */
+    void invalidateAll();
+
+    /**
+     * Returns the hit, miss and eviction counters of the cache.
+     *
+     * @return  a snapshot of the cache statistics
+     */
+    CacheStatistics getStatistics();
+}
@@ -0,0 +1,225 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.http;
+
+/**
+ * Settings of the HTTP connection pool of a WSS accessor. The defaults allow 20 concurrent connections per WSS host,
+ * instead of the 2 connections HttpClient allows by default. Like before, requests wait for data and for a free
+ * connection without a timeout unless configured otherwise.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class ConnectionPoolConfiguration {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    /** Default maximum number of connections of the pool. */
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 100;
+    /** Default maximum number of connections per host. */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+    /** Default connect timeout in milliseconds. */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 30 * 1000;
+    /** Default socket (read) timeout in milliseconds, none because large responses may take long. */
+    public static final int DEFAULT_SOCKET_TIMEOUT = 0;
+    /** Default time in milliseconds to wait for a free connection of the pool, none. */
+    public static final long DEFAULT_CONNECTION_REQUEST_TIMEOUT = 0;
+    /** Default time in milliseconds after which an idle connection is closed. */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30 * 1000L;
+    /** Default interval in milliseconds in which idle connections are looked for. */
+    public static final long DEFAULT_REAPER_INTERVAL = 5 * 1000L;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+    private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    private boolean staleCheckingEnabled = true;
+    private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
+    private long connectionRequestTimeout = DEFAULT_CONNECTION_REQUEST_TIMEOUT;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private long reaperInterval = DEFAULT_REAPER_INTERVAL;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new ConnectionPoolConfiguration object with the default settings.
+     */
+    public ConnectionPoolConfiguration() {
+    }
+
+    /**
+     * Creates a copy of a ConnectionPoolConfiguration.
+     *
+     * @param  other  the configuration to copy
+     */
+    public ConnectionPoolConfiguration(final ConnectionPoolConfiguration other) {
+        this.maxTotalConnections = other.maxTotalConnections;
+        this.maxConnectionsPerHost = other.maxConnectionsPerHost;
+        this.staleCheckingEnabled = other.staleCheckingEnabled;
+        this.connectTimeout = other.connectTimeout;
+        this.socketTimeout = other.socketTimeout;
+        this.connectionRequestTimeout = other.connectionRequestTimeout;
+        this.idleTimeout = other.idleTimeout;
+        this.reaperInterval = other.reaperInterval;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the maximum number of connections of the pool.
+     *
+     * @return  the maximum number of connections
+     */
+    public int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
+    /**
+     * Sets the maximum number of connections of the pool.
+     *
+     * @param  maxTotalConnections  the maximum number of connections
+     */
+    public void setMaxTotalConnections(final int maxTotalConnections) {
+        this.maxTotalConnections = maxTotalConnections;
+    }
+
+    /**
+     * Returns the maximum number of connections per host.
+     *
+     * @return  the maximum number of connections per host
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * Sets the maximum number of connections per host.
+     *
+     * @param  maxConnectionsPerHost  the maximum number of connections per host
+     */
+    public void setMaxConnectionsPerHost(final int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * Returns whether pooled connections are checked for being closed by the server before they are used.
+     *
+     * @return  true if stale checking is enabled
+     */
+    public boolean isStaleCheckingEnabled() {
+        return staleCheckingEnabled;
+    }
+
+    /**
+     * Enables or disables the check for connections closed by the server. The check costs about a millisecond per
+     * request, the idle reaper makes stale connections less likely.
+     *
+     * @param  staleCheckingEnabled  true to enable stale checking
+     */
+    public void setStaleCheckingEnabled(final boolean staleCheckingEnabled) {
+        this.staleCheckingEnabled = staleCheckingEnabled;
+    }
+
+    /**
+     * Returns the connect timeout.
+     *
+     * @return  the connect timeout in milliseconds, 0 means no timeout
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Sets the connect timeout.
+     *
+     * @param  connectTimeout  the connect timeout in milliseconds, 0 means no timeout
+     */
+    public void setConnectTimeout(final int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Returns the socket timeout, i.e. the maximum time to wait for data.
+     *
+     * @return  the socket timeout in milliseconds, 0 means no timeout
+     */
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    /**
+     * Sets the socket timeout, i.e. the maximum time to wait for data.
+     *
+     * @param  socketTimeout  the socket timeout in milliseconds, 0 means no timeout
+     */
+    public void setSocketTimeout(final int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+    }
+
+    /**
+     * Returns the maximum time to wait for a free connection of the pool.
+     *
+     * @return  the timeout in milliseconds, 0 means no timeout
+     */
+    public long getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    /**
+     * Sets the maximum time to wait for a free connection of the pool.
+     *
+     * @param  connectionRequestTimeout  the timeout in milliseconds, 0 means no timeout
+     */
+    public void setConnectionRequestTimeout(final long connectionRequestTimeout) {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
+    /**
+     * Returns the time after which an idle connection is closed by the reaper.
+     *
+     * @return  the idle timeout in milliseconds
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the time after which an idle connection is closed by the reaper.
+     *
+     * @param  idleTimeout  the idle timeout in milliseconds
+     */
+    public void setIdleTimeout(final long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Returns the interval in which the reaper looks for idle connections.
+     *
+     * @return  the interval in milliseconds, 0 or less if idle connections are not reaped
+     */
+    public long getReaperInterval() {
+        return reaperInterval;
+    }
+
+    /**
+     * Sets the interval in which the reaper looks for idle connections.
+     *
+     * @param  reaperInterval  the interval in milliseconds, 0 or less to disable the reaper
+     */
+    public void setReaperInterval(final long reaperInterval) {
+        this.reaperInterval = reaperInterval;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolConfiguration[maxTotal=" + maxTotalConnections + ", maxPerHost=" + maxConnectionsPerHost
+                    + ", staleChecking=" + staleCheckingEnabled + ", connectTimeout=" + connectTimeout
+                    + ", socketTimeout=" + socketTimeout + ", connectionRequestTimeout=" + connectionRequestTimeout
+                    + ", idleTimeout=" + idleTimeout + ", reaperInterval=" + reaperInterval + "]";
+    }
+}
@@ -0,0 +1,163 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.http;
+
+/**
+ * A snapshot of the state and the counters of a {@link PooledConnectionManager}.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class ConnectionPoolStatistics {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int leasedConnections;
+    private final int idleConnections;
+    private final int pendingRequests;
+    private final int maxTotalConnections;
+    private final int maxConnectionsPerHost;
+    private final long requestCount;
+    private final long timeoutCount;
+    private final long totalWaitTime;
+    private final long maxWaitTime;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new ConnectionPoolStatistics object.
+     *
+     * @param  leasedConnections      number of connections currently used by requests
+     * @param  idleConnections        number of open connections currently not used
+     * @param  pendingRequests        number of requests currently waiting for a connection
+     * @param  maxTotalConnections    maximum number of connections of the pool
+     * @param  maxConnectionsPerHost  maximum number of connections per host
+     * @param  requestCount           number of connections requested from the pool
+     * @param  timeoutCount           number of requests that did not get a connection in time
+     * @param  totalWaitTime          time in milliseconds all requests waited for a connection
+     * @param  maxWaitTime            longest time in milliseconds a request waited for a connection
+     */
+    public ConnectionPoolStatistics(final int leasedConnections,
+            final int idleConnections,
+            final int pendingRequests,
+            final int maxTotalConnections,
+            final int maxConnectionsPerHost,
+            final long requestCount,
+            final long timeoutCount,
+            final long totalWaitTime,
+            final long maxWaitTime) {
+        this.leasedConnections = leasedConnections;
+        this.idleConnections = idleConnections;
+        this.pendingRequests = pendingRequests;
+        this.maxTotalConnections = maxTotalConnections;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.requestCount = requestCount;
+        this.timeoutCount = timeoutCount;
+        this.totalWaitTime = totalWaitTime;
+        this.maxWaitTime = maxWaitTime;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the number of connections currently used by requests.
+     *
+     * @return  the number of leased connections
+     */
+    public int getLeasedConnections() {
+        return leasedConnections;
+    }
+
+    /**
+     * Returns the number of open connections currently not used.
+     *
+     * @return  the number of idle connections
+     */
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    /**
+     * Returns the number of requests currently waiting for a connection.
+     *
+     * @return  the number of pending requests
+     */
+    public int getPendingRequests() {
+        return pendingRequests;
+    }
+
+    /**
+     * Returns the maximum number of connections of the pool.
+     *
+     * @return  the maximum number of connections
+     */
+    public int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
+    /**
+     * Returns the maximum number of connections per host.
+     *
+     * @return  the maximum number of connections per host
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * Returns the number of connections requested from the pool.
+     *
+     * @return  the request count
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Returns the number of requests that did not get a connection in time.
+     *
+     * @return  the timeout count
+     */
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * Returns the time all requests waited for a connection.
+     *
+     * @return  the total wait time in milliseconds
+     */
+    public long getTotalWaitTime() {
+        return totalWaitTime;
+    }
+
+    /**
+     * Returns the longest time a request waited for a connection.
+     *
+     * @return  the maximum wait time in milliseconds
+     */
+    public long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    /**
+     * Returns the average time a request waited for a connection.
+     *
+     * @return  the average wait time in milliseconds, 0 if no connection was requested yet
+     */
+    public double getAverageWaitTime() {
+        return (requestCount == 0) ? 0 : ((double)totalWaitTime / requestCount);
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolStatistics[leased=" + leasedConnections + ", idle=" + idleConnections + ", pending="
+                    + pendingRequests + ", maxTotal=" + maxTotalConnections + ", maxPerHost="
+                    + maxConnectionsPerHost + ", requests=" + requestCount + ", timeouts=" + timeoutCount
+                    + ", averageWaitTime=" + getAverageWaitTime() + ", maxWaitTime=" + maxWaitTime + "]";
+    }
+}
@@ -0,0 +1,302 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.http;
+
+import net.environmatics.acs.accessor.WSSHeader;
+import net.environmatics.acs.accessor.WSSRequest;
+import net.environmatics.acs.accessor.WSSRequestEntity;
+import net.environmatics.acs.accessor.WSSResponse;
+import net.environmatics.acs.accessor.interfaces.WSSTransport;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.auth.CredentialsProvider;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * The default transport of the WSS accessors, sends the requests with commons-httpclient over a
+ * {@link PooledConnectionManager}. HTTP/1.1 only, every connection carries one request at a time, so the number of
+ * parallel requests is limited by the size of the pool. Requests are blocking, {@link #executeAsync(WSSRequest,
+ * Executor)} performs them on the given executor.<br>
+ * <br>
+ * The proxy and the credentials provider are set per transport, the connection pool may be shared by several
+ * transports.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class HttpClientTransport implements WSSTransport {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final PooledConnectionManager connectionManager;
+    private final HttpClient client;
+    private volatile boolean doAuthentication = false;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new HttpClientTransport.
+     *
+     * @param  connectionManager  the connection pool
+     */
+    public HttpClientTransport(final PooledConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+        this.client = new HttpClient(connectionManager);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates the response of a method that has been executed by the caller.
+     *
+     * @param   method  the executed method
+     *
+     * @return  the response
+     */
+    public static WSSResponse responseOf(final HttpMethod method) {
+        return new MethodResponse(method, 0L);
+    }
+
+    @Override
+    public WSSResponse execute(final WSSRequest request) throws IOException {
+        final HttpMethod method = createMethod(request);
+        // discard waits of requests that were not measured
+        connectionManager.takeWaitTime();
+        try {
+            client.executeMethod(method);
+        } catch (IOException ex) {
+            method.releaseConnection();
+            throw ex;
+        } catch (RuntimeException ex) {
+            method.releaseConnection();
+            throw ex;
+        }
+        return new MethodResponse(method, connectionManager.takeWaitTime());
+    }
+
+    @Override
+    public CompletableFuture<WSSResponse> executeAsync(final WSSRequest request, final Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        final WSSResponse response = execute(request);
+                        try {
+                            // buffers the body, so the caller does not block
+                            response.getResponseBody();
+                        } catch (IOException ex) {
+                            response.releaseConnection();
+                            throw ex;
+                        }
+                        return response;
+                    } catch (IOException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, executor);
+    }
+
+    /**
+     * Creates the commons-httpclient method of a request.
+     *
+     * @param   request  the request
+     *
+     * @return  the method
+     */
+    private HttpMethod createMethod(final WSSRequest request) {
+        final HttpMethod method;
+        if (WSSRequest.GET.equals(request.getMethod())) {
+            method = new GetMethod(request.getURL());
+        } else {
+            final PostMethod post = new PostMethod(request.getURL());
+            if (request.getEntity() != null) {
+                post.setRequestEntity(new EntityAdapter(request.getEntity()));
+            }
+            method = post;
+        }
+        for (final WSSHeader header : request.getHeaders()) {
+            method.setRequestHeader(header.getName(), header.getValue());
+        }
+        if (doAuthentication) {
+            method.setDoAuthentication(true);
+        }
+        return method;
+    }
+
+    /**
+     * Sets a proxy for indirect HTTP communication.
+     *
+     * @param  proxyHost  the host of the proxy, or <code>null</code> to remove the proxy
+     * @param  port       the port of the proxy server
+     */
+    public void setProxy(final String proxyHost, final int port) {
+        if (proxyHost == null) {
+            // keep the client, so the connection pool and the credentials provider are not lost
+            client.getHostConfiguration().setProxyHost(null);
+        } else {
+            client.getHostConfiguration().setProxy(proxyHost, port);
+        }
+    }
+
+    /**
+     * Sets the provider of the credentials for HTTP authentication at the WSS or the proxy.
+     *
+     * @param  credentialsProvider  the provider, or <code>null</code> to disable HTTP authentication
+     */
+    public void setCredentialsProvider(final CredentialsProvider credentialsProvider) {
+        client.getParams().setParameter(CredentialsProvider.PROVIDER, credentialsProvider);
+        doAuthentication = credentialsProvider != null;
+    }
+
+    /**
+     * Returns the connection pool of this transport.
+     *
+     * @return  the connection pool
+     */
+    public PooledConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * The response of an executed HTTP method.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class MethodResponse extends WSSResponse {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final HttpMethod method;
+        private final long connectionWaitTime;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new MethodResponse object.
+         *
+         * @param  method              the executed method
+         * @param  connectionWaitTime  the time in nanoseconds the method waited for a pooled connection
+         */
+        MethodResponse(final HttpMethod method, final long connectionWaitTime) {
+            this.method = method;
+            this.connectionWaitTime = connectionWaitTime;
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        @Override
+        public int getStatusCode() {
+            return method.getStatusCode();
+        }
+
+        @Override
+        public WSSHeader[] getResponseHeaders() {
+            final Header[] headers = method.getResponseHeaders();
+            final WSSHeader[] result = new WSSHeader[headers.length];
+            for (int i = 0; i < headers.length; i++) {
+                result[i] = new WSSHeader(headers[i].getName(), headers[i].getValue());
+            }
+            return result;
+        }
+
+        @Override
+        public WSSHeader getResponseHeader(final String name) {
+            final Header header = method.getResponseHeader(name);
+            return (header != null) ? new WSSHeader(header.getName(), header.getValue()) : null;
+        }
+
+        @Override
+        public String getResponseCharSet() {
+            if (method instanceof HttpMethodBase) {
+                return ((HttpMethodBase)method).getResponseCharSet();
+            }
+            return super.getResponseCharSet();
+        }
+
+        @Override
+        public InputStream getResponseBodyAsStream() throws IOException {
+            return method.getResponseBodyAsStream();
+        }
+
+        @Override
+        public byte[] getResponseBody() throws IOException {
+            return method.getResponseBody();
+        }
+
+        @Override
+        public long getConnectionWaitTime() {
+            return connectionWaitTime;
+        }
+
+        @Override
+        public void abort() {
+            method.abort();
+        }
+
+        @Override
+        public void releaseConnection() {
+            method.releaseConnection();
+        }
+    }
+
+    /**
+     * Writes the body of a WSS request with commons-httpclient.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class EntityAdapter implements RequestEntity {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final WSSRequestEntity entity;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new EntityAdapter object.
+         *
+         * @param  entity  the body of the request
+         */
+        EntityAdapter(final WSSRequestEntity entity) {
+            this.entity = entity;
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        @Override
+        public boolean isRepeatable() {
+            return entity.isRepeatable();
+        }
+
+        @Override
+        public void writeRequest(final OutputStream out) throws IOException {
+            entity.writeTo(out);
+        }
+
+        @Override
+        public long getContentLength() {
+            return entity.getContentLength();
+        }
+
+        @Override
+        public String getContentType() {
+            return entity.getContentType();
+        }
+    }
+}
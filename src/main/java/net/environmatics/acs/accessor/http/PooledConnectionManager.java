@@ -0,0 +1,263 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.http;
+
+import net.environmatics.acs.accessor.utils.ExecutorHelper;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+
+import org.apache.log4j.Logger;
+
+import java.lang.ref.WeakReference;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MultiThreadedHttpConnectionManager that is set up with a {@link ConnectionPoolConfiguration}, closes idle
+ * connections in the background and counts leased connections, waiting requests and wait times.<br>
+ * <br>
+ * The idle connections of all managers are closed by a single daemon thread. A manager that is no longer referenced
+ * is removed from this thread, so a manager that is not shut down does not leak.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class PooledConnectionManager extends MultiThreadedHttpConnectionManager {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static Logger logger = Logger.getLogger(PooledConnectionManager.class);
+
+    private static final ScheduledExecutorService REAPER = Executors.newSingleThreadScheduledExecutor(
+            ExecutorHelper.newDaemonThreadFactory("wss-connection-reaper"));
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final AtomicInteger leased = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+    // time in nanoseconds the current thread waited for connections since the last takeWaitTime()
+    private final ThreadLocal<long[]> threadWaitTime = new ThreadLocal<long[]>() {
+
+            @Override
+            protected long[] initialValue() {
+                return new long[1];
+            }
+        };
+    private volatile ConnectionPoolConfiguration configuration;
+    private ScheduledFuture<?> reaper;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new PooledConnectionManager object with the default configuration.
+     */
+    public PooledConnectionManager() {
+        this(new ConnectionPoolConfiguration());
+    }
+
+    /**
+     * Creates a new PooledConnectionManager object.
+     *
+     * @param  configuration  the configuration of the pool
+     */
+    public PooledConnectionManager(final ConnectionPoolConfiguration configuration) {
+        configure(configuration);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Applies a configuration to this pool. Pool limits and timeouts take effect for the next connection request,
+     * connections that are already open are kept.
+     *
+     * @param  configuration  the new configuration
+     */
+    public final synchronized void configure(final ConnectionPoolConfiguration configuration) {
+        final ConnectionPoolConfiguration config = new ConnectionPoolConfiguration(configuration);
+        final HttpConnectionManagerParams params = getParams();
+        params.setMaxTotalConnections(config.getMaxTotalConnections());
+        params.setDefaultMaxConnectionsPerHost(config.getMaxConnectionsPerHost());
+        params.setStaleCheckingEnabled(config.isStaleCheckingEnabled());
+        params.setConnectionTimeout(config.getConnectTimeout());
+        params.setSoTimeout(config.getSocketTimeout());
+        this.configuration = config;
+
+        if (reaper != null) {
+            reaper.cancel(false);
+            reaper = null;
+        }
+        if (config.getReaperInterval() > 0) {
+            final IdleConnectionReaper task = new IdleConnectionReaper(this);
+            reaper = REAPER.scheduleWithFixedDelay(
+                    task,
+                    config.getReaperInterval(),
+                    config.getReaperInterval(),
+                    TimeUnit.MILLISECONDS);
+            task.future = reaper;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("connection pool configured: " + config);
+        }
+    }
+
+    /**
+     * Returns a copy of the configuration of this pool.
+     *
+     * @return  the configuration
+     */
+    public ConnectionPoolConfiguration getConfiguration() {
+        return new ConnectionPoolConfiguration(configuration);
+    }
+
+    /**
+     * Returns the current state and the counters of this pool.
+     *
+     * @return  the statistics
+     */
+    public ConnectionPoolStatistics getStatistics() {
+        final ConnectionPoolConfiguration config = configuration;
+        final int leasedConnections = leased.get();
+        return new ConnectionPoolStatistics(
+                leasedConnections,
+                Math.max(0, getConnectionsInPool() - leasedConnections),
+                pending.get(),
+                config.getMaxTotalConnections(),
+                config.getMaxConnectionsPerHost(),
+                requestCount.get(),
+                timeoutCount.get(),
+                TimeUnit.NANOSECONDS.toMillis(totalWaitTime.get()),
+                TimeUnit.NANOSECONDS.toMillis(maxWaitTime.get()));
+    }
+
+    /**
+     * Gets a connection from the pool and records how long the caller had to wait. A timeout of 0 is replaced by the
+     * configured connection request timeout.
+     *
+     * @param   hostConfiguration  the host of the connection
+     * @param   timeout            the time in milliseconds to wait for a connection, 0 for the configured timeout
+     *
+     * @return  a connection
+     *
+     * @throws  ConnectionPoolTimeoutException  if no connection became free in time
+     */
+    @Override
+    public HttpConnection getConnectionWithTimeout(final HostConfiguration hostConfiguration, final long timeout)
+            throws ConnectionPoolTimeoutException {
+        final long effectiveTimeout = (timeout == 0) ? configuration.getConnectionRequestTimeout() : timeout;
+        pending.incrementAndGet();
+        final long start = System.nanoTime();
+        try {
+            final HttpConnection connection = super.getConnectionWithTimeout(hostConfiguration, effectiveTimeout);
+            leased.incrementAndGet();
+            return connection;
+        } catch (ConnectionPoolTimeoutException ex) {
+            timeoutCount.incrementAndGet();
+            throw ex;
+        } finally {
+            pending.decrementAndGet();
+            final long waited = System.nanoTime() - start;
+            requestCount.incrementAndGet();
+            totalWaitTime.addAndGet(waited);
+            threadWaitTime.get()[0] += waited;
+            long max = maxWaitTime.get();
+            while ((waited > max) && !maxWaitTime.compareAndSet(max, waited)) {
+                max = maxWaitTime.get();
+            }
+        }
+    }
+
+    /**
+     * Returns the time the calling thread waited for connections since the previous call and resets it. Used to split
+     * the duration of a request into the wait for a connection and the exchange with the server.
+     *
+     * @return  the time in nanoseconds
+     */
+    public long takeWaitTime() {
+        final long[] waited = threadWaitTime.get();
+        final long result = waited[0];
+        waited[0] = 0L;
+        return result;
+    }
+
+    @Override
+    public void releaseConnection(final HttpConnection conn) {
+        super.releaseConnection(conn);
+        leased.decrementAndGet();
+    }
+
+    /**
+     * Stops the idle connection reaper and closes all connections.
+     */
+    @Override
+    public synchronized void shutdown() {
+        if (reaper != null) {
+            reaper.cancel(false);
+            reaper = null;
+        }
+        super.shutdown();
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Closes the idle connections of a manager. Holds the manager weakly and cancels itself once the manager is
+     * garbage collected.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class IdleConnectionReaper implements Runnable {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final WeakReference<PooledConnectionManager> manager;
+        private volatile ScheduledFuture<?> future;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new IdleConnectionReaper object.
+         *
+         * @param  manager  the manager whose idle connections are closed
+         */
+        IdleConnectionReaper(final PooledConnectionManager manager) {
+            this.manager = new WeakReference<PooledConnectionManager>(manager);
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        @Override
+        public void run() {
+            final PooledConnectionManager connectionManager = manager.get();
+            if (connectionManager == null) {
+                final ScheduledFuture<?> scheduled = future;
+                if (scheduled != null) {
+                    scheduled.cancel(false);
+                }
+                return;
+            }
+            try {
+                connectionManager.closeIdleConnections(connectionManager.configuration.getIdleTimeout());
+                connectionManager.deleteClosedConnections();
+            } catch (RuntimeException ex) {
+                logger.warn("could not close idle connections", ex);
+            }
+        }
+    }
+}
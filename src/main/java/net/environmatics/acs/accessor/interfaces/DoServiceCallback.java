@@ -0,0 +1,39 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.interfaces;
+
+import net.environmatics.acs.accessor.DoServiceRequest;
+import net.environmatics.acs.accessor.Payload;
+import net.environmatics.acs.exceptions.ServiceException;
+
+/**
+ * Receives the results of a batch of doService requests in the order in which they complete. The methods are called
+ * from the threads that perform the requests and may be called concurrently.
+ *
+ * @version  $Revision$, $Date$
+ */
+public interface DoServiceCallback {
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Called when a request of the batch has been answered by the WSS.
+     *
+     * @param  request   the request
+     * @param  response  the doService response
+     */
+    void completed(DoServiceRequest request, Payload response);
+
+    /**
+     * Called when a request of the batch has failed.
+     *
+     * @param  request  the request
+     * @param  ex       the cause of the failure
+     */
+    void failed(DoServiceRequest request, ServiceException ex);
+}
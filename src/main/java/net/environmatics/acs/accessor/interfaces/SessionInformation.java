@@ -7,8 +7,11 @@
 ****************************************************/
 package net.environmatics.acs.accessor.interfaces;
 
+import java.util.Date;
+
 /**
- * Defines what a SessionInformation container should look like.
+ * Defines what a SessionInformation container should look like. Besides the Session ID, a container may know when
+ * the session expires and when it has been used last; the WSS accessor uses this to renew sessions before they expire.
  *
  * @author   abonitz
  * @version  $Revision$, $Date$
@@ -23,4 +26,23 @@ public interface SessionInformation {
      * @return  Session ID
      */
     String getSessionID();
+
+    /**
+     * Returns the date when the session will expire, as reported by the WSS or derived from a configured session
+     * lifetime.
+     *
+     * @return  expiration date or <code>null</code> if unknown
+     */
+    default Date getExpirationDate() {
+        return null;
+    }
+
+    /**
+     * Returns the date when the session has been used last for a doService request.
+     *
+     * @return  date of last use or <code>null</code> if the session has not been used yet or if this is not tracked
+     */
+    default Date getLastUsedDate() {
+        return null;
+    }
 }
@@ -17,10 +17,20 @@ import net.environmatics.acs.exceptions.ServiceException;
 
 import org.apache.commons.httpclient.NameValuePair;
 import org.apache.commons.httpclient.auth.CredentialsProvider;
+import org.apache.commons.io.IOUtils;
 
 import org.dom4j.Document;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+
+import java.nio.charset.StandardCharsets;
+
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Generic interface for WSS interaction.
@@ -79,6 +89,118 @@ public interface WSSAccessor {
      */
     Payload doService(String dcp_type, String serviceRequest, String facadeURL) throws ServiceException;
 
+    /**
+     * Performs a doService request on the selected WSS with a service request read from a Reader. The request is
+     * streamed to the WSS, so the memory needed does not depend on the size of the service request. Implementations
+     * that do not override this method read the service request into memory and call
+     * {@link #doService(String, String, NameValuePair[], String)}.
+     *
+     * @param   dcp_type        <b>Must</b> be
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_GET HTTP GET} or
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_POST HTTP POST}
+     * @param   serviceRequest  Request to a secured service, it is read once and not closed
+     * @param   requestParams   An array with request parameters, i.e. HTTP_Header / Mime-Type: text/xml
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  Payload, containing the doService response.
+     *
+     * @throws  ServiceException  Thrown in case of an error.
+     */
+    default Payload doService(final String dcp_type,
+            final Reader serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) throws ServiceException {
+        final String request;
+        try {
+            request = IOUtils.toString(serviceRequest);
+        } catch (IOException ex) {
+            throw new ServiceException(ex);
+        }
+        return doService(dcp_type, request, requestParams, facadeURL);
+    }
+
+    /**
+     * Performs a doService request on the selected WSS with a service request read from an InputStream. The request
+     * is streamed to the WSS, so the memory needed does not depend on the size of the service request. Implementations
+     * that do not override this method decode the service request and call
+     * {@link #doService(String, Reader, NameValuePair[], String)}.
+     *
+     * @param   dcp_type        <b>Must</b> be
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_GET HTTP GET} or
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_POST HTTP POST}
+     * @param   serviceRequest  Request to a secured service, it is read once and not closed
+     * @param   charset         the charset of the service request, i.e. UTF-8
+     * @param   requestParams   An array with request parameters, i.e. HTTP_Header / Mime-Type: text/xml
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  Payload, containing the doService response.
+     *
+     * @throws  ServiceException  Thrown in case of an error.
+     */
+    default Payload doService(final String dcp_type,
+            final InputStream serviceRequest,
+            final String charset,
+            final NameValuePair[] requestParams,
+            final String facadeURL) throws ServiceException {
+        final Reader reader;
+        try {
+            reader = new InputStreamReader(serviceRequest, charset);
+        } catch (UnsupportedEncodingException ex) {
+            throw new ServiceException(ex);
+        }
+        return doService(dcp_type, reader, requestParams, facadeURL);
+    }
+
+    /**
+     * Performs a doService request on the selected WSS without blocking the calling thread. Implementations that do
+     * not override this method perform the request on the calling thread and return a completed future.
+     *
+     * @param   dcp_type        <b>Must</b> be
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_GET HTTP GET} or
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_POST HTTP POST}
+     * @param   serviceRequest  Request to a secured service
+     * @param   requestParams   An array with request parameters, i.e. HTTP_Header / Mime-Type: text/xml
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  a future that is completed with the doService response, or completed exceptionally with a
+     *          {@link ServiceException} in case of an error.
+     */
+    default CompletableFuture<Payload> doServiceAsync(final String dcp_type,
+            final String serviceRequest,
+            final NameValuePair[] requestParams,
+            final String facadeURL) {
+        final CompletableFuture<Payload> result = new CompletableFuture<Payload>();
+        try {
+            result.complete(doService(dcp_type, serviceRequest, requestParams, facadeURL));
+        } catch (ServiceException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    /**
+     * Performs a doService request on the selected WSS without blocking the calling thread. Note that this method sets
+     * the WSS doService request parameters to "HTTP_Header" with "Mime-Type: text/xml"
+     *
+     * @param   dcp_type        <b>Must</b> be
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_GET HTTP GET} or
+     *                          {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_POST HTTP POST}
+     * @param   serviceRequest  Request to a secured service
+     * @param   facadeURL       String with an URL to facade
+     *
+     * @return  a future that is completed with the doService response, or completed exceptionally with a
+     *          {@link ServiceException} in case of an error.
+     */
+    default CompletableFuture<Payload> doServiceAsync(final String dcp_type,
+            final String serviceRequest,
+            final String facadeURL) {
+        return doServiceAsync(
+                dcp_type,
+                serviceRequest,
+                new NameValuePair[] { new NameValuePair("HTTP_Header", "Mime-Type: text/xml") },
+                facadeURL);
+    }
+
     /**
      * Establishes a session between the WSSAccessor and the remote WSS service.
      *
@@ -112,6 +234,24 @@ public interface WSSAccessor {
      */
     Document getWSSCapabilities();
 
+    /**
+     * Retrieves the capabilities document of the WSS and returns its parsed content. Implementations that do not
+     * override this method parse the document returned by {@link #getWSSCapabilities()}.
+     *
+     * @return  the capabilities, or in case of an error <code>null</code>
+     */
+    default WSSCapabilities getCapabilities() {
+        final Document document = getWSSCapabilities();
+        if (document == null) {
+            return null;
+        }
+        try {
+            return WSSCapabilities.parse(document.asXML().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
     /**
      * Sets the authentication method for WSS interaction.
      *
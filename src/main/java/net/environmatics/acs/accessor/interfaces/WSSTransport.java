@@ -0,0 +1,58 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.interfaces;
+
+import net.environmatics.acs.accessor.WSSRequest;
+import net.environmatics.acs.accessor.WSSResponse;
+
+import java.io.IOException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Sends the requests of a {@link net.environmatics.acs.accessor.WSSAccessorDeegree} to the WSS, see
+ * {@link net.environmatics.acs.accessor.WSSAccessorDeegree#setTransport(WSSTransport)}. The accessor builds the
+ * GetSession, DoService, CloseSession and GetCapabilities requests and interprets the responses, the transport only
+ * performs the HTTP exchanges. By default the accessors use
+ * {@link net.environmatics.acs.accessor.http.HttpClientTransport}.<br>
+ * <br>
+ * Implementations must be thread safe, an accessor sends concurrent requests through the same transport.
+ *
+ * @version  $Revision$, $Date$
+ */
+public interface WSSTransport {
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Sends a request and waits until the status line and the headers of the response have been received. The body
+     * may still be read from the connection; the caller releases the response with
+     * {@link WSSResponse#releaseConnection()}.
+     *
+     * @param   request  the request
+     *
+     * @return  the response
+     *
+     * @throws  IOException  if the request fails
+     */
+    WSSResponse execute(WSSRequest request) throws IOException;
+
+    /**
+     * Sends a request without blocking the calling thread. The future is completed when the whole response has been
+     * received, so reading its body does not block. A transport without non-blocking I/O performs the request on the
+     * given executor.
+     *
+     * @param   request   the request
+     * @param   executor  the executor of the accessor for blocking work
+     *
+     * @return  a future that is completed with the response, or completed exceptionally with an {@link IOException}
+     *          if the request fails
+     */
+    CompletableFuture<WSSResponse> executeAsync(WSSRequest request, Executor executor);
+}
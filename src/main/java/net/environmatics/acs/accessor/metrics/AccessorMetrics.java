@@ -0,0 +1,308 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.metrics;
+
+import org.apache.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects the latency and throughput metrics of WSS requests, broken down by WSS, facade URL and
+ * {@link RequestType}. Every entry holds a {@link LatencyHistogram} per {@link Phase}, so the memory used is fixed per
+ * entry and does not grow with the number of requests. The number of entries is limited by
+ * {@link #getMaxEntries()}: once the limit is reached, the requests of further facade URLs are counted under
+ * {@link #OTHER_FACADE_URLS}.<br>
+ * <br>
+ * The metrics can be pulled with {@link #getSnapshots()} or published as MXBean with {@link #registerMBean(String)}.
+ * By default all accessors record to {@link #getDefault()}.
+ *
+ * @version  $Revision$, $Date$
+ */
+public final class AccessorMetrics implements AccessorMetricsMXBean {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static Logger logger = Logger.getLogger(AccessorMetrics.class);
+
+    /** Facade URL under which the requests of facade URLs beyond the entry limit are counted. */
+    public static final String OTHER_FACADE_URLS = "*";
+
+    /** Default maximum number of entries. */
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    /** Domain of the ObjectNames of registered MXBeans. */
+    public static final String JMX_DOMAIN = "net.environmatics.acs";
+
+    // map key of requests without facade URL, ConcurrentHashMap does not allow null keys
+    private static final String NO_FACADE_URL = "";
+
+    private static final AccessorMetrics DEFAULT = new AccessorMetrics(DEFAULT_MAX_ENTRIES);
+
+    //~ Instance fields --------------------------------------------------------
+
+    // WSS URL -> facade URL -> metrics by request type
+    private final ConcurrentMap<String, ConcurrentMap<String, RequestMetrics[]>> entries =
+        new ConcurrentHashMap<String, ConcurrentMap<String, RequestMetrics[]>>();
+    private final AtomicInteger entryCount = new AtomicInteger();
+    private final int maxEntries;
+    private volatile boolean enabled = true;
+    private volatile ObjectName objectName;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new AccessorMetrics object.
+     *
+     * @param  maxEntries  maximum number of WSS / facade URL combinations that are recorded separately
+     */
+    public AccessorMetrics(final int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the metrics that are shared by all accessors by default.
+     *
+     * @return  the default AccessorMetrics
+     */
+    public static AccessorMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Starts measuring a request.
+     *
+     * @param   wssURL     the URL of the WSS
+     * @param   facadeURL  the facade URL of the request, <code>null</code> for requests without facade URL
+     * @param   type       the type of the request
+     *
+     * @return  a running sample, {@link RequestSample#DISABLED} if the metrics are disabled
+     */
+    public RequestSample start(final String wssURL, final String facadeURL, final RequestType type) {
+        if (!enabled || (wssURL == null)) {
+            return RequestSample.DISABLED;
+        }
+        return new RequestSample(getMetrics(wssURL, facadeURL)[type.ordinal()]);
+    }
+
+    /**
+     * Counts a doService request that is sent again after its session has been renewed.
+     *
+     * @param  wssURL     the URL of the WSS
+     * @param  facadeURL  the facade URL of the request
+     */
+    public void countRetry(final String wssURL, final String facadeURL) {
+        if (enabled && (wssURL != null)) {
+            getMetrics(wssURL, facadeURL)[RequestType.DO_SERVICE.ordinal()].countRetry();
+        }
+    }
+
+    /**
+     * Counts a session that replaces a previous session of a WSS. Renewals are counted with the GetSession requests.
+     *
+     * @param  wssURL  the URL of the WSS
+     */
+    public void countRenewal(final String wssURL) {
+        if (enabled && (wssURL != null)) {
+            getMetrics(wssURL, null)[RequestType.GET_SESSION.ordinal()].countRenewal();
+        }
+    }
+
+    /**
+     * Returns the metrics of a WSS and facade URL, creating them if needed.
+     *
+     * @param   wssURL     the URL of the WSS
+     * @param   facadeURL  the facade URL, may be <code>null</code>
+     *
+     * @return  the metrics by request type
+     */
+    private RequestMetrics[] getMetrics(final String wssURL, final String facadeURL) {
+        ConcurrentMap<String, RequestMetrics[]> byFacade = entries.get(wssURL);
+        if (byFacade == null) {
+            final ConcurrentMap<String, RequestMetrics[]> created = new ConcurrentHashMap<String, RequestMetrics[]>();
+            byFacade = entries.putIfAbsent(wssURL, created);
+            if (byFacade == null) {
+                byFacade = created;
+            }
+        }
+        final String key = (facadeURL != null) ? facadeURL : NO_FACADE_URL;
+        final RequestMetrics[] metrics = byFacade.get(key);
+        if (metrics != null) {
+            return metrics;
+        }
+        // the overflow entry and the entry without facade URL are always created
+        if (!NO_FACADE_URL.equals(key) && (entryCount.get() >= maxEntries)) {
+            return getOrCreate(byFacade, wssURL, OTHER_FACADE_URLS);
+        }
+        return getOrCreate(byFacade, wssURL, key);
+    }
+
+    /**
+     * Returns the metrics of a facade URL, creating them if needed.
+     *
+     * @param   byFacade  the metrics of the WSS
+     * @param   wssURL    the URL of the WSS
+     * @param   key       the facade URL
+     *
+     * @return  the metrics by request type
+     */
+    private RequestMetrics[] getOrCreate(final ConcurrentMap<String, RequestMetrics[]> byFacade,
+            final String wssURL,
+            final String key) {
+        final RequestMetrics[] metrics = byFacade.get(key);
+        if (metrics != null) {
+            return metrics;
+        }
+        final RequestType[] types = RequestType.values();
+        final RequestMetrics[] created = new RequestMetrics[types.length];
+        for (int i = 0; i < types.length; i++) {
+            created[i] = new RequestMetrics(wssURL, NO_FACADE_URL.equals(key) ? null : key, types[i]);
+        }
+        final RequestMetrics[] existing = byFacade.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        entryCount.incrementAndGet();
+        return created;
+    }
+
+    /**
+     * Returns the metrics of all WSS, facade URLs and request types that have been used.
+     *
+     * @return  the snapshots
+     */
+    @Override
+    public List<RequestMetricsSnapshot> getSnapshots() {
+        final List<RequestMetricsSnapshot> snapshots = new ArrayList<RequestMetricsSnapshot>();
+        for (final ConcurrentMap<String, RequestMetrics[]> byFacade : entries.values()) {
+            for (final RequestMetrics[] metrics : byFacade.values()) {
+                for (final RequestMetrics typeMetrics : metrics) {
+                    final RequestMetricsSnapshot snapshot = typeMetrics.snapshot();
+                    if ((snapshot.getRequests() > 0) || (snapshot.getRetries() > 0)
+                                || (snapshot.getRenewals() > 0)) {
+                        snapshots.add(snapshot);
+                    }
+                }
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Returns the metrics of one WSS, facade URL and request type.
+     *
+     * @param   wssURL     the URL of the WSS
+     * @param   facadeURL  the facade URL, <code>null</code> for requests without facade URL
+     * @param   type       the type of the requests
+     *
+     * @return  the snapshot, or <code>null</code> if there are no metrics for this combination
+     */
+    public RequestMetricsSnapshot getSnapshot(final String wssURL, final String facadeURL, final RequestType type) {
+        final ConcurrentMap<String, RequestMetrics[]> byFacade = entries.get(wssURL);
+        if (byFacade == null) {
+            return null;
+        }
+        final RequestMetrics[] metrics = byFacade.get((facadeURL != null) ? facadeURL : NO_FACADE_URL);
+        return (metrics != null) ? metrics[type.ordinal()].snapshot() : null;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public int getEntryCount() {
+        return entryCount.get();
+    }
+
+    /**
+     * Returns the maximum number of WSS / facade URL combinations that are recorded separately.
+     *
+     * @return  the maximum number of entries
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Resets all histograms and counters. The entries are kept.
+     */
+    @Override
+    public void reset() {
+        for (final ConcurrentMap<String, RequestMetrics[]> byFacade : entries.values()) {
+            for (final RequestMetrics[] metrics : byFacade.values()) {
+                for (final RequestMetrics typeMetrics : metrics) {
+                    typeMetrics.reset();
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers these metrics as MXBean at the platform MBeanServer with the ObjectName
+     * <code>net.environmatics.acs:type=AccessorMetrics,name=&lt;name&gt;</code>. Does nothing if they are registered
+     * already.
+     *
+     * @param   name  the name property of the ObjectName, i.e. the name of the application
+     *
+     * @return  true if the metrics are registered
+     */
+    public synchronized boolean registerMBean(final String name) {
+        if (objectName != null) {
+            return true;
+        }
+        try {
+            final ObjectName newName = new ObjectName(JMX_DOMAIN + ":type=AccessorMetrics,name="
+                            + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, newName);
+            objectName = newName;
+            return true;
+        } catch (InstanceAlreadyExistsException ex) {
+            logger.warn("Another MBean is registered as " + name + ": " + ex.getMessage());
+        } catch (JMException ex) {
+            logger.warn("Could not register accessor metrics", ex);
+        }
+        return false;
+    }
+
+    /**
+     * Removes the MXBean registered by {@link #registerMBean(String)}.
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException ex) {
+            logger.warn("Could not unregister accessor metrics", ex);
+        }
+        objectName = null;
+    }
+}
@@ -0,0 +1,53 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.metrics;
+
+import java.util.List;
+
+/**
+ * The JMX interface of {@link AccessorMetrics}.
+ *
+ * @version  $Revision$, $Date$
+ */
+public interface AccessorMetricsMXBean {
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the metrics of all WSS, facade URLs and request types.
+     *
+     * @return  the snapshots
+     */
+    List<RequestMetricsSnapshot> getSnapshots();
+
+    /**
+     * Checks if metrics are recorded.
+     *
+     * @return  true if enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Enables or disables recording.
+     *
+     * @param  enabled  true to record metrics
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Returns the number of metrics entries that are kept.
+     *
+     * @return  the number of entries
+     */
+    int getEntryCount();
+
+    /**
+     * Resets all histograms and counters.
+     */
+    void reset();
+}
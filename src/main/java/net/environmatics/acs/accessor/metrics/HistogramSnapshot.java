@@ -0,0 +1,129 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of a {@link LatencyHistogram}. All durations are in microseconds.
+ *
+ * @version  $Revision$, $Date$
+ */
+public final class HistogramSnapshot {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final long count;
+    private final double mean;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new HistogramSnapshot object.
+     *
+     * @param  count  number of recorded values
+     * @param  mean   mean of the recorded values
+     * @param  p50    median
+     * @param  p90    90th percentile
+     * @param  p99    99th percentile
+     * @param  p999   99.9th percentile
+     * @param  max    largest recorded value
+     */
+    @ConstructorProperties({ "count", "mean", "p50", "p90", "p99", "p999", "max" })
+    public HistogramSnapshot(final long count,
+            final double mean,
+            final long p50,
+            final long p90,
+            final long p99,
+            final long p999,
+            final long max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return  the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean of the recorded values.
+     *
+     * @return  the mean in microseconds
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Returns the median.
+     *
+     * @return  the median in microseconds
+     */
+    public long getP50() {
+        return p50;
+    }
+
+    /**
+     * Returns the 90th percentile.
+     *
+     * @return  the percentile in microseconds
+     */
+    public long getP90() {
+        return p90;
+    }
+
+    /**
+     * Returns the 99th percentile.
+     *
+     * @return  the percentile in microseconds
+     */
+    public long getP99() {
+        return p99;
+    }
+
+    /**
+     * Returns the 99.9th percentile.
+     *
+     * @return  the percentile in microseconds
+     */
+    public long getP999() {
+        return p999;
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return  the maximum in microseconds
+     */
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "[count=" + count + ", mean=" + Math.round(mean) + ", p50=" + p50 + ", p90=" + p90 + ", p99=" + p99
+                    + ", p999=" + p999 + ", max=" + max + "]";
+    }
+}
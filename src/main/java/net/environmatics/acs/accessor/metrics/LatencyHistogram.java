@@ -0,0 +1,162 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations with a fixed memory footprint, in the style of HdrHistogram. Values are counted in
+ * log-linear buckets: every power of two is split into {@link #SUB_BUCKETS} / 2 linear sub-buckets, so the relative
+ * error of a reported percentile is below 1/16 over the whole range from one microsecond to about 19 hours. Longer
+ * durations are counted in the last bucket. A histogram takes about 4 KB.<br>
+ * <br>
+ * Recording is lock-free and does not allocate, so it can be used on every request. Snapshots are not atomic: a value
+ * recorded while a snapshot is taken may be missing from it.
+ *
+ * @version  $Revision$, $Date$
+ */
+public final class LatencyHistogram {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    /** Number of linear buckets below the first power of two that is split. */
+    public static final int SUB_BUCKETS = 32;
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    // values up to 2^36 microseconds are counted exactly
+    private static final int MAX_MAGNITUDE = 36 - SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (MAX_MAGNITUDE * HALF_SUB_BUCKETS) + SUB_BUCKETS;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Records a duration.
+     *
+     * @param  micros  the duration in microseconds, negative values are counted as 0
+     */
+    public void record(final long micros) {
+        final long value = Math.max(0L, micros);
+        counts.incrementAndGet(indexOf(value));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(value);
+        long max = maxValue.get();
+        while ((value > max) && !maxValue.compareAndSet(max, value)) {
+            max = maxValue.get();
+        }
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0L);
+        }
+        totalCount.set(0L);
+        totalValue.set(0L);
+        maxValue.set(0L);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return  the count
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Takes a snapshot of the recorded values.
+     *
+     * @return  a new snapshot
+     */
+    public HistogramSnapshot snapshot() {
+        final long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        final long max = maxValue.get();
+        final double mean = (count == 0) ? 0d : ((double)totalValue.get() / count);
+        return new HistogramSnapshot(
+                count,
+                mean,
+                valueAt(copy, count, 0.5d, max),
+                valueAt(copy, count, 0.9d, max),
+                valueAt(copy, count, 0.99d, max),
+                valueAt(copy, count, 0.999d, max),
+                max);
+    }
+
+    /**
+     * Computes the bucket of a value.
+     *
+     * @param   value  a non-negative value
+     *
+     * @return  the index of the bucket
+     */
+    static int indexOf(final long value) {
+        final int magnitude = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1));
+        if (magnitude > MAX_MAGNITUDE) {
+            return BUCKET_COUNT - 1;
+        }
+        return (magnitude * HALF_SUB_BUCKETS) + (int)(value >>> magnitude);
+    }
+
+    /**
+     * Computes the highest value that is counted in a bucket.
+     *
+     * @param   index  the index of the bucket
+     *
+     * @return  the upper bound of the bucket
+     */
+    static long highestValueOf(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int magnitude = (index / HALF_SUB_BUCKETS) - 1;
+        final long subBucket = (index % HALF_SUB_BUCKETS) + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+
+    /**
+     * Computes a percentile of the copied bucket counts.
+     *
+     * @param   copy      the bucket counts
+     * @param   count     the sum of the bucket counts
+     * @param   quantile  the quantile, between 0 and 1
+     * @param   max       the largest recorded value, the result never exceeds it
+     *
+     * @return  the value below or at which <code>quantile</code> of the values lie
+     */
+    private static long valueAt(final long[] copy, final long count, final double quantile, final long max) {
+        if (count == 0) {
+            return 0L;
+        }
+        final long rank = Math.max(1L, (long)Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < copy.length; i++) {
+            seen += copy[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,31 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.metrics;
+
+/**
+ * The phases of a request to the WSS whose durations are recorded.
+ *
+ * @version  $Revision$, $Date$
+ */
+public enum Phase {
+
+    //~ Enum constants ---------------------------------------------------------
+
+    /** Building the request, i.e. rendering the doService envelope. */
+    BUILD,
+    /** Waiting for a connection of the connection pool. */
+    POOL_WAIT,
+    /** Sending the request and waiting for the status line and headers of the response. */
+    TIME_TO_FIRST_BYTE,
+    /** Reading the response body. */
+    DOWNLOAD,
+    /** Inspecting the response, i.e. scanning it for a ServiceExceptionReport. */
+    POST_PROCESSING,
+    /** The whole request, from the start of the build to the end of the post-processing. */
+    TOTAL
+}
@@ -0,0 +1,145 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of one type of request to one WSS and facade URL: a {@link LatencyHistogram} per {@link Phase} and the
+ * counters of requests, failures, retries, session renewals and transferred bytes.
+ *
+ * @version  $Revision$, $Date$
+ */
+final class RequestMetrics {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final String wssURL;
+    private final String facadeURL;
+    private final RequestType type;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong renewals = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new RequestMetrics object.
+     *
+     * @param  wssURL     the URL of the WSS
+     * @param  facadeURL  the facade URL of the requests, <code>null</code> for requests without facade URL
+     * @param  type       the type of the requests
+     */
+    RequestMetrics(final String wssURL, final String facadeURL, final RequestType type) {
+        this.wssURL = wssURL;
+        this.facadeURL = facadeURL;
+        this.type = type;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Records the duration of a phase.
+     *
+     * @param  phase  the phase
+     * @param  nanos  the duration in nanoseconds
+     */
+    void record(final Phase phase, final long nanos) {
+        histograms[phase.ordinal()].record(nanos / 1000L);
+    }
+
+    /**
+     * Counts a finished request.
+     *
+     * @param  success  false if the request failed
+     */
+    void countRequest(final boolean success) {
+        requests.incrementAndGet();
+        if (!success) {
+            failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a request that is sent again, i.e. after its session has been renewed.
+     */
+    void countRetry() {
+        retries.incrementAndGet();
+    }
+
+    /**
+     * Counts a session that replaces a previous session.
+     */
+    void countRenewal() {
+        renewals.incrementAndGet();
+    }
+
+    /**
+     * Counts bytes sent to the WSS.
+     *
+     * @param  bytes  the number of bytes
+     */
+    void addBytesOut(final long bytes) {
+        bytesOut.addAndGet(bytes);
+    }
+
+    /**
+     * Counts bytes received from the WSS.
+     *
+     * @param  bytes  the number of bytes
+     */
+    void addBytesIn(final long bytes) {
+        bytesIn.addAndGet(bytes);
+    }
+
+    /**
+     * Resets all histograms and counters.
+     */
+    void reset() {
+        for (final LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        requests.set(0L);
+        failures.set(0L);
+        retries.set(0L);
+        renewals.set(0L);
+        bytesOut.set(0L);
+        bytesIn.set(0L);
+    }
+
+    /**
+     * Takes a snapshot of the histograms and counters.
+     *
+     * @return  a new snapshot
+     */
+    RequestMetricsSnapshot snapshot() {
+        return new RequestMetricsSnapshot(
+                wssURL,
+                facadeURL,
+                type.name(),
+                requests.get(),
+                failures.get(),
+                retries.get(),
+                renewals.get(),
+                bytesOut.get(),
+                bytesIn.get(),
+                histograms[Phase.BUILD.ordinal()].snapshot(),
+                histograms[Phase.POOL_WAIT.ordinal()].snapshot(),
+                histograms[Phase.TIME_TO_FIRST_BYTE.ordinal()].snapshot(),
+                histograms[Phase.DOWNLOAD.ordinal()].snapshot(),
+                histograms[Phase.POST_PROCESSING.ordinal()].snapshot(),
+                histograms[Phase.TOTAL.ordinal()].snapshot());
+    }
+}
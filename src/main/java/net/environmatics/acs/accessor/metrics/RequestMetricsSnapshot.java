@@ -0,0 +1,243 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of the metrics of one type of request to one WSS and facade URL. Durations are in microseconds.
+ *
+ * @version  $Revision$, $Date$
+ */
+public final class RequestMetricsSnapshot {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final String wssURL;
+    private final String facadeURL;
+    private final String requestType;
+    private final long requests;
+    private final long failures;
+    private final long retries;
+    private final long renewals;
+    private final long bytesOut;
+    private final long bytesIn;
+    private final HistogramSnapshot build;
+    private final HistogramSnapshot poolWait;
+    private final HistogramSnapshot timeToFirstByte;
+    private final HistogramSnapshot download;
+    private final HistogramSnapshot postProcessing;
+    private final HistogramSnapshot total;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new RequestMetricsSnapshot object.
+     *
+     * @param  wssURL           the URL of the WSS
+     * @param  facadeURL        the facade URL, <code>null</code> for requests without facade URL
+     * @param  requestType      the name of the {@link RequestType}
+     * @param  requests         number of finished requests
+     * @param  failures         number of failed requests
+     * @param  retries          number of requests sent again after a session renewal
+     * @param  renewals         number of sessions that replaced a previous session
+     * @param  bytesOut         number of bytes sent
+     * @param  bytesIn          number of bytes received
+     * @param  build            durations of {@link Phase#BUILD}
+     * @param  poolWait         durations of {@link Phase#POOL_WAIT}
+     * @param  timeToFirstByte  durations of {@link Phase#TIME_TO_FIRST_BYTE}
+     * @param  download         durations of {@link Phase#DOWNLOAD}
+     * @param  postProcessing   durations of {@link Phase#POST_PROCESSING}
+     * @param  total            durations of {@link Phase#TOTAL}
+     */
+    @ConstructorProperties(
+        {
+            "wssURL", "facadeURL", "requestType", "requests", "failures", "retries", "renewals", "bytesOut",
+            "bytesIn", "build", "poolWait", "timeToFirstByte", "download", "postProcessing", "total"
+        }
+    )
+    public RequestMetricsSnapshot(final String wssURL,
+            final String facadeURL,
+            final String requestType,
+            final long requests,
+            final long failures,
+            final long retries,
+            final long renewals,
+            final long bytesOut,
+            final long bytesIn,
+            final HistogramSnapshot build,
+            final HistogramSnapshot poolWait,
+            final HistogramSnapshot timeToFirstByte,
+            final HistogramSnapshot download,
+            final HistogramSnapshot postProcessing,
+            final HistogramSnapshot total) {
+        this.wssURL = wssURL;
+        this.facadeURL = facadeURL;
+        this.requestType = requestType;
+        this.requests = requests;
+        this.failures = failures;
+        this.retries = retries;
+        this.renewals = renewals;
+        this.bytesOut = bytesOut;
+        this.bytesIn = bytesIn;
+        this.build = build;
+        this.poolWait = poolWait;
+        this.timeToFirstByte = timeToFirstByte;
+        this.download = download;
+        this.postProcessing = postProcessing;
+        this.total = total;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the URL of the WSS.
+     *
+     * @return  the WSS URL
+     */
+    public String getWssURL() {
+        return wssURL;
+    }
+
+    /**
+     * Returns the facade URL of the requests.
+     *
+     * @return  the facade URL, {@link AccessorMetrics#OTHER_FACADE_URLS} for the requests of facade URLs beyond
+     *          {@link AccessorMetrics#getMaxEntries()}, or <code>null</code> for requests without facade URL
+     */
+    public String getFacadeURL() {
+        return facadeURL;
+    }
+
+    /**
+     * Returns the type of the requests.
+     *
+     * @return  the name of the {@link RequestType}
+     */
+    public String getRequestType() {
+        return requestType;
+    }
+
+    /**
+     * Returns the number of finished requests.
+     *
+     * @return  the number of requests
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Returns the number of failed requests.
+     *
+     * @return  the number of failures
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns the number of requests that were sent again after their session was renewed.
+     *
+     * @return  the number of retries
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * Returns the number of sessions that replaced a previous session, i.e. after the WSS rejected it or before it
+     * expired.
+     *
+     * @return  the number of renewals
+     */
+    public long getRenewals() {
+        return renewals;
+    }
+
+    /**
+     * Returns the number of bytes sent to the WSS.
+     *
+     * @return  the number of bytes
+     */
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    /**
+     * Returns the number of bytes received from the WSS.
+     *
+     * @return  the number of bytes
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * Returns the durations of {@link Phase#BUILD}.
+     *
+     * @return  the histogram snapshot
+     */
+    public HistogramSnapshot getBuild() {
+        return build;
+    }
+
+    /**
+     * Returns the durations of {@link Phase#POOL_WAIT}.
+     *
+     * @return  the histogram snapshot
+     */
+    public HistogramSnapshot getPoolWait() {
+        return poolWait;
+    }
+
+    /**
+     * Returns the durations of {@link Phase#TIME_TO_FIRST_BYTE}.
+     *
+     * @return  the histogram snapshot
+     */
+    public HistogramSnapshot getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /**
+     * Returns the durations of {@link Phase#DOWNLOAD}.
+     *
+     * @return  the histogram snapshot
+     */
+    public HistogramSnapshot getDownload() {
+        return download;
+    }
+
+    /**
+     * Returns the durations of {@link Phase#POST_PROCESSING}.
+     *
+     * @return  the histogram snapshot
+     */
+    public HistogramSnapshot getPostProcessing() {
+        return postProcessing;
+    }
+
+    /**
+     * Returns the durations of {@link Phase#TOTAL}.
+     *
+     * @return  the histogram snapshot
+     */
+    public HistogramSnapshot getTotal() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return requestType + " " + wssURL + ((facadeURL != null) ? (" " + facadeURL) : "") + ": requests=" + requests
+                    + ", failures=" + failures + ", retries=" + retries + ", renewals=" + renewals + ", bytesOut="
+                    + bytesOut + ", bytesIn=" + bytesIn + ", build=" + build + ", poolWait=" + poolWait
+                    + ", timeToFirstByte=" + timeToFirstByte + ", download=" + download + ", postProcessing="
+                    + postProcessing + ", total=" + total;
+    }
+}
@@ -0,0 +1,112 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.metrics;
+
+/**
+ * Measures a single request. The sample is started by {@link AccessorMetrics#start(String, String, RequestType)};
+ * every {@link #mark(Phase)} records the time since the start or the previous mark as the duration of a phase, and
+ * {@link #finish(boolean)} records the total duration and counts the request. If the metrics are disabled, all
+ * methods do nothing.<br>
+ * <br>
+ * A sample must only be used by one thread at a time.
+ *
+ * @version  $Revision$, $Date$
+ */
+public final class RequestSample {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    /** A sample that records nothing. */
+    public static final RequestSample DISABLED = new RequestSample(null);
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final RequestMetrics metrics;
+    private final long start;
+    private long last;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new RequestSample object and starts it.
+     *
+     * @param  metrics  the metrics to record to, <code>null</code> to record nothing
+     */
+    RequestSample(final RequestMetrics metrics) {
+        this.metrics = metrics;
+        this.start = (metrics != null) ? System.nanoTime() : 0L;
+        this.last = start;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Records the time since the start or the previous mark as the duration of a phase.
+     *
+     * @param  phase  the phase that has ended
+     */
+    public void mark(final Phase phase) {
+        if (metrics != null) {
+            final long now = System.nanoTime();
+            metrics.record(phase, now - last);
+            last = now;
+        }
+    }
+
+    /**
+     * Records the time since the start or the previous mark as the durations of two phases, i.e. the time the HTTP
+     * client waited for a pooled connection and the time until the response arrived.
+     *
+     * @param  waitPhase  the first phase
+     * @param  waitNanos  the duration of the first phase in nanoseconds, at most the time since the previous mark
+     * @param  phase      the phase that took the rest of the time
+     */
+    public void mark(final Phase waitPhase, final long waitNanos, final Phase phase) {
+        if (metrics != null) {
+            final long now = System.nanoTime();
+            final long wait = Math.min(waitNanos, now - last);
+            metrics.record(waitPhase, wait);
+            metrics.record(phase, now - last - wait);
+            last = now;
+        }
+    }
+
+    /**
+     * Counts bytes sent to the WSS.
+     *
+     * @param  bytes  the number of bytes, negative values are ignored
+     */
+    public void addBytesOut(final long bytes) {
+        if ((metrics != null) && (bytes > 0)) {
+            metrics.addBytesOut(bytes);
+        }
+    }
+
+    /**
+     * Counts bytes received from the WSS.
+     *
+     * @param  bytes  the number of bytes, negative values are ignored
+     */
+    public void addBytesIn(final long bytes) {
+        if ((metrics != null) && (bytes > 0)) {
+            metrics.addBytesIn(bytes);
+        }
+    }
+
+    /**
+     * Records the total duration and counts the request. Must be called once per sample.
+     *
+     * @param  success  false if the request failed
+     */
+    public void finish(final boolean success) {
+        if (metrics != null) {
+            metrics.record(Phase.TOTAL, System.nanoTime() - start);
+            metrics.countRequest(success);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.metrics;
+
+/**
+ * The types of requests to the WSS whose metrics are recorded.
+ *
+ * @version  $Revision$, $Date$
+ */
+public enum RequestType {
+
+    //~ Enum constants ---------------------------------------------------------
+
+    DO_SERVICE, GET_SESSION, CLOSE_SESSION, GET_CAPABILITIES
+}
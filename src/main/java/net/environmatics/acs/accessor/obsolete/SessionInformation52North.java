@@ -88,6 +88,7 @@ public class SessionInformation52North implements SessionInformation {
      *
      * @return  expiration date
      */
+    @Override
     public Date getExpirationDate() {
         return expirationDate;
     }
@@ -0,0 +1,216 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.replay;
+
+import net.environmatics.acs.accessor.WSSHeader;
+import net.environmatics.acs.accessor.metrics.RequestType;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A recorded exchange with the WSS: the request key, the timing, the HTTP status, the response headers and the
+ * response body.<br>
+ * <br>
+ * The request key identifies a request independent of the session it was sent with:
+ *
+ * <ul>
+ *   <li>DoService: <code>&lt;DCP type&gt; &lt;facade URL&gt; &lt;service request&gt;</code>, the service request is
+ *     empty if it was streamed from a Reader</li>
+ *   <li>GetSession: the URN of the authentication method, the credentials are not recorded</li>
+ *   <li>GetCapabilities: <code>conditional</code> for a conditional request, empty otherwise</li>
+ *   <li>CloseSession: empty</li>
+ * </ul>
+ *
+ * An exchange that failed with an I/O error has the status {@link #STATUS_FAILED} and the error message as body.
+ *
+ * @version  $Revision$, $Date$
+ */
+public final class ExchangeRecord {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    /** Status of an exchange that failed with an I/O error. */
+    public static final int STATUS_FAILED = 0;
+
+    private static final WSSHeader[] NO_HEADERS = new WSSHeader[0];
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final RequestType type;
+    private final String key;
+    private final long startMicros;
+    private final long timeToFirstByteMicros;
+    private final long durationMicros;
+    private final int status;
+    private final WSSHeader[] headers;
+    private final byte[] body;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new ExchangeRecord.
+     *
+     * @param  type                   the type of the request
+     * @param  key                    the request key
+     * @param  startMicros            the start of the exchange, relative to the start of the recording
+     * @param  timeToFirstByteMicros  the time until the status line and the headers of the response were received
+     * @param  durationMicros         the time until the body of the response was received
+     * @param  status                 the HTTP status or {@link #STATUS_FAILED}
+     * @param  headers                the response headers, may be <code>null</code>
+     * @param  body                   the response body, may be <code>null</code>
+     */
+    public ExchangeRecord(final RequestType type,
+            final String key,
+            final long startMicros,
+            final long timeToFirstByteMicros,
+            final long durationMicros,
+            final int status,
+            final WSSHeader[] headers,
+            final byte[] body) {
+        this.type = type;
+        this.key = (key != null) ? key : "";
+        this.startMicros = startMicros;
+        this.timeToFirstByteMicros = timeToFirstByteMicros;
+        this.durationMicros = Math.max(durationMicros, timeToFirstByteMicros);
+        this.status = status;
+        this.headers = (headers != null) ? headers.clone() : NO_HEADERS;
+        this.body = (body != null) ? body : new byte[0];
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates the record of an exchange that failed with an I/O error.
+     *
+     * @param   type            the type of the request
+     * @param   key             the request key
+     * @param   startMicros     the start of the exchange, relative to the start of the recording
+     * @param   durationMicros  the time until the exchange failed
+     * @param   message         the error message
+     *
+     * @return  a new record
+     */
+    public static ExchangeRecord failed(final RequestType type,
+            final String key,
+            final long startMicros,
+            final long durationMicros,
+            final String message) {
+        return new ExchangeRecord(
+                type,
+                key,
+                startMicros,
+                durationMicros,
+                durationMicros,
+                STATUS_FAILED,
+                null,
+                String.valueOf(message).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the type of the request.
+     *
+     * @return  the request type
+     */
+    public RequestType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the request key.
+     *
+     * @return  the key, not <code>null</code>
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the start of the exchange, relative to the start of the recording.
+     *
+     * @return  the start in microseconds
+     */
+    public long getStartMicros() {
+        return startMicros;
+    }
+
+    /**
+     * Returns the time until the status line and the headers of the response were received.
+     *
+     * @return  the time in microseconds
+     */
+    public long getTimeToFirstByteMicros() {
+        return timeToFirstByteMicros;
+    }
+
+    /**
+     * Returns the time until the body of the response was received.
+     *
+     * @return  the time in microseconds
+     */
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+
+    /**
+     * Returns the HTTP status of the response.
+     *
+     * @return  the status or {@link #STATUS_FAILED}
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Checks whether the exchange failed with an I/O error.
+     *
+     * @return  true if it failed
+     */
+    public boolean isFailed() {
+        return status == STATUS_FAILED;
+    }
+
+    /**
+     * Returns the response headers.
+     *
+     * @return  a copy of the headers
+     */
+    public WSSHeader[] getHeaders() {
+        return headers.clone();
+    }
+
+    /**
+     * Returns the first response header with the given name.
+     *
+     * @param   name  the name of the header, not case sensitive
+     *
+     * @return  the header or <code>null</code>
+     */
+    public WSSHeader getHeader(final String name) {
+        for (final WSSHeader header : headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the response body. The array is not copied and must not be modified.
+     *
+     * @return  the body, not <code>null</code>
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    @Override
+    public String toString() {
+        return type + " [" + key + "] status=" + status + ", ttfb=" + timeToFirstByteMicros + " us, duration="
+                    + durationMicros + " us, " + body.length + " bytes";
+    }
+}
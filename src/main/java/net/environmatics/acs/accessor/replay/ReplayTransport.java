@@ -0,0 +1,341 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.replay;
+
+import net.environmatics.acs.accessor.WSSHeader;
+import net.environmatics.acs.accessor.WSSRequest;
+import net.environmatics.acs.accessor.WSSResponse;
+import net.environmatics.acs.accessor.interfaces.WSSTransport;
+import net.environmatics.acs.accessor.metrics.RequestType;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Answers the requests of a WSS accessor with the exchanges of a traffic log instead of sending them to the WSS, see
+ * {@link net.environmatics.acs.accessor.WSSAccessorDeegree#setTransport(WSSTransport)}. No connection is opened, so a
+ * recorded production workload can be run locally and deterministically, i.e. to compare versions of the
+ * accessor.<br>
+ * <br>
+ * Requests are matched by their type and their request key, see {@link ExchangeRecord}. The exchanges recorded for
+ * the same request are replayed in the order they were recorded and then from the start again, so a request that was
+ * rejected because of an expired session and succeeded after the renewal is replayed the same way. Each exchange
+ * takes as long as it took when it was recorded, multiplied with the time scale: 1 replays the original timing, 0.5
+ * twice as fast and 0 without any delay.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class ReplayTransport implements WSSTransport {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final Map<String, Exchanges> exchanges = new HashMap<String, Exchanges>();
+    private final int recordCount;
+    private volatile double timeScale = 1d;
+    private final AtomicLong replayedCount = new AtomicLong();
+    private final AtomicLong missingCount = new AtomicLong();
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new ReplayTransport.
+     *
+     * @param  records  the recorded exchanges in the order they were recorded
+     */
+    public ReplayTransport(final Collection<ExchangeRecord> records) {
+        final Map<String, List<ExchangeRecord>> byKey = new HashMap<String, List<ExchangeRecord>>();
+        for (final ExchangeRecord record : records) {
+            final String key = keyOf(record.getType(), record.getKey());
+            List<ExchangeRecord> list = byKey.get(key);
+            if (list == null) {
+                list = new ArrayList<ExchangeRecord>();
+                byKey.put(key, list);
+            }
+            list.add(record);
+        }
+        for (final Map.Entry<String, List<ExchangeRecord>> entry : byKey.entrySet()) {
+            exchanges.put(entry.getKey(), new Exchanges(entry.getValue()));
+        }
+        recordCount = records.size();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates a ReplayTransport for a traffic log.
+     *
+     * @param   file  the traffic log
+     *
+     * @return  a new transport
+     *
+     * @throws  IOException  if the log could not be read
+     */
+    public static ReplayTransport load(final File file) throws IOException {
+        return new ReplayTransport(TrafficLog.read(file));
+    }
+
+    @Override
+    public WSSResponse execute(final WSSRequest request) throws IOException {
+        return new ReplayedResponse(exchange(request.getType(), request.getKey()));
+    }
+
+    @Override
+    public CompletableFuture<WSSResponse> executeAsync(final WSSRequest request, final Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        final WSSResponse response = execute(request);
+                        response.getResponseBody();
+                        return response;
+                    } catch (IOException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, executor);
+    }
+
+    /**
+     * Replays the next exchange of a request. Waits for the scaled time to first byte of the exchange.
+     *
+     * @param   type  the type of the request
+     * @param   key   the request key
+     *
+     * @return  the exchange
+     *
+     * @throws  IOException  if no exchange has been recorded for the request, if the recorded exchange failed with an
+     *                       I/O error or if the thread is interrupted while waiting
+     */
+    public ExchangeRecord exchange(final RequestType type, final String key) throws IOException {
+        final Exchanges candidates = exchanges.get(keyOf(type, key));
+        if (candidates == null) {
+            missingCount.incrementAndGet();
+            throw new IOException("no recorded exchange for " + type + " [" + key + "]");
+        }
+        final ExchangeRecord record = candidates.next();
+        await(record.getTimeToFirstByteMicros());
+        replayedCount.incrementAndGet();
+        if (record.isFailed()) {
+            throw new IOException(new String(record.getBody(), StandardCharsets.UTF_8));
+        }
+        return record;
+    }
+
+    /**
+     * Waits for the scaled time the download of the body of an exchange took.
+     *
+     * @param   record  the exchange returned by {@link #exchange(RequestType, String)}
+     *
+     * @throws  IOException  if the thread is interrupted while waiting
+     */
+    private void awaitDownload(final ExchangeRecord record) throws IOException {
+        await(record.getDurationMicros() - record.getTimeToFirstByteMicros());
+    }
+
+    /**
+     * Waits for a recorded time multiplied with the time scale.
+     *
+     * @param   micros  the recorded time
+     *
+     * @throws  InterruptedIOException  if the thread is interrupted
+     */
+    private void await(final long micros) throws InterruptedIOException {
+        final long nanos = (long)(TimeUnit.MICROSECONDS.toNanos(micros) * timeScale);
+        if (nanos <= 0) {
+            return;
+        }
+        final long deadline = System.nanoTime() + nanos;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("interrupted while replaying an exchange");
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the map of exchanges.
+     *
+     * @param   type  the type of the request
+     * @param   key   the request key
+     *
+     * @return  the map key
+     */
+    private static String keyOf(final RequestType type, final String key) {
+        return type.name() + '\n' + ((key != null) ? key : "");
+    }
+
+    /**
+     * Sets the factor the recorded times are multiplied with.
+     *
+     * @param   timeScale  1 for the original timing, 0 for no delay
+     *
+     * @throws  IllegalArgumentException  if the factor is negative
+     */
+    public void setTimeScale(final double timeScale) {
+        if (timeScale < 0) {
+            throw new IllegalArgumentException("time scale must not be negative: " + timeScale);
+        }
+        this.timeScale = timeScale;
+    }
+
+    /**
+     * Returns the factor the recorded times are multiplied with.
+     *
+     * @return  the time scale
+     */
+    public double getTimeScale() {
+        return timeScale;
+    }
+
+    /**
+     * Returns the number of recorded exchanges.
+     *
+     * @return  the number of records
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the number of replayed exchanges.
+     *
+     * @return  the number of exchanges
+     */
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    /**
+     * Returns the number of requests no exchange had been recorded for.
+     *
+     * @return  the number of requests
+     */
+    public long getMissingCount() {
+        return missingCount.get();
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * The exchanges recorded for a request.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class Exchanges {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final ExchangeRecord[] records;
+        private final AtomicInteger next = new AtomicInteger();
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new Exchanges object.
+         *
+         * @param  records  the exchanges in the order they were recorded
+         */
+        Exchanges(final List<ExchangeRecord> records) {
+            this.records = records.toArray(new ExchangeRecord[records.size()]);
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        /**
+         * Returns the next exchange, starting from the first one after the last.
+         *
+         * @return  the exchange
+         */
+        ExchangeRecord next() {
+            return records[(next.getAndIncrement() & Integer.MAX_VALUE) % records.length];
+        }
+    }
+
+    /**
+     * The response of a replayed exchange. The body is available after the time its download took when it was
+     * recorded.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private final class ReplayedResponse extends WSSResponse {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final ExchangeRecord record;
+        private boolean downloaded;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new ReplayedResponse object.
+         *
+         * @param  record  the exchange
+         */
+        ReplayedResponse(final ExchangeRecord record) {
+            this.record = record;
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        @Override
+        public int getStatusCode() {
+            return record.getStatus();
+        }
+
+        @Override
+        public WSSHeader[] getResponseHeaders() {
+            return record.getHeaders();
+        }
+
+        @Override
+        public WSSHeader getResponseHeader(final String name) {
+            return record.getHeader(name);
+        }
+
+        @Override
+        public InputStream getResponseBodyAsStream() throws IOException {
+            return new ByteArrayInputStream(getResponseBody());
+        }
+
+        @Override
+        public synchronized byte[] getResponseBody() throws IOException {
+            if (!downloaded) {
+                awaitDownload(record);
+                downloaded = true;
+            }
+            return record.getBody();
+        }
+
+        @Override
+        public void abort() {
+            // nothing to abort
+        }
+
+        @Override
+        public void releaseConnection() {
+            // no connection
+        }
+    }
+}
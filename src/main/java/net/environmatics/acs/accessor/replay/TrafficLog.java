@@ -0,0 +1,273 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.replay;
+
+import net.environmatics.acs.accessor.WSSHeader;
+import net.environmatics.acs.accessor.metrics.RequestType;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads and writes the binary traffic log of a {@link TrafficRecorder}. The log starts with a magic number and a
+ * version, followed by the records without any separator. Each record consists of the request type, the start, the
+ * time to first byte and the duration in microseconds, the HTTP status, the request key, the headers and the body.
+ * Numbers are written as variable-length integers, strings as their length followed by their UTF-8 bytes, so a record
+ * of a small response takes only a few bytes more than its body. A log may be GZIP compressed.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class TrafficLog {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static Logger logger = Logger.getLogger(TrafficLog.class);
+
+    static final int MAGIC = 0x57535352; // "WSSR"
+    static final int VERSION = 1;
+
+    private static final RequestType[] TYPES = RequestType.values();
+    private static final int GZIP_MAGIC = 0x1f8b;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Will not be called.
+     */
+    private TrafficLog() { /* Not used */
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Reads all records of a traffic log.
+     *
+     * @param   file  the log, may be GZIP compressed
+     *
+     * @return  the records in the order they were recorded
+     *
+     * @throws  IOException  if the file could not be read or is not a traffic log
+     */
+    public static List<ExchangeRecord> read(final File file) throws IOException {
+        final InputStream is = new FileInputStream(file);
+        try {
+            return read(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Reads all records of a traffic log. The stream is not closed. If the log ends within a record, i.e. because the
+     * recording application was killed, the incomplete record is skipped.
+     *
+     * @param   is  the log, may be GZIP compressed
+     *
+     * @return  the records in the order they were recorded
+     *
+     * @throws  IOException  if the stream could not be read or is not a traffic log
+     */
+    public static List<ExchangeRecord> read(final InputStream is) throws IOException {
+        final BufferedInputStream buffered = new BufferedInputStream(is);
+        buffered.mark(2);
+        final int magic = (buffered.read() << 8) | buffered.read();
+        buffered.reset();
+        final DataInputStream in = new DataInputStream((magic == GZIP_MAGIC) ? new GZIPInputStream(buffered)
+                                                                             : buffered);
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a traffic log");
+            }
+            final int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("unsupported traffic log version " + version);
+            }
+        } catch (EOFException ex) {
+            throw new IOException("not a traffic log", ex);
+        }
+
+        final List<ExchangeRecord> records = new ArrayList<ExchangeRecord>();
+        while (true) {
+            final int type = in.read();
+            if (type < 0) {
+                break;
+            }
+            try {
+                records.add(readRecord(in, type));
+            } catch (EOFException ex) {
+                logger.warn("traffic log ends within a record, skipped it");
+                break;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Writes the header of a traffic log.
+     *
+     * @param   out  the log
+     *
+     * @throws  IOException  if writing fails
+     */
+    static void writeHeader(final DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+    }
+
+    /**
+     * Writes a record.
+     *
+     * @param   out     the log
+     * @param   record  the record
+     *
+     * @throws  IOException  if writing fails
+     */
+    static void writeRecord(final DataOutputStream out, final ExchangeRecord record) throws IOException {
+        out.writeByte(record.getType().ordinal());
+        writeVarLong(out, record.getStartMicros());
+        writeVarLong(out, record.getTimeToFirstByteMicros());
+        writeVarLong(out, record.getDurationMicros());
+        writeVarLong(out, record.getStatus());
+        writeString(out, record.getKey());
+        final WSSHeader[] headers = record.getHeaders();
+        writeVarLong(out, headers.length);
+        for (final WSSHeader header : headers) {
+            writeString(out, header.getName());
+            writeString(out, header.getValue());
+        }
+        final byte[] body = record.getBody();
+        writeVarLong(out, body.length);
+        out.write(body);
+    }
+
+    /**
+     * Reads the rest of a record.
+     *
+     * @param   in    the log
+     * @param   type  the ordinal of the request type, already read
+     *
+     * @return  the record
+     *
+     * @throws  IOException  if reading fails or the record is invalid
+     */
+    private static ExchangeRecord readRecord(final DataInputStream in, final int type) throws IOException {
+        if (type >= TYPES.length) {
+            throw new IOException("invalid request type " + type);
+        }
+        final long start = readVarLong(in);
+        final long timeToFirstByte = readVarLong(in);
+        final long duration = readVarLong(in);
+        final int status = (int)readVarLong(in);
+        final String key = readString(in);
+        final WSSHeader[] headers = new WSSHeader[readLength(in)];
+        for (int i = 0; i < headers.length; i++) {
+            headers[i] = new WSSHeader(readString(in), readString(in));
+        }
+        final byte[] body = new byte[readLength(in)];
+        in.readFully(body);
+        return new ExchangeRecord(TYPES[type], key, start, timeToFirstByte, duration, status, headers, body);
+    }
+
+    /**
+     * Writes a non-negative number with 7 bits per byte, the high bit marks that more bytes follow.
+     *
+     * @param   out    the log
+     * @param   value  the number, negative numbers are written as 0
+     *
+     * @throws  IOException  if writing fails
+     */
+    private static void writeVarLong(final DataOutputStream out, final long value) throws IOException {
+        long v = Math.max(0L, value);
+        while (v >= 0x80) {
+            out.writeByte((int)(v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int)v);
+    }
+
+    /**
+     * Reads a number written by {@link #writeVarLong(DataOutputStream, long)}.
+     *
+     * @param   in  the log
+     *
+     * @return  the number
+     *
+     * @throws  IOException  if reading fails or the number is too long
+     */
+    private static long readVarLong(final DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (long)(b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("invalid number in traffic log");
+    }
+
+    /**
+     * Reads a length.
+     *
+     * @param   in  the log
+     *
+     * @return  the length
+     *
+     * @throws  IOException  if reading fails or the length is invalid
+     */
+    private static int readLength(final DataInputStream in) throws IOException {
+        final long length = readVarLong(in);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("invalid length in traffic log: " + length);
+        }
+        return (int)length;
+    }
+
+    /**
+     * Writes a string.
+     *
+     * @param   out  the log
+     * @param   s    the string, <code>null</code> is written as empty string
+     *
+     * @throws  IOException  if writing fails
+     */
+    private static void writeString(final DataOutputStream out, final String s) throws IOException {
+        final byte[] bytes = (s != null) ? s.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string.
+     *
+     * @param   in  the log
+     *
+     * @return  the string
+     *
+     * @throws  IOException  if reading fails
+     */
+    private static String readString(final DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
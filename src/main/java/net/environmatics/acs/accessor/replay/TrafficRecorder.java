@@ -0,0 +1,139 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the exchanges of a WSS accessor to a traffic log, see
+ * {@link net.environmatics.acs.accessor.WSSAccessorDeegree#setTrafficRecorder(TrafficRecorder)}. The log can be
+ * replayed with a {@link ReplayTransport}.<br>
+ * <br>
+ * Records are appended in the order the exchanges complete. A recorder may be shared by several accessors. Every
+ * response is buffered in memory and written to the log, so recording is meant for capturing traffic, not for
+ * permanent use. Note that the log contains the session IDs and the responses of the WSS.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class TrafficRecorder implements Closeable {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final DataOutputStream out;
+    private final long startNanos = System.nanoTime();
+    private long recordCount;
+    private boolean closed;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new TrafficRecorder that writes to a stream. The stream is closed with the recorder.
+     *
+     * @param   os  the stream
+     *
+     * @throws  IOException  if the header of the log could not be written
+     */
+    public TrafficRecorder(final OutputStream os) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(os, BUFFER_SIZE));
+        TrafficLog.writeHeader(out);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates a recorder that writes to a file. The log is GZIP compressed if the name of the file ends with
+     * <code>.gz</code>.
+     *
+     * @param   file  the file, an existing file is replaced
+     *
+     * @return  a new recorder
+     *
+     * @throws  IOException  if the file could not be created
+     */
+    public static TrafficRecorder create(final File file) throws IOException {
+        final OutputStream os = new FileOutputStream(file);
+        try {
+            return new TrafficRecorder(file.getName().endsWith(".gz") ? new GZIPOutputStream(os, BUFFER_SIZE) : os);
+        } catch (IOException ex) {
+            os.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Converts a value of {@link System#nanoTime()} to the time since the start of the recording.
+     *
+     * @param   nanoTime  the value
+     *
+     * @return  the time in microseconds
+     */
+    public long toMicros(final long nanoTime) {
+        return TimeUnit.NANOSECONDS.toMicros(nanoTime - startNanos);
+    }
+
+    /**
+     * Appends a record to the log. Records are ignored once the recorder is closed.
+     *
+     * @param   record  the record
+     *
+     * @throws  IOException  if the record could not be written
+     */
+    public synchronized void record(final ExchangeRecord record) throws IOException {
+        if (closed) {
+            return;
+        }
+        TrafficLog.writeRecord(out, record);
+        recordCount++;
+    }
+
+    /**
+     * Returns the number of records written.
+     *
+     * @return  the number of records
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Writes the buffered records to the log.
+     *
+     * @throws  IOException  if writing fails
+     */
+    public synchronized void flush() throws IOException {
+        if (!closed) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes the buffered records and closes the log.
+     *
+     * @throws  IOException  if writing fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+}
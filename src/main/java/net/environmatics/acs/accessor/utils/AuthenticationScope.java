@@ -0,0 +1,228 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.utils;
+
+import net.environmatics.acs.accessor.interfaces.AuthenticationMethod;
+
+import org.apache.commons.httpclient.NameValuePair;
+
+import java.nio.charset.StandardCharsets;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Computes the authorization scope of an authentication method, i.e. an HMAC-SHA256 of the authentication method and
+ * its credentials. Two authentication methods with the same scope are granted the same rights by the WSS, so their
+ * responses and sessions may be shared. The credentials themselves are never part of the scope, and without the
+ * secret key the scope cannot be used to guess a password.<br>
+ * <br>
+ * By default the secret key is chosen at random when the class is loaded, so scopes are valid within one process
+ * only. Scopes that are persisted and have to match after a restart, i.e. in the keys of a
+ * {@link net.environmatics.acs.accessor.cache.DiskPayloadCache}, need a stable key. Either it is configured with
+ * {@link #setSecretKey(byte[])}, or the first disk cache that is opened derives it from its own persisted secret, see
+ * {@link #setDefaultSecretKey(byte[])}.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class AuthenticationScope {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /** Minimum length of a configured secret key in bytes. */
+    public static final int MIN_KEY_LENGTH = 16;
+
+    private static volatile SecretKeySpec secretKey;
+    // true once setSecretKey() has been called
+    private static boolean secretKeyConfigured;
+    // true once setDefaultSecretKey() has replaced the random key
+    private static boolean defaultSecretKeySet;
+
+    // Mac.getInstance() is expensive, so every thread keeps its Mac as long as the secret key is not changed
+    private static final ThreadLocal<KeyedMac> MACS = new ThreadLocal<KeyedMac>();
+
+    static {
+        final byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        secretKey = new SecretKeySpec(key, ALGORITHM);
+    }
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Will not be called.
+     */
+    private AuthenticationScope() { /* Not used */
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the authorization scope of an authentication method.
+     *
+     * @param   authMethod  the authentication method
+     *
+     * @return  the hex encoded HMAC-SHA256 of the authentication method class and its name/value representation
+     */
+    public static String of(final AuthenticationMethod authMethod) {
+        return toHex(digest(authMethod));
+    }
+
+    /**
+     * Returns the authorization scope of an authentication method as raw bytes, i.e. for compact keys.
+     *
+     * @param   authMethod  the authentication method
+     *
+     * @return  the 32 byte HMAC-SHA256 of the authentication method class and its name/value representation
+     */
+    public static byte[] digest(final AuthenticationMethod authMethod) {
+        final Mac digest = getMac();
+        digest.update(authMethod.getClass().getName().getBytes(StandardCharsets.UTF_8));
+        for (final NameValuePair nvp : authMethod.asNameValue()) {
+            digest.update((byte)0);
+            if (nvp.getName() != null) {
+                digest.update(nvp.getName().getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte)'=');
+            if (nvp.getValue() != null) {
+                digest.update(nvp.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return digest.doFinal();
+    }
+
+    /**
+     * Sets the secret key of the scopes, so they are the same in every process that uses this key. Scopes computed
+     * before are no longer matched. The key must be kept as secret as the credentials.
+     *
+     * @param   key  the secret key, at least {@link #MIN_KEY_LENGTH} random bytes
+     *
+     * @throws  IllegalArgumentException  if the key is <code>null</code> or too short
+     */
+    public static synchronized void setSecretKey(final byte[] key) {
+        checkKey(key);
+        secretKey = new SecretKeySpec(key, ALGORITHM);
+        secretKeyConfigured = true;
+    }
+
+    /**
+     * Replaces the random secret key with a stable one, unless a key has been configured with
+     * {@link #setSecretKey(byte[])} or another default key has been set before. Used by persistent caches, so their
+     * scopes match after a restart without any configuration. Scopes computed before are no longer matched, so the
+     * default key should be set before the first request.
+     *
+     * @param   key  the stable secret key, at least {@link #MIN_KEY_LENGTH} random bytes
+     *
+     * @return  <code>true</code> if the scopes use a stable key now, <code>false</code> if they use another default
+     *          key, which is stable only as long as the same default key is set first after every restart
+     *
+     * @throws  IllegalArgumentException  if the key is <code>null</code> or too short
+     */
+    public static synchronized boolean setDefaultSecretKey(final byte[] key) {
+        checkKey(key);
+        if (secretKeyConfigured) {
+            return true;
+        }
+        if (defaultSecretKeySet) {
+            return MessageDigest.isEqual(secretKey.getEncoded(), key);
+        }
+        secretKey = new SecretKeySpec(key, ALGORITHM);
+        defaultSecretKeySet = true;
+        return true;
+    }
+
+    /**
+     * Checks the length of a secret key.
+     *
+     * @param   key  the secret key
+     *
+     * @throws  IllegalArgumentException  if the key is <code>null</code> or too short
+     */
+    private static void checkKey(final byte[] key) {
+        if ((key == null) || (key.length < MIN_KEY_LENGTH)) {
+            throw new IllegalArgumentException("the secret key must have at least " + MIN_KEY_LENGTH + " bytes");
+        }
+    }
+
+    /**
+     * Returns the HMAC-SHA256 Mac of the current thread, initialized with the current secret key.
+     *
+     * @return  the Mac of the current thread
+     *
+     * @throws  IllegalStateException  if HMAC-SHA256 is not supported, which every Java platform is required to do
+     */
+    private static Mac getMac() {
+        final SecretKeySpec key = secretKey;
+        final KeyedMac cached = MACS.get();
+        if ((cached != null) && (cached.key == key)) {
+            // doFinal() resets the Mac, reset() covers an update that failed before
+            cached.mac.reset();
+            return cached.mac;
+        }
+        try {
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            MACS.set(new KeyedMac(key, mac));
+            return mac;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("HMAC-SHA256 is not supported", ex);
+        }
+    }
+
+    /**
+     * Converts bytes to a lower case hex String.
+     *
+     * @param   bytes  the bytes to convert
+     *
+     * @return  the hex String
+     */
+    private static String toHex(final byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[(i * 2) + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * A Mac and the secret key it was initialized with.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class KeyedMac {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final SecretKeySpec key;
+        private final Mac mac;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new KeyedMac object.
+         *
+         * @param  key  the secret key
+         * @param  mac  the Mac initialized with the key
+         */
+        KeyedMac(final SecretKeySpec key, final Mac mac) {
+            this.key = key;
+            this.mac = mac;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.utils;
+
+import net.environmatics.acs.accessor.WSSRequestEntity;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+
+/**
+ * Request body that streams a WSS doService request with a payload read from a Reader. The envelope is written with
+ * a {@link DoServiceTemplate}, so neither the payload nor the request document is held in memory. The length of the
+ * request is unknown in advance, so it is sent with chunked transfer encoding.<br>
+ * <br>
+ * The payload can only be read once, so the entity is not repeatable and the transport will not retry the request.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class DoServiceRequestEntity extends WSSRequestEntity {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    /** Content type of the doService request. */
+    public static final String CONTENT_TYPE = "text/xml; charset=UTF-8";
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final DoServiceTemplate template;
+    private final Reader payload;
+    private final String payloadSuffix;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new DoServiceRequestEntity object.
+     *
+     * @param  template       the template of the doService request
+     * @param  payload        the payload of the request, it is not closed by this entity
+     * @param  payloadSuffix  text appended to the payload, i.e. the session parameter, or <code>null</code>
+     */
+    public DoServiceRequestEntity(final DoServiceTemplate template, final Reader payload, final String payloadSuffix) {
+        this.template = template;
+        this.payload = payload;
+        this.payloadSuffix = payloadSuffix;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public void writeTo(final OutputStream out) throws IOException {
+        template.writeTo(out, payload, payloadSuffix);
+    }
+
+    /**
+     * Returns -1, the length of a streamed request is not known in advance.
+     *
+     * @return  -1
+     */
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+}
@@ -0,0 +1,507 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.utils;
+
+import net.environmatics.acs.accessor.interfaces.AuthenticationMethod;
+
+import org.apache.commons.httpclient.NameValuePair;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precompiled template of a WSS doService request. The static parts of the document, i.e. everything before and after
+ * the payload, are rendered once with {@link DOMHelper#generateDoService(String, String, AuthenticationMethod,
+ * NameValuePair[], String)} and kept as UTF-8 bytes. A request is rendered by writing the escaped payload between
+ * these parts, so no dom4j tree has to be built per request.<br>
+ * <br>
+ * The rendered bytes are identical to the UTF-8 encoded <code>asXML()</code> output of the generated Document. The
+ * payload of HTTP_GET requests is escaped like dom4j escapes element text, the payload of HTTP_POST requests is
+ * written unchanged into a CDATA section.<br>
+ * <br>
+ * {@link #writeTo(OutputStream, Reader, String)} streams a request with a payload of any size.<br>
+ * <br>
+ * Templates are cached per DCP type, authorization scope, request parameters and facade URL. The authentication block
+ * is assumed to depend only on the class and the name/value representation of the authentication method, which is true
+ * for all authentication methods of this package. The cache keys contain the keyed hash of the credentials, see
+ * {@link AuthenticationScope}, not the credentials themselves. If the cache is full, the least recently used template
+ * is evicted, so templates of replaced sessions age out.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class DoServiceTemplate {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static Logger logger = Logger.getLogger(DoServiceTemplate.class);
+
+    /** Maximum number of cached templates. If the cache is full, the least recently used template is evicted. */
+    public static final int MAX_TEMPLATES = 256;
+
+    /** Number of markers that are tried before a document is left to dom4j. */
+    private static final int MAX_COMPILE_ATTEMPTS = 3;
+
+    /** Scratch buffers larger than this are not kept by the rendering thread. */
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+    private static final Map<String, DoServiceTemplate> TEMPLATES =
+        new ConcurrentHashMap<String, DoServiceTemplate>();
+
+    /** Number of payload characters that are encoded at once when writing to a stream. */
+    static final int CHUNK_SIZE = 8192;
+
+    private static final byte[] CDATA_SPLIT = "]]><![CDATA[".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>();
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final boolean escapePayload;
+    private final byte[] prefix;
+    private final byte[] suffix;
+    // System.nanoTime() of the last use, for the eviction of the least recently used template
+    private volatile long lastUsed;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new DoServiceTemplate object.
+     *
+     * @param  escapePayload  true if the payload is written as escaped text, false if it is written as CDATA
+     * @param  prefix         the UTF-8 bytes before the payload
+     * @param  suffix         the UTF-8 bytes after the payload
+     */
+    private DoServiceTemplate(final boolean escapePayload, final byte[] prefix, final byte[] suffix) {
+        this.escapePayload = escapePayload;
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Renders a WSS doService request as UTF-8 encoded XML. The result is the same as
+     * <code>DOMHelper.generateDoService(dcp_type, request, authMethod, requestParams,
+     * facadeURL).asXML().getBytes("UTF-8")</code>.
+     *
+     * @param   dcp_type       <b>Must</b> be
+     *                         {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_GET HTTP GET} or
+     *                         {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_POST HTTP POST}
+     * @param   request        Request to a secured service
+     * @param   authMethod     The authentication method that should be used.
+     * @param   requestParams  An array with request parameters, i.e. HTTP_Header / Mime-Type: text/xml
+     * @param   facadeURL      String with an URL to facade
+     *
+     * @return  the UTF-8 encoded doService request
+     *
+     * @throws  IllegalArgumentException  if the DCP type is not supported
+     */
+    public static byte[] render(final String dcp_type,
+            final String request,
+            final AuthenticationMethod authMethod,
+            final NameValuePair[] requestParams,
+            final String facadeURL) {
+        if ((request == null) || request.isEmpty()) {
+            // dom4j writes empty elements differently, so these are left to dom4j
+            return renderDocument(dcp_type, request, authMethod, requestParams, facadeURL);
+        }
+        final DoServiceTemplate template = get(dcp_type, authMethod, requestParams, facadeURL);
+        if (template == null) {
+            return renderDocument(dcp_type, request, authMethod, requestParams, facadeURL);
+        }
+        return template.render(request);
+    }
+
+    /**
+     * Renders a WSS doService request with dom4j.
+     *
+     * @param   dcp_type       HTTP_GET or HTTP_POST
+     * @param   request        Request to a secured service
+     * @param   authMethod     the authentication method
+     * @param   requestParams  the request parameters
+     * @param   facadeURL      the facade URL
+     *
+     * @return  the UTF-8 encoded doService request
+     */
+    private static byte[] renderDocument(final String dcp_type,
+            final String request,
+            final AuthenticationMethod authMethod,
+            final NameValuePair[] requestParams,
+            final String facadeURL) {
+        return DOMHelper.generateDoService(dcp_type, request, authMethod, requestParams, facadeURL)
+                    .asXML()
+                    .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Removes all cached templates.
+     */
+    public static void clear() {
+        TEMPLATES.clear();
+    }
+
+    /**
+     * Returns the cached template for the given static parts or compiles a new one. If the document cannot be split at
+     * a marker, i.e. because one of the static parts contains the marker, <code>null</code> is returned and the
+     * document has to be rendered with {@link DOMHelper#generateDoService(String, String, AuthenticationMethod,
+     * NameValuePair[], String)}.
+     *
+     * @param   dcp_type       <b>Must</b> be
+     *                         {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_GET HTTP GET} or
+     *                         {@link net.environmatics.acs.accessor.interfaces.WSSAccessor#DCP_HTTP_POST HTTP POST}
+     * @param   authMethod     The authentication method that should be used.
+     * @param   requestParams  An array with request parameters, i.e. HTTP_Header / Mime-Type: text/xml
+     * @param   facadeURL      String with an URL to facade
+     *
+     * @return  the template, or <code>null</code> if no template could be compiled
+     *
+     * @throws  IllegalArgumentException  if the DCP type is not supported
+     */
+    public static DoServiceTemplate get(final String dcp_type,
+            final AuthenticationMethod authMethod,
+            final NameValuePair[] requestParams,
+            final String facadeURL) {
+        final String key = createKey(dcp_type, authMethod, requestParams, facadeURL);
+        DoServiceTemplate template = TEMPLATES.get(key);
+        if (template == null) {
+            for (int attempt = 0; (template == null) && (attempt < MAX_COMPILE_ATTEMPTS); attempt++) {
+                template = compile(dcp_type, authMethod, requestParams, facadeURL);
+            }
+            if (template == null) {
+                logger.warn("Could not compile doService template for " + facadeURL + ", using dom4j");
+                return null;
+            }
+            if (TEMPLATES.size() >= MAX_TEMPLATES) {
+                evictLeastRecentlyUsed();
+            }
+            TEMPLATES.put(key, template);
+        }
+        template.lastUsed = System.nanoTime();
+        return template;
+    }
+
+    /**
+     * Removes the least recently used template from the cache.
+     */
+    private static void evictLeastRecentlyUsed() {
+        Map.Entry<String, DoServiceTemplate> eldest = null;
+        for (final Map.Entry<String, DoServiceTemplate> entry : TEMPLATES.entrySet()) {
+            if ((eldest == null) || ((entry.getValue().lastUsed - eldest.getValue().lastUsed) < 0)) {
+                eldest = entry;
+            }
+        }
+        if (eldest != null) {
+            TEMPLATES.remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Creates the cache key of a template. The authentication method is represented by its authorization scope, so
+     * the key does not contain credentials or session IDs.
+     *
+     * @param   dcp_type       HTTP_GET or HTTP_POST
+     * @param   authMethod     the authentication method
+     * @param   requestParams  the request parameters
+     * @param   facadeURL      the facade URL
+     *
+     * @return  the cache key
+     */
+    private static String createKey(final String dcp_type,
+            final AuthenticationMethod authMethod,
+            final NameValuePair[] requestParams,
+            final String facadeURL) {
+        final StringBuilder key = new StringBuilder(128);
+        key.append(dcp_type).append('\0').append(facadeURL).append('\0').append(AuthenticationScope.of(authMethod));
+        key.append('\0');
+        for (final NameValuePair nvp : requestParams) {
+            key.append('\0').append(nvp.getName()).append('\1').append(nvp.getValue());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Compiles a template by rendering the document with a unique marker as payload and splitting it at the marker.
+     *
+     * @param   dcp_type       HTTP_GET or HTTP_POST
+     * @param   authMethod     the authentication method
+     * @param   requestParams  the request parameters
+     * @param   facadeURL      the facade URL
+     *
+     * @return  the template or null if the random marker is not unique within the document
+     */
+    private static DoServiceTemplate compile(final String dcp_type,
+            final AuthenticationMethod authMethod,
+            final NameValuePair[] requestParams,
+            final String facadeURL) {
+        final String marker = "WSSPAYLOAD" + UUID.randomUUID().toString().replace("-", "");
+        final String xml = DOMHelper.generateDoService(dcp_type, marker, authMethod, requestParams, facadeURL).asXML();
+        final int index = xml.indexOf(marker);
+        if ((index < 0) || (index != xml.lastIndexOf(marker))) {
+            return null;
+        }
+        return new DoServiceTemplate(
+                "HTTP_GET".equals(dcp_type),
+                xml.substring(0, index).getBytes(StandardCharsets.UTF_8),
+                xml.substring(index + marker.length()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Renders the template with the given payload.
+     *
+     * @param   payload  the payload
+     *
+     * @return  the UTF-8 encoded doService request
+     */
+    private byte[] render(final String payload) {
+        // an escaped character takes at most 5 bytes ("&#31;", "&amp;"), an encoded one at most 3 bytes per char
+        final int maxLength = prefix.length + (payload.length() * 5) + suffix.length;
+        byte[] buffer = BUFFER.get();
+        if ((buffer == null) || (buffer.length < maxLength)) {
+            buffer = new byte[Math.max(maxLength, 8192)];
+            if (buffer.length <= MAX_RETAINED_BUFFER) {
+                BUFFER.set(buffer);
+            }
+        }
+
+        System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+        int pos = prefix.length;
+        final int length = payload.length();
+        for (int i = 0; i < length; i++) {
+            final char c = payload.charAt(i);
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && ((i + 1) < length) && Character.isLowSurrogate(payload.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, payload.charAt(++i));
+            } else if (Character.isSurrogate(c)) {
+                codePoint = '?';
+            }
+            pos = escapePayload ? writeEscaped(codePoint, buffer, pos) : writeUTF8(codePoint, buffer, pos);
+        }
+        System.arraycopy(suffix, 0, buffer, pos, suffix.length);
+        pos += suffix.length;
+
+        return Arrays.copyOf(buffer, pos);
+    }
+
+    /**
+     * Writes the doService request to a stream, reading the payload from a Reader. The payload is encoded chunk by
+     * chunk, so the memory needed does not depend on the size of the payload. Unlike
+     * {@link #render(String, String, AuthenticationMethod, NameValuePair[], String)}, every <code>]]&gt;</code>
+     * within a CDATA payload is split into two CDATA sections, so the written document is always well-formed.<br>
+     * The Reader is not closed.
+     *
+     * @param   out            the stream to write to
+     * @param   payload        the payload
+     * @param   payloadSuffix  text appended to the payload, i.e. the session parameter, or <code>null</code>
+     *
+     * @throws  IOException  if reading the payload or writing the stream fails
+     */
+    public void writeTo(final OutputStream out, final Reader payload, final String payloadSuffix) throws IOException {
+        final PayloadEncoder encoder = new PayloadEncoder();
+        final char[] chars = new char[CHUNK_SIZE];
+        final byte[] bytes = new byte[(CHUNK_SIZE * 5) + CDATA_SPLIT.length + 1];
+
+        out.write(prefix);
+        int read;
+        while ((read = payload.read(chars)) >= 0) {
+            out.write(bytes, 0, encoder.encode(chars, 0, read, bytes));
+        }
+        if (payloadSuffix != null) {
+            for (int offset = 0; offset < payloadSuffix.length(); offset += CHUNK_SIZE) {
+                final int length = Math.min(CHUNK_SIZE, payloadSuffix.length() - offset);
+                payloadSuffix.getChars(offset, offset + length, chars, 0);
+                out.write(bytes, 0, encoder.encode(chars, 0, length, bytes));
+            }
+        }
+        out.write(bytes, 0, encoder.finish(bytes));
+        out.write(suffix);
+        out.flush();
+    }
+
+    /**
+     * Writes a code point as UTF-8 and escapes it like dom4j escapes element text: <code>&lt;</code>,
+     * <code>&gt;</code> and <code>&amp;</code> are replaced by entities and control characters other than tab, line
+     * feed and carriage return by character references.
+     *
+     * @param   codePoint  the code point to write
+     * @param   buffer     the target buffer
+     * @param   pos        the position to start writing at
+     *
+     * @return  the position after the written code point
+     */
+    private static int writeEscaped(final int codePoint, final byte[] buffer, final int pos) {
+        switch (codePoint) {
+            case '<': {
+                return writeASCII("&lt;", buffer, pos);
+            }
+            case '>': {
+                return writeASCII("&gt;", buffer, pos);
+            }
+            case '&': {
+                return writeASCII("&amp;", buffer, pos);
+            }
+            case '\t':
+            case '\n':
+            case '\r': {
+                buffer[pos] = (byte)codePoint;
+                return pos + 1;
+            }
+            default: {
+                if (codePoint < 32) {
+                    return writeASCII("&#" + codePoint + ";", buffer, pos);
+                }
+                return writeUTF8(codePoint, buffer, pos);
+            }
+        }
+    }
+
+    /**
+     * Writes a code point as UTF-8.
+     *
+     * @param   codePoint  the code point to write
+     * @param   buffer     the target buffer
+     * @param   pos        the position to start writing at
+     *
+     * @return  the position after the written code point
+     */
+    private static int writeUTF8(final int codePoint, final byte[] buffer, int pos) {
+        if (codePoint < 0x80) {
+            buffer[pos++] = (byte)codePoint;
+        } else if (codePoint < 0x800) {
+            buffer[pos++] = (byte)(0xc0 | (codePoint >> 6));
+            buffer[pos++] = (byte)(0x80 | (codePoint & 0x3f));
+        } else if (codePoint < 0x10000) {
+            buffer[pos++] = (byte)(0xe0 | (codePoint >> 12));
+            buffer[pos++] = (byte)(0x80 | ((codePoint >> 6) & 0x3f));
+            buffer[pos++] = (byte)(0x80 | (codePoint & 0x3f));
+        } else {
+            buffer[pos++] = (byte)(0xf0 | (codePoint >> 18));
+            buffer[pos++] = (byte)(0x80 | ((codePoint >> 12) & 0x3f));
+            buffer[pos++] = (byte)(0x80 | ((codePoint >> 6) & 0x3f));
+            buffer[pos++] = (byte)(0x80 | (codePoint & 0x3f));
+        }
+        return pos;
+    }
+
+    /**
+     * Writes an ASCII String.
+     *
+     * @param   text    the text to write
+     * @param   buffer  the target buffer
+     * @param   pos     the position to start writing at
+     *
+     * @return  the position after the written text
+     */
+    private static int writeASCII(final String text, final byte[] buffer, int pos) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer[pos++] = (byte)text.charAt(i);
+        }
+        return pos;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Encodes a payload that is read in chunks. Surrogate pairs and <code>]]&gt;</code> sequences may span chunk
+     * borders, so the encoder keeps the state between the chunks.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private final class PayloadEncoder {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private char pendingHighSurrogate;
+        private int closingBrackets;
+
+        //~ Methods ------------------------------------------------------------
+
+        /**
+         * Encodes a chunk of the payload.
+         *
+         * @param   chars   the chunk
+         * @param   offset  the offset of the chunk
+         * @param   length  the length of the chunk, at most {@link #CHUNK_SIZE}
+         * @param   buffer  the target buffer
+         *
+         * @return  the number of bytes written to the buffer
+         */
+        int encode(final char[] chars, final int offset, final int length, final byte[] buffer) {
+            int pos = 0;
+            for (int i = offset; i < (offset + length); i++) {
+                final char c = chars[i];
+                if (pendingHighSurrogate != 0) {
+                    final char high = pendingHighSurrogate;
+                    pendingHighSurrogate = 0;
+                    if (Character.isLowSurrogate(c)) {
+                        pos = write(Character.toCodePoint(high, c), buffer, pos);
+                        continue;
+                    }
+                    pos = write('?', buffer, pos);
+                }
+                if (Character.isHighSurrogate(c)) {
+                    pendingHighSurrogate = c;
+                } else if (Character.isLowSurrogate(c)) {
+                    pos = write('?', buffer, pos);
+                } else {
+                    pos = write(c, buffer, pos);
+                }
+            }
+            return pos;
+        }
+
+        /**
+         * Writes a pending unpaired high surrogate at the end of the payload.
+         *
+         * @param   buffer  the target buffer
+         *
+         * @return  the number of bytes written to the buffer
+         */
+        int finish(final byte[] buffer) {
+            if (pendingHighSurrogate != 0) {
+                pendingHighSurrogate = 0;
+                return write('?', buffer, 0);
+            }
+            return 0;
+        }
+
+        /**
+         * Writes a code point, either escaped or as CDATA content.
+         *
+         * @param   codePoint  the code point to write
+         * @param   buffer     the target buffer
+         * @param   pos        the position to start writing at
+         *
+         * @return  the position after the written code point
+         */
+        private int write(final int codePoint, final byte[] buffer, int pos) {
+            if (escapePayload) {
+                return writeEscaped(codePoint, buffer, pos);
+            }
+            if (codePoint == ']') {
+                closingBrackets++;
+            } else {
+                if ((codePoint == '>') && (closingBrackets >= 2)) {
+                    // "]]>" ends the CDATA section, so the '>' is moved into a new one
+                    System.arraycopy(CDATA_SPLIT, 0, buffer, pos, CDATA_SPLIT.length);
+                    pos += CDATA_SPLIT.length;
+                }
+                closingBrackets = 0;
+            }
+            return writeUTF8(codePoint, buffer, pos);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.utils;
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Method;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides the executors that are used for asynchronous WSS requests. On Java 21 and newer a virtual thread per task
+ * executor is used by default, on older runtimes a shared pool of daemon threads.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class ExecutorHelper {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static Logger logger = Logger.getLogger(ExecutorHelper.class);
+
+    private static volatile Executor defaultExecutor;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Will not be called.
+     */
+    private ExecutorHelper() { /* Not used */
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the executor that is used for asynchronous requests if no other executor has been set. The executor is
+     * shared by all accessors and is created on first use.
+     *
+     * @return  a virtual thread per task executor if the runtime supports it, otherwise a cached pool of daemon threads
+     */
+    public static Executor getDefaultExecutor() {
+        Executor executor = defaultExecutor;
+        if (executor == null) {
+            synchronized (ExecutorHelper.class) {
+                executor = defaultExecutor;
+                if (executor == null) {
+                    executor = newVirtualThreadPerTaskExecutor();
+                    if (executor == null) {
+                        executor = newDaemonThreadPool("wss-accessor");
+                    }
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Checks whether the runtime supports virtual threads (Java 21 and newer).
+     *
+     * @return  <code>true</code> if virtual threads are available
+     */
+    public static boolean isVirtualThreadSupported() {
+        return findVirtualThreadFactoryMethod() != null;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task. The executor is looked up reflectively, so
+     * that this class can still be used on runtimes without virtual threads.
+     *
+     * @return  a new virtual thread per task executor, or <code>null</code> if the runtime does not support virtual
+     *          threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        final Method factoryMethod = findVirtualThreadFactoryMethod();
+        if (factoryMethod == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService)factoryMethod.invoke(null);
+        } catch (Exception ex) {
+            logger.warn("Could not create virtual thread executor", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Creates a cached thread pool with daemon threads, so that pending requests do not prevent the JVM from exiting.
+     *
+     * @param   namePrefix  prefix of the thread names
+     *
+     * @return  a new cached thread pool
+     */
+    public static ExecutorService newDaemonThreadPool(final String namePrefix) {
+        return Executors.newCachedThreadPool(newDaemonThreadFactory(namePrefix));
+    }
+
+    /**
+     * Creates a ThreadFactory for numbered daemon threads.
+     *
+     * @param   namePrefix  prefix of the thread names
+     *
+     * @return  a new ThreadFactory
+     */
+    public static ThreadFactory newDaemonThreadFactory(final String namePrefix) {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadFactory() {
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, namePrefix + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+    }
+
+    /**
+     * Looks up <code>Executors.newVirtualThreadPerTaskExecutor()</code>.
+     *
+     * @return  the factory method or <code>null</code> if it does not exist
+     */
+    private static Method findVirtualThreadFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+}
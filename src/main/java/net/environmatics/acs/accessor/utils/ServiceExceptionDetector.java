@@ -0,0 +1,307 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Detects ServiceExceptionReports in raw service responses without decoding them. Only the prologue of a response
+ * (byte order mark, XML declaration, comments, processing instructions and document type declaration) and the name of
+ * the root element are inspected, so the cost does not depend on the size of the response. Binary responses, i.e.
+ * PNG or JPEG tiles, are rejected by their first byte.<br>
+ * <br>
+ * Supports UTF-8, ISO-8859-x and other ASCII compatible encodings as well as UTF-16 with or without byte order mark.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class ServiceExceptionDetector {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    /** Maximum number of bytes that are inspected. */
+    public static final int SCAN_LIMIT = 4096;
+
+    private static final String ROOT_ELEMENT = "ServiceExceptionReport";
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Will not be called.
+     */
+    private ServiceExceptionDetector() { /* Not used */
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Checks whether a response is a ServiceExceptionReport.
+     *
+     * @param   data         the response
+     * @param   length       number of valid bytes in <code>data</code>
+     * @param   contentType  Content-Type of the response, may be <code>null</code>
+     *
+     * @return  <code>true</code> if the root element of the response is a ServiceExceptionReport
+     */
+    public static boolean isServiceExceptionReport(final byte[] data, final int length, final String contentType) {
+        return isServiceExceptionReport(ByteBuffer.wrap(data, 0, length), contentType);
+    }
+
+    /**
+     * Checks whether a response is a ServiceExceptionReport. The position of the buffer is not changed.
+     *
+     * @param   data         the response, from its position to its limit
+     * @param   contentType  Content-Type of the response, may be <code>null</code>
+     *
+     * @return  <code>true</code> if the root element of the response is a ServiceExceptionReport
+     */
+    public static boolean isServiceExceptionReport(final ByteBuffer data, final String contentType) {
+        if (isBinaryContentType(contentType)) {
+            return false;
+        }
+        final int start = data.position();
+        final int end = start + Math.min(data.remaining(), SCAN_LIMIT);
+        if ((end - start) < 2) {
+            return false;
+        }
+
+        // determine the encoding: stride is the number of bytes per character, offset the position of the ASCII byte
+        final int b0 = data.get(start) & 0xff;
+        final int b1 = data.get(start + 1) & 0xff;
+        int pos = start;
+        int stride = 1;
+        int offset = 0;
+        if ((b0 == 0xfe) && (b1 == 0xff)) {
+            pos += 2;
+            stride = 2;
+            offset = 1;
+        } else if ((b0 == 0xff) && (b1 == 0xfe)) {
+            pos += 2;
+            stride = 2;
+        } else if ((b0 == 0x00) && (b1 == '<')) {
+            stride = 2;
+            offset = 1;
+        } else if ((b0 == '<') && (b1 == 0x00)) {
+            stride = 2;
+        } else if ((b0 == 0xef) && (b1 == 0xbb) && ((start + 2) < end) && ((data.get(start + 2) & 0xff) == 0xbf)) {
+            pos += 3;
+        }
+
+        while (true) {
+            // skip whitespace between the markup of the prologue
+            int c;
+            while (((c = charAt(data, pos, end, stride, offset)) == ' ') || (c == '\t') || (c == '\r')
+                        || (c == '\n')) {
+                pos += stride;
+            }
+            if (c != '<') {
+                return false;
+            }
+            pos += stride;
+            c = charAt(data, pos, end, stride, offset);
+            if (c == '?') {
+                // XML declaration or processing instruction
+                pos = skipPast(data, pos, end, stride, offset, '?', '>');
+            } else if (c == '!') {
+                if ((charAt(data, pos + stride, end, stride, offset) == '-')
+                            && (charAt(data, pos + (2 * stride), end, stride, offset) == '-')) {
+                    // comment
+                    pos = skipComment(data, pos + (3 * stride), end, stride, offset);
+                } else {
+                    // document type declaration, possibly with an internal subset
+                    pos = skipDocType(data, pos, end, stride, offset);
+                }
+            } else {
+                return isRootElement(data, pos, end, stride, offset);
+            }
+            if (pos < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the (optionally prefixed) name at <code>pos</code> is "ServiceExceptionReport".
+     *
+     * @param   data    the response
+     * @param   pos     position of the first character of the element name
+     * @param   end     end of the inspected region
+     * @param   stride  bytes per character
+     * @param   offset  position of the ASCII byte within a character
+     *
+     * @return  <code>true</code> if the name matches
+     */
+    private static boolean isRootElement(final ByteBuffer data,
+            int pos,
+            final int end,
+            final int stride,
+            final int offset) {
+        int nameStart = pos;
+        int c;
+        while (((c = charAt(data, pos, end, stride, offset)) > 0) && isNameChar(c)) {
+            if (c == ':') {
+                nameStart = pos + stride;
+            }
+            pos += stride;
+        }
+        if ((c != ' ') && (c != '>') && (c != '/') && (c != '\t') && (c != '\r') && (c != '\n')) {
+            return false;
+        }
+        if (((pos - nameStart) / stride) != ROOT_ELEMENT.length()) {
+            return false;
+        }
+        for (int i = 0; i < ROOT_ELEMENT.length(); i++) {
+            if (charAt(data, nameStart + (i * stride), end, stride, offset) != ROOT_ELEMENT.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skips a document type declaration.
+     *
+     * @param   data    the response
+     * @param   pos     position after "&lt;"
+     * @param   end     end of the inspected region
+     * @param   stride  bytes per character
+     * @param   offset  position of the ASCII byte within a character
+     *
+     * @return  the position after the declaration, or -1 if the end of the region has been reached
+     */
+    private static int skipDocType(final ByteBuffer data,
+            int pos,
+            final int end,
+            final int stride,
+            final int offset) {
+        boolean internalSubset = false;
+        int c;
+        while ((c = charAt(data, pos, end, stride, offset)) >= 0) {
+            pos += stride;
+            if (c == '[') {
+                internalSubset = true;
+            } else if (c == ']') {
+                internalSubset = false;
+            } else if ((c == '>') && !internalSubset) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skips a comment.
+     *
+     * @param   data    the response
+     * @param   pos     position after "&lt;!--"
+     * @param   end     end of the inspected region
+     * @param   stride  bytes per character
+     * @param   offset  position of the ASCII byte within a character
+     *
+     * @return  the position after "--&gt;", or -1 if the end of the region has been reached
+     */
+    private static int skipComment(final ByteBuffer data,
+            int pos,
+            final int end,
+            final int stride,
+            final int offset) {
+        int dashes = 0;
+        int c;
+        while ((c = charAt(data, pos, end, stride, offset)) >= 0) {
+            pos += stride;
+            if ((c == '>') && (dashes >= 2)) {
+                return pos;
+            }
+            dashes = (c == '-') ? (dashes + 1) : 0;
+        }
+        return -1;
+    }
+
+    /**
+     * Skips to the position after two consecutive characters.
+     *
+     * @param   data    the response
+     * @param   pos     position to start at
+     * @param   end     end of the inspected region
+     * @param   stride  bytes per character
+     * @param   offset  position of the ASCII byte within a character
+     * @param   first   the first character, i.e. '?'
+     * @param   second  the second character, i.e. '&gt;'
+     *
+     * @return  the position after the characters, or -1 if the end of the region has been reached
+     */
+    private static int skipPast(final ByteBuffer data,
+            int pos,
+            final int end,
+            final int stride,
+            final int offset,
+            final char first,
+            final char second) {
+        int previous = -1;
+        int c;
+        while ((c = charAt(data, pos, end, stride, offset)) >= 0) {
+            pos += stride;
+            if ((previous == first) && (c == second)) {
+                return pos;
+            }
+            previous = c;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the character at a position if it is an ASCII character.
+     *
+     * @param   data    the response
+     * @param   pos     position of the character
+     * @param   end     end of the inspected region
+     * @param   stride  bytes per character
+     * @param   offset  position of the ASCII byte within a character
+     *
+     * @return  the character, 0 for a non ASCII character, or -1 if <code>pos</code> is outside of the region
+     */
+    private static int charAt(final ByteBuffer data, final int pos, final int end, final int stride, final int offset) {
+        if ((pos + stride) > end) {
+            return -1;
+        }
+        if ((stride == 2) && (data.get(pos + 1 - offset) != 0)) {
+            return 0;
+        }
+        final int c = data.get(pos + offset) & 0xff;
+        return (c < 0x80) ? c : 0;
+    }
+
+    /**
+     * Checks whether a character may be part of an element name.
+     *
+     * @param   c  the character
+     *
+     * @return  <code>true</code> for letters, digits, '_', '-', '.' and ':'
+     */
+    private static boolean isNameChar(final int c) {
+        return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || ((c >= '0') && (c <= '9')) || (c == '_')
+                    || (c == '-') || (c == '.') || (c == ':');
+    }
+
+    /**
+     * Checks whether a Content-Type denotes binary data that cannot contain a ServiceExceptionReport.
+     *
+     * @param   contentType  the Content-Type, may be <code>null</code>
+     *
+     * @return  <code>true</code> for images (except SVG), PDF, ZIP and octet streams
+     */
+    private static boolean isBinaryContentType(final String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        final String type = contentType.trim().toLowerCase();
+        return (type.startsWith("image/") && !type.startsWith("image/svg"))
+                    || type.startsWith("application/octet-stream")
+                    || type.startsWith("application/pdf")
+                    || type.startsWith("application/zip");
+    }
+}
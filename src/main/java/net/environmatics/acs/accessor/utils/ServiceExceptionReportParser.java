@@ -0,0 +1,241 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.utils;
+
+import net.environmatics.acs.accessor.Payload;
+import net.environmatics.acs.accessor.ServiceExceptionReport;
+
+import org.apache.log4j.Logger;
+
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Parses ServiceExceptionReports with a streaming (StAX) parser, without building a DOM. Supports the reports of
+ * OGC web services, i.e. <code>&lt;ServiceExceptionReport&gt;&lt;ServiceException code="..." locator="..."&gt;</code>,
+ * and OWS exception reports, i.e. <code>&lt;ows:ExceptionReport&gt;&lt;ows:Exception exceptionCode="..."
+ * locator="..."&gt;&lt;ows:ExceptionText&gt;</code>. Namespaces are ignored. DTDs and external entities are not
+ * processed.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class ServiceExceptionReportParser {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static Logger logger = Logger.getLogger(ServiceExceptionReportParser.class);
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Will not be called.
+     */
+    private ServiceExceptionReportParser() { /* Not used */
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Parses the ServiceExceptionReport of a response. The encoding is taken from the byte order mark or the XML
+     * declaration of the response.
+     *
+     * @param   payload  the response
+     *
+     * @return  the report, empty if the response is not well-formed
+     */
+    public static ServiceExceptionReport parse(final Payload payload) {
+        return parse(new ByteBufferInputStream(payload.asByteBuffer()));
+    }
+
+    /**
+     * Parses a ServiceExceptionReport. The stream is not closed.
+     *
+     * @param   in  the report
+     *
+     * @return  the report, empty if the stream is not well-formed
+     */
+    public static ServiceExceptionReport parse(final InputStream in) {
+        String version = null;
+        final List<ServiceExceptionReport.ReportedException> exceptions =
+            new ArrayList<ServiceExceptionReport.ReportedException>();
+        XMLStreamReader reader = null;
+        try {
+            reader = FACTORY.createXMLStreamReader(in);
+            boolean root = true;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if (root) {
+                    version = reader.getAttributeValue(null, "version");
+                    root = false;
+                    continue;
+                }
+                final String name = reader.getLocalName();
+                if ("ServiceException".equals(name)) {
+                    final String code = reader.getAttributeValue(null, "code");
+                    final String locator = reader.getAttributeValue(null, "locator");
+                    exceptions.add(new ServiceExceptionReport.ReportedException(
+                            code,
+                            locator,
+                            trim(readText(reader))));
+                } else if ("Exception".equals(name)) {
+                    final String code = reader.getAttributeValue(null, "exceptionCode");
+                    final String locator = reader.getAttributeValue(null, "locator");
+                    exceptions.add(new ServiceExceptionReport.ReportedException(
+                            code,
+                            locator,
+                            trim(readText(reader))));
+                }
+            }
+        } catch (XMLStreamException ex) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("ServiceExceptionReport could not be parsed", ex);
+            }
+            return new ServiceExceptionReport(version, Collections.<ServiceExceptionReport.ReportedException>emptyList());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ex) {
+                    // nothing to release
+                }
+            }
+        }
+        return new ServiceExceptionReport(version, exceptions);
+    }
+
+    /**
+     * Reads the text content of the current element including the text of its child elements, i.e. the
+     * ExceptionText elements of an OWS exception. Stops at the end of the current element.
+     *
+     * @param   reader  a reader positioned at a start element
+     *
+     * @return  the text content
+     *
+     * @throws  XMLStreamException  if the element is not well-formed
+     */
+    private static String readText(final XMLStreamReader reader) throws XMLStreamException {
+        final StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT: {
+                    if (text.length() > 0) {
+                        text.append('\n');
+                    }
+                    depth++;
+                    break;
+                }
+                case XMLStreamConstants.END_ELEMENT: {
+                    depth--;
+                    break;
+                }
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE: {
+                    text.append(reader.getText());
+                    break;
+                }
+                default: {
+                    break;
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Trims a text and replaces an empty text by <code>null</code>.
+     *
+     * @param   text  the text
+     *
+     * @return  the trimmed text or <code>null</code>
+     */
+    private static String trim(final String text) {
+        final String trimmed = text.trim();
+        return (trimmed.length() == 0) ? null : trimmed;
+    }
+
+    /**
+     * Creates the XMLInputFactory that is shared by all threads. Only its configuration is shared, every parse creates
+     * its own reader.
+     *
+     * @return  a new XMLInputFactory that does not resolve DTDs and external entities
+     */
+    private static XMLInputFactory createFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return factory;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Reads a ByteBuffer without copying it.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final ByteBuffer buffer;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new ByteBufferInputStream object.
+         *
+         * @param  buffer  the buffer to read, from its position to its limit
+         */
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.utils;
+
+import net.environmatics.acs.accessor.WSSCapabilities;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Parses WSS capabilities documents in a single pass with a streaming (StAX) parser, without building a DOM. The
+ * following parts of the document are read, matched by their local names:
+ *
+ * <ul>
+ *   <li><code>Capability/SecuredServiceType</code></li>
+ *   <li>the <code>id</code> of the <code>AuthenticationMethod</code> of every <code>
+ *     SupportedAuthenticationMethod</code></li>
+ *   <li>every <code>Operation</code> with the <code>href</code> of its <code>Get</code> and <code>Post</code>
+ *     elements</li>
+ * </ul>
+ * DTDs and external entities are not processed.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class WSSCapabilitiesParser {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Will not be called.
+     */
+    private WSSCapabilitiesParser() { /* Not used */
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Parses a capabilities document. The encoding is taken from the byte order mark or the XML declaration of the
+     * document.
+     *
+     * @param   document  the capabilities document
+     *
+     * @return  the capabilities
+     *
+     * @throws  IOException  if the document is not well-formed
+     */
+    public static WSSCapabilities parse(final byte[] document) throws IOException {
+        String version = null;
+        String securedServiceType = null;
+        final List<String> authenticationMethods = new ArrayList<String>();
+        final List<WSSCapabilities.Operation> operations = new ArrayList<WSSCapabilities.Operation>();
+
+        // state of the enclosing SupportedAuthenticationMethod and Operation elements
+        boolean inSupportedMethod = false;
+        boolean methodFound = false;
+        String operation = null;
+        List<String> getURLs = null;
+        List<String> postURLs = null;
+        // local names of the open elements
+        final List<String> path = new ArrayList<String>();
+
+        XMLStreamReader reader = null;
+        try {
+            reader = FACTORY.createXMLStreamReader(new ByteArrayInputStream(document));
+            boolean root = true;
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    final String name = reader.getLocalName();
+                    if ("SupportedAuthenticationMethod".equals(name)) {
+                        inSupportedMethod = false;
+                    } else if ("Operation".equals(name) && (operation != null)) {
+                        operations.add(new WSSCapabilities.Operation(operation, getURLs, postURLs));
+                        operation = null;
+                    }
+                    path.remove(path.size() - 1);
+                    continue;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                final String name = reader.getLocalName();
+                final String parent = path.isEmpty() ? null : path.get(path.size() - 1);
+                if (root) {
+                    version = reader.getAttributeValue(null, "version");
+                    root = false;
+                } else if ("SecuredServiceType".equals(name)) {
+                    if ((securedServiceType == null) && "Capability".equals(parent)) {
+                        // consumes the end element as well
+                        securedServiceType = reader.getElementText().trim();
+                        continue;
+                    }
+                } else if ("SupportedAuthenticationMethod".equals(name)) {
+                    inSupportedMethod = true;
+                    methodFound = false;
+                } else if ("AuthenticationMethod".equals(name)) {
+                    final String id = reader.getAttributeValue(null, "id");
+                    if (inSupportedMethod && !methodFound && (id != null)) {
+                        authenticationMethods.add(id);
+                        methodFound = true;
+                    }
+                } else if ("Operation".equals(name)) {
+                    operation = reader.getAttributeValue(null, "name");
+                    getURLs = new ArrayList<String>();
+                    postURLs = new ArrayList<String>();
+                } else if ((operation != null) && "Get".equals(name)) {
+                    addHref(reader, getURLs);
+                } else if ((operation != null) && "Post".equals(name)) {
+                    addHref(reader, postURLs);
+                }
+                path.add(name);
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Could not parse capabilities document: " + ex.getMessage(), ex);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ex) {
+                    // nothing to release
+                }
+            }
+        }
+        return new WSSCapabilities(version, securedServiceType, authenticationMethods, operations);
+    }
+
+    /**
+     * Adds the (xlink:)href attribute of the current element to a list.
+     *
+     * @param  reader  a reader positioned at a start element
+     * @param  urls    the list to add the URL to
+     */
+    private static void addHref(final XMLStreamReader reader, final List<String> urls) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if ("href".equals(reader.getAttributeLocalName(i))) {
+                urls.add(reader.getAttributeValue(i));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Creates the XMLInputFactory that is shared by all threads. Only its configuration is shared, every parse creates
+     * its own reader.
+     *
+     * @return  a new XMLInputFactory that does not resolve DTDs and external entities
+     */
+    private static XMLInputFactory createFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return factory;
+    }
+}
@@ -0,0 +1,48 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.exceptions;
+
+import net.environmatics.acs.accessor.ServiceExceptionReport;
+
+/**
+ * Exception, that is thrown when the WSS or the secured service answers a doService request with a
+ * ServiceExceptionReport. The message is the raw report, like before, the typed report is available with
+ * {@link #getReport()}.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class ServiceExceptionReportException extends ServiceException {
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final ServiceExceptionReport report;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new ServiceExceptionReportException.
+     *
+     * @param  message  the raw ServiceExceptionReport
+     * @param  report   the parsed ServiceExceptionReport
+     */
+    public ServiceExceptionReportException(final String message, final ServiceExceptionReport report) {
+        super(message);
+        this.report = report;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the parsed ServiceExceptionReport.
+     *
+     * @return  the report
+     */
+    public ServiceExceptionReport getReport() {
+        return report;
+    }
+}
@@ -139,7 +139,7 @@ public class EasySSLProtocolSocketFactory implements SecureProtocolSocketFactory
      *
      * @return  DOCUMENT ME!
      */
-    private SSLContext getSSLContext() {
+    private synchronized SSLContext getSSLContext() {
         if (this.sslcontext == null) {
             this.sslcontext = createEasySSLContext();
         }
@@ -0,0 +1,333 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor;
+
+import net.environmatics.acs.accessor.interfaces.WSSTransport;
+import net.environmatics.acs.accessor.metrics.RequestType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import java.net.URLDecoder;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link WSSTransport} that answers the requests of an accessor in memory the way a deegree WSS does: GetSession
+ * with a new session ID, DoService with a numbered response or with an <code>InvalidSession</code> exception if the
+ * session is unknown, and CloseSession. GetSession can be delayed and DoService and CloseSession can be held, so tests can make requests
+ * overlap.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class FakeWSSTransport implements WSSTransport {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    /** URL of the fake WSS. */
+    public static final String URL = "http://wss.example.org/wss/services";
+
+    private static final String INVALID_SESSION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<ServiceExceptionReport version=\"1.1.1\">\n"
+                + "  <ServiceException code=\"InvalidSession\">The session is unknown or has expired.</ServiceException>\n"
+                + "</ServiceExceptionReport>\n";
+
+    private static final String CREDENTIALS_START = "<authn:Credentials>";
+    private static final String CREDENTIALS_END = "</authn:Credentials>";
+
+    private static final long TIMEOUT = 10000L;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+    // the sessions that DoService requests have been sent with
+    private final Set<String> usedSessions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger getSessionCount = new AtomicInteger();
+    private final AtomicInteger doServiceCount = new AtomicInteger();
+    private final AtomicInteger closeSessionCount = new AtomicInteger();
+    private final AtomicInteger rejectedSessionCount = new AtomicInteger();
+    private volatile long getSessionDelay;
+    private volatile CountDownLatch doServiceGate;
+    private volatile CountDownLatch closeSessionGate;
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Delays every GetSession request, so concurrent renewals overlap.
+     *
+     * @param  getSessionDelay  the delay in milliseconds
+     */
+    public void setGetSessionDelay(final long getSessionDelay) {
+        this.getSessionDelay = getSessionDelay;
+    }
+
+    /**
+     * Holds all DoService requests with a valid session until {@link #openDoService()} is called.
+     */
+    public void holdDoService() {
+        doServiceGate = new CountDownLatch(1);
+    }
+
+    /**
+     * Releases the DoService requests held since {@link #holdDoService()}.
+     */
+    public void openDoService() {
+        final CountDownLatch gate = doServiceGate;
+        doServiceGate = null;
+        if (gate != null) {
+            gate.countDown();
+        }
+    }
+
+    /**
+     * Holds all CloseSession requests until {@link #openCloseSession()} is called.
+     */
+    public void holdCloseSession() {
+        closeSessionGate = new CountDownLatch(1);
+    }
+
+    /**
+     * Releases the CloseSession requests held since {@link #holdCloseSession()}.
+     */
+    public void openCloseSession() {
+        final CountDownLatch gate = closeSessionGate;
+        closeSessionGate = null;
+        if (gate != null) {
+            gate.countDown();
+        }
+    }
+
+    /**
+     * Forgets all sessions, so the next DoService request of every session is rejected.
+     */
+    public void invalidateSessions() {
+        sessions.clear();
+    }
+
+    /**
+     * Returns the number of GetSession requests.
+     *
+     * @return  the number of GetSession requests
+     */
+    public int getGetSessionCount() {
+        return getSessionCount.get();
+    }
+
+    /**
+     * Returns the number of DoService requests, including rejected ones.
+     *
+     * @return  the number of DoService requests
+     */
+    public int getDoServiceCount() {
+        return doServiceCount.get();
+    }
+
+    /**
+     * Returns the number of CloseSession requests.
+     *
+     * @return  the number of CloseSession requests
+     */
+    public int getCloseSessionCount() {
+        return closeSessionCount.get();
+    }
+
+    /**
+     * Returns the number of DoService requests that have been rejected because of their session.
+     *
+     * @return  the number of rejected sessions
+     */
+    public int getRejectedSessionCount() {
+        return rejectedSessionCount.get();
+    }
+
+    /**
+     * Returns the sessions that DoService requests have been sent with.
+     *
+     * @return  the session IDs
+     */
+    public Set<String> getUsedSessions() {
+        return usedSessions;
+    }
+
+    @Override
+    public WSSResponse execute(final WSSRequest request) throws IOException {
+        final RequestType type = request.getType();
+        if (type == RequestType.GET_SESSION) {
+            getSessionCount.incrementAndGet();
+            pause(getSessionDelay);
+            final String id = "session-" + getSessionCount.get() + "-" + System.nanoTime();
+            sessions.add(id);
+            return new Response("text/plain", id.getBytes(StandardCharsets.UTF_8));
+        }
+        final String body = new String(bodyOf(request), StandardCharsets.UTF_8);
+        if (type == RequestType.CLOSE_SESSION) {
+            await(closeSessionGate);
+            closeSessionCount.incrementAndGet();
+            for (final String pair : body.split("&")) {
+                if (pair.regionMatches(true, 0, "sessionID=", 0, 10)) {
+                    sessions.remove(URLDecoder.decode(pair.substring(10), "UTF-8"));
+                }
+            }
+            return new Response("text/xml", "<CloseSessionResponse/>".getBytes(StandardCharsets.UTF_8));
+        }
+        if (type == RequestType.DO_SERVICE) {
+            final int number = doServiceCount.incrementAndGet();
+            final int start = body.indexOf(CREDENTIALS_START);
+            final int end = (start < 0) ? -1 : body.indexOf(CREDENTIALS_END, start);
+            final String id = (end < 0) ? null : body.substring(start + CREDENTIALS_START.length(), end);
+            if ((id == null) || !sessions.contains(id)) {
+                rejectedSessionCount.incrementAndGet();
+                return new Response("application/vnd.ogc.se_xml", INVALID_SESSION.getBytes(StandardCharsets.UTF_8));
+            }
+            usedSessions.add(id);
+            await(doServiceGate);
+            return new Response("text/plain; charset=UTF-8", ("response-" + number).getBytes(StandardCharsets.UTF_8));
+        }
+        throw new IOException("unsupported request " + request);
+    }
+
+    @Override
+    public CompletableFuture<WSSResponse> executeAsync(final WSSRequest request, final Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return execute(request);
+                    } catch (IOException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, executor);
+    }
+
+    /**
+     * Returns the body of a request.
+     *
+     * @param   request  the request
+     *
+     * @return  the body, empty for a GET request
+     *
+     * @throws  IOException  if the body cannot be written
+     */
+    private static byte[] bodyOf(final WSSRequest request) throws IOException {
+        final WSSRequestEntity entity = request.getEntity();
+        if (entity == null) {
+            return new byte[0];
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Waits until a held request is released.
+     *
+     * @param   gate  the gate of the request or <code>null</code> if it is not held
+     *
+     * @throws  IOException  if the request is held too long or the thread is interrupted
+     */
+    private static void await(final CountDownLatch gate) throws IOException {
+        if (gate == null) {
+            return;
+        }
+        try {
+            if (!gate.await(TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new IOException("request held too long");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Sleeps for a while.
+     *
+     * @param   millis  the time in milliseconds
+     *
+     * @throws  InterruptedIOException  if the thread is interrupted
+     */
+    private static void pause(final long millis) throws InterruptedIOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * A complete response with status 200.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class Response extends WSSResponse {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final WSSHeader[] headers;
+        private final byte[] body;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new Response object.
+         *
+         * @param  contentType  the Content-Type
+         * @param  body         the body
+         */
+        Response(final String contentType, final byte[] body) {
+            this.headers = new WSSHeader[] { new WSSHeader("Content-Type", contentType) };
+            this.body = body;
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        @Override
+        public int getStatusCode() {
+            return 200;
+        }
+
+        @Override
+        public WSSHeader[] getResponseHeaders() {
+            return headers.clone();
+        }
+
+        @Override
+        public InputStream getResponseBodyAsStream() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public byte[] getResponseBody() {
+            return body;
+        }
+
+        @Override
+        public void abort() {
+        }
+
+        @Override
+        public void releaseConnection() {
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor;
+
+import net.environmatics.acs.accessor.interfaces.AuthenticationMethod;
+import net.environmatics.acs.accessor.interfaces.SessionInformation;
+import net.environmatics.acs.accessor.methods.PasswordAuthenticationMethod;
+import net.environmatics.acs.exceptions.AuthenticationFailedException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the eviction and the single-flight acquisition of {@link SessionCache}.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class SessionCacheTest {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final int THREADS = 16;
+
+    private static final long TIMEOUT = 10;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private FakeWSSTransport wss;
+    private WSSAccessorDeegree accessor;
+    private ScheduledExecutorService scheduler;
+    private SessionCloser closer;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates the closer of the evicted sessions.
+     */
+    @Before
+    public void setUp() {
+        wss = new FakeWSSTransport();
+        accessor = new WSSAccessorDeegree(FakeWSSTransport.URL);
+        accessor.setTransport(wss);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        closer = new SessionCloser(accessor, scheduler);
+    }
+
+    /**
+     * Stops the closer.
+     */
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+        accessor.shutdown();
+    }
+
+    /**
+     * Checks that concurrent requests for the same credentials start only one session.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testSingleFlightAcquire() throws Exception {
+        final SessionCache cache = new SessionCache(4, 60000L);
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CyclicBarrier start = new CyclicBarrier(THREADS);
+        final ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<SessionCache.Entry>> results = new ArrayList<Future<SessionCache.Entry>>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(threads.submit(new Callable<SessionCache.Entry>() {
+
+                            @Override
+                            public SessionCache.Entry call() throws Exception {
+                                start.await();
+                                return cache.acquire(FakeWSSTransport.URL, user("a"), closer, () -> {
+                                            loading.countDown();
+                                            try {
+                                                release.await(TIMEOUT, TimeUnit.SECONDS);
+                                            } catch (InterruptedException ex) {
+                                                Thread.currentThread().interrupt();
+                                            }
+                                            return session("a");
+                                        });
+                            }
+                        }));
+            }
+            assertTrue(loading.await(TIMEOUT, TimeUnit.SECONDS));
+            // let the other threads find the running load
+            Thread.sleep(100);
+            release.countDown();
+            final SessionCache.Entry first = results.get(0).get(TIMEOUT, TimeUnit.SECONDS);
+            for (final Future<SessionCache.Entry> result : results) {
+                assertSame(first, result.get(TIMEOUT, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+            assertEquals(1, cache.size());
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks that a full cache evicts the least recently used session.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        final SessionCache cache = new SessionCache(2, 60000L);
+        final SessionCache.Entry a = acquire(cache, "a");
+        final SessionCache.Entry b = acquire(cache, "b");
+        assertSame(a, acquire(cache, "a"));
+        acquire(cache, "c");
+        assertEquals(3, loads.get());
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getStatistics().getEvictionCount());
+        // a has been used after b, so b has been evicted
+        assertSame(a, acquire(cache, "a"));
+        assertEquals(3, loads.get());
+        assertNotSame(b, acquire(cache, "b"));
+        assertEquals(4, loads.get());
+        assertEquals(2, cache.size());
+    }
+
+    /**
+     * Checks that a full cache stays within its size limit whatever the keys are.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testSizeLimit() throws Exception {
+        final SessionCache cache = new SessionCache(3, 60000L);
+        for (int i = 0; i < 100; i++) {
+            acquire(cache, "user" + i);
+            assertTrue(cache.size() <= 3);
+        }
+        assertEquals(97, cache.getStatistics().getEvictionCount());
+    }
+
+    /**
+     * Checks that a session is started again once it has expired in the cache.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testTimeToLive() throws Exception {
+        final SessionCache cache = new SessionCache(4, 100L);
+        final SessionCache.Entry first = acquire(cache, "a");
+        assertTrue(first.isValid());
+        assertSame(first, acquire(cache, "a"));
+        Thread.sleep(150);
+        assertTrue(!first.isValid());
+        final SessionCache.Entry second = acquire(cache, "a");
+        assertNotSame(first, second);
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getStatistics().getExpirationCount());
+    }
+
+    /**
+     * Checks that an invalidated session is closed and started again.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testInvalidate() throws Exception {
+        final SessionCache cache = new SessionCache(4, 60000L);
+        final SessionCache.Entry first = acquire(cache, "a");
+        cache.invalidate(first);
+        assertTrue(!first.isValid());
+        assertEquals(0, cache.size());
+        assertNotSame(first, acquire(cache, "a"));
+        assertTrue(closer.drain(TimeUnit.SECONDS.toMillis(TIMEOUT)));
+        assertEquals(1, wss.getCloseSessionCount());
+    }
+
+    /**
+     * Takes the session of a user from the cache or starts it.
+     *
+     * @param   cache  the cache
+     * @param   name   the user
+     *
+     * @return  the cached session
+     *
+     * @throws  AuthenticationFailedException  if the session cannot be started
+     */
+    private SessionCache.Entry acquire(final SessionCache cache, final String name)
+            throws AuthenticationFailedException {
+        return cache.acquire(FakeWSSTransport.URL, user(name), closer, () -> session(name));
+    }
+
+    /**
+     * Returns the credentials of a user.
+     *
+     * @param   name  the user
+     *
+     * @return  the authentication method
+     */
+    private static AuthenticationMethod user(final String name) {
+        return new PasswordAuthenticationMethod(name + ",secret");
+    }
+
+    /**
+     * Starts a session and counts it.
+     *
+     * @param   name  the user
+     *
+     * @return  the session
+     */
+    private SessionInformation session(final String name) {
+        final String id = name + "-" + loads.incrementAndGet();
+        return new SessionInformation() {
+
+                @Override
+                public String getSessionID() {
+                    return id;
+                }
+            };
+    }
+}
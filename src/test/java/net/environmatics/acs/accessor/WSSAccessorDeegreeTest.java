@@ -0,0 +1,401 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor;
+
+import net.environmatics.acs.accessor.interfaces.DoServiceCallback;
+import net.environmatics.acs.accessor.interfaces.WSSAccessor;
+import net.environmatics.acs.exceptions.ServiceException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the concurrent doService paths of {@link WSSAccessorDeegree} against a {@link FakeWSSTransport}.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class WSSAccessorDeegreeTest {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final String FACADE_URL = "http://localhost/facade";
+
+    private static final int THREADS = 16;
+
+    private static final long TIMEOUT = 10;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private FakeWSSTransport wss;
+    private WSSAccessorDeegree accessor;
+    private ExecutorService threads;
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates an accessor for the fake WSS.
+     */
+    @Before
+    public void setUp() {
+        wss = new FakeWSSTransport();
+        accessor = new WSSAccessorDeegree(FakeWSSTransport.URL);
+        accessor.setTransport(wss);
+        threads = Executors.newFixedThreadPool(THREADS);
+    }
+
+    /**
+     * Shuts the accessor down.
+     */
+    @After
+    public void tearDown() {
+        wss.openDoService();
+        wss.openCloseSession();
+        threads.shutdownNow();
+        accessor.shutdown();
+    }
+
+    /**
+     * Checks that concurrent requests whose session is rejected share one renewal.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testConcurrentSessionFailuresRenewOnce() throws Exception {
+        accessor.setRequestCoalescing(false);
+        accessor.doService(WSSAccessor.DCP_HTTP_GET, tile(-1), FACADE_URL);
+        assertEquals(1, wss.getGetSessionCount());
+
+        wss.invalidateSessions();
+        wss.setGetSessionDelay(200);
+        final CyclicBarrier start = new CyclicBarrier(THREADS);
+        final List<Future<Payload>> results = new ArrayList<Future<Payload>>();
+        for (int i = 0; i < THREADS; i++) {
+            final String serviceRequest = tile(i);
+            results.add(threads.submit(new Callable<Payload>() {
+
+                        @Override
+                        public Payload call() throws Exception {
+                            start.await();
+                            return accessor.doService(WSSAccessor.DCP_HTTP_GET, serviceRequest, FACADE_URL);
+                        }
+                    }));
+        }
+        for (final Future<Payload> result : results) {
+            assertFalse(result.get(TIMEOUT, TimeUnit.SECONDS).containsException());
+        }
+        assertTrue(wss.getRejectedSessionCount() > 0);
+        assertEquals(2, wss.getGetSessionCount());
+    }
+
+    /**
+     * Checks that concurrent asynchronous requests whose session is rejected share one renewal.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testConcurrentAsyncSessionFailuresRenewOnce() throws Exception {
+        accessor.setRequestCoalescing(false);
+        accessor.doServiceAsync(WSSAccessor.DCP_HTTP_GET, tile(-1), FACADE_URL).get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(1, wss.getGetSessionCount());
+
+        wss.invalidateSessions();
+        wss.setGetSessionDelay(200);
+        final List<CompletableFuture<Payload>> results = new ArrayList<CompletableFuture<Payload>>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(accessor.doServiceAsync(WSSAccessor.DCP_HTTP_GET, tile(i), FACADE_URL));
+        }
+        for (final CompletableFuture<Payload> result : results) {
+            assertFalse(result.get(TIMEOUT, TimeUnit.SECONDS).containsException());
+        }
+        assertTrue(wss.getRejectedSessionCount() > 0);
+        assertEquals(2, wss.getGetSessionCount());
+    }
+
+    /**
+     * Checks that an empty batch is completed at once without starting a session.
+     */
+    @Test
+    public void testEmptyBatchNeedsNoSession() {
+        final CompletableFuture<Void> batch = accessor.doServiceBatchAsync(
+                Collections.<DoServiceRequest>emptyList(),
+                4,
+                new DoServiceCallback() {
+
+                    @Override
+                    public void completed(final DoServiceRequest request, final Payload response) {
+                        fail("no request expected: " + request);
+                    }
+
+                    @Override
+                    public void failed(final DoServiceRequest request, final ServiceException exception) {
+                        fail("no request expected: " + request);
+                    }
+                });
+        assertTrue(batch.isDone());
+        assertFalse(batch.isCompletedExceptionally());
+        assertEquals(0, wss.getGetSessionCount());
+    }
+
+    /**
+     * Checks that identical concurrent requests share one exchange and every caller gets a view of its own.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testCoalescedCallersGetIndependentViews() throws Exception {
+        accessor.doService(WSSAccessor.DCP_HTTP_GET, tile(-1), FACADE_URL);
+        wss.holdDoService();
+        final List<Future<Payload>> results = new ArrayList<Future<Payload>>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(threads.submit(new Callable<Payload>() {
+
+                        @Override
+                        public Payload call() throws Exception {
+                            return accessor.doService(WSSAccessor.DCP_HTTP_GET, tile(0), FACADE_URL);
+                        }
+                    }));
+        }
+        waitFor(new BooleanSupplier() {
+
+                @Override
+                public boolean getAsBoolean() {
+                    return accessor.getCoalescedRequestCount() == (THREADS - 1);
+                }
+            });
+        wss.openDoService();
+
+        final List<Payload> payloads = new ArrayList<Payload>();
+        for (final Future<Payload> result : results) {
+            payloads.add(result.get(TIMEOUT, TimeUnit.SECONDS));
+        }
+        assertEquals(2, wss.getDoServiceCount());
+        for (int i = 0; i < payloads.size(); i++) {
+            assertEquals("response-2", payloads.get(i).asText());
+            for (int j = 0; j < i; j++) {
+                assertNotSame(payloads.get(i), payloads.get(j));
+            }
+        }
+        // a caller that changes its bytes does not change the response of the others
+        payloads.get(0).asBytes()[0] = 'X';
+        for (int i = 1; i < payloads.size(); i++) {
+            assertEquals('r', payloads.get(i).asBytes()[0]);
+            assertEquals("response-2", payloads.get(i).asText());
+        }
+    }
+
+    /**
+     * Checks that identical concurrent asynchronous requests share one exchange and every caller gets a view of its
+     * own.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testCoalescedAsyncCallersGetIndependentViews() throws Exception {
+        accessor.doService(WSSAccessor.DCP_HTTP_GET, tile(-1), FACADE_URL);
+        wss.holdDoService();
+        final List<CompletableFuture<Payload>> results = new ArrayList<CompletableFuture<Payload>>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(accessor.doServiceAsync(WSSAccessor.DCP_HTTP_GET, tile(0), FACADE_URL));
+        }
+        assertEquals(THREADS - 1, accessor.getCoalescedRequestCount());
+        wss.openDoService();
+
+        final List<Payload> payloads = new ArrayList<Payload>();
+        for (final CompletableFuture<Payload> result : results) {
+            payloads.add(result.get(TIMEOUT, TimeUnit.SECONDS));
+        }
+        assertEquals(2, wss.getDoServiceCount());
+        payloads.get(0).asBytes()[0] = 'X';
+        for (int i = 1; i < payloads.size(); i++) {
+            assertNotSame(payloads.get(0), payloads.get(i));
+            assertEquals("response-2", payloads.get(i).asText());
+        }
+    }
+
+    /**
+     * Checks that identical concurrent POST requests, i.e. WFS-T Transactions, are all sent to the WSS.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testPostRequestsAreNotCoalesced() throws Exception {
+        accessor.doService(WSSAccessor.DCP_HTTP_GET, tile(-1), FACADE_URL);
+        wss.holdDoService();
+        final List<Future<Payload>> results = new ArrayList<Future<Payload>>();
+        for (int i = 0; i < 2; i++) {
+            results.add(threads.submit(new Callable<Payload>() {
+
+                        @Override
+                        public Payload call() throws Exception {
+                            return accessor.doService(
+                                    WSSAccessor.DCP_HTTP_POST,
+                                    "<wfs:Transaction service=\"WFS\"/>",
+                                    FACADE_URL);
+                        }
+                    }));
+        }
+        waitFor(new BooleanSupplier() {
+
+                @Override
+                public boolean getAsBoolean() {
+                    return wss.getDoServiceCount() == 3;
+                }
+            });
+        wss.openDoService();
+        for (final Future<Payload> result : results) {
+            assertFalse(result.get(TIMEOUT, TimeUnit.SECONDS).containsException());
+        }
+        assertEquals(0, accessor.getCoalescedRequestCount());
+    }
+
+    /**
+     * Checks that concurrent requests are spread across the sessions of the session pool.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testSessionPoolSpreadsRequests() throws Exception {
+        accessor.setRequestCoalescing(false);
+        accessor.setSessionPoolSize(4);
+        wss.holdDoService();
+        final List<Future<Payload>> results = new ArrayList<Future<Payload>>();
+        for (int i = 0; i < 8; i++) {
+            final String serviceRequest = tile(i);
+            results.add(threads.submit(new Callable<Payload>() {
+
+                        @Override
+                        public Payload call() throws Exception {
+                            return accessor.doService(WSSAccessor.DCP_HTTP_GET, serviceRequest, FACADE_URL);
+                        }
+                    }));
+        }
+        waitFor(new BooleanSupplier() {
+
+                @Override
+                public boolean getAsBoolean() {
+                    return wss.getDoServiceCount() == 8;
+                }
+            });
+        assertEquals(4, wss.getUsedSessions().size());
+        wss.openDoService();
+        for (final Future<Payload> result : results) {
+            assertFalse(result.get(TIMEOUT, TimeUnit.SECONDS).containsException());
+        }
+        assertEquals(4, wss.getGetSessionCount());
+    }
+
+    /**
+     * Checks that a session with a known lifetime is renewed in the background before it expires, so the next request
+     * does not wait for a GetSession round-trip.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testSessionRenewedBeforeExpiry() throws Exception {
+        accessor.setSessionLifetime(600);
+        accessor.setSessionRenewalMargin(400);
+        accessor.doService(WSSAccessor.DCP_HTTP_GET, tile(-1), FACADE_URL);
+        // an idle session is closed instead of renewed, so the session is used once more after it has been started
+        Thread.sleep(20);
+        accessor.doService(WSSAccessor.DCP_HTTP_GET, tile(-2), FACADE_URL);
+        assertEquals(1, wss.getGetSessionCount());
+        waitFor(new BooleanSupplier() {
+
+                @Override
+                public boolean getAsBoolean() {
+                    if (wss.getUsedSessions().size() == 2) {
+                        return true;
+                    }
+                    try {
+                        // the replaced session is still open, so requests succeed before and after the swap
+                        return !accessor.doService(WSSAccessor.DCP_HTTP_GET, tile(0), FACADE_URL).containsException()
+                                    && (wss.getUsedSessions().size() == 2);
+                    } catch (ServiceException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }
+            });
+        assertEquals(2, wss.getGetSessionCount());
+        assertEquals(0, wss.getRejectedSessionCount());
+    }
+
+    /**
+     * Checks that renewing a rejected session does not wait for the CloseSession request of the old session, and that
+     * the old session is closed in the background.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testRenewalDoesNotWaitForCloseSession() throws Exception {
+        accessor.doService(WSSAccessor.DCP_HTTP_GET, tile(-1), FACADE_URL);
+        wss.holdCloseSession();
+        wss.invalidateSessions();
+        final Future<Payload> result = threads.submit(new Callable<Payload>() {
+
+                    @Override
+                    public Payload call() throws Exception {
+                        return accessor.doService(WSSAccessor.DCP_HTTP_GET, tile(0), FACADE_URL);
+                    }
+                });
+        // the CloseSession request is held far longer than this
+        assertFalse(result.get(2, TimeUnit.SECONDS).containsException());
+        assertEquals(2, wss.getGetSessionCount());
+        assertEquals(0, wss.getCloseSessionCount());
+
+        wss.openCloseSession();
+        assertTrue(accessor.shutdown());
+        assertEquals(2, wss.getCloseSessionCount());
+    }
+
+    /**
+     * Waits until a condition is met.
+     *
+     * @param   condition  the condition
+     *
+     * @throws  InterruptedException  if the thread is interrupted
+     */
+    private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("condition not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Returns a GetMap request of a tile.
+     *
+     * @param   number  the number of the tile
+     *
+     * @return  the KVP request
+     */
+    private static String tile(final int number) {
+        return "SERVICE=WMS&REQUEST=GetMap&LAYERS=a&BBOX=" + number + ",0," + (number + 1) + ",1";
+    }
+}
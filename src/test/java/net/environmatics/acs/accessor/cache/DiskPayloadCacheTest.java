@@ -0,0 +1,228 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.cache;
+
+import net.environmatics.acs.accessor.Payload;
+import net.environmatics.acs.accessor.interfaces.WSSAccessor;
+import net.environmatics.acs.accessor.methods.PasswordAuthenticationMethod;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link DiskPayloadCache} finds its responses again after a restart and lets them expire.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class DiskPayloadCacheTest {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final String WSS_URL = "http://wss.example.org/wss/services";
+
+    private static final String FACADE_URL = "http://localhost/facade";
+
+    private static final long MAX_SIZE = 1024 * 1024;
+
+    private static final long TIME_TO_LIVE = 60000L;
+
+    //~ Instance fields --------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DiskPayloadCache cache;
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Closes the cache.
+     *
+     * @throws  IOException  if the cache cannot be closed
+     */
+    @After
+    public void tearDown() throws IOException {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    /**
+     * Checks that the responses and their charsets are read back after the cache has been reopened.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testReopen() throws Exception {
+        final File directory = folder.newFolder();
+        cache = new DiskPayloadCache(directory, MAX_SIZE, TIME_TO_LIVE);
+        cache.put(key(1), text("first", "UTF-8"));
+        cache.put(key(2), new Payload(new byte[] { 0, 1, 2, (byte)0xff }, null, "image/png"));
+        cache.close();
+
+        cache = new DiskPayloadCache(directory, MAX_SIZE, TIME_TO_LIVE);
+        assertEquals(2, cache.getStatistics().getEntryCount());
+        final Payload first = cache.get(key(1));
+        assertNotNull(first);
+        assertEquals("first", first.asText());
+        assertEquals("UTF-8", first.getCharset());
+        final Payload second = cache.get(key(2));
+        assertNotNull(second);
+        assertArrayEquals(new byte[] { 0, 1, 2, (byte)0xff }, second.asBytes());
+        assertNull(second.getCharset());
+        assertNull(cache.get(key(3)));
+    }
+
+    /**
+     * Checks that a record that has been written partially, i.e. because the application has been stopped, is cut off
+     * and the complete records before it are kept.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testTruncatesIncompleteRecord() throws Exception {
+        final File directory = folder.newFolder();
+        cache = new DiskPayloadCache(directory, MAX_SIZE, TIME_TO_LIVE);
+        cache.put(key(1), text("first", "UTF-8"));
+        cache.put(key(2), text("second", "UTF-8"));
+        cache.close();
+
+        final File segment = segmentFile(directory);
+        final long length = segment.length();
+        final FileOutputStream out = new FileOutputStream(segment, true);
+        try {
+            // the magic number and a part of the header of a third record
+            out.write(new byte[] { 0x57, 0x53, 0x53, 0x32, 0, 0, 0 });
+        } finally {
+            out.close();
+        }
+
+        cache = new DiskPayloadCache(directory, MAX_SIZE, TIME_TO_LIVE);
+        assertEquals(length, segment.length());
+        assertEquals("first", cache.get(key(1)).asText());
+        assertEquals("second", cache.get(key(2)).asText());
+
+        // the next record is appended after the complete ones
+        cache.put(key(3), text("third", "UTF-8"));
+        cache.close();
+        cache = new DiskPayloadCache(directory, MAX_SIZE, TIME_TO_LIVE);
+        assertEquals(3, cache.getStatistics().getEntryCount());
+        assertEquals("first", cache.get(key(1)).asText());
+        assertEquals("third", cache.get(key(3)).asText());
+    }
+
+    /**
+     * Checks that a response is no longer returned once its time to live has passed, neither before nor after the
+     * cache has been reopened.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testTimeToLive() throws Exception {
+        final File directory = folder.newFolder();
+        cache = new DiskPayloadCache(directory, MAX_SIZE, 200L);
+        cache.put(key(1), text("first", "UTF-8"));
+        cache.put(key(2), text("second", "UTF-8"));
+        assertNotNull(cache.get(key(1)));
+        Thread.sleep(300);
+        assertNull(cache.get(key(1)));
+        assertEquals(1, cache.getStatistics().getExpirationCount());
+        cache.close();
+
+        cache = new DiskPayloadCache(directory, MAX_SIZE, 200L);
+        assertEquals(0, cache.getStatistics().getEntryCount());
+        assertNull(cache.get(key(2)));
+    }
+
+    /**
+     * Checks that a response that a memory cache has taken from the disk cache expires with the disk entry.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testPromotedEntryKeepsExpiration() throws Exception {
+        cache = new DiskPayloadCache(folder.newFolder(), MAX_SIZE, 300L);
+        cache.put(key(1), text("first", "UTF-8"));
+        final MemoryPayloadCache memory = new MemoryPayloadCache(MAX_SIZE, TIME_TO_LIVE, cache);
+        final CacheEntry promoted = memory.getEntry(key(1));
+        assertNotNull(promoted);
+        assertTrue(promoted.getExpiresAt() <= (System.currentTimeMillis() + 300L));
+        // served from memory now
+        assertEquals("first", memory.get(key(1)).asText());
+        assertEquals(1, memory.getStatistics().getHitCount());
+        Thread.sleep(400);
+        assertNull(memory.get(key(1)));
+    }
+
+    /**
+     * Returns the key of a GetMap request.
+     *
+     * @param   number  the number of the tile
+     *
+     * @return  the key
+     */
+    private static CacheKey key(final int number) {
+        return CacheKey.create(
+                WSS_URL,
+                new PasswordAuthenticationMethod("user,secret"),
+                WSSAccessor.DCP_HTTP_GET,
+                "SERVICE=WMS&REQUEST=GetMap&LAYERS=a&BBOX="
+                        + number
+                        + ",0,"
+                        + (number + 1)
+                        + ",1",
+                null,
+                FACADE_URL);
+    }
+
+    /**
+     * Returns a text response.
+     *
+     * @param   text     the text
+     * @param   charset  the charset of the response
+     *
+     * @return  the response
+     */
+    private static Payload text(final String text, final String charset) {
+        return new Payload(text.getBytes(StandardCharsets.UTF_8), charset, "text/plain");
+    }
+
+    /**
+     * Returns the only segment file of a cache directory.
+     *
+     * @param   directory  the cache directory
+     *
+     * @return  the segment file
+     */
+    private static File segmentFile(final File directory) {
+        final File[] files = directory.listFiles();
+        File segment = null;
+        for (final File file : files) {
+            if (file.getName().startsWith("segment-")) {
+                assertNull("more than one segment", segment);
+                segment = file;
+            }
+        }
+        assertNotNull("no segment", segment);
+        return segment;
+    }
+}
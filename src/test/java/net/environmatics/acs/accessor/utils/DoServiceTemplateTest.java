@@ -0,0 +1,441 @@
+/***************************************************
+*
+* cismet GmbH, Saarbruecken, Germany
+*
+*              ... and it just works.
+*
+****************************************************/
+package net.environmatics.acs.accessor.utils;
+
+import net.environmatics.acs.accessor.interfaces.AuthenticationMethod;
+import net.environmatics.acs.accessor.interfaces.WSSAccessor;
+import net.environmatics.acs.accessor.methods.AnonymousAuthenticationMethod;
+import net.environmatics.acs.accessor.methods.PasswordAuthenticationMethod;
+import net.environmatics.acs.accessor.methods.SessionAuthenticationMethod;
+import net.environmatics.acs.accessor.methods.WASAuthenticationMethod;
+
+import org.apache.commons.httpclient.NameValuePair;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link DoServiceTemplate} renders the same bytes as
+ * {@link DOMHelper#generateDoService(String, String, AuthenticationMethod, NameValuePair[], String)}.
+ *
+ * @version  $Revision$, $Date$
+ */
+public class DoServiceTemplateTest {
+
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final String[] DCP_TYPES = { WSSAccessor.DCP_HTTP_GET, WSSAccessor.DCP_HTTP_POST };
+
+    private static final String[] PAYLOADS = {
+            "",
+            "SERVICE=WMS&REQUEST=GetMap&LAYERS=a,b&BBOX=1,2,3,4&FORMAT=image/png",
+            "a&b<c>d\"e'f",
+            "&amp;&lt;&#38;",
+            "control\u0001\u001f\ttab\nline\rreturn",
+            "\u00E4\u00F6\u00FC\u00DF\u20AC",
+            "emoji \uD83D\uDE00 end",
+            "high \uD83D alone",
+            "low \uDE00 alone",
+            "trailing high \uD83D",
+            "<?xml version=\"1.0\"?><GetFeature service=\"WFS\"><Query typeName=\"a:b\"/></GetFeature>"
+        };
+
+    private static final String FACADE_URL = "http://localhost/facade?service=WMS&x=<\u00E4>";
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Clears the template cache.
+     */
+    @After
+    public void tearDown() {
+        DoServiceTemplate.clear();
+    }
+
+    /**
+     * Compares the rendered requests of all authentication methods, DCP types and payloads with dom4j.
+     */
+    @Test
+    public void testRenderMatchesDom4j() {
+        for (final AuthenticationMethod authMethod : authMethods()) {
+            for (final String dcpType : DCP_TYPES) {
+                for (final String payload : PAYLOADS) {
+                    assertRendersLikeDom4j(dcpType, payload, authMethod, requestParams(), FACADE_URL);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares a POST request with a CDATA end marker in the payload with dom4j.
+     */
+    @Test
+    public void testRenderCDataEndMatchesDom4j() {
+        for (final AuthenticationMethod authMethod : authMethods()) {
+            assertRendersLikeDom4j(
+                WSSAccessor.DCP_HTTP_POST,
+                "<a><![CDATA[x]]></a>]]>",
+                authMethod,
+                requestParams(),
+                FACADE_URL);
+        }
+    }
+
+    /**
+     * Compares requests with special characters in the request parameters with dom4j.
+     */
+    @Test
+    public void testSpecialRequestParams() {
+        final NameValuePair[] params = {
+                new NameValuePair("a&b", "<\"'>"),
+                new NameValuePair("umlaut", "\u00E4\uD83D\uDE00"),
+                new NameValuePair("empty", "")
+            };
+        for (final String dcpType : DCP_TYPES) {
+            for (final String payload : PAYLOADS) {
+                assertRendersLikeDom4j(
+                    dcpType,
+                    payload,
+                    new PasswordAuthenticationMethod("user,p&ss<word>"),
+                    params,
+                    FACADE_URL);
+                assertRendersLikeDom4j(dcpType, payload, new AnonymousAuthenticationMethod(), new NameValuePair[0], "");
+            }
+        }
+    }
+
+    /**
+     * Checks that the streamed request matches the rendered one for payloads without a CDATA end marker.
+     *
+     * @throws  IOException  if writing fails
+     */
+    @Test
+    public void testWriteToMatchesRender() throws IOException {
+        final String suffix = "&sessionID=id-\u00E4";
+        for (final AuthenticationMethod authMethod : authMethods()) {
+            for (final String dcpType : DCP_TYPES) {
+                final DoServiceTemplate template = DoServiceTemplate.get(
+                        dcpType,
+                        authMethod,
+                        requestParams(),
+                        FACADE_URL);
+                assertNotNull(template);
+                for (final String payload : PAYLOADS) {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    template.writeTo(out, new StringReader(payload), suffix);
+                    assertArrayEquals(
+                        dcpType
+                                + " "
+                                + payload,
+                        DoServiceTemplate.render(dcpType, payload + suffix, authMethod, requestParams(), FACADE_URL),
+                        out.toByteArray());
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that a CDATA end marker in a streamed POST payload does not end the CDATA section.
+     *
+     * @throws  IOException  if writing fails
+     */
+    @Test
+    public void testWriteToSplitsCDataEnd() throws IOException {
+        final DoServiceTemplate template = DoServiceTemplate.get(
+                WSSAccessor.DCP_HTTP_POST,
+                new AnonymousAuthenticationMethod(),
+                requestParams(),
+                FACADE_URL);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.writeTo(out, new StringReader("a]]>b"), null);
+        final String xml = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(xml, xml.contains("a]]]]><![CDATA[>b"));
+    }
+
+    /**
+     * Checks that a CDATA end marker that spans two chunks of a streamed POST payload is split, so the document is
+     * well-formed and the payload is read back unchanged.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testWriteToSplitsCDataEndAcrossChunks() throws Exception {
+        for (int shift = 1; shift <= 3; shift++) {
+            final String payload = filler(DoServiceTemplate.CHUNK_SIZE - shift) + "]]>" + "<a>]]]]>]]>";
+            for (final String dcpType : DCP_TYPES) {
+                assertWritesPayload(dcpType, new StringReader(payload), payload, null);
+            }
+        }
+    }
+
+    /**
+     * Checks that a surrogate pair that spans two chunks of a streamed payload is written as one character.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testWriteToJoinsSurrogatePairAcrossChunks() throws Exception {
+        final String payload = filler(DoServiceTemplate.CHUNK_SIZE - 1) + "\uD83D\uDE00 end";
+        for (final String dcpType : DCP_TYPES) {
+            final byte[] xml = assertWritesPayload(dcpType, new StringReader(payload), payload, null);
+            // the pair is encoded as one four byte sequence and not as two replaced halves
+            assertTrue(new String(xml, StandardCharsets.UTF_8).contains("x\uD83D\uDE00 end"));
+        }
+    }
+
+    /**
+     * Checks a payload that is read one character at a time, so every character starts a new chunk, including a
+     * session parameter that is appended to the payload.
+     *
+     * @throws  Exception  if the test fails
+     */
+    @Test
+    public void testWriteToSingleCharacterChunks() throws Exception {
+        final String payload = "a]]>b]]]>c\uD83D\uDE00d&<e>";
+        final String suffix = "&sessionID=]]>\u00E4";
+        for (final String dcpType : DCP_TYPES) {
+            assertWritesPayload(dcpType, new TricklingReader(payload), payload + suffix, suffix);
+        }
+    }
+
+    /**
+     * Checks that templates are shared by equal authentication methods and not by different credentials.
+     */
+    @Test
+    public void testTemplateCache() {
+        final DoServiceTemplate first = DoServiceTemplate.get(
+                WSSAccessor.DCP_HTTP_GET,
+                new PasswordAuthenticationMethod("user,secret"),
+                requestParams(),
+                FACADE_URL);
+        assertSame(
+            first,
+            DoServiceTemplate.get(
+                WSSAccessor.DCP_HTTP_GET,
+                new PasswordAuthenticationMethod("user,secret"),
+                requestParams(),
+                FACADE_URL));
+        assertNotSame(
+            first,
+            DoServiceTemplate.get(
+                WSSAccessor.DCP_HTTP_GET,
+                new PasswordAuthenticationMethod("user,other"),
+                requestParams(),
+                FACADE_URL));
+    }
+
+    /**
+     * Checks that a full cache evicts the least recently used template instead of all templates.
+     */
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        final DoServiceTemplate used = DoServiceTemplate.get(
+                WSSAccessor.DCP_HTTP_GET,
+                new SessionAuthenticationMethod("used"),
+                requestParams(),
+                FACADE_URL);
+        for (int i = 0; i < (DoServiceTemplate.MAX_TEMPLATES * 2); i++) {
+            DoServiceTemplate.get(
+                WSSAccessor.DCP_HTTP_GET,
+                new SessionAuthenticationMethod("session-" + i),
+                requestParams(),
+                FACADE_URL);
+            assertSame(
+                used,
+                DoServiceTemplate.get(
+                    WSSAccessor.DCP_HTTP_GET,
+                    new SessionAuthenticationMethod("used"),
+                    requestParams(),
+                    FACADE_URL));
+        }
+    }
+
+    /**
+     * Asserts that a streamed request is well-formed XML whose payload element holds the expected text.
+     *
+     * @param   dcpType        the DCP type
+     * @param   payload        the payload to stream
+     * @param   expected       the expected text of the payload element
+     * @param   payloadSuffix  text appended to the payload or <code>null</code>
+     *
+     * @return  the streamed request
+     *
+     * @throws  IOException        if writing fails
+     * @throws  DocumentException  if the request is not well-formed
+     */
+    private static byte[] assertWritesPayload(final String dcpType,
+            final Reader payload,
+            final String expected,
+            final String payloadSuffix) throws IOException, DocumentException {
+        final DoServiceTemplate template = DoServiceTemplate.get(
+                dcpType,
+                new PasswordAuthenticationMethod("user,secret"),
+                requestParams(),
+                FACADE_URL);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.writeTo(out, payload, payloadSuffix);
+        final byte[] xml = out.toByteArray();
+        final Document document = DocumentHelper.parseText(new String(xml, StandardCharsets.UTF_8));
+        final Element element = findElement(document.getRootElement(), "Payload");
+        assertNotNull(dcpType + ": no Payload element", element);
+        assertEquals(dcpType, expected, element.getText());
+        return xml;
+    }
+
+    /**
+     * Returns the first descendant of an element with the given local name.
+     *
+     * @param   parent  the element to search
+     * @param   name    the local name
+     *
+     * @return  the element or <code>null</code>
+     */
+    private static Element findElement(final Element parent, final String name) {
+        if (name.equals(parent.getName())) {
+            return parent;
+        }
+        final Iterator<?> it = parent.elementIterator();
+        while (it.hasNext()) {
+            final Element found = findElement((Element)it.next(), name);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a run of filler characters.
+     *
+     * @param   length  the number of characters
+     *
+     * @return  the filler
+     */
+    private static String filler(final int length) {
+        final char[] chars = new char[length];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+
+    /**
+     * Asserts that the template renders the same bytes as dom4j.
+     *
+     * @param  dcpType        the DCP type
+     * @param  payload        the payload
+     * @param  authMethod     the authentication method
+     * @param  requestParams  the request parameters
+     * @param  facadeURL      the facade URL
+     */
+    private static void assertRendersLikeDom4j(final String dcpType,
+            final String payload,
+            final AuthenticationMethod authMethod,
+            final NameValuePair[] requestParams,
+            final String facadeURL) {
+        // unpaired surrogates remain in the dom4j String and are replaced when it is encoded, so compare the bytes
+        final byte[] expected = DOMHelper.generateDoService(dcpType, payload, authMethod, requestParams, facadeURL)
+                    .asXML()
+                    .getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(
+            dcpType
+                    + " "
+                    + authMethod.getClass().getSimpleName()
+                    + " "
+                    + payload,
+            expected,
+            DoServiceTemplate.render(dcpType, payload, authMethod, requestParams, facadeURL));
+    }
+
+    /**
+     * Returns an instance of every authentication method.
+     *
+     * @return  the authentication methods
+     */
+    private static AuthenticationMethod[] authMethods() {
+        return new AuthenticationMethod[] {
+                new AnonymousAuthenticationMethod(),
+                new PasswordAuthenticationMethod("user,p&ss<w\u00F6rd>"),
+                new SessionAuthenticationMethod("session-\u00E4&<1>"),
+                new WASAuthenticationMethod("was-\"credentials\"")
+            };
+    }
+
+    /**
+     * Returns the request parameters of the tests.
+     *
+     * @return  the request parameters
+     */
+    private static NameValuePair[] requestParams() {
+        return new NameValuePair[] { new NameValuePair("SERVICE", "WMS"), new NameValuePair("VERSION", "1.1.1") };
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * A Reader that returns one character per read.
+     *
+     * @version  $Revision$, $Date$
+     */
+    private static final class TricklingReader extends Reader {
+
+        //~ Instance fields ----------------------------------------------------
+
+        private final String text;
+        private int pos;
+
+        //~ Constructors -------------------------------------------------------
+
+        /**
+         * Creates a new TricklingReader object.
+         *
+         * @param  text  the text to read
+         */
+        TricklingReader(final String text) {
+            this.text = text;
+        }
+
+        //~ Methods ------------------------------------------------------------
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) {
+            if (pos >= text.length()) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            cbuf[off] = text.charAt(pos++);
+            return 1;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}